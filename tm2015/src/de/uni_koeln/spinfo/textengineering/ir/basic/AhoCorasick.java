@@ -0,0 +1,159 @@
+package de.uni_koeln.spinfo.textengineering.ir.basic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Aho-Corasick-Automat für die Suche nach mehreren Mustern in einem einzigen Durchlauf über einen Text (Aho &
+ * Corasick 1975). Aus den Mustern wird zunächst ein Trie aufgebaut, dessen Zustände zusätzlich 'Fehlerkanten'
+ * erhalten: passt das nächste Zeichen nicht, geht es beim längsten Suffix des bisher gelesenen weiter, das zugleich
+ * Präfix eines Musters ist. Wir rechnen diese Kanten vorab in eine vollständige Übergangstabelle ein (DFA), sodass
+ * pro Zeichen genau ein Tabellenzugriff nötig ist - unabhängig von der Anzahl der Muster.
+ */
+public final class AhoCorasick {
+
+	private final String[] patterns;
+	/*
+	 * Zeichenklassen: nur Zeichen, die in den Mustern vorkommen, bekommen eine eigene Spalte in der Tabelle, alle
+	 * anderen landen in Klasse 0 (führt immer zurück zur Wurzel).
+	 */
+	private final int[] asciiClasses = new int[128];
+	private final Map<Character, Integer> otherClasses = new HashMap<Character, Integer>();
+	private int alphabetSize = 1;
+	private int[] delta;// Übergänge: delta[zustand * alphabetSize + klasse]
+	private int[][] output;// Ids der Muster, die in einem Zustand enden
+
+	public AhoCorasick(Collection<String> patterns) {
+		this.patterns = patterns.toArray(new String[patterns.size()]);
+		for (String p : this.patterns) {
+			for (int i = 0; i < p.length(); i++) {
+				addClass(p.charAt(i));
+			}
+		}
+		build();
+	}
+
+	private void addClass(char c) {
+		if (classOf(c) == 0) {
+			if (c < 128) {
+				asciiClasses[c] = alphabetSize++;
+			} else {
+				otherClasses.put(c, alphabetSize++);
+			}
+		}
+	}
+
+	private int classOf(char c) {
+		if (c < 128) {
+			return asciiClasses[c];
+		}
+		Integer cls = otherClasses.get(c);
+		return cls == null ? 0 : cls;
+	}
+
+	/*
+	 * Aufbau in zwei Schritten: erst der Trie (fehlende Kanten = -1), dann in Breitensuche die Fehlerkanten und
+	 * Ausgaben.
+	 */
+	private void build() {
+		int states = 1;
+		for (String p : patterns) {
+			states += p.length();// obere Schranke
+		}
+		int[] trie = new int[states * alphabetSize];
+		Arrays.fill(trie, -1);
+		List<List<Integer>> outputs = new ArrayList<List<Integer>>();
+		outputs.add(new ArrayList<Integer>());
+		int count = 1;
+		for (int id = 0; id < patterns.length; id++) {
+			String p = patterns[id];
+			if (p.isEmpty()) {
+				continue;
+			}
+			int state = 0;
+			for (int i = 0; i < p.length(); i++) {
+				int index = state * alphabetSize + classOf(p.charAt(i));
+				if (trie[index] == -1) {
+					trie[index] = count++;
+					outputs.add(new ArrayList<Integer>());
+				}
+				state = trie[index];
+			}
+			outputs.get(state).add(id);
+		}
+		delta = Arrays.copyOf(trie, count * alphabetSize);
+		int[] fail = new int[count];
+		int[] queue = new int[count];
+		int head = 0, tail = 0;
+		queue[tail++] = 0;
+		while (head < tail) {
+			int s = queue[head++];
+			for (int c = 0; c < alphabetSize; c++) {
+				int index = s * alphabetSize + c;
+				int t = delta[index];
+				if (t != -1 && c != 0) {
+					fail[t] = s == 0 ? 0 : delta[fail[s] * alphabetSize + c];
+					// was im Fehlerzustand endet, endet auch hier:
+					outputs.get(t).addAll(outputs.get(fail[t]));
+					queue[tail++] = t;
+				} else {
+					delta[index] = s == 0 ? 0 : delta[fail[s] * alphabetSize + c];
+				}
+			}
+		}
+		output = new int[count][];
+		for (int s = 0; s < count; s++) {
+			List<Integer> ids = outputs.get(s);
+			output[s] = new int[ids.size()];
+			for (int i = 0; i < ids.size(); i++) {
+				output[s][i] = ids.get(i);
+			}
+		}
+	}
+
+	/*
+	 * Ermittelt in einem Durchlauf, welche Muster im Text vorkommen. Bei 'tokens' zählen nur Vorkommen, die von
+	 * Leerraum (bzw. Textanfang und -ende) begrenzt sind, d.h. die einem Token nach split("\\s+") entsprechen. Mit
+	 * 'firstOnly' wird nach dem ersten Treffer abgebrochen (genügt für ODER-Suchen).
+	 */
+	public BitSet find(CharSequence text, boolean tokens, boolean firstOnly) {
+		BitSet found = new BitSet(patterns.length);
+		int state = 0;
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			state = delta[state * alphabetSize + classOf(text.charAt(i))];
+			for (int id : output[state]) {
+				int start = i - patterns[id].length() + 1;
+				if (!tokens || (start == 0 || isSpace(text.charAt(start - 1)))
+						&& (i + 1 == length || isSpace(text.charAt(i + 1)))) {
+					found.set(id);
+					if (firstOnly) {
+						return found;
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	/*
+	 * Leerraum wie im regulären Ausdruck "\\s".
+	 */
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	public int size() {
+		return patterns.length;
+	}
+
+	public String getPattern(int id) {
+		return patterns[id];
+	}
+
+}
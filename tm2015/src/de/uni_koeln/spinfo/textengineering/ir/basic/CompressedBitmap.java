@@ -0,0 +1,654 @@
+package de.uni_koeln.spinfo.textengineering.ir.basic;
+
+import java.util.Arrays;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/*
+ * Komprimierte Bitmap für die Zeilen der Term-Dokument-Matrix (nach dem Vorbild der sog. 'Roaring Bitmaps'). Der
+ * Wertebereich wird in Blöcke zu je 2^16 Werten unterteilt; die oberen 16 Bit eines Werts bestimmen den Block, die
+ * unteren 16 Bit werden in einem 'Container' abgelegt. Je nach Dichte des Blocks wählen wir die sparsamste
+ * Darstellung:
+ *
+ * - ArrayContainer: sortiertes char[] der gesetzten Werte (für dünn besetzte Blöcke, 2 Byte pro Wert)
+ *
+ * - BitmapContainer: klassische Bitmap mit 1024 longs (für dicht besetzte Blöcke, immer 8 KB)
+ *
+ * - RunContainer: Lauflängenkodierung als (Start, Länge)-Paare (für zusammenhängende Bereiche, 4 Byte pro Lauf)
+ *
+ * Der Speicherbedarf richtet sich damit nach der Anzahl der gesetzten Zellen, nicht nach der Breite der Matrix. Die
+ * booleschen Operationen (and, or, andNot, not) arbeiten direkt auf den Containern, ohne die Zeilen vorher
+ * auszupacken.
+ *
+ * Container werden zwischen Bitmaps geteilt (z.B. übernimmt or() Blöcke, die nur in einer der Bitmaps vorkommen).
+ * Verändert wird nur der Container, an den add() gerade anhängt; alle anderen sind unveränderlich. Einen geteilten
+ * Container kopiert add() vor dem Anhängen, den eigenen kopiert shared() beim Teilen.
+ */
+public final class CompressedBitmap {
+
+	// bis zu dieser Kardinalität ist ein ArrayContainer kleiner als eine Bitmap (4096 * 2 Byte = 8 KB):
+	private static final int ARRAY_MAX = 4096;
+	private static final int WORDS = 1024;
+
+	private char[] keys;// die oberen 16 Bit, aufsteigend sortiert
+	private Container[] containers;
+	private int size;// Anzahl der belegten Blöcke
+	// der letzte Container, solange add() an ihn anhängt (bis optimize()), sonst null:
+	private Container building;
+
+	public CompressedBitmap() {
+		this(new char[4], new Container[4], 0);
+	}
+
+	private CompressedBitmap(char[] keys, Container[] containers, int size) {
+		this.keys = keys;
+		this.containers = containers;
+		this.size = size;
+	}
+
+	/*
+	 * Eine Bitmap mit allen Werten aus [from, to) - wird u.a. für die Negation benötigt und kommt dank RunContainer
+	 * mit wenigen Bytes pro Block aus.
+	 */
+	public static CompressedBitmap range(int from, int to) {
+		CompressedBitmap result = new CompressedBitmap();
+		int start = from;
+		while (start < to) {
+			int high = start >>> 16;
+			int end = Math.min(to, (high + 1) << 16);// exklusiv
+			RunContainer run = new RunContainer(new char[] { (char) start }, new char[] { (char) (end - start - 1) }, 1);
+			result.append((char) high, run);
+			start = end;
+		}
+		return result;
+	}
+
+	/*
+	 * Fügt einen Wert hinzu. Werte müssen in aufsteigender Reihenfolge kommen (wie beim spaltenweisen Aufbau der
+	 * Matrix); Duplikate des letzten Werts werden ignoriert.
+	 */
+	public void add(int x) {
+		if (x < 0) {
+			throw new IllegalArgumentException("Negativer Wert: " + x);
+		}
+		char high = (char) (x >>> 16);
+		char low = (char) x;
+		if (size == 0 || keys[size - 1] < high) {
+			building = new ArrayContainer();
+			append(high, building);
+		} else if (keys[size - 1] > high) {
+			throw new IllegalArgumentException("Werte müssen aufsteigend hinzugefügt werden: " + x);
+		} else if (containers[size - 1] != building) {
+			// womöglich geteilt (nach optimize() bzw. in einem Ergebnis von or() usw.): erst kopieren
+			building = containers[size - 1].copy();
+		}
+		building = building.append(low);
+		containers[size - 1] = building;
+	}
+
+	/*
+	 * Wählt für jeden Block die kleinste Darstellung (Array, Bitmap oder Runs) und gibt überzähligen Platz frei.
+	 * Sollte nach dem Aufbau einmal aufgerufen werden.
+	 */
+	public CompressedBitmap optimize() {
+		for (int i = 0; i < size; i++) {
+			containers[i] = containers[i].optimize();
+		}
+		keys = Arrays.copyOf(keys, size);
+		containers = Arrays.copyOf(containers, size);
+		building = null;// ab jetzt darf jeder Container geteilt werden
+		return this;
+	}
+
+	public boolean contains(int x) {
+		int i = Arrays.binarySearch(keys, 0, size, (char) (x >>> 16));
+		return x >= 0 && i >= 0 && containers[i].contains((char) x);
+	}
+
+	public int cardinality() {
+		int card = 0;
+		for (int i = 0; i < size; i++) {
+			card += containers[i].cardinality();
+		}
+		return card;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/*
+	 * Ungefährer Speicherbedarf der Container in Bytes (für Ausgaben zur Matrixgröße).
+	 */
+	public long sizeInBytes() {
+		long bytes = 2L * size;
+		for (int i = 0; i < size; i++) {
+			bytes += containers[i].sizeInBytes();
+		}
+		return bytes;
+	}
+
+	/*
+	 * Schnittmenge: Nur Blöcke, die in beiden Bitmaps vorkommen, müssen überhaupt betrachtet werden (Merge über die
+	 * sortierten Schlüssel wie bei der Intersection von Postings-Listen).
+	 */
+	public CompressedBitmap and(CompressedBitmap other) {
+		CompressedBitmap answer = new CompressedBitmap();
+		int i = 0, j = 0;
+		while (i < size && j < other.size) {
+			if (keys[i] == other.keys[j]) {
+				Container c = containers[i].and(other.containers[j]);
+				if (c.cardinality() > 0) {
+					answer.append(keys[i], c);
+				}
+				i++;
+				j++;
+			} else if (keys[i] < other.keys[j]) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return answer;
+	}
+
+	/*
+	 * Vereinigung: Blöcke, die nur in einer der Bitmaps vorkommen, werden unverändert übernommen (siehe shared()).
+	 */
+	public CompressedBitmap or(CompressedBitmap other) {
+		CompressedBitmap answer = new CompressedBitmap();
+		int i = 0, j = 0;
+		while (i < size || j < other.size) {
+			if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+				answer.append(keys[i], shared(i));
+				i++;
+			} else if (i == size || other.keys[j] < keys[i]) {
+				answer.append(other.keys[j], other.shared(j));
+				j++;
+			} else {
+				answer.append(keys[i], containers[i].or(other.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return answer;
+	}
+
+	/*
+	 * Differenz (this AND NOT other).
+	 */
+	public CompressedBitmap andNot(CompressedBitmap other) {
+		CompressedBitmap answer = new CompressedBitmap();
+		int i = 0, j = 0;
+		while (i < size) {
+			if (j == other.size || keys[i] < other.keys[j]) {
+				answer.append(keys[i], shared(i));
+				i++;
+			} else if (other.keys[j] < keys[i]) {
+				j++;
+			} else {
+				Container c = containers[i].andNot(other.containers[j]);
+				if (c.cardinality() > 0) {
+					answer.append(keys[i], c);
+				}
+				i++;
+				j++;
+			}
+		}
+		return answer;
+	}
+
+	/*
+	 * Negation bzgl. eines Wertebereichs [0, n), bei uns: der Anzahl der Werke.
+	 */
+	public CompressedBitmap not(int n) {
+		return range(0, n).andNot(this);
+	}
+
+	public int[] toArray() {
+		int[] result = new int[cardinality()];
+		int pos = 0;
+		for (int i = 0; i < size; i++) {
+			pos = containers[i].fill(result, pos, keys[i] << 16);
+		}
+		return result;
+	}
+
+	public SortedSet<Integer> toSet() {
+		SortedSet<Integer> result = new TreeSet<Integer>();
+		for (int x : toArray()) {
+			result.add(x);
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+	/*
+	 * Der i-te Container zum Übernehmen in eine andere Bitmap: geteilt, außer add() hängt noch an ihn an.
+	 */
+	private Container shared(int i) {
+		return containers[i] == building ? containers[i].copy() : containers[i];
+	}
+
+	private void append(char key, Container c) {
+		if (size == keys.length) {
+			// nach optimize() kann keys auch leer sein
+			keys = Arrays.copyOf(keys, Math.max(4, size * 2));
+			containers = Arrays.copyOf(containers, Math.max(4, size * 2));
+		}
+		keys[size] = key;
+		containers[size] = c;
+		size++;
+	}
+
+	/*
+	 * Gemeinsame Schnittstelle der drei Container-Typen. Die Werte sind jeweils die unteren 16 Bit (als char).
+	 */
+	private abstract static class Container {
+
+		abstract int cardinality();
+
+		abstract boolean contains(char v);
+
+		/* Hängt einen Wert an (nur während des Aufbaus, Werte aufsteigend) */
+		abstract Container append(char v);
+
+		/* Schreibt die Werte (mit den oberen Bits 'high') ab Position 'pos' in 'out' */
+		abstract int fill(int[] out, int pos, int high);
+
+		/* Setzt die eigenen Werte in einer Bitmap mit 1024 longs */
+		abstract void orInto(long[] words);
+
+		abstract int sizeInBytes();
+
+		/* Die sortierten Werte als char[] (Länge = cardinality()) */
+		abstract char[] values();
+
+		/* Anzahl der zusammenhängenden Läufe (für die Wahl der Darstellung) */
+		abstract int runs();
+
+		/* Eine unabhängige Kopie, an die angehängt werden kann */
+		Container copy() {
+			int card = cardinality();
+			return card <= ARRAY_MAX ? new ArrayContainer(Arrays.copyOf(values(), card), card) : BitmapContainer.of(this);
+		}
+
+		Container optimize() {
+			int card = cardinality();
+			int runs = runs();
+			int runBytes = 4 * runs;
+			int arrayBytes = 2 * card;
+			int bitmapBytes = 8 * WORDS;
+			if (runBytes < arrayBytes && runBytes < bitmapBytes) {
+				return this instanceof RunContainer ? this : RunContainer.of(values(), card, runs);
+			}
+			if (card <= ARRAY_MAX) {
+				return this instanceof ArrayContainer ? ((ArrayContainer) this).trim() : new ArrayContainer(values(), card);
+			}
+			return this instanceof BitmapContainer ? this : BitmapContainer.of(this);
+		}
+
+		Container and(Container other) {
+			if (this instanceof BitmapContainer && other instanceof BitmapContainer) {
+				long[] w1 = ((BitmapContainer) this).words;
+				long[] w2 = ((BitmapContainer) other).words;
+				long[] words = new long[WORDS];
+				for (int i = 0; i < WORDS; i++) {
+					words[i] = w1[i] & w2[i];
+				}
+				return fromWords(words);
+			}
+			// sonst: die kleinere Menge durchlaufen und in der größeren nachschlagen
+			Container small = cardinality() <= other.cardinality() ? this : other;
+			Container large = small == this ? other : this;
+			char[] candidates = small.values();
+			char[] result = new char[candidates.length];
+			int n = 0;
+			for (char v : candidates) {
+				if (large.contains(v)) {
+					result[n++] = v;
+				}
+			}
+			return new ArrayContainer(result, n).optimize();
+		}
+
+		Container or(Container other) {
+			if (this instanceof ArrayContainer && other instanceof ArrayContainer
+					&& cardinality() + other.cardinality() <= ARRAY_MAX) {
+				return ArrayContainer.merge((ArrayContainer) this, (ArrayContainer) other).optimize();
+			}
+			long[] words = new long[WORDS];
+			orInto(words);
+			other.orInto(words);
+			return fromWords(words);
+		}
+
+		Container andNot(Container other) {
+			if (this instanceof BitmapContainer && other instanceof BitmapContainer) {
+				long[] w1 = ((BitmapContainer) this).words;
+				long[] w2 = ((BitmapContainer) other).words;
+				long[] words = new long[WORDS];
+				for (int i = 0; i < WORDS; i++) {
+					words[i] = w1[i] & ~w2[i];
+				}
+				return fromWords(words);
+			}
+			char[] candidates = values();
+			char[] result = new char[candidates.length];
+			int n = 0;
+			for (char v : candidates) {
+				if (!other.contains(v)) {
+					result[n++] = v;
+				}
+			}
+			return new ArrayContainer(result, n).optimize();
+		}
+
+		static Container fromWords(long[] words) {
+			return new BitmapContainer(words).optimize();
+		}
+	}
+
+	private static final class ArrayContainer extends Container {
+
+		private char[] content;
+		private int card;
+
+		ArrayContainer() {
+			this(new char[4], 0);
+		}
+
+		ArrayContainer(char[] content, int card) {
+			this.content = content;
+			this.card = card;
+		}
+
+		static ArrayContainer merge(ArrayContainer a, ArrayContainer b) {
+			char[] result = new char[a.card + b.card];
+			int i = 0, j = 0, n = 0;
+			while (i < a.card || j < b.card) {
+				if (j == b.card || (i < a.card && a.content[i] < b.content[j])) {
+					result[n++] = a.content[i++];
+				} else if (i == a.card || b.content[j] < a.content[i]) {
+					result[n++] = b.content[j++];
+				} else {
+					result[n++] = a.content[i++];
+					j++;
+				}
+			}
+			return new ArrayContainer(result, n);
+		}
+
+		ArrayContainer trim() {
+			if (content.length != card) {
+				content = Arrays.copyOf(content, card);
+			}
+			return this;
+		}
+
+		@Override
+		int cardinality() {
+			return card;
+		}
+
+		@Override
+		boolean contains(char v) {
+			return Arrays.binarySearch(content, 0, card, v) >= 0;
+		}
+
+		@Override
+		Container append(char v) {
+			if (card > 0 && content[card - 1] >= v) {
+				if (content[card - 1] == v) {
+					return this;
+				}
+				throw new IllegalArgumentException("Werte müssen aufsteigend hinzugefügt werden");
+			}
+			if (card == ARRAY_MAX) {// zu dicht: ab jetzt als Bitmap
+				return BitmapContainer.of(this).append(v);
+			}
+			if (card == content.length) {
+				content = Arrays.copyOf(content, Math.min(ARRAY_MAX, card * 2));
+			}
+			content[card++] = v;
+			return this;
+		}
+
+		@Override
+		int fill(int[] out, int pos, int high) {
+			for (int i = 0; i < card; i++) {
+				out[pos++] = high | content[i];
+			}
+			return pos;
+		}
+
+		@Override
+		void orInto(long[] words) {
+			for (int i = 0; i < card; i++) {
+				words[content[i] >>> 6] |= 1L << content[i];
+			}
+		}
+
+		@Override
+		int sizeInBytes() {
+			return 2 * content.length;
+		}
+
+		@Override
+		char[] values() {
+			return content.length == card ? content : Arrays.copyOf(content, card);
+		}
+
+		@Override
+		int runs() {
+			int runs = 0;
+			for (int i = 0; i < card; i++) {
+				if (i == 0 || content[i] != content[i - 1] + 1) {
+					runs++;
+				}
+			}
+			return runs;
+		}
+	}
+
+	private static final class BitmapContainer extends Container {
+
+		private final long[] words;
+		private int card;
+
+		BitmapContainer(long[] words) {
+			this.words = words;
+			for (long w : words) {
+				card += Long.bitCount(w);
+			}
+		}
+
+		static BitmapContainer of(Container c) {
+			long[] words = new long[WORDS];
+			c.orInto(words);
+			return new BitmapContainer(words);
+		}
+
+		@Override
+		int cardinality() {
+			return card;
+		}
+
+		@Override
+		boolean contains(char v) {
+			return (words[v >>> 6] & (1L << v)) != 0;
+		}
+
+		@Override
+		Container append(char v) {
+			if (!contains(v)) {
+				words[v >>> 6] |= 1L << v;
+				card++;
+			}
+			return this;
+		}
+
+		@Override
+		int fill(int[] out, int pos, int high) {
+			for (int i = 0; i < WORDS; i++) {
+				long w = words[i];
+				while (w != 0) {
+					out[pos++] = high | (i << 6) + Long.numberOfTrailingZeros(w);
+					w &= w - 1;// niedrigstes gesetztes Bit löschen
+				}
+			}
+			return pos;
+		}
+
+		@Override
+		void orInto(long[] target) {
+			for (int i = 0; i < WORDS; i++) {
+				target[i] |= words[i];
+			}
+		}
+
+		@Override
+		int sizeInBytes() {
+			return 8 * WORDS;
+		}
+
+		@Override
+		char[] values() {
+			char[] result = new char[card];
+			int n = 0;
+			for (int i = 0; i < WORDS; i++) {
+				long w = words[i];
+				while (w != 0) {
+					result[n++] = (char) ((i << 6) + Long.numberOfTrailingZeros(w));
+					w &= w - 1;
+				}
+			}
+			return result;
+		}
+
+		@Override
+		int runs() {
+			/*
+			 * Ein Lauf beginnt überall dort, wo ein Bit gesetzt ist, sein Vorgänger aber nicht:
+			 */
+			int runs = 0;
+			long carry = 0;// das höchste Bit des vorigen Worts
+			for (int i = 0; i < WORDS; i++) {
+				long w = words[i];
+				runs += Long.bitCount(w & ~((w << 1) | carry));
+				carry = w >>> 63;
+			}
+			return runs;
+		}
+	}
+
+	private static final class RunContainer extends Container {
+
+		private final char[] starts;
+		private final char[] lengths;// Länge - 1, damit ein voller Block (2^16 Werte) darstellbar ist
+		private final int n;
+
+		RunContainer(char[] starts, char[] lengths, int n) {
+			this.starts = starts;
+			this.lengths = lengths;
+			this.n = n;
+		}
+
+		static RunContainer of(char[] values, int card, int runs) {
+			char[] starts = new char[runs];
+			char[] lengths = new char[runs];
+			int r = -1;
+			for (int i = 0; i < card; i++) {
+				if (i == 0 || values[i] != values[i - 1] + 1) {
+					starts[++r] = values[i];
+				} else {
+					lengths[r]++;
+				}
+			}
+			return new RunContainer(starts, lengths, runs);
+		}
+
+		@Override
+		int cardinality() {
+			int card = 0;
+			for (int i = 0; i < n; i++) {
+				card += lengths[i] + 1;
+			}
+			return card;
+		}
+
+		@Override
+		boolean contains(char v) {
+			int i = Arrays.binarySearch(starts, 0, n, v);
+			if (i >= 0) {
+				return true;
+			}
+			i = -i - 2;// der Lauf, der vor v beginnt
+			return i >= 0 && v <= starts[i] + lengths[i];
+		}
+
+		@Override
+		Container append(char v) {
+			// RunContainer entstehen erst durch optimize(), danach wird nicht mehr angehängt:
+			return BitmapContainer.of(this).append(v);
+		}
+
+		@Override
+		int fill(int[] out, int pos, int high) {
+			for (int i = 0; i < n; i++) {
+				for (int v = starts[i]; v <= starts[i] + lengths[i]; v++) {
+					out[pos++] = high | v;
+				}
+			}
+			return pos;
+		}
+
+		@Override
+		void orInto(long[] words) {
+			for (int i = 0; i < n; i++) {
+				int from = starts[i];
+				int to = from + lengths[i];// inklusiv
+				int first = from >>> 6;
+				int last = to >>> 6;
+				long firstMask = -1L << from;
+				long lastMask = -1L >>> (63 - (to & 63));
+				if (first == last) {
+					words[first] |= firstMask & lastMask;
+				} else {
+					words[first] |= firstMask;
+					for (int w = first + 1; w < last; w++) {
+						words[w] = -1L;
+					}
+					words[last] |= lastMask;
+				}
+			}
+		}
+
+		@Override
+		int sizeInBytes() {
+			return 4 * n;
+		}
+
+		@Override
+		char[] values() {
+			char[] result = new char[cardinality()];
+			int k = 0;
+			for (int i = 0; i < n; i++) {
+				for (int v = starts[i]; v <= starts[i] + lengths[i]; v++) {
+					result[k++] = (char) v;
+				}
+			}
+			return result;
+		}
+
+		@Override
+		int runs() {
+			return n;
+		}
+	}
+
+}
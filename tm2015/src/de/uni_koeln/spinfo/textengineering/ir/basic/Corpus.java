@@ -1,41 +1,39 @@
 package de.uni_koeln.spinfo.textengineering.ir.basic;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
-import java.util.Scanner;
 
 public class Corpus {
 
-	private String text;
+	/*
+	 * Statt den Text als String einzulesen und zu splitten, überlassen wir
+	 * das dem MappedCorpus: die Datei wird gemappt und die Werke erst bei
+	 * Bedarf dekodiert.
+	 */
+	private MappedCorpus file;
 	private List<String> works; // Liste statt Array
 
 	public Corpus(String filename, String delimiter) {
-
-		StringBuilder sb = new StringBuilder();
-
 		try {
-			Scanner scanner = new Scanner(new File(filename));
-			while (scanner.hasNextLine()) {
-				String line = scanner.nextLine();
-				sb.append(line);
-				sb.append("\n"); // Newline für Werkeinteilung (s. delimiter)
-			}
-			scanner.close();
-		} catch (FileNotFoundException e) {
+			file = new MappedCorpus(filename, delimiter);
+			works = file.getWorks(); // Liste statt Array
+		} catch (IOException e) {
 			e.printStackTrace();
+			works = Collections.emptyList();
 		}
-		text = sb.toString();
-		works = Arrays.asList(text.split(delimiter)); // Liste statt Array
 	}
 
 	public List<String> getWorks() {
 		return works;
 	}
 
+	/*
+	 * Der Gesamttext wird nicht mehr vorgehalten, sondern bei Bedarf aus der
+	 * gemappten Datei dekodiert.
+	 */
 	public String getText() {
-		return text;
+		return file == null ? "" : file.getText();
 	}
 
 }
@@ -0,0 +1,193 @@
+package de.uni_koeln.spinfo.textengineering.ir.basic;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Komprimierte Variante des Suffix-Arrays (Ferragina & Manzini 2000): Statt Text und Suffix-Array halten wir nur
+ * die Burrows-Wheeler-Transformation (BWT) des Texts, d.h. für jedes Suffix das Zeichen davor, als ein Byte pro
+ * Zeichen. Gesucht wird rückwärts ('backward search'): Pro Zeichen des Musters wird der Trefferbereich mithilfe der
+ * Tabellen C (Anzahl kleinerer Zeichen) und Occ (Vorkommen eines Zeichens in der BWT bis Zeile i) eingeschränkt -
+ * die Anzahl der Treffer kostet damit genau pattern.length() Schritte, unabhängig von der Textlänge.
+ *
+ * Für die Positionen der Treffer (locate) ist nur jeder SAMPLE-te Eintrag des Suffix-Arrays gespeichert; von jeder
+ * anderen Zeile aus 'laufen' wir über die LF-Abbildung rückwärts durch den Text, bis wir auf einen gespeicherten
+ * Eintrag treffen.
+ */
+public class FMIndex implements InformationRetrieval {
+
+	private static final int SAMPLE = 32;// jede 32. Textposition ist gespeichert
+	private static final int STEP = 128;// Abstand der Occ-Stützstellen
+
+	private final int rows;// Textlänge + 1 (für das Ende-Zeichen '$')
+	private final Map<Character, Integer> codes = new HashMap<Character, Integer>();
+	private final int sigma;// Anzahl der Symbole (inkl. '$' = 0)
+	private final byte[] bwt;// BWT als Symbol-Codes, wenn sigma <= 256 ...
+	private final char[] wideBwt;// ... sonst als char[]
+	private final int[] c;// c[s] = Anzahl der Symbole < s im Text
+	private final int[] occ;// occ[(i / STEP) * sigma + s] = Vorkommen von s in bwt[0, i)
+	private final long[] sampled;// Bitvektor: Zeilen mit gespeicherter Textposition
+	private final int[] sampledRank;// Anzahl der markierten Zeilen vor jedem long
+	private final int[] positions;// gespeicherte Textpositionen, in Zeilenreihenfolge
+	private final int[] workStarts;
+
+	public FMIndex(Corpus corpus) {
+		this(new SuffixArray(corpus));
+	}
+
+	FMIndex(SuffixArray suffixArray) {
+		long start = System.currentTimeMillis();
+		String text = suffixArray.getText();
+		int[] sa = suffixArray.getSuffixes();
+		int n = text.length();
+		rows = n + 1;
+		workStarts = suffixArray.getWorkStarts();
+		// Symbol-Codes in Zeichenreihenfolge vergeben, damit C der Sortierung entspricht:
+		boolean[] seen = new boolean[Character.MAX_VALUE + 1];
+		for (int i = 0; i < n; i++) {
+			seen[text.charAt(i)] = true;
+		}
+		int code = 1;
+		for (int ch = 0; ch <= Character.MAX_VALUE; ch++) {
+			if (seen[ch]) {
+				codes.put((char) ch, code++);
+			}
+		}
+		sigma = code;
+		bwt = sigma <= 256 ? new byte[rows] : null;
+		wideBwt = sigma <= 256 ? null : new char[rows];
+		c = new int[sigma + 1];
+		occ = new int[(rows / STEP + 1) * sigma];
+		sampled = new long[(rows >>> 6) + 1];
+		sampledRank = new int[sampled.length];
+		int[] samples = new int[rows / SAMPLE + 2];
+		int sampleCount = 0;
+		int[] counts = new int[sigma];
+		for (int row = 0; row < rows; row++) {
+			if (row % STEP == 0) {
+				System.arraycopy(counts, 0, occ, (row / STEP) * sigma, sigma);
+			}
+			// Zeile 0 ist das Suffix "$", danach folgen die Suffixe in der Reihenfolge des Suffix-Arrays:
+			int pos = row == 0 ? n : sa[row - 1];
+			int symbol = pos == 0 ? 0 : codes.get(text.charAt(pos - 1));
+			setSymbol(row, symbol);
+			counts[symbol]++;
+			if (pos % SAMPLE == 0) {
+				sampled[row >>> 6] |= 1L << row;
+				samples[sampleCount++] = pos;
+			}
+		}
+		c[0] = 0;
+		for (int s = 0; s < sigma; s++) {
+			c[s + 1] = c[s] + counts[s];
+		}
+		for (int w = 1; w < sampled.length; w++) {
+			sampledRank[w] = sampledRank[w - 1] + Long.bitCount(sampled[w - 1]);
+		}
+		positions = Arrays.copyOf(samples, sampleCount);
+		System.out.println("FM-Index erstellt (" + sigma + " Symbole, " + sizeInBytes() / 1024 + " KB), Dauer: "
+				+ (System.currentTimeMillis() - start) + " ms.");
+	}
+
+	private void setSymbol(int row, int symbol) {
+		if (bwt != null) {
+			bwt[row] = (byte) symbol;
+		} else {
+			wideBwt[row] = (char) symbol;
+		}
+	}
+
+	private int symbol(int row) {
+		return bwt != null ? bwt[row] & 0xff : wideBwt[row];
+	}
+
+	/*
+	 * Vorkommen von s in bwt[0, i): Stützstelle plus Zählen im Rest des Blocks.
+	 */
+	private int occ(int s, int i) {
+		int block = i / STEP;
+		int result = occ[block * sigma + s];
+		for (int row = block * STEP; row < i; row++) {
+			if (symbol(row) == s) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * LF-Abbildung: die Zeile des Suffixes, das ein Zeichen früher im Text beginnt.
+	 */
+	private int lf(int row) {
+		int s = symbol(row);
+		return c[s] + occ(s, row);
+	}
+
+	/*
+	 * 'Backward search': liefert den Zeilenbereich [from, to) der Suffixe, die mit dem Muster beginnen.
+	 */
+	private int[] range(String pattern) {
+		int from = 0, to = rows;
+		for (int i = pattern.length() - 1; i >= 0 && from < to; i--) {
+			Integer s = codes.get(pattern.charAt(i));
+			if (s == null) {
+				return new int[] { 0, 0 };
+			}
+			from = c[s] + occ(s, from);
+			to = c[s] + occ(s, to);
+		}
+		return new int[] { from, Math.max(from, to) };
+	}
+
+	public int count(String pattern) {
+		if (pattern.isEmpty()) {
+			return 0;// wie SuffixArray: der leere String zählt nicht als Treffer
+		}
+		int[] range = range(pattern);
+		return range[1] - range[0];
+	}
+
+	public int[] locate(String pattern) {
+		if (pattern.isEmpty()) {
+			return new int[0];
+		}
+		int[] range = range(pattern);
+		int[] result = new int[range[1] - range[0]];
+		for (int row = range[0]; row < range[1]; row++) {
+			int r = row;
+			int steps = 0;
+			while ((sampled[r >>> 6] & (1L << r)) == 0) {
+				r = lf(r);
+				steps++;
+			}
+			int rank = sampledRank[r >>> 6] + Long.bitCount(sampled[r >>> 6] & ((1L << r) - 1));
+			result[row - range[0]] = positions[rank] + steps;
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	@Override
+	public Set<Integer> search(String query) {
+		long start = System.currentTimeMillis();
+		Set<Integer> result = SuffixArray.works(locate(query), workStarts);
+		System.out.println("Suchdauer: " + (System.currentTimeMillis() - start) + " ms.");
+		return result;
+	}
+
+	public int workOf(int offset) {
+		return SuffixArray.workOf(offset, workStarts);
+	}
+
+	/*
+	 * Ungefährer Speicherbedarf (ohne die Zeichentabelle).
+	 */
+	public long sizeInBytes() {
+		long bytes = bwt != null ? bwt.length : 2L * wideBwt.length;
+		return bytes + 4L * (c.length + occ.length + sampledRank.length + positions.length + workStarts.length) + 8L
+				* sampled.length;
+	}
+
+}
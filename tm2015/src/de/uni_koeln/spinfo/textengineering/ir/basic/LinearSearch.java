@@ -4,9 +4,16 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class LinearSearch implements InformationRetrieval {
 
+	/*
+	 * Die Werke werden parallel durchsucht, ein Pool für alle Suchen genügt.
+	 */
+	private static final ForkJoinPool POOL = new ForkJoinPool();
+
 	private List<String> works;
 
 	public LinearSearch(Corpus corpus) {
@@ -14,22 +21,26 @@ public class LinearSearch implements InformationRetrieval {
 		works = corpus.getWorks();
 	}
 
+	/*
+	 * Früher haben wir jedes Werk pro Suchwort neu gesplittet und für jeden
+	 * Treffer die Werk-Id mit works.indexOf(work) gesucht. Jetzt bauen wir aus
+	 * allen Suchwörtern einen Aho-Corasick-Automaten, der jedes Werk nur ein
+	 * einziges Mal durchläuft - egal wie viele Suchwörter es sind. Die Werk-Id
+	 * kennen wir dabei direkt aus der Zählvariablen.
+	 */
 	@Override
 	public Set<Integer> search(String query) {
 
 		long start = System.currentTimeMillis();
+		List<String> queries = Arrays.asList(query.trim().split("\\s+"));
+		AhoCorasick automaton = new AhoCorasick(queries);
+		boolean[] hits = new boolean[works.size()];
+		POOL.invoke(new ScanTask(automaton, hits, 0, works.size()));
+
 		Set<Integer> result = new HashSet<Integer>();
-		List<String> queries = Arrays.asList(query.split("\\s+"));
-
-		for (String q : queries) {
-			for (String work : works) {
-				List<String> tokens = Arrays.asList(work.split("\\s+"));
-				for (String token : tokens) {
-					if (token.compareTo(q) == 0) {
-						result.add(works.indexOf(work));
-						break;
-					}
-				}
+		for (int i = 0; i < hits.length; i++) {
+			if (hits[i]) {
+				result.add(i);
 			}
 		}
 		System.out.println("Suchdauer: " + (System.currentTimeMillis() - start)
@@ -37,4 +48,40 @@ public class LinearSearch implements InformationRetrieval {
 		return result;
 	}
 
+	/*
+	 * Fork-Join-Aufgabe: der Bereich der Werke wird so lange halbiert, bis
+	 * jede Teilaufgabe nur noch ein Werk durchsucht. Jede Teilaufgabe schreibt
+	 * nur 'ihre' Positionen im Ergebnis-Array, daher ist keine
+	 * Synchronisierung nötig.
+	 */
+	private class ScanTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final AhoCorasick automaton;
+		private final boolean[] hits;
+		private final int from;
+		private final int to;
+
+		ScanTask(AhoCorasick automaton, boolean[] hits, int from, int to) {
+			this.automaton = automaton;
+			this.hits = hits;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= 1) {
+				for (int i = from; i < to; i++) {
+					// wie bisher ganze Tokens, ODER-verknüpft (ein Treffer genügt):
+					hits[i] = !automaton.find(works.get(i), true, true).isEmpty();
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new ScanTask(automaton, hits, from, middle), new ScanTask(
+					automaton, hits, middle, to));
+		}
+	}
+
 }
@@ -0,0 +1,234 @@
+package de.uni_koeln.spinfo.textengineering.ir.basic;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Gemeinsamer Lader für die Corpus-Klassen. Bisher wurde die Datei mit einem Scanner zeilenweise in einen
+ * StringBuilder gelesen, daraus ein String erzeugt und dieser dann mit split() zerlegt - auf dem Höhepunkt liegt das
+ * Korpus also dreifach im Speicher. Hier wird die Datei stattdessen in den Speicher 'gemappt' (d.h. das
+ * Betriebssystem lädt die benötigten Seiten bei Bedarf), die Werkgrenzen werden in einem einzigen Durchlauf
+ * ermittelt und die Werke erst beim Zugriff (lazy) als String dekodiert. Auf dem Heap liegen damit nur die
+ * Byte-Offsets der Werke.
+ */
+public final class MappedCorpus {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	// ein MappedByteBuffer kann höchstens 2 GB adressieren, wir mappen daher in Abschnitten:
+	private static final int CHUNK_BITS = 30;
+	private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+	private final ByteBuffer[] chunks;
+	private final long length;
+	// Start- und End-Offsets (in Bytes) der Werke in der Datei:
+	private long[] starts;
+	private long[] ends;
+	private int size;
+	// bereits dekodierte Werke, bei Speicherknappheit wieder freigegeben:
+	private final SoftReference<String>[] cache;
+
+	public MappedCorpus(String filename, String delimiter) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			length = channel.size();
+			chunks = new ByteBuffer[(int) ((length + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+			for (int i = 0; i < chunks.length; i++) {
+				long offset = i * CHUNK_SIZE;
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+						Math.min(CHUNK_SIZE, length - offset));
+				chunks[i] = buffer;
+			}
+		} finally {
+			file.close();// das Mapping bleibt auch nach dem Schließen gültig
+		}
+		split(Pattern.compile(delimiter));
+		// generische Arrays lassen sich nicht direkt anlegen:
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		SoftReference<String>[] cache = new SoftReference[size];
+		this.cache = cache;
+	}
+
+	/*
+	 * Ermittelt die Werkgrenzen in einem Durchlauf über die Datei. Wie bisher (Scanner + "\n" pro Zeile) wird das
+	 * Trennzeichen zeilenweise gesucht, wobei Zeilenenden ("\r\n" oder "\n") stets als "\n" erscheinen. Es entstehen
+	 * dieselben Teile wie bei text.split(delimiter): leere Teile am Ende werden verworfen.
+	 */
+	private void split(Pattern delimiter) {
+		starts = new long[16];
+		ends = new long[16];
+		LineSequence line = new LineSequence();
+		Matcher matcher = delimiter.matcher("");
+		long workStart = 0;
+		long pos = 0;
+		while (pos < length) {
+			long lineEnd = pos;// Position des '\n' (bzw. Dateiende)
+			while (lineEnd < length && byteAt(lineEnd) != '\n') {
+				lineEnd++;
+			}
+			long next = Math.min(lineEnd + 1, length);
+			long contentEnd = lineEnd > pos && byteAt(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+			line.set(pos, contentEnd);
+			matcher.reset(line);
+			while (matcher.find()) {
+				if (matcher.end() == matcher.start()) {
+					continue;// leere Treffer trennen nichts
+				}
+				add(workStart, line.offset(matcher.start(), next));
+				workStart = line.offset(matcher.end(), next);
+			}
+			pos = next;
+		}
+		add(workStart, length);
+		// wie bei split(): leere Teile am Ende verwerfen
+		while (size > 0 && starts[size - 1] == ends[size - 1]) {
+			size--;
+		}
+	}
+
+	private void add(long start, long end) {
+		if (size == starts.length) {
+			starts = Arrays.copyOf(starts, size * 2);
+			ends = Arrays.copyOf(ends, size * 2);
+		}
+		starts[size] = start;
+		ends[size] = end;
+		size++;
+	}
+
+	private byte byteAt(long pos) {
+		return chunks[(int) (pos >>> CHUNK_BITS)].get((int) (pos & (CHUNK_SIZE - 1)));
+	}
+
+	/*
+	 * Die Werke als Liste, die erst beim Zugriff dekodiert wird.
+	 */
+	public List<String> getWorks() {
+		return new AbstractList<String>() {
+			@Override
+			public String get(int index) {
+				return getWork(index);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * Dekodiert ein einzelnes Werk (Zeilenenden werden wie beim Einlesen mit dem Scanner zu "\n").
+	 */
+	public String getWork(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Werk " + index + " von " + size);
+		}
+		SoftReference<String> ref = cache[index];
+		String work = ref == null ? null : ref.get();
+		if (work == null) {
+			work = decode(starts[index], ends[index]);
+			cache[index] = new SoftReference<String>(work);
+		}
+		return work;
+	}
+
+	/*
+	 * Der gesamte Text, wird bei jedem Aufruf neu dekodiert (nur für kleine Korpora sinnvoll).
+	 */
+	public String getText() {
+		return decode(0, length);
+	}
+
+	/*
+	 * Byte-Offsets der Werke in der Datei.
+	 */
+	public long getStart(int index) {
+		return starts[index];
+	}
+
+	public long getEnd(int index) {
+		return ends[index];
+	}
+
+	private String decode(long start, long end) {
+		if (end - start > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Abschnitt zu groß für einen String: " + (end - start) + " Bytes");
+		}
+		byte[] bytes = new byte[(int) (end - start)];
+		int n = 0;
+		for (long p = start; p < end; p++) {
+			byte b = byteAt(p);
+			if (b == '\r' && p + 1 < length && byteAt(p + 1) == '\n') {
+				continue;// "\r\n" -> "\n"
+			}
+			bytes[n++] = b;
+		}
+		String text = new String(bytes, 0, n, UTF8);
+		// wie bisher endet der Text immer mit einem Zeilenumbruch:
+		return end == length && length > 0 && byteAt(length - 1) != '\n' ? text + "\n" : text;
+	}
+
+	/*
+	 * Eine Zeile der Datei als CharSequence (ohne Kopie), inkl. abschließendem "\n", damit der reguläre Ausdruck für
+	 * die Werkgrenzen wie bisher passt. Bytes werden 1:1 als Zeichen gelesen - für ASCII-Trennzeichen wie
+	 * "1[56][0-9]{2}\n" genügt das, Mehrbyte-Zeichen (>= 0x80) können mit diesen nie übereinstimmen.
+	 */
+	private final class LineSequence implements CharSequence {
+
+		private long from;
+		private int length;// inklusive des virtuellen '\n'
+
+		void set(long from, long to) {
+			this.from = from;
+			this.length = (int) (to - from) + 1;
+		}
+
+		/*
+		 * Byte-Offset zu einem Index in der Zeile: das virtuelle '\n' steht für das Zeilenende ("\r\n", "\n" oder
+		 * Dateiende), der Index dahinter für den Beginn der Folgezeile.
+		 */
+		long offset(int index, long next) {
+			return index < length ? from + index : next;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return index == length - 1 ? '\n' : (char) (byteAt(from + index) & 0xff);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			StringBuilder sb = new StringBuilder(end - start);
+			for (int i = start; i < end; i++) {
+				sb.append(charAt(i));
+			}
+			return sb;
+		}
+
+		@Override
+		public String toString() {
+			return subSequence(0, length).toString();
+		}
+	}
+
+}
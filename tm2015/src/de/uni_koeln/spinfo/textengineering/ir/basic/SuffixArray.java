@@ -0,0 +1,293 @@
+package de.uni_koeln.spinfo.textengineering.ir.basic;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+ * Volltextindex über den Gesamttext des Korpus: Ein Suffix-Array enthält die Anfangspositionen aller Suffixe des
+ * Texts in lexikographischer Reihenfolge. Alle Vorkommen eines beliebigen Teilstrings (nicht nur ganzer Tokens)
+ * liegen darin in einem zusammenhängenden Bereich, den wir per binärer Suche finden. Zusätzlich halten wir das
+ * LCP-Array (Länge des längsten gemeinsamen Präfixes benachbarter Suffixe), mit dem sich der Trefferbereich ohne
+ * weitere Textvergleiche abgrenzen lässt.
+ */
+public class SuffixArray implements InformationRetrieval {
+
+	private final String text;
+	private final int[] sa;
+	private final int[] lcp;// lcp[i] = LCP(sa[i-1], sa[i]), lcp[0] = 0
+	private final int[] workStarts;// Startpositionen der Werke im Text (aufsteigend)
+
+	public SuffixArray(Corpus corpus) {
+		// getText() dekodiert jedes Mal die ganze Datei, also nur einmal:
+		this(corpus.getText(), corpus.getWorks());
+	}
+
+	private SuffixArray(String text, List<String> works) {
+		this(text, workStarts(text, works));
+	}
+
+	public SuffixArray(String text, int[] workStarts) {
+		long start = System.currentTimeMillis();
+		this.text = text;
+		this.workStarts = workStarts;
+		this.sa = build(text);
+		this.lcp = lcp(text, sa);
+		System.out.println("Suffix-Array erstellt (" + text.length() + " Zeichen), Dauer: "
+				+ (System.currentTimeMillis() - start) + " ms.");
+	}
+
+	/*
+	 * Die Werke sind in derselben Reihenfolge im Text enthalten, wir suchen also jeweils ab dem Ende des vorigen.
+	 */
+	static int[] workStarts(String text, List<String> works) {
+		int[] starts = new int[works.size()];
+		int pos = 0;
+		for (int i = 0; i < works.size(); i++) {
+			String work = works.get(i);
+			int s = text.indexOf(work, pos);
+			starts[i] = s < 0 ? pos : s;
+			pos = starts[i] + (s < 0 ? 0 : work.length());
+		}
+		return starts;
+	}
+
+	/*
+	 * Aufbau durch 'prefix doubling' (Manber & Myers 1993): Die Suffixe werden zunächst nach ihrem ersten Zeichen
+	 * sortiert, dann nach den ersten 2, 4, 8, ... Zeichen, wobei sich der Rang nach 2k Zeichen aus den Rängen der
+	 * beiden Hälften (i und i+k) ergibt. Beide Sortierschritte sind Counting-Sorts, jede Runde ist also linear; wir
+	 * hören auf, sobald alle Ränge verschieden sind.
+	 */
+	private static int[] build(String text) {
+		int n = text.length();
+		int[] sa = new int[n];
+		int[] rank = new int[n];
+		int[] tmp = new int[n];
+		if (n == 0) {
+			return sa;
+		}
+		// Runde 0: Sortieren nach dem ersten Zeichen
+		int[] cnt = new int[Math.max(Character.MAX_VALUE + 2, n + 1)];
+		for (int i = 0; i < n; i++) {
+			cnt[text.charAt(i) + 1]++;
+		}
+		for (int c = 1; c < cnt.length; c++) {
+			cnt[c] += cnt[c - 1];
+		}
+		for (int i = 0; i < n; i++) {
+			sa[cnt[text.charAt(i)]++] = i;
+		}
+		int classes = 0;
+		rank[sa[0]] = 0;
+		for (int j = 1; j < n; j++) {
+			if (text.charAt(sa[j]) != text.charAt(sa[j - 1])) {
+				classes++;
+			}
+			rank[sa[j]] = classes;
+		}
+		for (int k = 1; classes < n - 1; k <<= 1) {
+			/*
+			 * Nach dem zweiten Schlüssel (Rang von i+k) sind die Suffixe schon sortiert: zuerst die, bei denen i+k
+			 * hinter dem Textende liegt (kleinster Schlüssel), dann alle anderen in der Reihenfolge von sa.
+			 */
+			int p = 0;
+			for (int i = n - k; i < n; i++) {
+				tmp[p++] = i;
+			}
+			for (int j = 0; j < n; j++) {
+				if (sa[j] >= k) {
+					tmp[p++] = sa[j] - k;
+				}
+			}
+			// stabiles Counting-Sort nach dem ersten Schlüssel (Rang von i):
+			Arrays.fill(cnt, 0, classes + 2, 0);
+			for (int i = 0; i < n; i++) {
+				cnt[rank[i] + 1]++;
+			}
+			for (int c = 1; c <= classes + 1; c++) {
+				cnt[c] += cnt[c - 1];
+			}
+			for (int j = 0; j < n; j++) {
+				sa[cnt[rank[tmp[j]]]++] = tmp[j];
+			}
+			// neue Ränge (tmp wird dafür wiederverwendet):
+			tmp[sa[0]] = 0;
+			classes = 0;
+			for (int j = 1; j < n; j++) {
+				int a = sa[j - 1], b = sa[j];
+				int ra = a + k < n ? rank[a + k] : -1;
+				int rb = b + k < n ? rank[b + k] : -1;
+				if (rank[a] != rank[b] || ra != rb) {
+					classes++;
+				}
+				tmp[b] = classes;
+			}
+			int[] swap = rank;
+			rank = tmp;
+			tmp = swap;
+		}
+		return sa;
+	}
+
+	/*
+	 * LCP-Array nach Kasai et al. (2001) in linearer Zeit: Geht man die Suffixe in Textreihenfolge durch, sinkt das
+	 * LCP zum jeweiligen Vorgänger im Suffix-Array pro Schritt um höchstens 1.
+	 */
+	private static int[] lcp(String text, int[] sa) {
+		int n = sa.length;
+		int[] rank = new int[n];
+		for (int i = 0; i < n; i++) {
+			rank[sa[i]] = i;
+		}
+		int[] lcp = new int[n];
+		int h = 0;
+		for (int i = 0; i < n; i++) {
+			if (rank[i] > 0) {
+				int j = sa[rank[i] - 1];
+				while (i + h < n && j + h < n && text.charAt(i + h) == text.charAt(j + h)) {
+					h++;
+				}
+				lcp[rank[i]] = h;
+				if (h > 0) {
+					h--;
+				}
+			} else {
+				h = 0;
+			}
+		}
+		return lcp;
+	}
+
+	/*
+	 * Anzahl der Vorkommen eines Teilstrings (0 für den leeren String, passend zu locate).
+	 */
+	public int count(String pattern) {
+		if (pattern.isEmpty()) {
+			return 0;
+		}
+		return bound(pattern, true) - bound(pattern, false);
+	}
+
+	/*
+	 * Alle Textpositionen eines Teilstrings (aufsteigend sortiert). Nach der ersten Fundstelle genügt das LCP-Array,
+	 * um das Ende des Trefferbereichs zu finden: Solange der nächste Suffix mindestens pattern.length() Zeichen mit
+	 * seinem Vorgänger teilt, beginnt auch er mit dem Muster.
+	 */
+	public int[] locate(String pattern) {
+		int m = pattern.length();
+		int from = bound(pattern, false);
+		if (m == 0 || from == sa.length || !startsWith(sa[from], pattern)) {
+			return new int[0];
+		}
+		int to = from + 1;
+		while (to < sa.length && lcp[to] >= m) {
+			to++;
+		}
+		int[] result = Arrays.copyOfRange(sa, from, to);
+		Arrays.sort(result);
+		return result;
+	}
+
+	/*
+	 * Die Ids aller Werke, in denen der Suchstring (als beliebiger Teilstring, inkl. Leerzeichen) vorkommt.
+	 */
+	@Override
+	public Set<Integer> search(String query) {
+		long start = System.currentTimeMillis();
+		Set<Integer> result = works(locate(query), workStarts);
+		System.out.println("Suchdauer: " + (System.currentTimeMillis() - start) + " ms.");
+		return result;
+	}
+
+	/*
+	 * Das Werk zu einer Textposition: das letzte Werk, das vor (oder an) der Position beginnt.
+	 */
+	public int workOf(int offset) {
+		return workOf(offset, workStarts);
+	}
+
+	static int workOf(int offset, int[] workStarts) {
+		int i = Arrays.binarySearch(workStarts, offset);
+		return i >= 0 ? i : -i - 2;
+	}
+
+	static Set<Integer> works(int[] offsets, int[] workStarts) {
+		Set<Integer> result = new TreeSet<Integer>();
+		for (int offset : offsets) {
+			result.add(workOf(offset, workStarts));
+		}
+		return result;
+	}
+
+	/*
+	 * Binäre Suche nach dem ersten Suffix, das >= pattern (bzw. bei 'upper' > pattern) ist, wobei nur die ersten
+	 * pattern.length() Zeichen verglichen werden. Wir merken uns, wie viele Zeichen die Grenzen des Suchbereichs
+	 * bereits mit dem Muster gemeinsam haben; alle Suffixe dazwischen teilen mindestens das Minimum davon, sodass
+	 * diese Zeichen nicht erneut verglichen werden müssen (Manber & Myers).
+	 */
+	private int bound(String pattern, boolean upper) {
+		int lo = 0, hi = sa.length;
+		int lcpLo = 0, lcpHi = 0;
+		int m = pattern.length();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			int suffix = sa[mid];
+			int l = Math.min(lcpLo, lcpHi);
+			while (l < m && suffix + l < text.length() && text.charAt(suffix + l) == pattern.charAt(l)) {
+				l++;
+			}
+			boolean less;// liegt das Suffix (auf m Zeichen) vor dem Muster?
+			if (l == m) {
+				less = upper;// Suffix beginnt mit dem Muster
+			} else if (suffix + l == text.length()) {
+				less = true;// Suffix ist ein echtes Präfix des Musters
+			} else {
+				less = text.charAt(suffix + l) < pattern.charAt(l);
+			}
+			if (less) {
+				lo = mid + 1;
+				lcpLo = l;
+			} else {
+				hi = mid;
+				lcpHi = l;
+			}
+		}
+		return lo;
+	}
+
+	private boolean startsWith(int suffix, String pattern) {
+		return text.startsWith(pattern, suffix);
+	}
+
+	/*
+	 * Zugriff für den Aufbau des FM-Index.
+	 */
+	String getText() {
+		return text;
+	}
+
+	int[] getSuffixes() {
+		return sa;
+	}
+
+	int[] getWorkStarts() {
+		return workStarts;
+	}
+
+	public int getLcp(int i) {
+		return lcp[i];
+	}
+
+	public int size() {
+		return sa.length;
+	}
+
+	/*
+	 * Die komprimierte Variante (siehe FMIndex), ohne Text, Suffix-Array und LCP-Array.
+	 */
+	public FMIndex toFMIndex() {
+		return new FMIndex(this);
+	}
+
+}
@@ -2,17 +2,24 @@ package de.uni_koeln.spinfo.textengineering.ir.basic;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import de.uni_koeln.spinfo.textengineering.ir.boole.SpellingCorrector;
+
 public class TermDokumentMatrix implements InformationRetrieval {
 
-	private boolean[][] matrix;
-	private Map<String, Integer> positions;
+	/*
+	 * Statt eines boolean[terms][works] (ein Byte pro Zelle, egal ob gesetzt oder nicht) speichern wir jede Zeile als
+	 * komprimierte Bitmap - der Speicherbedarf richtet sich dann nach der Anzahl der gesetzten Zellen.
+	 */
+	private final CompressedBitmap[] matrix;
+	private final Map<String, Integer> positions;
+	private final int worksCount;// Anzahl der Spalten (für Negation und Ausgabe)
+	private final SpellingCorrector corrector;// für "Meinten Sie ..."
 
 	public TermDokumentMatrix(Corpus corpus) {
 
@@ -22,12 +29,15 @@ public class TermDokumentMatrix implements InformationRetrieval {
 		List<String> works = corpus.getWorks();
 		List<String> terms = getTerms(works);
 		positions = getPositions(terms);// 'Zeilennummern' der Terme
-		matrix = new boolean[terms.size()][works.size()];
+		worksCount = works.size();
+		matrix = new CompressedBitmap[terms.size()];
+		for (int zeile = 0; zeile < matrix.length; zeile++) {
+			matrix[zeile] = new CompressedBitmap();
+		}
 		/*
-		 * Falls beim Erstellen der Matrix der Speicher überläuft, kann man dem
-		 * Prozess mit der Angabe des Parameters "-Xmx256m" (unter Open Run
-		 * Dialog, Arguments, VM Arguments) mehr Speicher zuweisen, hier z.B.
-		 * 256 MB; per default nimmt sich jeder Java-Prozess 64 MB.
+		 * Mit der früheren boolean-Matrix lief bei großen Korpora schnell der
+		 * Speicher über (Abhilfe nur über "-Xmx"). Die komprimierten Zeilen
+		 * wachsen dagegen nur mit den tatsächlich gesetzten Zellen.
 		 */
 		System.out.println("Größe der Matrix: " + terms.size() + " X "
 				+ works.size());
@@ -37,9 +47,26 @@ public class TermDokumentMatrix implements InformationRetrieval {
 			for (int j = 0; j < tokens.length; j++) {
 				String t = tokens[j];// das aktuelle Token
 				int zeile = positions.get(t);// Zeilennummer des Tokens
-				matrix[zeile][spalte] = true;
+				/*
+				 * Da wir Spalte für Spalte vorgehen, kommen die Werk-Ids pro
+				 * Zeile aufsteigend an (Duplikate werden ignoriert):
+				 */
+				matrix[zeile].add(spalte);
 			}
 		}
+		long bytes = 0;
+		for (CompressedBitmap zeile : matrix) {
+			// pro Zeile die sparsamste Darstellung wählen:
+			bytes += zeile.optimize().sizeInBytes();
+		}
+		System.out.println("Speicherbedarf der Zeilen: ca. " + bytes / 1024
+				+ " KB");
+		// Vokabular mit Dokumentfrequenzen für Korrekturvorschläge:
+		Map<String, Integer> dfs = new HashMap<String, Integer>();
+		for (Map.Entry<String, Integer> e : positions.entrySet()) {
+			dfs.put(e.getKey(), matrix[e.getValue()].cardinality());
+		}
+		corrector = new SpellingCorrector(dfs);
 		System.out.println("Matrix erstellt, Dauer: "
 				+ (System.currentTimeMillis() - start) + " ms.");
 
@@ -78,8 +105,8 @@ public class TermDokumentMatrix implements InformationRetrieval {
 	@SuppressWarnings("unused")
 	private void printMatrix(List<String> terms) {
 		for (int i = 0; i < matrix.length; i++) {
-			for (int j = 0; j < matrix[i].length; j++) {
-				System.out.print((matrix[i][j]) ? "1 " : "0 ");
+			for (int j = 0; j < worksCount; j++) {
+				System.out.print((matrix[i].contains(j)) ? "1 " : "0 ");
 			}
 			System.out.println(terms.get(i) + " ");
 		}
@@ -93,73 +120,83 @@ public class TermDokumentMatrix implements InformationRetrieval {
 
 		long start = System.currentTimeMillis();
 		List<String> queries = Arrays.asList(query.split(" "));
-		Set<Integer> result = new HashSet<Integer>();
+		CompressedBitmap result = new CompressedBitmap();
 
 		for (String q : queries) {
 			// erstmal die Zeile ermitteln:
 			Integer zeilennummer = positions.get(q);
-			// und dann Spalte für Spalte (Werk für Werk) nachsehen:
-			for (int i = 0; i < matrix[0].length; i++) {
-				/*
-				 * Bei nicht vorhandenen Wörtern können 'Nullpointer' auftreten.
-				 * Werden diese wie hier explizit vermieden, können an dieser
-				 * Stelle bspw. auch Suchalternativen angezeigt werden
-				 * ("Meinten Sie ...") - was allerdings voraussetzt, dass diese
-				 * zunächst auf Grundlage der Query ermittelt werden. Mehr dazu
-				 * beim Thema "Tolerant Retrieval".
-				 */
-				if (zeilennummer == null) {
-					System.out.println("Term " + q + " nicht gefunden");
-					break;
-				}
-				// die boolesche Matrix enthält ein 'true' für jeden Treffer:
-				if (matrix[zeilennummer][i]) {
-					result.add(i);
-					//Hier behandeln wir die Suchwörter als ODER-verknüpft!
-				}
+			/*
+			 * Bei nicht vorhandenen Wörtern können 'Nullpointer' auftreten.
+			 * Werden diese wie hier explizit vermieden, können an dieser
+			 * Stelle bspw. auch Suchalternativen angezeigt werden
+			 * ("Meinten Sie ...", siehe SpellingCorrector und Thema
+			 * "Tolerant Retrieval").
+			 */
+			if (zeilennummer == null) {
+				System.out.println(corrector.notFound(q));
+				continue;
 			}
+			/*
+			 * Statt Spalte für Spalte nachzusehen, vereinigen wir die Zeile
+			 * direkt mit dem bisherigen Ergebnis:
+			 */
+			result = result.or(matrix[zeilennummer]);
+			// Hier behandeln wir die Suchwörter als ODER-verknüpft!
 		}
 		System.out.println("Suchdauer: " + (System.currentTimeMillis() - start)
 				+ " ms.");
-		return result;
+		return result.toSet();
 	}
 
 	/*
-	 * Alternative Umsetzung der Matrix-Suche unter Verwendung von BitSets.
+	 * Boolesche Suche direkt auf den komprimierten Zeilen (früher: Umwandlung
+	 * jeder Zeile in ein BitSet). Leerzeichen-getrennte Terme sind
+	 * UND-verknüpft, ein vorangestelltes "NOT" negiert den folgenden Term und
+	 * "OR" trennt alternative UND-Gruppen, z.B. "Brutus Caesar OR Brutus NOT
+	 * Caesar".
 	 */
 	public Set<Integer> booleanSearch(String query) {
 
 		long start = System.currentTimeMillis();
-		List<String> queries = Arrays.asList(query.split(" "));
-		Set<Integer> result = new HashSet<Integer>();
-
-		// Wir erstellen ein BitSet für das erste Suchwort (= dessen Zeile):
-		BitSet bitSet = bitSetFor(matrix[positions.get(queries.get(0))]);
-		// ... und dann für alle weiteren Suchwörter:
-		for (String q : queries) {
-			// Die boolschen Operationen bekommen wir nun einfach geschenkt:
-			bitSet.and(bitSetFor(matrix[positions.get(q)]));
-		}
-		// jetzt nur noch die 'true'-Positionen aus resultierendem BitSet holen:
-		for (int i = 0; i < matrix[0].length; i++) {
-			if (bitSet.get(i))
-				result.add(i);
+		CompressedBitmap result = new CompressedBitmap();
+
+		for (String group : query.split(" OR ")) {
+			List<String> queries = Arrays.asList(group.trim().split(" "));
+			CompressedBitmap conjunction = null;
+			boolean negate = false;
+			for (String q : queries) {
+				if (q.equals("NOT")) {
+					negate = true;
+					continue;
+				}
+				CompressedBitmap row = rowFor(q);
+				if (negate) {
+					// NOT: alle Werke ohne den Term
+					row = row.not(worksCount);
+					negate = false;
+				}
+				// Die boolschen Operationen bekommen wir wieder geschenkt:
+				conjunction = conjunction == null ? row : conjunction.and(row);
+			}
+			if (conjunction != null) {
+				result = result.or(conjunction);
+			}
 		}
 		System.out.println("Suchdauer: " + (System.currentTimeMillis() - start)
 				+ " ms.");
-		return result;
+		return result.toSet();
 	}
 
 	/*
-	 * Erzeugt ein BitSet aus dem übergebenen boolean[] (bei uns: den Zeilen).
+	 * Die Zeile zu einem Term, bzw. eine leere Zeile für unbekannte Terme.
 	 */
-	private BitSet bitSetFor(boolean[] bs) {
-		BitSet set = new BitSet(bs.length);
-		for (int i = 0; i < bs.length; i++) {
-			if (bs[i])
-				set.set(i);
+	private CompressedBitmap rowFor(String term) {
+		Integer zeilennummer = positions.get(term);
+		if (zeilennummer == null) {
+			System.out.println(corrector.notFound(term));
+			return new CompressedBitmap();
 		}
-		return set;
+		return matrix[zeilennummer];
 	}
 
 }
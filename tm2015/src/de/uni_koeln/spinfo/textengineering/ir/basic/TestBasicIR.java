@@ -1,9 +1,16 @@
 package de.uni_koeln.spinfo.textengineering.ir.basic;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Scanner;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -12,12 +19,12 @@ public class TestBasicIR {
 
 	private static Corpus corpus;
 	private static String query;
+	private static String filename = "pg100.txt";
+	private static String delimiter = "1[56][0-9]{2}\n";
 
 	@BeforeClass
 	public static void setUp() throws Exception {
 		// Korpus einlesen und in Werke unterteilen:
-		String filename = "pg100.txt";
-		String delimiter = "1[56][0-9]{2}\n";
 		corpus = new Corpus(filename, delimiter);
 	}
 
@@ -29,6 +36,21 @@ public class TestBasicIR {
 		assertTrue("Korpus sollte mehr als 1 Werk enthalten", works.size() > 1);
 	}
 
+	@Test
+	public void testMappedCorpus() throws Exception {
+		// Testen, ob das gemappte Korpus dieselben Werke liefert wie split():
+		StringBuilder sb = new StringBuilder();
+		Scanner scanner = new Scanner(new File(filename));
+		while (scanner.hasNextLine()) {
+			sb.append(scanner.nextLine());
+			sb.append("\n");
+		}
+		scanner.close();
+		List<String> expected = Arrays.asList(sb.toString().split(delimiter));
+		assertEquals(expected, corpus.getWorks());
+		assertEquals(sb.toString(), corpus.getText());
+	}
+
 	@Test
 	public void testLinearSearch() {
 		// Testen, ob lineare Suche ein Ergebnis liefert:
@@ -48,6 +70,62 @@ public class TestBasicIR {
 		System.out.println("Ergebnis für " + query + ": " + result2);
 		assertTrue("Ergebnis-Set sollte größer sein als bei einzelnem Term",
 				result2.size() >= result.size());
+
+		// gleiche (ODER-)Semantik wie die Term-Dokument-Matrix:
+		TermDokumentMatrix matrix = new TermDokumentMatrix(corpus);
+		assertEquals(matrix.search(query), result2);
+	}
+
+	@Test
+	public void testAhoCorasick() {
+		// Testen, ob der Automat überlappende Muster in einem Durchlauf findet:
+		AhoCorasick automaton = new AhoCorasick(Arrays.asList("he", "she",
+				"his", "hers"));
+		BitSet found = automaton.find("ushers", false, false);
+		assertEquals("he, she und hers", BitSet.valueOf(new long[] { 0b1011 }),
+				found);
+		// als Tokens zählen nur vollständige, durch Leerraum begrenzte Treffer:
+		found = automaton.find("ushers his\nshe", true, false);
+		assertEquals("his und she", BitSet.valueOf(new long[] { 0b0110 }),
+				found);
+	}
+
+	@Test
+	public void testSuffixArray() {
+		// Testen, ob Suffix-Array und FM-Index beliebige Teilstrings finden:
+
+		System.out.println();
+		System.out.println("Suffix-Array & FM-Index:");
+		System.out.println("-------------------");
+		SuffixArray suffixArray = new SuffixArray(corpus);
+		FMIndex fmIndex = suffixArray.toFMIndex();
+		String text = corpus.getText();
+
+		for (String pattern : Arrays.asList("Brutus", "rutus an", "king", "\n",
+				"xyzzy")) {
+			// zum Vergleich: alle Vorkommen per indexOf
+			int expected = 0;
+			for (int i = text.indexOf(pattern); i >= 0; i = text.indexOf(
+					pattern, i + 1)) {
+				expected++;
+			}
+			System.out.println("'" + pattern + "': " + expected + " Treffer");
+			assertEquals(expected, suffixArray.count(pattern));
+			assertEquals(expected, fmIndex.count(pattern));
+			assertTrue(Arrays.equals(suffixArray.locate(pattern),
+					fmIndex.locate(pattern)));
+		}
+		// der leere String: kein Treffer, in beiden gleich
+		assertEquals(0, suffixArray.count(""));
+		assertEquals(0, fmIndex.count(""));
+		assertEquals(0, suffixArray.locate("").length);
+		assertEquals(0, fmIndex.locate("").length);
+		query = "Brutus";
+		Set<Integer> result = suffixArray.search(query);
+		System.out.println("Ergebnis für " + query + ": " + result);
+		assertEquals(result, fmIndex.search(query));
+		assertTrue("Token-Treffer sind auch Teilstring-Treffer",
+				result.containsAll(new LinearSearch(corpus).search(query)));
 	}
 
 	@Test
@@ -82,6 +160,76 @@ public class TestBasicIR {
 		System.out.println("AND-Ergebnis für " + query + ": " + result3);
 		assertTrue("Ergebnis-Set sollte kleiner sein als bei einzelnem Term",
 				result2.size() >= result.size());
+
+		// und mit Negation: Brutus-Werke ohne Caesar
+		query = "Brutus NOT Caesar";
+		Set<Integer> result4 = matrix.booleanSearch(query);
+		System.out.println("AND-NOT-Ergebnis für " + query + ": " + result4);
+		Set<Integer> all = new TreeSet<Integer>(result3);
+		all.addAll(result4);
+		assertEquals("AND und AND NOT sollten zusammen alle Brutus-Werke ergeben",
+				result, all);
+		assertEquals("ODER-Gruppen wie bei search()", result2,
+				matrix.booleanSearch("Brutus OR Caesar"));
+	}
+
+	@Test
+	public void testCompressedBitmap() {
+		// Testen, ob die komprimierten Zeilen wie Mengen funktionieren:
+		CompressedBitmap dense = CompressedBitmap.range(0, 100000);
+		CompressedBitmap sparse = new CompressedBitmap();
+		CompressedBitmap even = new CompressedBitmap();
+		SortedSet<Integer> sparseSet = new TreeSet<Integer>();
+		SortedSet<Integer> evenSet = new TreeSet<Integer>();
+		for (int i = 0; i < 200000; i++) {
+			if (i % 997 == 0) {
+				sparse.add(i);
+				sparseSet.add(i);
+			}
+			if (i % 2 == 0) {
+				even.add(i);
+				evenSet.add(i);
+			}
+		}
+		sparse.optimize();
+		even.optimize();
+		assertEquals(100000, dense.cardinality());
+		assertEquals(sparseSet, sparse.toSet());
+
+		SortedSet<Integer> expected = new TreeSet<Integer>(sparseSet);
+		expected.retainAll(evenSet);
+		assertEquals("AND", expected, sparse.and(even).toSet());
+
+		expected = new TreeSet<Integer>(sparseSet);
+		expected.addAll(evenSet);
+		assertEquals("OR", expected, even.or(sparse).toSet());
+
+		expected = new TreeSet<Integer>(evenSet);
+		expected.removeAll(sparseSet);
+		assertEquals("AND NOT", expected, even.andNot(sparse).toSet());
+
+		assertEquals("NOT", 100000 - 50000, even.not(100000).cardinality());
+		assertEquals("NOT", 0, dense.not(100000).cardinality());
+		assertTrue("Dünne Zeilen sollten wenig Speicher belegen",
+				sparse.sizeInBytes() < 1024);
+
+		// optimize() auf einer leeren Bitmap, danach weiter aufbauen:
+		CompressedBitmap empty = new CompressedBitmap();
+		empty.optimize();
+		empty.add(3);
+		assertEquals(new TreeSet<Integer>(Arrays.asList(3)), empty.toSet());
+		// geteilte Container: add() auf einem Ergebnis ändert die Quelle nicht ...
+		CompressedBitmap union = sparse.or(new CompressedBitmap());
+		union.add(199999);
+		assertTrue(union.contains(199999));
+		assertEquals(sparseSet, sparse.toSet());
+		// ... und eine Bitmap im Aufbau nicht die Ergebnisse, in die sie eingegangen ist:
+		CompressedBitmap building = new CompressedBitmap();
+		building.add(1);
+		CompressedBitmap difference = building.andNot(new CompressedBitmap());
+		building.add(5);
+		assertEquals(new TreeSet<Integer>(Arrays.asList(1)), difference.toSet());
+		assertEquals(new TreeSet<Integer>(Arrays.asList(1, 5)), building.toSet());
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,310 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Boolesche Anfrage als Baum aus Termen und den Operatoren AND, OR und NOT, z.B.
+ *
+ * Brutus AND (Caesar OR Calpurnia) NOT Cleopatra
+ *
+ * Text in Anführungszeichen ist eine Phrase ("to be or not to be"), deren Terme direkt und in dieser Reihenfolge
+ * aufeinander folgen müssen. Wörter mit '*' sind Wildcards ("caes*", "*ius", "br*us"), die über das Vokabular zu einer
+ * ODER-Verknüpfung der passenden Terme expandiert werden (siehe WildcardIndex).
+ *
+ * Die Operatoren müssen großgeschrieben werden (sonst sind 'and', 'or' und 'not' normale Suchwörter, wie in "to be or
+ * not to be"). Es gilt NOT vor AND vor OR; zwischen zwei Operanden ohne Operator steht ein implizites AND, wie bei der
+ * bisherigen Suche. Die Terme werden mit demselben Preprocessor verarbeitet wie bei der Indexierung. Der Parser ist
+ * nachsichtig: Fehlende schließende Klammern werden ergänzt, überzählige Klammern und Operatoren ohne Operanden
+ * ignoriert.
+ */
+public final class BooleanQuery {
+
+	public enum Op {
+		TERM, AND, OR, NOT, PHRASE, WILDCARD
+	}
+
+	private final Op op;
+	private final String term;
+	private final List<BooleanQuery> subs;
+
+	private BooleanQuery(Op op, String term, List<BooleanQuery> subs) {
+		this.op = op;
+		this.term = term;
+		this.subs = subs;
+	}
+
+	public static BooleanQuery term(String term) {
+		return new BooleanQuery(Op.TERM, term, Collections.<BooleanQuery> emptyList());
+	}
+
+	/*
+	 * Ein Wildcard-Muster ('*' = beliebig viele Zeichen), z.B. "caes*".
+	 */
+	public static BooleanQuery wildcard(String pattern) {
+		return new BooleanQuery(Op.WILDCARD, pattern, Collections.<BooleanQuery> emptyList());
+	}
+
+	public static BooleanQuery not(BooleanQuery q) {
+		// doppelte Verneinung hebt sich auf:
+		return q.op == Op.NOT ? q.subs.get(0) : new BooleanQuery(Op.NOT, null, Collections.singletonList(q));
+	}
+
+	/*
+	 * Eine Phrase aus mehreren Termen (die Teile sind die Terme, in ihrer Reihenfolge, ggf. auch doppelt).
+	 */
+	public static BooleanQuery phrase(List<String> terms) {
+		if (terms.size() == 1) {
+			return term(terms.get(0));
+		}
+		List<BooleanQuery> subs = new ArrayList<BooleanQuery>();
+		for (String t : terms) {
+			subs.add(term(t));
+		}
+		return new BooleanQuery(Op.PHRASE, null, Collections.unmodifiableList(subs));
+	}
+
+	public static BooleanQuery and(List<BooleanQuery> subs) {
+		return combine(Op.AND, subs);
+	}
+
+	public static BooleanQuery or(List<BooleanQuery> subs) {
+		return combine(Op.OR, subs);
+	}
+
+	/* Verschachtelte Verknüpfungen gleicher Art werden flach gehalten, doppelte Teile weggelassen: */
+	private static BooleanQuery combine(Op op, List<BooleanQuery> parts) {
+		List<BooleanQuery> subs = new ArrayList<BooleanQuery>();
+		for (BooleanQuery q : parts) {
+			for (BooleanQuery sub : q.op == op ? q.subs : Collections.singletonList(q)) {
+				if (!subs.contains(sub)) {
+					subs.add(sub);
+				}
+			}
+		}
+		return subs.size() == 1 ? subs.get(0) : new BooleanQuery(op, null, Collections.unmodifiableList(subs));
+	}
+
+	public Op getOp() {
+		return op;
+	}
+
+	public String getTerm() {
+		return term;
+	}
+
+	public List<BooleanQuery> getSubs() {
+		return subs;
+	}
+
+	/*
+	 * Die Terme einer Phrase in ihrer Reihenfolge.
+	 */
+	public List<String> getPhrase() {
+		List<String> result = new ArrayList<String>();
+		for (BooleanQuery sub : subs) {
+			result.add(sub.term);
+		}
+		return result;
+	}
+
+	/*
+	 * Alle Terme der Anfrage (auch die verneinten), in der Reihenfolge ihres Auftretens.
+	 */
+	public List<String> terms() {
+		List<String> result = new ArrayList<String>();
+		collectTerms(result);
+		return result;
+	}
+
+	private void collectTerms(List<String> result) {
+		if (op == Op.TERM) {
+			result.add(term);
+		}
+		for (BooleanQuery sub : subs) {
+			sub.collectTerms(result);
+		}
+	}
+
+	/*
+	 * Die Anfrage mit ersetzten Termen (z.B. mit Korrekturvorschlägen, siehe SpellingCorrector), sonst unverändert.
+	 */
+	public BooleanQuery replace(Map<String, String> replacements) {
+		if (op == Op.TERM) {
+			String replacement = replacements.get(term);
+			return replacement == null ? this : term(replacement);
+		}
+		if (subs.isEmpty()) {
+			return this;
+		}
+		List<BooleanQuery> replaced = new ArrayList<BooleanQuery>();
+		for (BooleanQuery sub : subs) {
+			replaced.add(sub.replace(replacements));
+		}
+		return new BooleanQuery(op, term, Collections.unmodifiableList(replaced));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof BooleanQuery)) {
+			return false;
+		}
+		BooleanQuery that = (BooleanQuery) obj;
+		return op == that.op && (term == null ? that.term == null : term.equals(that.term)) && subs.equals(that.subs);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * op.hashCode() + (term == null ? 0 : term.hashCode())) + subs.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		switch (op) {
+		case TERM:
+		case WILDCARD:
+			return term;
+		case NOT:
+			return "NOT " + subs.get(0);
+		case PHRASE:
+			StringBuilder phrase = new StringBuilder();
+			for (BooleanQuery sub : subs) {
+				phrase.append(phrase.length() > 0 ? " " : "").append(sub.term);
+			}
+			return "\"" + phrase + "\"";
+		default:
+			StringBuilder builder = new StringBuilder("(");
+			for (int i = 0; i < subs.size(); i++) {
+				builder.append(i > 0 ? " " + op + " " : "").append(subs.get(i));
+			}
+			return builder.append(")").toString();
+		}
+	}
+
+	/*
+	 * Liest eine Anfrage; liefert null, wenn sie keinen einzigen Term enthält.
+	 */
+	public static BooleanQuery parse(String query, Preprocessor preprocessor) {
+		return new Parser(query, preprocessor).parse();
+	}
+
+	/*
+	 * Rekursiver Abstieg, eine Methode pro Vorrangstufe:
+	 *
+	 * or := and ("OR" and)*
+	 *
+	 * and := unary (["AND"] unary)*
+	 *
+	 * unary := "NOT" unary | "(" or ")" | '"' Phrase '"' | Wildcard | Wort
+	 */
+	private static final class Parser {
+
+		private final List<String> tokens = new ArrayList<String>();
+		private final Preprocessor preprocessor;
+		private int pos;
+
+		Parser(String query, Preprocessor preprocessor) {
+			// Anfrageterme nur nachschlagen, nicht ins Termverzeichnis aufnehmen:
+			this.preprocessor = preprocessor.forQueries();
+			/*
+			 * Klammern sind eigene Tokens, sonst trennen Leerzeichen; eine
+			 * Phrase ist ein Token, das mit '"' beginnt (das schließende
+			 * Anführungszeichen darf fehlen):
+			 */
+			String[] parts = query.split("\"", -1);
+			for (int i = 0; i < parts.length; i++) {
+				if (i % 2 == 1) {
+					tokens.add("\"" + parts[i]);
+					continue;
+				}
+				for (String s : parts[i].replace("(", " ( ").replace(")", " ) ").trim().split("\\s+")) {
+					if (s.length() > 0) {
+						tokens.add(s);
+					}
+				}
+			}
+		}
+
+		BooleanQuery parse() {
+			List<BooleanQuery> parts = new ArrayList<BooleanQuery>();
+			while (pos < tokens.size()) {
+				BooleanQuery q = or();
+				if (q != null) {
+					parts.add(q);
+				}
+				if (pos < tokens.size()) {
+					pos++;// überzählige ')'
+				}
+			}
+			return parts.isEmpty() ? null : BooleanQuery.and(parts);
+		}
+
+		private BooleanQuery or() {
+			List<BooleanQuery> parts = new ArrayList<BooleanQuery>();
+			add(parts, and());
+			while (peek("OR")) {
+				pos++;
+				add(parts, and());
+			}
+			return parts.isEmpty() ? null : BooleanQuery.or(parts);
+		}
+
+		private BooleanQuery and() {
+			List<BooleanQuery> parts = new ArrayList<BooleanQuery>();
+			while (pos < tokens.size() && !peek("OR") && !peek(")")) {
+				if (peek("AND")) {
+					pos++;
+					continue;
+				}
+				add(parts, unary());
+			}
+			return parts.isEmpty() ? null : BooleanQuery.and(parts);
+		}
+
+		private BooleanQuery unary() {
+			String token = tokens.get(pos++);
+			if (token.equals("NOT")) {
+				if (pos == tokens.size() || peek("OR") || peek(")") || peek("AND")) {
+					return null;// NOT ohne Operand
+				}
+				BooleanQuery q = unary();
+				return q == null ? null : BooleanQuery.not(q);
+			}
+			if (token.equals("(")) {
+				BooleanQuery q = or();
+				if (peek(")")) {
+					pos++;
+				}
+				return q;
+			}
+			if (token.startsWith("\"")) {
+				List<String> terms = preprocessor.tokenize(token.substring(1));
+				return terms.isEmpty() ? null : phrase(terms);
+			}
+			if (token.indexOf('*') >= 0) {
+				// Wildcards gehen nicht durch den Preprocessor (kein Stemming, das Muster gilt dem Vokabular)
+				String pattern = WildcardIndex.normalize(token);
+				return pattern == null ? null : wildcard(pattern);
+			}
+			// ein Wort kann nach dem Preprocessing mehrere Terme ergeben (z.B. "Caesar's"):
+			List<BooleanQuery> terms = new ArrayList<BooleanQuery>();
+			for (String t : preprocessor.process(token)) {
+				terms.add(term(t));
+			}
+			return terms.isEmpty() ? null : BooleanQuery.and(terms);
+		}
+
+		private boolean peek(String token) {
+			return pos < tokens.size() && tokens.get(pos).equals(token);
+		}
+
+		private static void add(List<BooleanQuery> parts, BooleanQuery q) {
+			if (q != null) {
+				parts.add(q);
+			}
+		}
+	}
+
+}
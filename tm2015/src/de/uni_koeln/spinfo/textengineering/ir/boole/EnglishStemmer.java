@@ -0,0 +1,270 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Der englische Snowball-Stemmer ('Porter2', http://snowballstem.org/algorithms/english/stemmer.html). Da unsere
+ * Tokens nur aus Buchstaben bestehen, entfallen die Schritte für Apostrophe. Die Schritte arbeiten auf einem
+ * StringBuilder mit den Regionen R1 und R2 (die Teile des Worts, in denen Suffixe entfernt werden dürfen).
+ */
+public final class EnglishStemmer implements Stemmer {
+
+	// Wörter mit unregelmäßigem Stamm:
+	private static final Map<String, String> EXCEPTIONS = new HashMap<String, String>();
+	static {
+		String[] exceptions = { "skis", "ski", "skies", "sky", "dying", "die", "lying", "lie", "tying", "tie", "idly",
+				"idl", "gently", "gentl", "ugly", "ugli", "early", "earli", "only", "onli", "singly", "singl", "sky",
+				"sky", "news", "news", "howe", "howe", "atlas", "atlas", "cosmos", "cosmos", "bias", "bias", "andes",
+				"andes" };
+		for (int i = 0; i < exceptions.length; i += 2) {
+			EXCEPTIONS.put(exceptions[i], exceptions[i + 1]);
+		}
+	}
+
+	// nach Schritt 1a unverändert:
+	private static final String[] INVARIANT = { "inning", "outing", "canning", "herring", "earring", "proceed",
+			"exceed", "succeed" };
+
+	// Suffixe für Schritt 2 und 3, jeweils mit Ersetzung:
+	private static final String[][] STEP2 = { { "ational", "ate" }, { "tional", "tion" }, { "enci", "ence" },
+			{ "anci", "ance" }, { "abli", "able" }, { "entli", "ent" }, { "izer", "ize" }, { "ization", "ize" },
+			{ "ation", "ate" }, { "ator", "ate" }, { "alism", "al" }, { "aliti", "al" }, { "alli", "al" },
+			{ "fulness", "ful" }, { "ousli", "ous" }, { "ousness", "ous" }, { "iveness", "ive" }, { "iviti", "ive" },
+			{ "biliti", "ble" }, { "bli", "ble" }, { "ogi", "og" }, { "fulli", "ful" }, { "lessli", "less" },
+			{ "li", "" } };
+	private static final String[][] STEP3 = { { "ational", "ate" }, { "tional", "tion" }, { "alize", "al" },
+			{ "icate", "ic" }, { "iciti", "ic" }, { "ical", "ic" }, { "ful", "" }, { "ness", "" }, { "ative", "" } };
+	private static final String[] STEP4 = { "al", "ance", "ence", "er", "ic", "able", "ible", "ant", "ement", "ment",
+			"ent", "ism", "ate", "iti", "ous", "ive", "ize", "ion" };
+
+	@Override
+	public String stem(String term) {
+		String exception = EXCEPTIONS.get(term);
+		if (exception != null) {
+			return exception;
+		}
+		if (term.length() <= 2) {
+			return term;
+		}
+		StringBuilder w = new StringBuilder(term);
+		// y am Wortanfang und nach Vokalen ist ein Konsonant (Y):
+		for (int i = 0; i < w.length(); i++) {
+			if (w.charAt(i) == 'y' && (i == 0 || isVowel(w.charAt(i - 1)))) {
+				w.setCharAt(i, 'Y');
+			}
+		}
+		int r1 = regionStart(w, 0);
+		if (startsWith(w, "gener") || startsWith(w, "arsen")) {
+			r1 = 5;
+		} else if (startsWith(w, "commun")) {
+			r1 = 6;
+		}
+		int r2 = regionStart(w, r1);
+		step1a(w);
+		for (String invariant : INVARIANT) {
+			if (w.toString().equals(invariant)) {
+				return invariant;
+			}
+		}
+		step1b(w, r1);
+		step1c(w);
+		replace(w, longest(w, STEP2), r1);
+		String[] step3 = longest(w, STEP3);
+		if (step3 != null && !(step3[0].equals("ative") && w.length() - 5 < r2)) {
+			replace(w, step3, r1);
+		}
+		step4(w, r2);
+		step5(w, r1, r2);
+		return w.toString().replace('Y', 'y');
+	}
+
+	private static void step1a(StringBuilder w) {
+		if (endsWith(w, "sses")) {
+			w.setLength(w.length() - 2);
+		} else if (endsWith(w, "ied") || endsWith(w, "ies")) {
+			// ties -> tie, cries -> cri
+			w.setLength(w.length() > 4 ? w.length() - 2 : w.length() - 1);
+		} else if (endsWith(w, "us") || endsWith(w, "ss")) {
+			return;
+		} else if (endsWith(w, "s")) {
+			// nur wenn vor dem Buchstaben vor dem s noch ein Vokal steht: gaps -> gap, aber gas bleibt
+			for (int i = 0; i < w.length() - 2; i++) {
+				if (isVowel(w.charAt(i))) {
+					w.setLength(w.length() - 1);
+					return;
+				}
+			}
+		}
+	}
+
+	private static void step1b(StringBuilder w, int r1) {
+		if (endsWith(w, "eedly") || endsWith(w, "eed")) {
+			int suffix = endsWith(w, "eedly") ? 5 : 3;
+			if (w.length() - suffix >= r1) {
+				w.setLength(w.length() - suffix + 2);
+			}
+			return;
+		}
+		int suffix = 0;
+		if (endsWith(w, "ingly")) {
+			suffix = 5;
+		} else if (endsWith(w, "edly")) {
+			suffix = 4;
+		} else if (endsWith(w, "ing")) {
+			suffix = 3;
+		} else if (endsWith(w, "ed")) {
+			suffix = 2;
+		}
+		if (suffix == 0 || !containsVowel(w, w.length() - suffix)) {
+			return;
+		}
+		w.setLength(w.length() - suffix);
+		if (endsWith(w, "at") || endsWith(w, "bl") || endsWith(w, "iz")) {
+			w.append('e');
+		} else if (endsWithDouble(w)) {
+			w.setLength(w.length() - 1);
+		} else if (r1 >= w.length() && endsWithShortSyllable(w)) {
+			// kurzes Wort: hop(ed) -> hope
+			w.append('e');
+		}
+	}
+
+	private static void step1c(StringBuilder w) {
+		int n = w.length();
+		char last = w.charAt(n - 1);
+		if ((last == 'y' || last == 'Y') && n > 2 && !isVowel(w.charAt(n - 2))) {
+			w.setCharAt(n - 1, 'i');
+		}
+	}
+
+	private static void step4(StringBuilder w, int r2) {
+		String suffix = null;
+		for (String s : STEP4) {
+			if (endsWith(w, s) && (suffix == null || s.length() > suffix.length())) {
+				suffix = s;
+			}
+		}
+		if (suffix == null || w.length() - suffix.length() < r2) {
+			return;
+		}
+		if (suffix.equals("ion")) {
+			char before = w.length() > 3 ? w.charAt(w.length() - 4) : ' ';
+			if (before != 's' && before != 't') {
+				return;
+			}
+		}
+		w.setLength(w.length() - suffix.length());
+	}
+
+	private static void step5(StringBuilder w, int r1, int r2) {
+		int n = w.length();
+		if (w.charAt(n - 1) == 'e') {
+			if (n - 1 >= r2) {
+				w.setLength(n - 1);
+			} else if (n - 1 >= r1) {
+				w.setLength(n - 1);
+				if (endsWithShortSyllable(w)) {
+					w.append('e');
+				}
+			}
+		} else if (w.charAt(n - 1) == 'l' && n - 1 >= r2 && n > 1 && w.charAt(n - 2) == 'l') {
+			w.setLength(n - 1);
+		}
+	}
+
+	/*
+	 * Das längste passende Suffix (mit Ersetzung) oder null.
+	 */
+	private static String[] longest(StringBuilder w, String[][] suffixes) {
+		String[] result = null;
+		for (String[] s : suffixes) {
+			if (endsWith(w, s[0]) && (result == null || s[0].length() > result[0].length())) {
+				result = s;
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Ersetzt das Suffix, wenn es in der Region ab 'region' liegt (und die Zusatzbedingungen für "ogi" und "li"
+	 * erfüllt sind).
+	 */
+	private static void replace(StringBuilder w, String[] suffix, int region) {
+		if (suffix == null) {
+			return;
+		}
+		int start = w.length() - suffix[0].length();
+		if (start < region) {
+			return;
+		}
+		if (suffix[0].equals("ogi") && (start == 0 || w.charAt(start - 1) != 'l')) {
+			return;
+		}
+		if (suffix[0].equals("li") && (start == 0 || "cdeghkmnrt".indexOf(w.charAt(start - 1)) < 0)) {
+			return;
+		}
+		w.replace(start, w.length(), suffix[1]);
+	}
+
+	/*
+	 * R1 bzw. R2: der Teil nach dem ersten Nicht-Vokal, der auf einen Vokal folgt (ab 'from').
+	 */
+	private static int regionStart(StringBuilder w, int from) {
+		for (int i = from + 1; i < w.length(); i++) {
+			if (!isVowel(w.charAt(i)) && isVowel(w.charAt(i - 1))) {
+				return i + 1;
+			}
+		}
+		return w.length();
+	}
+
+	private static boolean endsWithShortSyllable(StringBuilder w) {
+		int n = w.length();
+		if (n == 2) {
+			return isVowel(w.charAt(0)) && !isVowel(w.charAt(1));
+		}
+		if (n < 3) {
+			return false;
+		}
+		char last = w.charAt(n - 1);
+		return !isVowel(w.charAt(n - 3)) && isVowel(w.charAt(n - 2)) && !isVowel(last) && last != 'w'
+				&& last != 'x' && last != 'Y';
+	}
+
+	private static boolean endsWithDouble(StringBuilder w) {
+		int n = w.length();
+		return n >= 2 && w.charAt(n - 1) == w.charAt(n - 2) && "bdfgmnprt".indexOf(w.charAt(n - 1)) >= 0;
+	}
+
+	private static boolean containsVowel(StringBuilder w, int end) {
+		for (int i = 0; i < end; i++) {
+			if (isVowel(w.charAt(i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean endsWith(StringBuilder w, String suffix) {
+		int start = w.length() - suffix.length();
+		if (start < 0) {
+			return false;
+		}
+		for (int i = 0; i < suffix.length(); i++) {
+			if (w.charAt(start + i) != suffix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean startsWith(StringBuilder w, String prefix) {
+		return w.length() >= prefix.length() && w.substring(0, prefix.length()).equals(prefix);
+	}
+
+	private static boolean isVowel(char c) {
+		return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u' || c == 'y';
+	}
+
+}
@@ -0,0 +1,171 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+/*
+ * Der deutsche Snowball-Stemmer (http://snowballstem.org/algorithms/german/stemmer.html): ß wird zu ss, dann werden
+ * in drei Schritten Flexions- und Ableitungssuffixe entfernt (z.B. "häuser" -> "haus", "ergebnisse" -> "ergebnis"),
+ * zuletzt werden Umlaute zu einfachen Vokalen.
+ */
+public final class GermanStemmer implements Stemmer {
+
+	private static final String[] STEP1 = { "em", "ern", "er", "e", "en", "es", "s" };
+	private static final String[] STEP2 = { "en", "er", "est", "st" };
+	private static final String[] STEP3 = { "end", "ung", "ig", "ik", "isch", "lich", "heit", "keit" };
+
+	@Override
+	public String stem(String term) {
+		StringBuilder w = new StringBuilder(term.length() + 2);
+		for (int i = 0; i < term.length(); i++) {
+			char c = term.charAt(i);
+			if (c == 'ß') {
+				w.append("ss");
+			} else {
+				w.append(c);
+			}
+		}
+		// u und y zwischen Vokalen sind Konsonanten (U, Y):
+		for (int i = 1; i < w.length() - 1; i++) {
+			char c = w.charAt(i);
+			if ((c == 'u' || c == 'y') && isVowel(w.charAt(i - 1)) && isVowel(w.charAt(i + 1))) {
+				w.setCharAt(i, Character.toUpperCase(c));
+			}
+		}
+		int r1 = w.length();
+		int r2 = w.length();
+		if (w.length() >= 3) {
+			// vor R1 sollen mindestens drei Buchstaben stehen
+			r1 = Math.max(3, regionStart(w, 0));
+			r2 = regionStart(w, regionStart(w, 0));
+		}
+		step1(w, r1);
+		step2(w, r1);
+		step3(w, r1, r2);
+		for (int i = 0; i < w.length(); i++) {
+			switch (w.charAt(i)) {
+			case 'U':
+			case 'ü':
+				w.setCharAt(i, 'u');
+				break;
+			case 'Y':
+				w.setCharAt(i, 'y');
+				break;
+			case 'ä':
+				w.setCharAt(i, 'a');
+				break;
+			case 'ö':
+				w.setCharAt(i, 'o');
+				break;
+			default:
+				break;
+			}
+		}
+		return w.toString();
+	}
+
+	private static void step1(StringBuilder w, int r1) {
+		String suffix = longest(w, STEP1);
+		if (suffix == null || w.length() - suffix.length() < r1) {
+			return;
+		}
+		int start = w.length() - suffix.length();
+		if (suffix.equals("s")) {
+			if (start == 0 || "bdfghklmnrt".indexOf(w.charAt(start - 1)) < 0) {
+				return;
+			}
+		}
+		w.setLength(start);
+		// "nisse" -> "nis":
+		if ((suffix.equals("e") || suffix.equals("en") || suffix.equals("es")) && endsWith(w, "niss")) {
+			w.setLength(w.length() - 1);
+		}
+	}
+
+	private static void step2(StringBuilder w, int r1) {
+		String suffix = longest(w, STEP2);
+		if (suffix == null || w.length() - suffix.length() < r1) {
+			return;
+		}
+		int start = w.length() - suffix.length();
+		if (suffix.equals("st")) {
+			// gültige Endung vor dem st, davor mindestens drei Buchstaben:
+			if (start < 4 || "bdfghklmnt".indexOf(w.charAt(start - 1)) < 0) {
+				return;
+			}
+		}
+		w.setLength(start);
+	}
+
+	private static void step3(StringBuilder w, int r1, int r2) {
+		String suffix = longest(w, STEP3);
+		if (suffix == null || w.length() - suffix.length() < r2) {
+			return;
+		}
+		int start = w.length() - suffix.length();
+		if (suffix.equals("end") || suffix.equals("ung")) {
+			w.setLength(start);
+			if (endsWith(w, "ig") && w.length() - 2 >= r2 && !precededBy(w, 2, 'e')) {
+				w.setLength(w.length() - 2);
+			}
+		} else if (suffix.equals("ig") || suffix.equals("ik") || suffix.equals("isch")) {
+			if (!precededBy(w, suffix.length(), 'e')) {
+				w.setLength(start);
+			}
+		} else if (suffix.equals("lich") || suffix.equals("heit")) {
+			w.setLength(start);
+			if ((endsWith(w, "er") || endsWith(w, "en")) && w.length() - 2 >= r1) {
+				w.setLength(w.length() - 2);
+			}
+		} else if (suffix.equals("keit")) {
+			w.setLength(start);
+			if (endsWith(w, "lich") && w.length() - 4 >= r2) {
+				w.setLength(w.length() - 4);
+			} else if (endsWith(w, "ig") && w.length() - 2 >= r2) {
+				w.setLength(w.length() - 2);
+			}
+		}
+	}
+
+	private static String longest(StringBuilder w, String[] suffixes) {
+		String result = null;
+		for (String s : suffixes) {
+			if (endsWith(w, s) && (result == null || s.length() > result.length())) {
+				result = s;
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * R1 bzw. R2: der Teil nach dem ersten Nicht-Vokal, der auf einen Vokal folgt (ab 'from').
+	 */
+	private static int regionStart(StringBuilder w, int from) {
+		for (int i = from + 1; i < w.length(); i++) {
+			if (!isVowel(w.charAt(i)) && isVowel(w.charAt(i - 1))) {
+				return i + 1;
+			}
+		}
+		return w.length();
+	}
+
+	private static boolean precededBy(StringBuilder w, int suffixLength, char c) {
+		int i = w.length() - suffixLength - 1;
+		return i >= 0 && w.charAt(i) == c;
+	}
+
+	private static boolean endsWith(StringBuilder w, String suffix) {
+		int start = w.length() - suffix.length();
+		if (start < 0) {
+			return false;
+		}
+		for (int i = 0; i < suffix.length(); i++) {
+			if (w.charAt(start + i) != suffix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isVowel(char c) {
+		return "aeiouyäöü".indexOf(c) >= 0;
+	}
+
+}
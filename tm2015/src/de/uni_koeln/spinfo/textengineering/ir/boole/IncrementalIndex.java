@@ -0,0 +1,481 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.uni_koeln.spinfo.textengineering.ir.basic.Corpus;
+import de.uni_koeln.spinfo.textengineering.ir.basic.InformationRetrieval;
+
+/*
+ * Ein invertierter Index, der sich ändern lässt (dynamische Indexierung, Manning et al. 2008, Kap. 4.5):
+ *
+ * - Neue Werke kommen in einen kleinen Hilfsindex im Speicher; ist er voll, wird er als unveränderliches Segment der
+ * Stufe 0 abgelegt und ein neuer begonnen. Der Aufwand für ein neues Werk hängt also nur vom Hilfsindex ab, nicht von
+ * der Größe des Korpus.
+ *
+ * - Gelöschte Werke werden nur in einem Bitset markiert und aus den Ergebnissen gefiltert; entfernt werden ihre
+ * Postings erst beim nächsten Zusammenführen.
+ *
+ * - Logarithmisches Zusammenführen: Gibt es zwei Segmente derselben Stufe k, werden sie zu einem Segment der Stufe
+ * k+1 vereinigt (wie beim binären Zählen). So gibt es höchstens log(Werke / Hilfsindex) Segmente, und jedes Posting
+ * wird höchstens log-mal umkopiert. Das geschieht in einem eigenen Thread.
+ *
+ * Gesucht wird über alle Segmente und den Hilfsindex. Der gesamte Zustand (Segmente, Hilfsindex, Löschungen) ist
+ * unveränderlich und wird bei jeder Änderung als Ganzes über eine AtomicReference ausgetauscht (compareAndSet): Eine
+ * Suche arbeitet ohne Sperren auf dem Zustand, den sie zu Beginn vorfindet, und muss nie warten - auch nicht auf ein
+ * laufendes Zusammenführen. Schreibende (add, delete) warten nur aufeinander.
+ *
+ * Schlägt ein Zusammenführen fehl, bleibt der Index auf dem letzten Stand (mit einem Segment mehr); der Fehler wird
+ * beim nächsten add() bzw. awaitMerges() geworfen. close() beendet den Merge-Thread.
+ */
+public class IncrementalIndex implements InformationRetrieval, Closeable {
+
+	// so viele Werke fasst der Hilfsindex:
+	public static final int AUX_CAPACITY = 64;
+
+	private final Preprocessor preprocessor;
+	private final int auxCapacity;
+	private final AtomicReference<State> state = new AtomicReference<State>();
+	// Ergebnisse gelten nur für einen Stand und werden bei jeder Änderung verworfen:
+	private final QueryCache cache = new QueryCache(InvertedIndex.CACHE_BYTES);
+	// Zusammenführen im Hintergrund, immer nur eins zur Zeit:
+	private final ExecutorService merger = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "IncrementalIndex-Merge");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	// der erste noch nicht gemeldete Fehler beim Zusammenführen:
+	private final AtomicReference<Throwable> mergeFailure = new AtomicReference<Throwable>();
+
+	/*
+	 * Ein leerer Index.
+	 */
+	public IncrementalIndex() {
+		this(new Preprocessor(), AUX_CAPACITY);
+	}
+
+	public IncrementalIndex(Preprocessor preprocessor, int auxCapacity) {
+		this.preprocessor = preprocessor;
+		this.auxCapacity = auxCapacity;
+		state.set(new State(0, Collections.<Part> emptyList(), new HashMap<String, PostingsList>(), 0, 0, new BitSet()));
+	}
+
+	/*
+	 * Ein Index mit den Werken des Korpus als erstem Segment (Werk-Ids wie beim InvertedIndex).
+	 */
+	public IncrementalIndex(Corpus corpus) {
+		this(new Preprocessor(), AUX_CAPACITY);
+		long start = System.currentTimeMillis();
+		List<String> works = corpus.getWorks();
+		Map<String, PositionalPostings> index = new SpimiIndexer().index(SpimiIndexer.terms(works, preprocessor));
+		Map<String, PostingsList> postings = new HashMap<String, PostingsList>();
+		for (Map.Entry<String, PositionalPostings> e : index.entrySet()) {
+			postings.put(e.getKey(), e.getValue().docs());
+		}
+		// die Stufe, die ein durch Zusammenführen entstandenes Segment dieser Größe hätte:
+		int level = 0;
+		while ((long) auxCapacity << level < works.size()) {
+			level++;
+		}
+		List<Part> parts = works.isEmpty() ? Collections.<Part> emptyList() : Collections.singletonList(new Part(
+				postings, level, works.size()));
+		publish(state.get(), new State(1, parts, new HashMap<String, PostingsList>(), 0, works.size(), new BitSet()));
+		System.out.println("Index erstellt, Dauer: " + (System.currentTimeMillis() - start) + " ms.");
+	}
+
+	/*
+	 * Fügt ein Werk hinzu und gibt seine Id zurück (fortlaufend, auch nach Löschungen).
+	 */
+	public synchronized int add(String work) {
+		if (merger.isShutdown()) {
+			throw new IllegalStateException("Index ist geschlossen");
+		}
+		rethrowMergeFailure();
+		List<String> terms = preprocessor.process(work);
+		State current;
+		State next;
+		do {
+			// nochmal, falls inzwischen ein Zusammenführen seinen Stand veröffentlicht hat
+			current = state.get();
+			next = add(current, terms);
+		} while (!publish(current, next));
+		if (next.parts.size() > current.parts.size()) {
+			// Hilfsindex war voll: im Hintergrund zusammenführen
+			merger.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						merge();
+					} catch (RuntimeException | Error e) {
+						// nicht nur im verworfenen Future: beim nächsten add() bzw. awaitMerges() werfen
+						mergeFailure.compareAndSet(null, e);
+					}
+				}
+			});
+		}
+		return current.numDocs;
+	}
+
+	private State add(State current, List<String> terms) {
+		int docId = current.numDocs;
+		// Kopie des Hilfsindex, geändert werden nur die Listen der Terme des neuen Werks:
+		Map<String, PostingsList> aux = new HashMap<String, PostingsList>(current.aux);
+		for (String t : terms) {
+			PostingsList old = aux.get(t);
+			PostingsList.Builder postings = new PostingsList.Builder();
+			if (old != null) {
+				for (int id : old.toArray()) {
+					postings.add(id);
+				}
+			}
+			postings.add(docId);
+			aux.put(t, postings.build());
+		}
+		if (current.auxDocs + 1 < auxCapacity) {
+			return new State(current.generation + 1, current.parts, aux, current.auxDocs + 1, docId + 1,
+					current.deleted);
+		}
+		// Hilfsindex voll: als Segment der Stufe 0 ablegen
+		List<Part> parts = new ArrayList<Part>(current.parts);
+		parts.add(new Part(seal(aux, docId + 1), 0, current.auxDocs + 1));
+		return new State(current.generation + 1, parts, new HashMap<String, PostingsList>(), 0, docId + 1,
+				current.deleted);
+	}
+
+	/*
+	 * Markiert ein Werk als gelöscht; false, wenn es die Id nicht gibt oder das Werk schon gelöscht war.
+	 */
+	public synchronized boolean delete(int docId) {
+		State current;
+		State next;
+		do {
+			current = state.get();
+			if (docId < 0 || docId >= current.numDocs || current.deleted.get(docId)) {
+				return false;
+			}
+			BitSet deleted = (BitSet) current.deleted.clone();
+			deleted.set(docId);
+			next = new State(current.generation + 1, current.parts, current.aux, current.auxDocs, current.numDocs,
+					deleted);
+		} while (!publish(current, next));
+		return true;
+	}
+
+	/*
+	 * Suche mit AND, OR, NOT und Klammern wie beim InvertedIndex, über alle Segmente; gelöschte Werke werden
+	 * herausgefiltert.
+	 */
+	@Override
+	public Set<Integer> search(String query) {
+		long start = System.currentTimeMillis();
+		State current = state.get();// ab hier unverändert, auch wenn parallel geschrieben wird
+		BooleanQuery q = BooleanQuery.parse(query, preprocessor);
+		int[] result = q == null ? new int[0] : cache.get(current.generation, q.toString());
+		if (result == null) {
+			PostingsList docs = new Source(current, cache).planner.plan(q).execute();
+			// gelöschte Werke herausfiltern
+			PostingsList.Builder live = new PostingsList.Builder();
+			for (int id : docs.toArray()) {
+				if (!current.deleted.get(id)) {
+					live.add(id);
+				}
+			}
+			result = live.build().toArray();
+			cache.put(current.generation, q.toString(), result);
+		}
+		SortedSet<Integer> docs = new TreeSet<Integer>();
+		for (int id : result) {
+			docs.add(id);
+		}
+		System.out.println("Suchdauer: " + (System.currentTimeMillis() - start) + " ms.");
+		return docs;
+	}
+
+	public QueryCache getCache() {
+		return cache;
+	}
+
+	/*
+	 * Ersetzt den Zustand, falls er noch 'expected' ist (sonst false: jemand anderes war schneller).
+	 */
+	private boolean publish(State expected, State next) {
+		if (!state.compareAndSet(expected, next)) {
+			return false;
+		}
+		cache.invalidate(next.generation);
+		return true;
+	}
+
+	/*
+	 * Wartet, bis alle angestoßenen Zusammenführungen erledigt sind (z.B. für Tests), und wirft den Fehler eines
+	 * fehlgeschlagenen Zusammenführens.
+	 */
+	public void awaitMerges() {
+		if (!merger.isShutdown()) {
+			try {
+				merger.submit(new Runnable() {
+					@Override
+					public void run() {
+					}
+				}).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		rethrowMergeFailure();
+	}
+
+	/*
+	 * Beendet den Merge-Thread (nach dem laufenden Zusammenführen); danach sind nur noch Suchen und Löschungen
+	 * möglich.
+	 */
+	@Override
+	public void close() {
+		merger.shutdown();
+		try {
+			merger.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		rethrowMergeFailure();
+	}
+
+	/*
+	 * Wirft einen noch nicht gemeldeten Fehler beim Zusammenführen (einmal; das nächste Zusammenführen holt die
+	 * ausgelassenen Stufen nach).
+	 */
+	private void rethrowMergeFailure() {
+		Throwable failure = mergeFailure.getAndSet(null);
+		if (failure != null) {
+			throw new IllegalStateException("Zusammenführen fehlgeschlagen", failure);
+		}
+	}
+
+	/*
+	 * Die Stufen der Segmente (ohne Hilfsindex).
+	 */
+	public List<Integer> getLevels() {
+		List<Integer> levels = new ArrayList<Integer>();
+		for (Part part : state.get().parts) {
+			levels.add(part.level);
+		}
+		Collections.sort(levels);
+		return levels;
+	}
+
+	/*
+	 * Anzahl der (nicht gelöschten) Werke.
+	 */
+	public int size() {
+		State current = state.get();
+		return current.numDocs - current.deleted.cardinality();
+	}
+
+	/*
+	 * Führt Segmente gleicher Stufe zusammen, bis jede Stufe höchstens einmal vorkommt (läuft im Merge-Thread).
+	 */
+	private void merge() {
+		while (true) {
+			State current = state.get();
+			Part a = null;
+			Part b = null;
+			for (Part p : current.parts) {
+				for (Part o : current.parts) {
+					if (p != o && p.level == o.level && (a == null || p.level < a.level)) {
+						a = p;
+						b = o;
+					}
+				}
+			}
+			if (a == null) {
+				return;
+			}
+			long start = System.currentTimeMillis();
+			// das Zusammenführen selbst ohne Sperre, auf dem Stand von eben:
+			Part merged = merge(a, b, current.deleted, current.numDocs);
+			State now;
+			State next;
+			do {
+				// inzwischen hinzugekommene Segmente und Löschungen bleiben erhalten:
+				now = state.get();
+				List<Part> parts = new ArrayList<Part>();
+				for (Part p : now.parts) {
+					if (p != a && p != b) {
+						parts.add(p);
+					}
+				}
+				parts.add(merged);
+				next = new State(now.generation + 1, parts, now.aux, now.auxDocs, now.numDocs, now.deleted);
+			} while (!publish(now, next));
+			System.out.println("Segmente zusammengeführt (Stufe " + merged.level + ", " + merged.docs
+					+ " Werke), Dauer: " + (System.currentTimeMillis() - start) + " ms.");
+		}
+	}
+
+	private static Part merge(Part a, Part b, BitSet deleted, int numDocs) {
+		Set<String> terms = new HashSet<String>(a.postings.keySet());
+		terms.addAll(b.postings.keySet());
+		Map<String, PostingsList> merged = new HashMap<String, PostingsList>();
+		for (String t : terms) {
+			PostingsList pa = a.postings.get(t);
+			PostingsList pb = b.postings.get(t);
+			PostingsList union = pa == null ? pb : (pb == null ? pa : QueryPlanner.or(pa, pb));
+			// gelöschte Werke fallen hier endgültig heraus:
+			PostingsList.Builder postings = new PostingsList.Builder();
+			for (int id : union.toArray()) {
+				if (!deleted.get(id)) {
+					postings.add(id);
+				}
+			}
+			if (postings.size() > 0) {
+				merged.put(t, postings.seal(numDocs));
+			}
+		}
+		return new Part(merged, Math.max(a.level, b.level) + 1, a.docs + b.docs);
+	}
+
+	private static Map<String, PostingsList> seal(Map<String, PostingsList> aux, int numDocs) {
+		Map<String, PostingsList> sealed = new HashMap<String, PostingsList>();
+		for (Map.Entry<String, PostingsList> e : aux.entrySet()) {
+			PostingsList.Builder postings = new PostingsList.Builder();
+			for (int id : e.getValue().toArray()) {
+				postings.add(id);
+			}
+			sealed.put(e.getKey(), postings.seal(numDocs));
+		}
+		return sealed;
+	}
+
+	/*
+	 * Ein unveränderliches Segment.
+	 */
+	private static final class Part {
+		final Map<String, PostingsList> postings;
+		final int level;
+		final int docs;
+		final WildcardIndex wildcards;
+
+		Part(Map<String, PostingsList> postings, int level, int docs) {
+			this.postings = postings;
+			this.level = level;
+			this.docs = docs;
+			this.wildcards = new WildcardIndex(postings.keySet());
+		}
+	}
+
+	/*
+	 * Der gesamte Zustand des Index; wird nie verändert, nur ersetzt.
+	 */
+	private static final class State {
+		// zählt die Zustände, siehe QueryCache
+		final long generation;
+		final List<Part> parts;
+		final Map<String, PostingsList> aux;
+		final int auxDocs;
+		final int numDocs;
+		final BitSet deleted;
+
+		State(long generation, List<Part> parts, Map<String, PostingsList> aux, int auxDocs, int numDocs,
+				BitSet deleted) {
+			this.generation = generation;
+			this.parts = parts;
+			this.aux = aux;
+			this.auxDocs = auxDocs;
+			this.numDocs = numDocs;
+			this.deleted = deleted;
+		}
+	}
+
+	/*
+	 * Postings für den QueryPlanner: die Vereinigung über alle Segmente eines Zustands.
+	 */
+	private static final class Source implements QueryPlanner.PostingsSource {
+		private final State state;
+		private final QueryPlanner planner;
+
+		Source(State state, QueryCache cache) {
+			this.state = state;
+			this.planner = new QueryPlanner(this, cache, state.generation);
+		}
+
+		@Override
+		public int numDocs() {
+			return state.numDocs;
+		}
+
+		@Override
+		public int df(String term) {
+			// Summe über die Segmente (gelöschte Werke eingeschlossen - es ist nur eine Schätzung)
+			int df = 0;
+			for (Part part : state.parts) {
+				PostingsList postings = part.postings.get(term);
+				df += postings == null ? 0 : postings.size();
+			}
+			PostingsList postings = state.aux.get(term);
+			return df + (postings == null ? 0 : postings.size());
+		}
+
+		@Override
+		public PostingsList postings(String term) {
+			PostingsList result = PostingsList.of();
+			for (Part part : state.parts) {
+				PostingsList postings = part.postings.get(term);
+				if (postings != null) {
+					result = QueryPlanner.or(result, postings);
+				}
+			}
+			PostingsList postings = state.aux.get(term);
+			return postings == null ? result : QueryPlanner.or(result, postings);
+		}
+
+		/*
+		 * Ohne Positionen wie beim InvertedIndex als UND-Verknüpfung der Terme.
+		 */
+		@Override
+		public PostingsList phrase(List<String> terms) {
+			List<BooleanQuery> parts = new ArrayList<BooleanQuery>();
+			for (String term : terms) {
+				parts.add(BooleanQuery.term(term));
+			}
+			return planner.plan(BooleanQuery.and(parts)).execute();
+		}
+
+		@Override
+		public List<String> expand(String pattern) {
+			SortedSet<String> terms = new TreeSet<String>();
+			for (Part part : state.parts) {
+				terms.addAll(part.wildcards.expand(pattern, WildcardIndex.MAX_EXPANSIONS));
+			}
+			// der Hilfsindex ist klein genug, um ihn durchzugehen:
+			for (String t : state.aux.keySet()) {
+				if (WildcardIndex.matches(pattern, t)) {
+					terms.add(t);
+				}
+			}
+			List<String> result = new ArrayList<String>(terms);
+			return result.size() > WildcardIndex.MAX_EXPANSIONS ? result.subList(0, WildcardIndex.MAX_EXPANSIONS)
+					: result;
+		}
+	}
+
+}
@@ -28,7 +28,8 @@ public class Intersection {
 		Integer p1 = nextOrNull(it1);
 		Integer p2 = nextOrNull(it2);
 		while (p1 != null && p2 != null) {
-			if (p1 == p2) {
+			// Vorsicht: p1 == p2 würde Integer-Objekte vergleichen (und nur für kleine, gecachte Werte funktionieren)
+			if (p1.equals(p2)) {
 				answer.add(p1);
 				p1 = nextOrNull(it1);
 				p2 = nextOrNull(it2);
@@ -41,6 +42,106 @@ public class Intersection {
 		return answer;
 	}
 
+	/*
+	 * Verfahren für die Intersection zweier Postings-Listen:
+	 *
+	 * - MERGE: das lineare Durchlaufen beider Listen wie oben, O(n + m),
+	 *
+	 * - SKIP: die kürzere Liste gibt die Kandidaten vor, in der längeren folgen wir den Skip-Pointern (Manning et al.
+	 * 2008, S. 36f.),
+	 *
+	 * - GALLOP: wie SKIP, aber in der längeren Liste mit exponentieller Suche, O(m log(n/m)) für m << n.
+	 */
+	public enum Strategy {
+		MERGE, SKIP, GALLOP
+	}
+
+	/*
+	 * Ab diesem Längenverhältnis (längere / kürzere Liste) lohnen sich Skip-Pointer bzw. Galloping. Gemessen mit
+	 * IntersectionBenchmark (10^6 Postings in der längeren Liste, schnellste von 15 Ausführungen, ein Kern, Java 17),
+	 * zwei Läufe in µs:
+	 *
+	 * Verhältnis 2: MERGE 14663/12900, SKIP 14581/13563, GALLOP 14532/12739 (kein Unterschied über das Rauschen hinaus)
+	 *
+	 * Verhältnis 4: MERGE 9414/7744, SKIP 8428/8488, GALLOP 8652/8498 (ebenso)
+	 *
+	 * Verhältnis 8: MERGE 6555/6560, SKIP 5172/4140, GALLOP 5391/5050
+	 *
+	 * Verhältnis 32: MERGE 4558/2931, SKIP 2689/1718, GALLOP 2120/1740
+	 *
+	 * Verhältnis 64: MERGE 4169/2770, SKIP 2415/1447, GALLOP 1186/1121
+	 *
+	 * Verhältnis 256: MERGE 4101/2609, SKIP 1780/989, GALLOP 541/496
+	 *
+	 * Die Werte hängen von Maschine und JVM ab; auf anderer Hardware lohnt sich ein eigener Lauf.
+	 */
+	static final int SKIP_RATIO = 8;
+	static final int GALLOP_RATIO = 64;
+
+	/*
+	 * Wählt das Verfahren anhand des Längenverhältnisses der beiden Listen.
+	 */
+	public static Strategy choose(PostingsList pl1, PostingsList pl2) {
+		long shorter = Math.max(1, Math.min(pl1.size(), pl2.size()));
+		long longer = Math.max(pl1.size(), pl2.size());
+		if (longer < GALLOP_RATIO * shorter) {
+			return longer < SKIP_RATIO * shorter ? Strategy.MERGE : Strategy.SKIP;
+		}
+		return Strategy.GALLOP;
+	}
+
+	/*
+	 * Derselbe Algorithmus auf primitiven Postings-Listen: Statt über Iteratoren mit Integer-Objekten laufen wir mit
+	 * Cursorn über die ints, das Ergebnis landet wieder in einer (unkomprimierten) Postings-Liste. Das Verfahren wird
+	 * für jedes Paar passend gewählt.
+	 */
+	public static PostingsList of(PostingsList pl1, PostingsList pl2) {
+		return of(pl1, pl2, choose(pl1, pl2));
+	}
+
+	public static PostingsList of(PostingsList pl1, PostingsList pl2, Strategy strategy) {
+		if (strategy == Strategy.MERGE) {
+			return merge(pl1, pl2);
+		}
+		// die kürzere Liste gibt die Kandidaten vor:
+		PostingsList shorter = pl1.size() <= pl2.size() ? pl1 : pl2;
+		PostingsList longer = shorter == pl1 ? pl2 : pl1;
+		PostingsList.Builder answer = new PostingsList.Builder();
+		PostingsList.Cursor c1 = shorter.cursor();
+		PostingsList.Cursor c2 = longer.cursor();
+		boolean gallop = strategy == Strategy.GALLOP;
+		for (int p1 = c1.next(); p1 != PostingsList.Cursor.NO_MORE_DOCS; p1 = c1.next()) {
+			int p2 = gallop ? c2.gallop(p1) : c2.advance(p1);
+			if (p2 == PostingsList.Cursor.NO_MORE_DOCS) {
+				break;
+			}
+			if (p1 == p2) {
+				answer.add(p1);
+			}
+		}
+		return answer.build();
+	}
+
+	private static PostingsList merge(PostingsList pl1, PostingsList pl2) {
+		PostingsList.Builder answer = new PostingsList.Builder();
+		PostingsList.Cursor c1 = pl1.cursor();
+		PostingsList.Cursor c2 = pl2.cursor();
+		int p1 = c1.next();
+		int p2 = c2.next();
+		while (p1 != PostingsList.Cursor.NO_MORE_DOCS && p2 != PostingsList.Cursor.NO_MORE_DOCS) {
+			if (p1 == p2) {
+				answer.add(p1);
+				p1 = c1.next();
+				p2 = c2.next();
+			} else if (p1 < p2) {
+				p1 = c1.next();
+			} else {
+				p2 = c2.next();
+			}
+		}
+		return answer.build();
+	}
+
 	/*
 	 * Um nah am Pseudocode zu bleiben, müssen wir u.a. NoSuchElementExceptions vermeiden (wenn der Iterator keine
 	 * Elemente mehr hat).
@@ -58,12 +159,11 @@ public class Intersection {
 	}
 
 	/*
-	 * Implementierung der PositionalIntersect, fast Zeile-für-Zeile umgesetzt wie in Manning et al. 2008, S. 42,
-	 * beschrieben. Diese Variante erlaubt sog. 'proximity'-suchen ("finde Term1 und Term2 innnerhalb eines max Abstands
-	 * von k Wörtern"). PositionalIntersect ist weitgehend analog zu normaler Intersection - im Grunde wird einfach das
-	 * Statement answer.add(p1)) ersetzt durch das Handling der Positions-Listen.
+	 * Implementierung der PositionalIntersect nach Manning et al. 2008, S. 42. Diese Variante erlaubt sog.
+	 * 'proximity'-suchen ("finde Term1 und Term2 innnerhalb eines max Abstands von k Wörtern"). PositionalIntersect
+	 * ist weitgehend analog zu normaler Intersection - im Grunde wird einfach das Statement answer.add(p1)) ersetzt
+	 * durch das Handling der Positions-Listen (siehe window()). Ergebnis sind die Positionen von Term2.
 	 */
-
 	public static SortedMap<Integer, List<Integer>> of(SortedMap<Integer, List<Integer>> pl1,
 			SortedMap<Integer, List<Integer>> pl2, int k) {
 
@@ -74,42 +174,22 @@ public class Intersection {
 		Integer p2 = nextOrNull(it2);
 
 		SortedMap<Integer, List<Integer>> answer = new TreeMap<Integer, List<Integer>>();
+		int[] out = new int[16];
 		while (p1 != null && p2 != null) {
-			if (p1 == p2) {
+			if (p1.equals(p2)) {
 				// answer.add(p1); // wird ersetzt durch:
-
-				List<Integer> l = new ArrayList<Integer>();
-				Iterator<Integer> posIt1 = pl1.get(p1).iterator();
-				Iterator<Integer> posIt2 = pl2.get(p2).iterator();
-				Integer pp1 = nextOrNull(posIt1);
-				Integer pp2 = nextOrNull(posIt2);
-				while (pp1 != null) {
-					while (pp2 != null) {
-						if (Math.abs(pp1 - pp2) <= k) {
-							l.add(pp2);
-						} else if (pp2 > pp1) {
-							break;
-						}
-						pp2 = nextOrNull(posIt2);
-					}
-					while (l.size() != 0 && Math.abs(l.get(0) - pp1) > k) {
-						l.remove(0);
-					}
-					for (Integer p : l) {
-						List<Integer> posList = answer.get(p1);
-						if (posList == null) {
-							posList = new ArrayList<Integer>();
-						}
-						/*
-						 * abweichend zum Seminar hier zusätzlich noch eine contains-Abfrage, damit Positionen nur
-						 * einmal im Ergebnis landen (die Verwendung von Sets würde einen größeren Umbau erfordern).
-						 */
-						if (!posList.contains(p)) {
-							posList.add(p);
-							answer.put(p1, posList);
-						}
+				int[] pp1 = toArray(pl1.get(p1));
+				int[] pp2 = toArray(pl2.get(p2));
+				if (out.length < pp2.length) {
+					out = new int[pp2.length];
+				}
+				int n = window(pp1, pp1.length, pp2, pp2.length, k, out);
+				if (n > 0) {
+					List<Integer> posList = new ArrayList<Integer>(n);
+					for (int i = 0; i < n; i++) {
+						posList.add(out[i]);
 					}
-					pp1 = nextOrNull(posIt1);
+					answer.put(p1, posList);
 				}
 				// der Rest des Algorithmus bleibt wie bisher:
 				p1 = nextOrNull(it1);
@@ -123,4 +203,163 @@ public class Intersection {
 		return answer;
 	}
 
+	/*
+	 * Dieselbe PositionalIntersect auf kompakten Positions-Listen: Die Werke werden wie bei der einfachen
+	 * Intersection gemischt, die Positionen in wiederverwendeten Puffern dekodiert.
+	 */
+	public static PositionalPostings of(PositionalPostings pl1, PositionalPostings pl2, int k) {
+		PositionalPostings.Builder answer = new PositionalPostings.Builder();
+		int[] pp1 = new int[16];
+		int[] pp2 = new int[16];
+		int[] out = new int[16];
+		int i = 0, j = 0;
+		while (i < pl1.size() && j < pl2.size()) {
+			int d1 = pl1.docId(i);
+			int d2 = pl2.docId(j);
+			if (d1 == d2) {
+				pp1 = pl1.positions(i, pp1);
+				pp2 = pl2.positions(j, pp2);
+				if (out.length < pp2.length) {
+					out = new int[pp2.length];
+				}
+				int n = window(pp1, pl1.freq(i), pp2, pl2.freq(j), k, out);
+				answer.add(d1, out, n);
+				i++;
+				j++;
+			} else if (d1 < d2) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return answer.build();
+	}
+
+	/*
+	 * Der Kern der PositionalIntersect für ein Werk: alle Positionen aus pp2, die höchstens k von einer Position aus
+	 * pp1 entfernt sind, aufsteigend und ohne Duplikate nach out. Gibt die Anzahl zurück.
+	 *
+	 * Im Pseudocode liegt das Fenster der Kandidaten in einer Liste l, aus der vorne entfernt und hinten angehängt
+	 * wird; weil pp2 sortiert ist, ist l aber immer ein zusammenhängender Abschnitt pp2[lo, hi). Wir führen das Fenster
+	 * deshalb als zwei Indizes direkt auf dem Array (ein Ringpuffer ohne Kopieren): hi rückt vor, solange pp2[hi] <=
+	 * pp1 + k, lo, solange pp2[lo] < pp1 - k. Statt posList.contains() merken wir uns, bis wohin schon ausgegeben
+	 * wurde. Jede Position wird so nur konstant oft angefasst: O(n1 + n2) statt quadratisch.
+	 */
+	static int window(int[] pp1, int n1, int[] pp2, int n2, int k, int[] out) {
+		int lo = 0, hi = 0;
+		int emitted = 0;// pp2[0, emitted) sind bereits im Ergebnis
+		int n = 0;
+		for (int i = 0; i < n1 && lo < n2; i++) {
+			long p = pp1[i];
+			while (hi < n2 && pp2[hi] <= p + k) {
+				hi++;
+			}
+			while (lo < hi && pp2[lo] < p - k) {
+				lo++;
+			}
+			for (int j = Math.max(lo, emitted); j < hi; j++) {
+				out[n++] = pp2[j];
+			}
+			emitted = Math.max(emitted, hi);
+		}
+		return n;
+	}
+
+	/*
+	 * Minimale Fenster für beliebig viele Terme in einem Werk, ohne Reihenfolge: Alle Positionen der (verschiedenen)
+	 * Terme werden in einem Durchlauf aufsteigend gemischt (bei wenigen Termen genügt dafür die Suche nach dem
+	 * kleinsten Cursor). Das Fenster ist ein Abschnitt dieses Stroms; required[t] gibt an, wie oft Term t darin
+	 * vorkommen muss (z.B. 2 für 'to' in "to be or not to be"). Positionen, die mehr als k vor der aktuellen liegen,
+	 * fallen vorne heraus; sind alle Terme oft genug enthalten, wird das Fenster von links so weit wie möglich
+	 * verkleinert und als Fundstelle ausgegeben. Jede Position wird nur einmal hinzugefügt und einmal entfernt.
+	 */
+	static void unorderedWindows(int doc, int[][] positions, int[] freqs, int[] required, int k, List<Span> out) {
+		int n = positions.length;
+		int total = 0;
+		for (int f : freqs) {
+			total += f;
+		}
+		int[] cursors = new int[n];
+		int[] count = new int[n];
+		int[] windowPos = new int[total];
+		int[] windowTerm = new int[total];
+		int head = 0, tail = 0;
+		int satisfied = 0;// Anzahl der Terme, die oft genug im Fenster sind
+		while (true) {
+			int t = -1;
+			for (int i = 0; i < n; i++) {
+				if (cursors[i] < freqs[i] && (t < 0 || positions[i][cursors[i]] < positions[t][cursors[t]])) {
+					t = i;
+				}
+			}
+			if (t < 0) {
+				return;
+			}
+			int p = positions[t][cursors[t]++];
+			while (head < tail && windowPos[head] < (long) p - k) {
+				if (count[windowTerm[head]]-- == required[windowTerm[head]]) {
+					satisfied--;
+				}
+				head++;
+			}
+			windowPos[tail] = p;
+			windowTerm[tail++] = t;
+			if (++count[t] == required[t]) {
+				satisfied++;
+			}
+			if (satisfied == n) {
+				while (count[windowTerm[head]] > required[windowTerm[head]]) {
+					count[windowTerm[head++]]--;
+				}
+				out.add(new Span(doc, windowPos[head], p));
+				count[windowTerm[head++]]--;
+				satisfied--;
+			}
+		}
+	}
+
+	/*
+	 * Minimale Fenster mit Reihenfolge: positions[i] sind die Positionen des i-ten Query-Terms. Zu jeder Position des
+	 * ersten Terms suchen wir gierig das jeweils nächste Vorkommen der folgenden Terme; das ergibt das früheste Ende.
+	 * Weil Start und Ende dabei nur wachsen, laufen alle Cursor nur vorwärts. Haben mehrere Starts dasselbe Ende, ist
+	 * nur das Fenster mit dem spätesten Start minimal.
+	 */
+	static void orderedWindows(int doc, int[][] positions, int[] freqs, int k, List<Span> out) {
+		int n = positions.length;
+		int[] cursors = new int[n];
+		int pendingStart = -1, pendingEnd = -1;
+		for (int s = 0; s < freqs[0]; s++) {
+			int previous = positions[0][s];
+			for (int i = 1; i < n; i++) {
+				while (cursors[i] < freqs[i] && positions[i][cursors[i]] <= previous) {
+					cursors[i]++;
+				}
+				if (cursors[i] == freqs[i]) {
+					previous = -1;// kein Ende mehr möglich, auch nicht für spätere Starts
+					break;
+				}
+				previous = positions[i][cursors[i]];
+			}
+			if (previous < 0) {
+				break;
+			}
+			if (previous != pendingEnd && pendingStart >= 0 && pendingEnd - pendingStart <= k) {
+				out.add(new Span(doc, pendingStart, pendingEnd));
+			}
+			pendingStart = positions[0][s];
+			pendingEnd = previous;
+		}
+		if (pendingStart >= 0 && pendingEnd - pendingStart <= k) {
+			out.add(new Span(doc, pendingStart, pendingEnd));
+		}
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] result = new int[list.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = list.get(i);
+		}
+		return result;
+	}
+
 }
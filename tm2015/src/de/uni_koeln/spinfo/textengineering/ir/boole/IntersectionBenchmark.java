@@ -0,0 +1,72 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Zeitmessung der Intersection-Verfahren (MERGE, SKIP, GALLOP) für verschiedene Längenverhältnisse, als Grundlage
+ * für Intersection.SKIP_RATIO und Intersection.GALLOP_RATIO. Kein Unit-Test (dauert einige Sekunden und hängt von der
+ * Maschine ab), sondern von Hand zu starten:
+ *
+ * java de.uni_koeln.spinfo.textengineering.ir.boole.IntersectionBenchmark [Länge der längeren Liste]
+ *
+ * Für jedes Verhältnis wird die kürzere Liste zufällig gezogen (fester Seed) und jedes Verfahren mehrmals
+ * ausgeführt; ausgegeben wird die schnellste Ausführung (weniger anfällig für GC und andere Prozesse als der
+ * Mittelwert), dazu das schnellste Verfahren und das von Intersection.choose() gewählte.
+ */
+public class IntersectionBenchmark {
+
+	private static final int[] RATIOS = { 1, 2, 4, 8, 16, 32, 64, 128, 256, 1024 };
+	private static final int REPETITIONS = 15;
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		Random random = new Random(42);
+		PostingsList longList = PostingsList.of(randomIds(random, n, 10 * n));
+		// Aufwärmen, damit der JIT-Compiler die Messung nicht verfälscht:
+		PostingsList warmUp = PostingsList.of(randomIds(random, n / 8, 10 * n));
+		for (int rep = 0; rep < 20; rep++) {
+			for (Intersection.Strategy strategy : Intersection.Strategy.values()) {
+				Intersection.of(longList, warmUp, strategy);
+			}
+		}
+		System.out.println("Verhältnis\tMERGE\tSKIP\tGALLOP\tschnellstes\tgewählt");
+		for (int ratio : RATIOS) {
+			PostingsList shortList = PostingsList.of(randomIds(random, n / ratio, 10 * n));
+			StringBuilder line = new StringBuilder(ratio + "\t\t");
+			Intersection.Strategy fastest = null;
+			long best = Long.MAX_VALUE;
+			for (Intersection.Strategy strategy : Intersection.Strategy.values()) {
+				long min = Long.MAX_VALUE;
+				for (int rep = 0; rep < REPETITIONS; rep++) {
+					long start = System.nanoTime();
+					Intersection.of(longList, shortList, strategy);
+					min = Math.min(min, System.nanoTime() - start);
+				}
+				line.append(min / 1000).append(" µs\t");
+				if (min < best) {
+					best = min;
+					fastest = strategy;
+				}
+			}
+			System.out.println(line.append(fastest).append("\t\t").append(Intersection.choose(longList, shortList)));
+		}
+	}
+
+	private static int[] randomIds(Random random, int size, int max) {
+		// size verschiedene Ids aus [0, max), sortiert
+		int[] ids = new int[size];
+		int n = 0;
+		boolean[] taken = new boolean[max];
+		while (n < size) {
+			int id = random.nextInt(max);
+			if (!taken[id]) {
+				taken[id] = true;
+				ids[n++] = id;
+			}
+		}
+		Arrays.sort(ids);
+		return ids;
+	}
+
+}
@@ -1,13 +1,13 @@
 package de.uni_koeln.spinfo.textengineering.ir.boole;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedSet;
 import java.util.TreeSet;
 
 import de.uni_koeln.spinfo.textengineering.ir.basic.Corpus;
@@ -15,87 +15,254 @@ import de.uni_koeln.spinfo.textengineering.ir.basic.InformationRetrieval;
 
 public class InvertedIndex implements InformationRetrieval {
 
-	// der invertierte Index für die spätere Suche
-	private Map<String, SortedSet<Integer>> invIndex;
+	/*
+	 * der invertierte Index für die spätere Suche - die Postings werden
+	 * primitiv gespeichert (statt als TreeSet<Integer>, siehe PostingsList).
+	 * Nach dem Konstruktor ändert sich nichts mehr (alle Felder final), der
+	 * Index kann also ohne Sperren von beliebig vielen Threads durchsucht
+	 * werden:
+	 */
+	private final Map<String, PostingsList> invIndex;
+	private final QueryPlanner planner;
+	// Vokabular für Wildcard-Anfragen:
+	private final WildcardIndex wildcards;
+	// Korrekturvorschläge für unbekannte Suchwörter:
+	private final SpellingCorrector corrector;
 	// eine Instanz des Preprocessors für Indexierung und Query-Verarbeitung
-	private static final Preprocessor PREPROCESSOR = new Preprocessor();
+	private final Preprocessor preprocessor;
+	private final int numDocs;
+	// Ergebnisse häufiger Anfragen (und Termpaare), höchstens CACHE_BYTES:
+	private final QueryCache cache = new QueryCache(CACHE_BYTES);
+	static final long CACHE_BYTES = 4 << 20;
+	// Name des Segments beim Speichern (siehe save() und open()):
+	private static final String SEGMENT = "boole";
 
 	public InvertedIndex(Corpus corpus) {
+		this(corpus, new Preprocessor());
+	}
+
+	/*
+	 * Index mit eigener Verarbeitungskette (z.B. mit Stoppwörtern und
+	 * Stemmer, siehe Preprocessor.english()).
+	 */
+	public InvertedIndex(Corpus corpus, Preprocessor preprocessor) {
 		long start = System.currentTimeMillis();
+		this.preprocessor = preprocessor;
 		invIndex = index(corpus);
+		numDocs = corpus.getWorks().size();
+		Map<String, Integer> dfs = new HashMap<String, Integer>();
+		for (Map.Entry<String, PostingsList> e : invIndex.entrySet()) {
+			dfs.put(e.getKey(), e.getValue().size());
+		}
+		wildcards = new WildcardIndex(invIndex.keySet());
+		corrector = new SpellingCorrector(dfs);
+		planner = planner(dfs);
 		System.out.println("Index erstellt, Dauer: "
 				+ (System.currentTimeMillis() - start) + " ms.");
 	}
 
-	private Map<String, SortedSet<Integer>> index(Corpus corpus) {
-		HashMap<String, SortedSet<Integer>> index = new HashMap<String, SortedSet<Integer>>();
-		// wir indexieren Werk für Werk:
-		List<String> works = corpus.getWorks();
-		for (int i = 0; i < works.size(); i++) {
-			List<String> terms = PREPROCESSOR.process(works.get(i));
-			for (String t : terms) {
-				// wir holen uns die postings-Liste des terms aus dem Index:
-				SortedSet<Integer> postings = index.get(t);
-				/*
-				 * beim ersten Vorkommen des Terms ist diese noch leer (null),
-				 * also legen wir uns einfach eine neue an:
-				 */
-				if (postings == null) {
-					postings = new TreeSet<Integer>();
-					index.put(t, postings);
-				}
-				/*
-				 * Der Term wird indexiert, indem die Id des aktuellen Werks (=
-				 * der aktuelle Zählerwert) der postings-list hinzugefügt wird:
-				 */
-				postings.add(i);
+	private InvertedIndex(Segment segment, Preprocessor preprocessor) {
+		this.preprocessor = preprocessor;
+		// die Postings bleiben in den gemappten Dateien und werden erst bei Bedarf gelesen:
+		invIndex = segment.asMap(new Segment.Values<PostingsList>() {
+			@Override
+			public PostingsList of(PositionalPostings postings) {
+				return postings.docs();
 			}
-			// printSortedIndexTerms(index);//optionale Ausgabe der Indexterme
-		}
-		return index;
+		});
+		numDocs = segment.numDocs();
+		Map<String, Integer> dfs = segment.dfs();
+		wildcards = new WildcardIndex(invIndex.keySet());
+		corrector = new SpellingCorrector(dfs);
+		planner = planner(dfs);
 	}
 
-	@Override
-	public Set<Integer> search(String query) {
+	/*
+	 * Öffnet einen mit save() geschriebenen Index, ohne den Korpus erneut zu
+	 * verarbeiten. Der Preprocessor muss derselbe sein wie beim Indexieren.
+	 */
+	public static InvertedIndex open(Path dir) throws IOException {
+		return open(dir, new Preprocessor());
+	}
 
+	public static InvertedIndex open(Path dir, Preprocessor preprocessor)
+			throws IOException {
 		long start = System.currentTimeMillis();
-		// gleicher Preprocessor wie bei Indexierung!
-		List<String> queries = PREPROCESSOR.process(query);
+		InvertedIndex index = new InvertedIndex(Segment.open(dir, SEGMENT),
+				preprocessor);
+		System.out.println("Index geöffnet, Dauer: "
+				+ (System.currentTimeMillis() - start) + " ms.");
+		return index;
+	}
+
+	/*
+	 * Schreibt den Index als Segment (siehe Segment) in das Verzeichnis.
+	 */
+	public void save(Path dir) throws IOException {
+		Map<String, PositionalPostings> postings = new HashMap<String, PositionalPostings>();
+		for (Map.Entry<String, PostingsList> e : invIndex.entrySet()) {
+			// ohne Positionen: je Werk ein Eintrag
+			PositionalPostings.Builder builder = new PositionalPostings.Builder();
+			for (int docId : e.getValue().toArray()) {
+				builder.add(docId, 0);
+			}
+			postings.put(e.getKey(), builder.build());
+		}
+		Segment.write(dir, SEGMENT, numDocs, postings);
+	}
+
+	/*
+	 * Die Anfrageplanung - für neu erstellte und geöffnete Indexe gleich.
+	 */
+	private QueryPlanner planner(final Map<String, Integer> dfs) {
+		return new QueryPlanner(new QueryPlanner.PostingsSource() {
+			@Override
+			public int numDocs() {
+				return numDocs;
+			}
+
+			@Override
+			public int df(String term) {
+				Integer df = dfs.get(term);
+				return df == null ? 0 : df;
+			}
+
+			@Override
+			public PostingsList postings(String term) {
+				PostingsList postings = invIndex.get(term);
+				return postings == null ? PostingsList.of() : postings;
+			}
+
+			/*
+			 * Ohne Positionen können wir Phrasen nicht prüfen, sie werden
+			 * hier wie bisher als UND-Verknüpfung ihrer Terme behandelt
+			 * (exakte Phrasen: siehe PositionalIndex).
+			 */
+			@Override
+			public PostingsList phrase(List<String> terms) {
+				List<BooleanQuery> parts = new ArrayList<BooleanQuery>();
+				for (String term : terms) {
+					parts.add(BooleanQuery.term(term));
+				}
+				return planner.plan(BooleanQuery.and(parts)).execute();
+			}
+
+			@Override
+			public List<String> expand(String pattern) {
+				return wildcards.expand(pattern, WildcardIndex.MAX_EXPANSIONS);
+			}
+		}, cache, 0);
+	}
+
+	private Map<String, PostingsList> index(Corpus corpus) {
+		List<String> works = corpus.getWorks();
 		/*
-		 * Wir holen uns zunächst die Postings-Listen der Teilqueries:
+		 * Die Werke werden parallel indexiert (siehe SpimiIndexer), jeder
+		 * Thread mit eigenem Teil-Index; wir brauchen nur die Werke, nicht die
+		 * Positionen der Terme:
 		 */
-		List<SortedSet<Integer>> allPostings = new ArrayList<SortedSet<Integer>>();
-		for (String q : queries) {
-			SortedSet<Integer> postings = invIndex.get(q);
-			allPostings.add(postings);
-		}
+		Map<String, PositionalPostings> index = new SpimiIndexer()
+				.index(SpimiIndexer.terms(works, preprocessor));
 		/*
-		 * Damit wir die Effizienz des Algorithmus aus Manning et al erreichen,
-		 * müssen die einzelnen Postings-Listen nach Länge sortiert sein:
+		 * Am Ende werden die Listen versiegelt, d.h. je nach Dichte als int[],
+		 * komprimiert oder als Bitset abgelegt:
 		 */
-		Collections.sort(allPostings, new Comparator<SortedSet<Integer>>() {
-			@Override
-			public int compare(SortedSet<Integer> o1, SortedSet<Integer> o2) {
-				return Integer.valueOf(o1.size()).compareTo(o2.size());
+		Map<String, PostingsList> sealed = new HashMap<String, PostingsList>();
+		for (Map.Entry<String, PositionalPostings> e : index.entrySet()) {
+			PositionalPostings docs = e.getValue();
+			PostingsList.Builder postings = new PostingsList.Builder();
+			for (int i = 0; i < docs.size(); i++) {
+				postings.add(docs.docId(i));
 			}
-		});
-		// Ergebnis ist die Schnittmenge (Intersection) der ersten Liste...
-		SortedSet<Integer> result = allPostings.get(0);
-		// ... mit allen weiteren:
-		for (SortedSet<Integer> set : allPostings) {
-			result = Intersection.of(result, set);
-			// Hier behandeln wir die Suchwörter als UND-Verknüpft!
+			sealed.put(e.getKey(), postings.seal(works.size()));
 		}
+		return sealed;
+	}
+
+	/*
+	 * Suche mit AND, OR, NOT und Klammern (siehe BooleanQuery); Suchwörter
+	 * ohne Operator sind wie bisher UND-verknüpft. Die Reihenfolge der
+	 * Auswertung bestimmt der QueryPlanner anhand der Länge der
+	 * Postings-Listen.
+	 */
+	@Override
+	public Set<Integer> search(String query) {
+
+		long start = System.currentTimeMillis();
+		// gleicher Preprocessor wie bei Indexierung!
+		BooleanQuery q = BooleanQuery.parse(query, preprocessor);
+		PostingsList result = q == null ? PostingsList.of() : execute(q);
 		System.out.println("Suchdauer: " + (System.currentTimeMillis() - start)
 				+ " ms.");
+		if (result.size() == 0 && q != null) {
+			for (String term : new TreeSet<String>(q.terms())) {
+				if (invIndex.get(term) == null) {
+					System.out.println(corrector.notFound(term));
+				}
+			}
+		}
+		return result.toSet();
+	}
+
+	/*
+	 * Ausführung über den Cache, Schlüssel ist die normalisierte Anfrage.
+	 */
+	private PostingsList execute(BooleanQuery q) {
+		String key = q.toString();
+		int[] cached = cache.get(key);
+		if (cached != null) {
+			return PostingsList.of(cached);
+		}
+		PostingsList result = planner.plan(q).execute();
+		cache.put(key, result.toArray());
 		return result;
 	}
 
+	public QueryCache getCache() {
+		return cache;
+	}
+
+	/*
+	 * "Meinten Sie ...?": die Anfrage mit Korrekturen für unbekannte Terme,
+	 * oder null, wenn es nichts zu korrigieren gibt.
+	 */
+	public String didYouMean(String query) {
+		BooleanQuery q = BooleanQuery.parse(query, preprocessor);
+		BooleanQuery corrected = q == null ? null : corrector.correct(q);
+		return corrected == null ? null : corrected.toString();
+	}
+
+	/*
+	 * Der Ausführungsplan einer Anfrage (zum Nachvollziehen der Reihenfolge).
+	 */
+	public QueryPlanner.Plan plan(String query) {
+		BooleanQuery q = BooleanQuery.parse(query, preprocessor);
+		return q == null ? null : planner.plan(q);
+	}
+
+	/*
+	 * Die Indexterme.
+	 */
+	public Set<String> getTerms() {
+		return Collections.unmodifiableSet(invIndex.keySet());
+	}
+
+	/*
+	 * Ungefährer Speicherbedarf aller Postings in Bytes.
+	 */
+	public long postingsSizeInBytes() {
+		long bytes = 0;
+		for (PostingsList postings : invIndex.values()) {
+			bytes += postings.sizeInBytes();
+		}
+		return bytes;
+	}
+
 	/*
 	 * Ausgabe der Indexterme:
 	 */
 	@SuppressWarnings("unused")
-	private void printSortedIndexTerms(Map<String, SortedSet<Integer>> index) {
+	private void printSortedIndexTerms(Map<String, ?> index) {
 		TreeSet<String> terms = new TreeSet<String>(index.keySet());
 		for (String string : terms) {
 			System.out.println(string);
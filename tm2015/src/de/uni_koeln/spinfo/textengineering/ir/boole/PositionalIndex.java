@@ -1,14 +1,22 @@
 package de.uni_koeln.spinfo.textengineering.ir.boole;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
-import java.util.SortedSet;
 import java.util.TreeMap;
 
 import de.uni_koeln.spinfo.textengineering.ir.basic.Corpus;
@@ -18,91 +26,431 @@ import de.uni_koeln.spinfo.textengineering.ir.basic.InformationRetrieval;
  * Erweiterung des invertierten Index: Zusätzlich zu den Werken werden auch
  * jeweils die Positionen des Terms im Werk gespeichert. Der Ursprüngliche
  * Index ist nach wie vor enthalten und kann auf die gewohnte Weise abgefragt werden.
+ *
+ * Wie der InvertedIndex nach dem Konstruktor unveränderlich (alle Felder final): Suchen aus mehreren Threads
+ * brauchen keine Sperren, nur der Cache der Ausschnitte (SnippetService) synchronisiert sich selbst.
  */
 public class PositionalIndex implements InformationRetrieval {
 
-	// PosIndex: Zu jedem Term alle Werke inkl. der Position des Terms
-	private Map<String, SortedMap<Integer, List<Integer>>> posIndex;
+	/*
+	 * PosIndex: Zu jedem Term alle Werke inkl. der Positionen des Terms, in
+	 * kompakter Form (delta-kodierte Positionen, siehe PositionalPostings):
+	 */
+	private final Map<String, PositionalPostings> posIndex;
+	/*
+	 * Biwort-Index für Phrasen: Zu jedem Paar direkt aufeinanderfolgender
+	 * häufiger Tokens (z.B. "to be") die Werke, in denen es vorkommt.
+	 */
+	private final Map<String, PostingsList> biwords;
+	private final Set<String> commonTerms;
+	// so viele der häufigsten Tokens gelten als 'häufig':
+	private static final int COMMON_TERMS = 128;
 	private static final Preprocessor PREPROCESSOR = new Preprocessor();
-	// Zugriff auf tokens & Titel (siehe Methode printSnippets()):
-	private Corpus corpus;
+	// Zugriff auf die Werke (siehe Methode printSnippets()):
+	private final Corpus corpus;
+	/*
+	 * Für die Ergebnisdarstellung: Zeichenpositionen der Tokens und Titel
+	 * jedes Werks, beim Indexieren ermittelt.
+	 */
+	private final int[][] tokenOffsets;
+	private final String[] titles;
+	private final SnippetService snippets;
+	// so viele Ausschnitte werden zwischengespeichert:
+	private static final int SNIPPET_CACHE_SIZE = 1000;
+	private final QueryPlanner planner;
+	// Vokabular für Wildcard-Anfragen:
+	private final WildcardIndex wildcards;
+	// Dateinamen beim Speichern (siehe save() und open()):
+	private static final String SEGMENT = "positional";
+	private static final String BIWORDS = "biwords";
+	private static final String META = "positional.meta";
+	// Ergebnisse häufiger Anfragen (siehe QueryCache):
+	private final QueryCache cache = new QueryCache(InvertedIndex.CACHE_BYTES);
 
 	public PositionalIndex(Corpus corpus) {
 		long start = System.currentTimeMillis();
-		posIndex = index(corpus);
+		List<String> works = corpus.getWorks();
+		tokenOffsets = new int[works.size()][];
+		titles = new String[works.size()];
+		posIndex = index(works, tokenOffsets, titles);
+		commonTerms = commonTerms(posIndex, COMMON_TERMS);
+		biwords = biwords(corpus, commonTerms);
 		this.corpus = corpus;// Korpus für Ergebnisaufbereitung
+		wildcards = new WildcardIndex(posIndex.keySet());
+		snippets = new SnippetService(works, tokenOffsets, titles, SNIPPET_CACHE_SIZE);
+		planner = planner();
 		System.out.println("Index erstellt, Dauer: "
 				+ (System.currentTimeMillis() - start) + " ms.");
 	}
 
+	private PositionalIndex(Path dir, Corpus corpus) throws IOException {
+		// Postings und Biwörter bleiben in den gemappten Dateien (siehe Segment):
+		posIndex = Segment.open(dir, SEGMENT).asMap();
+		biwords = Segment.open(dir, BIWORDS).asMap(
+				new Segment.Values<PostingsList>() {
+					@Override
+					public PostingsList of(PositionalPostings postings) {
+						return postings.docs();
+					}
+				});
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Files.newInputStream(dir.resolve(META))));
+		String[] titles;
+		int[][] tokenOffsets;
+		Set<String> commonTerms;
+		try {
+			int numDocs = in.readInt();
+			if (numDocs != corpus.getWorks().size()) {
+				throw new IOException("Index passt nicht zum Korpus: "
+						+ numDocs + " statt " + corpus.getWorks().size()
+						+ " Werke");
+			}
+			titles = new String[numDocs];
+			tokenOffsets = new int[numDocs][];
+			for (int i = 0; i < numDocs; i++) {
+				titles[i] = in.readUTF();
+				tokenOffsets[i] = new int[in.readInt()];
+				for (int j = 0; j < tokenOffsets[i].length; j++) {
+					tokenOffsets[i][j] = in.readInt();
+				}
+			}
+			commonTerms = new HashSet<String>();
+			for (int i = in.readInt(); i > 0; i--) {
+				commonTerms.add(in.readUTF());
+			}
+		} finally {
+			in.close();
+		}
+		this.titles = titles;
+		this.tokenOffsets = tokenOffsets;
+		this.commonTerms = Collections.unmodifiableSet(commonTerms);
+		this.corpus = corpus;
+		wildcards = new WildcardIndex(posIndex.keySet());
+		snippets = new SnippetService(corpus.getWorks(), tokenOffsets, titles, SNIPPET_CACHE_SIZE);
+		planner = planner();
+	}
+
+	/*
+	 * Öffnet einen mit save() geschriebenen Index, ohne die Werke erneut zu
+	 * tokenisieren; der Korpus wird nur noch für die Ergebnisdarstellung
+	 * gebraucht.
+	 */
+	public static PositionalIndex open(Path dir, Corpus corpus)
+			throws IOException {
+		long start = System.currentTimeMillis();
+		PositionalIndex index = new PositionalIndex(dir, corpus);
+		System.out.println("Index geöffnet, Dauer: "
+				+ (System.currentTimeMillis() - start) + " ms.");
+		return index;
+	}
+
+	/*
+	 * Schreibt Positionen und Biwörter als Segmente (siehe Segment), Titel,
+	 * Zeichenpositionen der Tokens und häufige Terme in eine weitere Datei.
+	 */
+	public void save(Path dir) throws IOException {
+		int numDocs = corpus.getWorks().size();
+		Segment.write(dir, SEGMENT, numDocs, posIndex);
+		Map<String, PositionalPostings> biwordPostings = new HashMap<String, PositionalPostings>();
+		for (Map.Entry<String, PostingsList> e : biwords.entrySet()) {
+			PositionalPostings.Builder builder = new PositionalPostings.Builder();
+			for (int docId : e.getValue().toArray()) {
+				builder.add(docId, 0);
+			}
+			biwordPostings.put(e.getKey(), builder.build());
+		}
+		Segment.write(dir, BIWORDS, numDocs, biwordPostings);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(dir.resolve(META))));
+		try {
+			out.writeInt(numDocs);
+			for (int i = 0; i < numDocs; i++) {
+				out.writeUTF(titles[i]);
+				out.writeInt(tokenOffsets[i].length);
+				for (int offset : tokenOffsets[i]) {
+					out.writeInt(offset);
+				}
+			}
+			out.writeInt(commonTerms.size());
+			for (String t : commonTerms) {
+				out.writeUTF(t);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/*
+	 * Die Anfrageplanung - für neu erstellte und geöffnete Indexe gleich.
+	 */
+	private QueryPlanner planner() {
+		return new QueryPlanner(new QueryPlanner.PostingsSource() {
+			@Override
+			public int numDocs() {
+				return corpus.getWorks().size();
+			}
+
+			@Override
+			public int df(String term) {
+				PositionalPostings postings = posIndex.get(term);
+				return postings == null ? 0 : postings.size();
+			}
+
+			@Override
+			public PostingsList postings(String term) {
+				PositionalPostings postings = posIndex.get(term);
+				return postings == null ? PostingsList.of() : postings.docs();
+			}
+
+			@Override
+			public PostingsList phrase(List<String> terms) {
+				return PositionalIndex.this.phrase(terms).docs();
+			}
+
+			@Override
+			public List<String> expand(String pattern) {
+				return wildcards.expand(pattern, WildcardIndex.MAX_EXPANSIONS);
+			}
+		}, cache, 0);
+	}
+
+	/*
+	 * Statt Postings-Listen jetzt Postings mit Pos-Listen für jedes Werk.
+	 */
+	private static Map<String, PositionalPostings> index(final List<String> works, final int[][] tokenOffsets,
+			final String[] titles) {
+		// wir indexieren wieder Werk für Werk, aber parallel (siehe SpimiIndexer):
+		return new SpimiIndexer().index(new SpimiIndexer.Source() {
+			@Override
+			public int size() {
+				return works.size();
+			}
+
+			@Override
+			public void terms(int i, SpimiIndexer.Sink sink) {
+				// Für die Positionen laufen wir über die Tokens (nicht die Terme):
+				String work = works.get(i);
+				titles[i] = SnippetService.title(work);
+				/*
+				 * Ein Durchlauf mit dem Tokenizer liefert Term und
+				 * Zeichenposition (für die Ausschnitte: wo steht Token j im
+				 * Originaltext?):
+				 */
+				Tokenizer tokenizer = new Tokenizer(work);
+				int[] offsets = new int[64];
+				// wir zählen die Tokens mit (Zähler = Position)
+				int j = 0;
+				while (tokenizer.next()) {
+					if (2 * j + 2 > offsets.length) {
+						offsets = Arrays.copyOf(offsets, offsets.length * 2);
+					}
+					offsets[2 * j] = tokenizer.start();
+					offsets[2 * j + 1] = tokenizer.end();
+					/*
+					 * Das Wort wird indexiert, indem die Id des aktuellen Werks
+					 * zusammen mit der Position des aktuellen Tokens
+					 * hinzugefügt wird (beide aufsteigend):
+					 */
+					sink.add(tokenizer.term(), j++);
+				}
+				// jedes Werk hat seinen eigenen Eintrag, die Threads kommen sich nicht in die Quere:
+				tokenOffsets[i] = Arrays.copyOf(offsets, 2 * j);
+			}
+		});
+	}
+
 	/*
-	 * Statt Postings-Listen jetzt Postings-Maps mit Pos-Listen für jedes Werk.
+	 * Die häufigsten Tokens (nach Anzahl der Vorkommen im Korpus).
 	 */
-	private Map<String, SortedMap<Integer, List<Integer>>> index(Corpus corpus) {
-		// Rückgabetyp = Datentyp des Index
-		Map<String, SortedMap<Integer, List<Integer>>> index = new HashMap<String, SortedMap<Integer, List<Integer>>>();
-		// wir indexieren wieder Werk für Werk:
+	private static Set<String> commonTerms(
+			final Map<String, PositionalPostings> index, int n) {
+		List<String> terms = new ArrayList<String>(index.keySet());
+		final Map<String, Long> freqs = new HashMap<String, Long>();
+		for (String t : terms) {
+			freqs.put(t, index.get(t).totalFreq());
+		}
+		Collections.sort(terms, new Comparator<String>() {
+			public int compare(String o1, String o2) {
+				return freqs.get(o2).compareTo(freqs.get(o1));
+			}
+		});
+		return new HashSet<String>(terms.subList(0,
+				Math.min(n, terms.size())));
+	}
+
+	/*
+	 * Zweiter Durchlauf über die Tokens: Biwörter nur aus häufigen Tokens.
+	 * Gerade Phrasen aus solchen Wörtern sind teuer, weil deren
+	 * Positions-Listen sehr lang sind; seltene Wörter machen eine Phrase
+	 * dagegen schon allein selektiv genug. So bleibt der Biwort-Index klein
+	 * (höchstens COMMON_TERMS² Einträge).
+	 */
+	private static Map<String, PostingsList> biwords(Corpus corpus,
+			Set<String> commonTerms) {
+		Map<String, PostingsList.Builder> index = new HashMap<String, PostingsList.Builder>();
 		List<String> works = corpus.getWorks();
 		for (int i = 0; i < works.size(); i++) {
-			/*
-			 * Für die Positionen müssen wir über die Tokens laufen - dafür muss
-			 * der Preprocessor angepasst werden (Tokens statt Terme)
-			 */
 			List<String> tokens = PREPROCESSOR.tokenize(works.get(i));
-			// wir nutzen den Zähler der for-Schleife (Zähler = Position)
-			for (int j = 0; j < tokens.size(); j++) {
-				String t = tokens.get(j);
-				// wie bisher zunächst postings holen (hier eine Map):
-				SortedMap<Integer, List<Integer>> postings = index.get(t);
-				// bei erstem Aufruf initialisieren:
-				if (postings == null) {
-					postings = new TreeMap<Integer, List<Integer>>();
-					index.put(t, postings);
-				}
-				// ebenso bei den Positionen:
-				List<Integer> posList = postings.get(i);// aktuelles Werk
-				if (posList == null) {
-					posList = new ArrayList<Integer>();
+			for (int j = 0; j + 1 < tokens.size(); j++) {
+				if (commonTerms.contains(tokens.get(j))
+						&& commonTerms.contains(tokens.get(j + 1))) {
+					String biword = tokens.get(j) + " " + tokens.get(j + 1);
+					PostingsList.Builder postings = index.get(biword);
+					if (postings == null) {
+						postings = new PostingsList.Builder();
+						index.put(biword, postings);
+					}
+					postings.add(i);
 				}
-				posList.add(j);// Position des aktuellen Tokens
-				/*
-				 * Das Wort wird indexiert, indem die Id des aktuellen Werks (=
-				 * der aktuelle Zählerwert) zusammen mit der aktualisierten
-				 * Positions-Liste der postings-Map hinzugefügt wird:
-				 */
-				postings.put(i, posList);
 			}
 		}
-		return index;
+		Map<String, PostingsList> result = new HashMap<String, PostingsList>();
+		for (Map.Entry<String, PostingsList.Builder> e : index.entrySet()) {
+			result.put(e.getKey(), e.getValue().seal(works.size()));
+		}
+		return result;
+	}
+
+	/*
+	 * Ungefährer Speicherbedarf aller Postings in Bytes.
+	 */
+	public long postingsSizeInBytes() {
+		long bytes = 0;
+		for (PositionalPostings postings : posIndex.values()) {
+			bytes += postings.sizeInBytes();
+		}
+		return bytes;
 	}
 
 	/*
 	 * Die 'einfache' Index-Suche: Gibt Werke zurück, die (Teil-)queries
-	 * enthalten. Einziger Unterschied: Zugriff auf Postings über keySet().
+	 * enthalten, mit AND, OR und NOT wie beim InvertedIndex. Einziger
+	 * Unterschied: Zugriff auf die Werke über docs().
 	 */
 	@Override
 	public Set<Integer> search(String query) {
 		long start = System.currentTimeMillis();
-		List<String> queries = PREPROCESSOR.process(query);
-		List<SortedSet<Integer>> allPostings = new ArrayList<SortedSet<Integer>>();
-		for (String q : queries) {
-			// Einzige Veränderung: Wir nehmen das keySet der Postings-Maps
-			SortedSet<Integer> postings = (SortedSet<Integer>) posIndex.get(q)
-					.keySet();
-			allPostings.add(postings);
+		BooleanQuery q = BooleanQuery.parse(query, PREPROCESSOR);
+		PostingsList result = PostingsList.of();
+		if (q != null) {
+			// über den Cache, Schlüssel ist die normalisierte Anfrage:
+			int[] cached = cache.get(q.toString());
+			if (cached != null) {
+				result = PostingsList.of(cached);
+			} else {
+				result = planner.plan(q).execute();
+				cache.put(q.toString(), result.toArray());
+			}
+		}
+		System.out.println("Indexsuche: "
+				+ (System.currentTimeMillis() - start) + " ms.");
+		return result.toSet();
+	}
+
+	/*
+	 * Exakte Phrasensuche: Gibt zu jedem Werk die Startpositionen der Phrase
+	 * zurück.
+	 */
+	public SortedMap<Integer, List<Integer>> phraseSearch(String phrase) {
+		long start = System.currentTimeMillis();
+		PositionalPostings result = phrase(PREPROCESSOR.tokenize(phrase));
+		System.out.println("Phrasensuche: "
+				+ (System.currentTimeMillis() - start) + " ms.");
+		return result.toMap();
+	}
+
+	/*
+	 * Die Phrase wird in zwei Schritten gesucht: Zuerst bestimmen wir die
+	 * Kandidaten, d.h. die Schnittmenge der Biwort-Postings aller Paare
+	 * häufiger Tokens in der Phrase und der Werk-Postings aller übrigen
+	 * Tokens. Erst für diese Werke werden die Positionen dekodiert und
+	 * geprüft, ob die Tokens wirklich direkt aufeinander folgen.
+	 */
+	private PositionalPostings phrase(List<String> tokens) {
+		PositionalPostings.Builder answer = new PositionalPostings.Builder();
+		int n = tokens.size();
+		if (n == 0) {
+			return answer.build();// keine Tokens (leer oder nur Satzzeichen): keine Treffer
+		}
+		PositionalPostings[] postings = new PositionalPostings[n];
+		for (int i = 0; i < n; i++) {
+			postings[i] = posIndex.get(tokens.get(i));
+			if (postings[i] == null) {
+				return answer.build();// unbekanntes Token: keine Treffer
+			}
+		}
+		if (n == 1) {
+			return postings[0];
 		}
-		Collections.sort(allPostings, new Comparator<SortedSet<Integer>>() {
-			public int compare(SortedSet<Integer> o1, SortedSet<Integer> o2) {
+		// 1. Kandidaten über den Biwort-Index:
+		List<PostingsList> lists = new ArrayList<PostingsList>();
+		boolean[] covered = new boolean[n];
+		for (int i = 0; i + 1 < n; i++) {
+			if (commonTerms.contains(tokens.get(i))
+					&& commonTerms.contains(tokens.get(i + 1))) {
+				PostingsList docs = biwords.get(tokens.get(i) + " "
+						+ tokens.get(i + 1));
+				// nicht im Biwort-Index = kommt nirgends vor:
+				lists.add(docs == null ? PostingsList.of() : docs);
+				covered[i] = covered[i + 1] = true;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			if (!covered[i]) {
+				lists.add(postings[i].docs());
+			}
+		}
+		Collections.sort(lists, new Comparator<PostingsList>() {
+			public int compare(PostingsList o1, PostingsList o2) {
 				return Integer.valueOf(o1.size()).compareTo(o2.size());
 			}
 		});
-		SortedSet<Integer> result = allPostings.get(0);
-		for (SortedSet<Integer> set : allPostings) {
-			result = Intersection.of(result, set);
+		PostingsList candidates = lists.get(0);
+		for (int i = 1; i < lists.size() && candidates.size() > 0; i++) {
+			candidates = Intersection.of(candidates, lists.get(i));
 		}
-		System.out.println("Indexsuche: "
-				+ (System.currentTimeMillis() - start) + " ms.");
-		return result;
+		// 2. Prüfung der Positionen in den Kandidaten:
+		int[][] positions = new int[n][16];
+		int[] freqs = new int[n];
+		int[] pointers = new int[n];
+		int[] out = new int[16];
+		PostingsList.Cursor cursor = candidates.cursor();
+		for (int doc = cursor.next(); doc != PostingsList.Cursor.NO_MORE_DOCS; doc = cursor
+				.next()) {
+			// das im Werk seltenste Token gibt die möglichen Startpositionen vor:
+			int rarest = 0;
+			for (int i = 0; i < n; i++) {
+				int index = postings[i].indexOf(doc);
+				positions[i] = postings[i].positions(index, positions[i]);
+				freqs[i] = postings[i].freq(index);
+				pointers[i] = 0;
+				if (freqs[i] < freqs[rarest]) {
+					rarest = i;
+				}
+			}
+			if (out.length < freqs[rarest]) {
+				out = new int[freqs[rarest]];
+			}
+			int hits = 0;
+			for (int r = 0; r < freqs[rarest]; r++) {
+				int phraseStart = positions[rarest][r] - rarest;
+				boolean match = phraseStart >= 0;
+				for (int i = 0; i < n && match; i++) {
+					// die Startpositionen steigen, die Zeiger laufen also nur vorwärts:
+					while (pointers[i] < freqs[i]
+							&& positions[i][pointers[i]] < phraseStart + i) {
+						pointers[i]++;
+					}
+					match = pointers[i] < freqs[i]
+							&& positions[i][pointers[i]] == phraseStart + i;
+				}
+				if (match) {
+					out[hits++] = phraseStart;
+				}
+			}
+			answer.add(doc, out, hits);
+		}
+		return answer.build();
 	}
 
 	/*
@@ -111,36 +459,149 @@ public class PositionalIndex implements InformationRetrieval {
 	 * denen beide Terme vorkommen, dann die PositionalIntersection
 	 * "zuschalten". Vorteil: einfach "einklinken", ohne den Rest zu verändern.
 	 */
-	@SuppressWarnings("rawtypes")
 	public SortedMap<Integer, List<Integer>> proximitySearch(String query,
 			int maxDistance) {
 		long start = System.currentTimeMillis();
 		List<String> queries = PREPROCESSOR.tokenize(query);
 		/*
-		 * Statt Postings-Listen hier Postings-Maps der Teilqueries:
+		 * Statt Postings-Listen hier die Positional Postings der Teilqueries:
 		 */
-		List<SortedMap<Integer, List<Integer>>> allPostingsMaps = new ArrayList<SortedMap<Integer, List<Integer>>>();
+		List<PositionalPostings> allPostings = new ArrayList<PositionalPostings>();
 		for (String q : queries) {
-			SortedMap<Integer, List<Integer>> postingsMap = posIndex.get(q);
-			allPostingsMaps.add(postingsMap);
+			PositionalPostings postings = posIndex.get(q);
+			if (postings == null) {
+				// unbekannter Term: keine Treffer
+				postings = new PositionalPostings.Builder().build();
+			}
+			allPostings.add(postings);
 		}
-		// dann die Maps nach ihrer Länge sortieren:
-		Collections.sort(allPostingsMaps, new Comparator<SortedMap>() {
-			public int compare(SortedMap o1, SortedMap o2) {
+		if (allPostings.isEmpty()) {
+			return new TreeMap<Integer, List<Integer>>();
+		}
+		// dann die Postings nach ihrer Länge sortieren:
+		Collections.sort(allPostings, new Comparator<PositionalPostings>() {
+			public int compare(PositionalPostings o1, PositionalPostings o2) {
 				return Integer.valueOf(o1.size()).compareTo(o2.size());
 			}
 		});
-		// Ergebnis ist die Schnittmenge (Intersection) der ersten Map...
-		SortedMap<Integer, List<Integer>> result = allPostingsMaps.get(0);
+		// Ergebnis ist die Schnittmenge (Intersection) der ersten Liste...
+		PositionalPostings result = allPostings.get(0);
 		// ... mit allen weiteren:
-		for (SortedMap<Integer, List<Integer>> postingsMap : allPostingsMaps) {
-			result = Intersection.of(result, postingsMap, maxDistance);
+		for (PositionalPostings postings : allPostings.subList(1,
+				allPostings.size())) {
+			result = Intersection.of(result, postings, maxDistance);
 		}
 		System.out.println("Proximity-Suche (range " + maxDistance + "): "
 				+ (System.currentTimeMillis() - start) + " ms.");
+		return result.toMap();
+	}
+
+	/*
+	 * Proximity-Suche über beliebig viele Terme: alle minimalen Fenster, in
+	 * denen jeder Term der Anfrage vorkommt (mehrfache Terme entsprechend
+	 * oft) und die höchstens k Positionen umfassen, d.h. end - start <= k.
+	 * Bei 'ordered' müssen die Terme in der Reihenfolge der Anfrage stehen.
+	 * Statt einer Kette von Zwischenergebnissen werden die Positionen jedes
+	 * Kandidaten-Werks in einem Durchlauf gemischt (siehe Intersection).
+	 */
+	public List<Span> windowSearch(String query, int k, boolean ordered) {
+		long start = System.currentTimeMillis();
+		List<Span> result = new ArrayList<Span>();
+		List<String> tokens = PREPROCESSOR.tokenize(query);
+		// die verschiedenen Terme und wie oft sie vorkommen müssen:
+		List<String> terms = new ArrayList<String>();
+		int[] termOf = new int[tokens.size()];
+		for (int i = 0; i < tokens.size(); i++) {
+			int t = terms.indexOf(tokens.get(i));
+			if (t < 0) {
+				t = terms.size();
+				terms.add(tokens.get(i));
+			}
+			termOf[i] = t;
+		}
+		int n = terms.size();
+		int[] required = new int[n];
+		PositionalPostings[] postings = new PositionalPostings[n];
+		List<PostingsList> lists = new ArrayList<PostingsList>();
+		for (int t = 0; t < n; t++) {
+			postings[t] = posIndex.get(terms.get(t));
+			if (postings[t] == null) {
+				return result;// unbekannter Term: keine Treffer
+			}
+			lists.add(postings[t].docs());
+		}
+		for (int i = 0; i < tokens.size(); i++) {
+			required[termOf[i]]++;
+		}
+		if (n == 0 || tokens.size() - 1 > k) {
+			return result;// so viele Tokens passen nicht in das Fenster
+		}
+		// Kandidaten: Werke, die alle Terme enthalten (kürzeste Liste zuerst)
+		Collections.sort(lists, new Comparator<PostingsList>() {
+			public int compare(PostingsList o1, PostingsList o2) {
+				return Integer.valueOf(o1.size()).compareTo(o2.size());
+			}
+		});
+		PostingsList candidates = lists.get(0);
+		for (int i = 1; i < lists.size() && candidates.size() > 0; i++) {
+			candidates = Intersection.of(candidates, lists.get(i));
+		}
+		int[][] positions = new int[n][16];
+		int[] freqs = new int[n];
+		int[][] queryPositions = new int[tokens.size()][];
+		int[] queryFreqs = new int[tokens.size()];
+		PostingsList.Cursor cursor = candidates.cursor();
+		for (int doc = cursor.next(); doc != PostingsList.Cursor.NO_MORE_DOCS; doc = cursor
+				.next()) {
+			for (int t = 0; t < n; t++) {
+				int index = postings[t].indexOf(doc);
+				positions[t] = postings[t].positions(index, positions[t]);
+				freqs[t] = postings[t].freq(index);
+			}
+			if (ordered) {
+				// jeder Query-Term bekommt die Positionen 'seines' Terms:
+				for (int i = 0; i < tokens.size(); i++) {
+					queryPositions[i] = positions[termOf[i]];
+					queryFreqs[i] = freqs[termOf[i]];
+				}
+				Intersection.orderedWindows(doc, queryPositions, queryFreqs,
+						k, result);
+			} else {
+				Intersection.unorderedWindows(doc, positions, freqs, required,
+						k, result);
+			}
+		}
+		System.out.println("Fenstersuche (range " + k + "): "
+				+ (System.currentTimeMillis() - start) + " ms.");
 		return result;
 	}
 
+	/*
+	 * Ergebnisdarstellung: die Ausschnitte zu den Fundstellen, mit 'context'
+	 * Tokens davor und danach (siehe SnippetService).
+	 */
+	public List<Snippet> snippets(List<Span> spans, int context) {
+		return snippets.snippets(spans, context);
+	}
+
+	public QueryCache getCache() {
+		return cache;
+	}
+
+	public SnippetService getSnippetService() {
+		return snippets;
+	}
+
+	/*
+	 * Ausgabe der Fundstellen mit Anfang und Ende, die Fundstelle selbst in
+	 * eckigen Klammern.
+	 */
+	public void printSnippets(List<Span> spans, int context) {
+		for (Snippet snippet : snippets(spans, context)) {
+			System.out.println(snippet);
+		}
+	}
+
 	/*
 	 * Ergebnisdarstellung: Ausgabe von Fundstellen und Werktitel
 	 */
@@ -156,26 +617,17 @@ public class PositionalIndex implements InformationRetrieval {
 		int range = maxDistance + queryLength;
 
 		for (Integer docId : result.keySet()) {
-			// Werk als Tokenlist für Rekonstruktion der Fundstelle:
-			String work = corpus.getWorks().get(docId);
-			List<String> tokens = PREPROCESSOR.tokenize(work);
 			// Die einzelnen Fundstellen:
 			List<Integer> positions = result.get(docId);
-			// Werktitel = erste Zeile des Werks
-			String title = (work.trim().substring(0, work.trim().indexOf("\n")));
 			System.out.println(String.format(
 					"'%s' %s-mal gefunden in Werk #%s (%s):", query,
-					positions.size(), docId, title));
+					positions.size(), docId, snippets.getTitle(docId)));
 			for (Integer pos : positions) {
-				// Textanfang und -ende abfangen (Math.max bzw. Math.min)
-				int start = Math.max(0, pos - range);
-				int end = Math.min(tokens.size(), pos + range);
-				// Ausgabe der Position:
-				System.out.print("Id " + docId + ", pos " + pos + ": ' ... ");
-				for (int i = start; i <= end; i++) {
-					System.out.print(tokens.get(i) + " ");
-				}
-				System.out.println(" ... '");
+				// Ausschnitt um die Position, direkt aus dem Originaltext:
+				Snippet snippet = snippets.snippet(new Span(docId, pos, pos),
+						range);
+				System.out.println("Id " + docId + ", pos " + pos + ": ' ... "
+						+ snippet.getText() + " ... '");
 			}
 		}
 	}
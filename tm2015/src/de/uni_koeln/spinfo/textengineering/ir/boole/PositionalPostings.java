@@ -0,0 +1,289 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/*
+ * Postings eines Positional Index in kompakter Form: statt TreeMap<Integer, List<Integer>> (ein Map-Eintrag, eine
+ * ArrayList und ein Integer-Objekt pro Position) halten wir die Werk-Ids und die Anzahl der Positionen je Werk als
+ * int[], die Positionen selbst delta- und variable-byte-kodiert hintereinander in einem byte[] (wie bei
+ * PostingsList.VByteDeltaPostings; die Abstände beginnen in jedem Werk neu bei 0). offsets[i] zeigt auf den Beginn
+ * der Positionen des i-ten Werks.
+ */
+public final class PositionalPostings {
+
+	private final int[] docs;
+	private final int[] freqs;
+	private final int[] offsets;
+	private final byte[] positions;
+
+	private PositionalPostings(int[] docs, int[] freqs, int[] offsets, byte[] positions) {
+		this.docs = docs;
+		this.freqs = freqs;
+		this.offsets = offsets;
+		this.positions = positions;
+	}
+
+	/*
+	 * Anzahl der Werke (Dokumentfrequenz).
+	 */
+	public int size() {
+		return docs.length;
+	}
+
+	public int docId(int i) {
+		return docs[i];
+	}
+
+	/*
+	 * Der Index eines Werks in dieser Liste (binäre Suche), negativ, wenn es nicht enthalten ist.
+	 */
+	public int indexOf(int docId) {
+		return Arrays.binarySearch(docs, docId);
+	}
+
+	/*
+	 * Summe der Termfrequenzen über alle Werke (Kollektionsfrequenz).
+	 */
+	public long totalFreq() {
+		long sum = 0;
+		for (int f : freqs) {
+			sum += f;
+		}
+		return sum;
+	}
+
+	/*
+	 * Anzahl der Positionen im i-ten Werk (Termfrequenz).
+	 */
+	public int freq(int i) {
+		return freqs[i];
+	}
+
+	/*
+	 * Dekodiert die Positionen des i-ten Werks in den Puffer (der bei Bedarf vergrößert wird) und gibt ihn zurück; die
+	 * ersten freq(i) Einträge sind gültig. So kann ein Puffer für alle Werke wiederverwendet werden.
+	 */
+	public int[] positions(int i, int[] buffer) {
+		int n = freqs[i];
+		if (buffer.length < n) {
+			buffer = new int[Math.max(n, 2 * buffer.length)];
+		}
+		int pos = offsets[i];
+		int previous = 0;
+		for (int j = 0; j < n; j++) {
+			int gap = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = positions[pos++];
+				gap |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			previous += gap;
+			buffer[j] = previous;
+		}
+		return buffer;
+	}
+
+	public int[] positions(int i) {
+		return Arrays.copyOf(positions(i, new int[freqs[i]]), freqs[i]);
+	}
+
+	/*
+	 * Die Werk-Ids als Postings-Liste (ohne Kopie).
+	 */
+	public PostingsList docs() {
+		return PostingsList.of(docs);
+	}
+
+	/*
+	 * Die kodierten Positionen aller Werke (ohne Kopie, zum Schreiben).
+	 */
+	byte[] positionBytes() {
+		return positions;
+	}
+
+	public long sizeInBytes() {
+		return 4L * (docs.length + freqs.length + offsets.length) + positions.length;
+	}
+
+	/*
+	 * Schreibt die Postings in kompakter Form (z.B. in eine Datei, siehe SpimiIndexer); read() liest sie wieder.
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(docs.length);
+		for (int i = 0; i < docs.length; i++) {
+			out.writeInt(docs[i]);
+			out.writeInt(freqs[i]);
+		}
+		out.writeInt(positions.length);
+		out.write(positions);
+	}
+
+	public static PositionalPostings read(DataInput in) throws IOException {
+		int n = in.readInt();
+		int[] docs = new int[n];
+		int[] freqs = new int[n];
+		for (int i = 0; i < n; i++) {
+			docs[i] = in.readInt();
+			freqs[i] = in.readInt();
+		}
+		byte[] positions = new byte[in.readInt()];
+		in.readFully(positions);
+		return of(docs, freqs, positions);
+	}
+
+	/*
+	 * Aus gelesenen Daten (siehe read() und Segment); die Arrays werden übernommen.
+	 */
+	static PositionalPostings of(int[] docs, int[] freqs, byte[] positions) {
+		int n = docs.length;
+		// die Anfänge der Werke ergeben sich aus den Positionen selbst (das letzte Byte einer Zahl ist < 0x80):
+		int[] offsets = new int[n + 1];
+		int pos = 0;
+		for (int i = 0; i < n; i++) {
+			offsets[i] = pos;
+			for (int j = 0; j < freqs[i]; j++) {
+				while ((positions[pos++] & 0x80) != 0) {
+				}
+			}
+		}
+		offsets[n] = pos;
+		return new PositionalPostings(docs, freqs, offsets, positions);
+	}
+
+	/*
+	 * Umwandlung in die bisherige Darstellung (für die Ausgabe der Ergebnisse).
+	 */
+	public SortedMap<Integer, List<Integer>> toMap() {
+		SortedMap<Integer, List<Integer>> result = new TreeMap<Integer, List<Integer>>();
+		int[] buffer = new int[16];
+		for (int i = 0; i < docs.length; i++) {
+			buffer = positions(i, buffer);
+			List<Integer> list = new ArrayList<Integer>(freqs[i]);
+			for (int j = 0; j < freqs[i]; j++) {
+				list.add(buffer[j]);
+			}
+			result.put(docs[i], list);
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return toMap().toString();
+	}
+
+	/*
+	 * Sammelt (Werk, Position)-Paare in aufsteigender Reihenfolge.
+	 */
+	public static final class Builder {
+
+		private int[] docs = new int[4];
+		private int[] freqs = new int[4];
+		private int[] offsets = new int[5];
+		private byte[] positions = new byte[16];
+		private int size;
+		private int bytes;
+		private int lastPosition;
+
+		public Builder add(int docId, int position) {
+			if (size == 0 || docs[size - 1] != docId) {
+				if (size > 0 && docs[size - 1] > docId) {
+					throw new IllegalArgumentException("Werk-Ids müssen aufsteigend hinzugefügt werden: " + docId);
+				}
+				if (size == docs.length) {
+					docs = Arrays.copyOf(docs, size * 2);
+					freqs = Arrays.copyOf(freqs, size * 2);
+					offsets = Arrays.copyOf(offsets, size * 2 + 1);
+				}
+				docs[size] = docId;
+				freqs[size] = 0;
+				offsets[size] = bytes;
+				size++;
+				lastPosition = 0;
+			} else if (position <= lastPosition) {
+				if (position == lastPosition) {
+					return this;
+				}
+				throw new IllegalArgumentException("Positionen müssen aufsteigend hinzugefügt werden: " + position);
+			}
+			if (bytes + 5 > positions.length) {
+				positions = Arrays.copyOf(positions, positions.length * 2);
+			}
+			int gap = position - lastPosition;
+			lastPosition = position;
+			while ((gap & ~0x7F) != 0) {
+				positions[bytes++] = (byte) ((gap & 0x7F) | 0x80);
+				gap >>>= 7;
+			}
+			positions[bytes++] = (byte) gap;
+			freqs[size - 1]++;
+			return this;
+		}
+
+		/*
+		 * Hängt alle Postings einer anderen Liste an, deren Werke nach den bisherigen kommen (z.B. beim Zusammenführen
+		 * von Teil-Indexen). Die Positionen werden als Bytes übernommen, da die Abstände in jedem Werk neu beginnen.
+		 */
+		public Builder add(PositionalPostings postings) {
+			int n = postings.size();
+			if (n == 0) {
+				return this;
+			}
+			if (size > 0 && docs[size - 1] >= postings.docs[0]) {
+				throw new IllegalArgumentException("Werk-Ids müssen aufsteigend hinzugefügt werden: " + postings.docs[0]);
+			}
+			if (size + n > docs.length) {
+				int capacity = Math.max(size + n, size * 2);
+				docs = Arrays.copyOf(docs, capacity);
+				freqs = Arrays.copyOf(freqs, capacity);
+				offsets = Arrays.copyOf(offsets, capacity + 1);
+			}
+			int length = postings.offsets[n] - postings.offsets[0];
+			if (bytes + length + 5 > positions.length) {
+				positions = Arrays.copyOf(positions, Math.max(bytes + length + 5, positions.length * 2));
+			}
+			for (int i = 0; i < n; i++) {
+				docs[size + i] = postings.docs[i];
+				freqs[size + i] = postings.freqs[i];
+				offsets[size + i] = bytes + postings.offsets[i] - postings.offsets[0];
+			}
+			System.arraycopy(postings.positions, postings.offsets[0], positions, bytes, length);
+			size += n;
+			bytes += length;
+			// für weitere add(docId, position) im letzten Werk:
+			int[] last = postings.positions(n - 1);
+			lastPosition = last.length == 0 ? 0 : last[last.length - 1];
+			return this;
+		}
+
+		/*
+		 * Alle Positionen eines Werks auf einmal (aufsteigend, die ersten n Einträge von positions).
+		 */
+		public Builder add(int docId, int[] positions, int n) {
+			for (int j = 0; j < n; j++) {
+				add(docId, positions[j]);
+			}
+			return this;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public PositionalPostings build() {
+			offsets[size] = bytes;
+			return new PositionalPostings(Arrays.copyOf(docs, size), Arrays.copyOf(freqs, size), Arrays.copyOf(
+					offsets, size + 1), Arrays.copyOf(positions, bytes));
+		}
+	}
+
+}
@@ -0,0 +1,396 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+import java.util.Arrays;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/*
+ * Postings-Liste mit primitiver Speicherung statt TreeSet<Integer> (dort kostet jedes Posting ein Integer-Objekt plus
+ * einen Knoten im Rot-Schwarz-Baum, zusammen ca. 40 Bytes und mehr). Während der Indexierung sammelt ein Builder die
+ * Ids in einem int[], am Ende wird die Liste 'versiegelt' und je nach Dichte in einer von drei Formen abgelegt:
+ *
+ * - als sortiertes int[] (Standard, schneller Zugriff),
+ *
+ * - delta- und variable-byte-kodiert für seltene ('kalte') Terme: gespeichert werden nur die Abstände zwischen
+ * aufeinanderfolgenden Ids, jeweils in so wenigen Bytes wie nötig (7 Bit pro Byte, Manning et al. 2008, Kap. 5.3),
+ *
+ * - als Bitset für sehr häufige Terme, die in einem großen Teil der Dokumente vorkommen.
+ *
+ * Gelesen wird über einen Cursor, der die Ids als primitive ints liefert. Listen mit mehr als einer Handvoll Einträgen
+ * haben Skip-Pointer im Abstand von etwa sqrt(n) Einträgen (Manning et al. 2008, Kap. 2.3), über die advance()
+ * ganze Blöcke überspringen kann.
+ */
+public abstract class PostingsList {
+
+	// Terme mit höchstens so vielen Postings gelten als 'kalt' und werden komprimiert:
+	static final int COLD_MAX = 128;
+
+	// Kürzere Listen bekommen keine Skip-Pointer (lineares Lesen ist dort billiger):
+	static final int SKIP_MIN = 16;
+
+	public abstract int size();
+
+	public abstract Cursor cursor();
+
+	/*
+	 * Ungefährer Speicherbedarf der Postings in Bytes.
+	 */
+	public abstract long sizeInBytes();
+
+	public int[] toArray() {
+		int[] result = new int[size()];
+		Cursor cursor = cursor();
+		for (int i = 0; cursor.next() != Cursor.NO_MORE_DOCS; i++) {
+			result[i] = cursor.doc();
+		}
+		return result;
+	}
+
+	public SortedSet<Integer> toSet() {
+		SortedSet<Integer> result = new TreeSet<Integer>();
+		for (int id : toArray()) {
+			result.add(id);
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+	/*
+	 * Eine (unkomprimierte) Liste aus sortierten Ids.
+	 */
+	public static PostingsList of(int... docIds) {
+		return new ArrayPostings(docIds, docIds.length);
+	}
+
+	/*
+	 * Sammelt Ids in aufsteigender Reihenfolge (Duplikate der letzten Id werden ignoriert, wie beim Hinzufügen zum
+	 * Set bei mehrfachem Vorkommen eines Terms im selben Werk).
+	 */
+	public static final class Builder {
+
+		private int[] ids = new int[4];
+		private int size;
+
+		public Builder add(int docId) {
+			if (size > 0 && ids[size - 1] >= docId) {
+				if (ids[size - 1] == docId) {
+					return this;
+				}
+				throw new IllegalArgumentException("Ids müssen aufsteigend hinzugefügt werden: " + docId);
+			}
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = docId;
+			return this;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		/*
+		 * Als einfaches int[] (z.B. für Zwischenergebnisse).
+		 */
+		public PostingsList build() {
+			return new ArrayPostings(ids, size);
+		}
+
+		/*
+		 * Wählt die Darstellung anhand der Anzahl der Dokumente im Index.
+		 */
+		public PostingsList seal(int numDocs) {
+			if (size > 0 && (numDocs + 63) / 64 * 8L < 4L * size) {
+				return new BitsetPostings(ids, size, numDocs);
+			}
+			if (size <= COLD_MAX) {
+				return new VByteDeltaPostings(ids, size);
+			}
+			return new ArrayPostings(Arrays.copyOf(ids, size), size);
+		}
+	}
+
+	/*
+	 * Cursor über eine Postings-Liste: steht anfangs vor dem ersten Eintrag, next() rückt vor und liefert die Id bzw.
+	 * NO_MORE_DOCS am Ende.
+	 */
+	public abstract static class Cursor {
+
+		public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+		protected int doc = -1;
+
+		public int doc() {
+			return doc;
+		}
+
+		public abstract int next();
+
+		/*
+		 * Rückt bis zur ersten Id >= target vor (hier einfach linear, Unterklassen springen über Skip-Pointer).
+		 */
+		public int advance(int target) {
+			while (doc < target) {
+				next();
+			}
+			return doc;
+		}
+
+		/*
+		 * Wie advance(), aber mit exponentieller Suche ('galloping', Bentley & Yao 1976): Wir springen 1, 2, 4, ...
+		 * Einträge weiter, bis wir über target hinaus sind, und suchen dann binär im letzten Intervall. Das kostet
+		 * O(log d) für einen Sprung über d Einträge und lohnt sich, wenn eine sehr kurze Liste eine sehr lange
+		 * 'abfragt'. Ohne wahlfreien Zugriff (z.B. bei komprimierten Listen) bleibt es bei advance().
+		 */
+		public int gallop(int target) {
+			return advance(target);
+		}
+	}
+
+	/*
+	 * Abstand der Skip-Pointer für eine Liste der Länge n (0 = keine Skip-Pointer).
+	 */
+	static int skipInterval(int n) {
+		return n < SKIP_MIN ? 0 : (int) Math.sqrt(n);
+	}
+
+	static final class ArrayPostings extends PostingsList {
+
+		private final int[] ids;
+		private final int size;
+
+		ArrayPostings(int[] ids, int size) {
+			this.ids = ids;
+			this.size = size;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public int[] toArray() {
+			return Arrays.copyOf(ids, size);
+		}
+
+		@Override
+		public long sizeInBytes() {
+			return 4L * ids.length;
+		}
+
+		/*
+		 * Im int[] sind die Skip-Pointer implizit: von Index i aus zeigt der Pointer auf i + skip.
+		 */
+		@Override
+		public Cursor cursor() {
+			final int skip = skipInterval(size);
+			return new Cursor() {
+				private int i = -1;
+
+				@Override
+				public int next() {
+					return doc = ++i < size ? ids[i] : NO_MORE_DOCS;
+				}
+
+				@Override
+				public int advance(int target) {
+					if (doc >= target) {
+						return doc;
+					}
+					if (skip > 0) {
+						// wir folgen dem Skip-Pointer, solange sein Ziel noch nicht hinter target liegt:
+						int j = Math.max(i, 0);
+						while (j + skip < size && ids[j + skip] <= target) {
+							j += skip;
+						}
+						i = j - 1;
+					}
+					while (next() < target) {
+						// linear im letzten Block
+					}
+					return doc;
+				}
+
+				@Override
+				public int gallop(int target) {
+					if (doc >= target) {
+						return doc;
+					}
+					int lo = i + 1;// erster Kandidat
+					int step = 1;
+					int hi = lo;
+					while (hi < size && ids[hi] < target) {
+						lo = hi + 1;
+						hi = lo + step;
+						step <<= 1;
+					}
+					// binäre Suche nach dem ersten Eintrag >= target in [lo, min(hi, size)):
+					hi = Math.min(hi, size);
+					while (lo < hi) {
+						int mid = (lo + hi) >>> 1;
+						if (ids[mid] < target) {
+							lo = mid + 1;
+						} else {
+							hi = mid;
+						}
+					}
+					i = lo;
+					return doc = i < size ? ids[i] : NO_MORE_DOCS;
+				}
+			};
+		}
+	}
+
+	static final class VByteDeltaPostings extends PostingsList {
+
+		private final byte[] bytes;
+		private final int size;
+		/*
+		 * Skip-Pointer: für jeden skip-ten Eintrag die Id und die Byte-Position, ab der der nächste Eintrag kodiert ist.
+		 * Ab dort lässt sich weiterlesen, ohne die Lücken davor zu dekodieren.
+		 */
+		private final int skip;
+		private final int[] skipDocs;
+		private final int[] skipOffsets;
+
+		VByteDeltaPostings(int[] ids, int size) {
+			this.size = size;
+			skip = skipInterval(size);
+			skipDocs = new int[skip == 0 ? 0 : size / skip];
+			skipOffsets = new int[skipDocs.length];
+			byte[] buffer = new byte[5 * size];
+			int n = 0;
+			int previous = 0;
+			for (int i = 0; i < size; i++) {
+				if (skip > 0 && i > 0 && i % skip == 0) {
+					skipDocs[i / skip - 1] = previous;
+					skipOffsets[i / skip - 1] = n;
+				}
+				int gap = ids[i] - previous;
+				previous = ids[i];
+				// niederwertige 7-Bit-Gruppen zuerst, gesetztes hohes Bit = 'es folgt noch ein Byte':
+				while ((gap & ~0x7F) != 0) {
+					buffer[n++] = (byte) ((gap & 0x7F) | 0x80);
+					gap >>>= 7;
+				}
+				buffer[n++] = (byte) gap;
+			}
+			bytes = Arrays.copyOf(buffer, n);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public long sizeInBytes() {
+			return bytes.length + 8L * skipDocs.length;
+		}
+
+		@Override
+		public Cursor cursor() {
+			return new Cursor() {
+				private int pos;
+				private int read;
+
+				@Override
+				public int advance(int target) {
+					if (doc >= target || skip == 0) {
+						return super.advance(target);
+					}
+					// der letzte Skip-Pointer vor target, sofern er vor uns liegt:
+					int k = read / skip - 1;
+					while (k + 1 < skipDocs.length && skipDocs[k + 1] < target) {
+						k++;
+					}
+					if (k >= 0 && (k + 1) * skip > read) {
+						read = (k + 1) * skip;
+						pos = skipOffsets[k];
+						doc = skipDocs[k];
+					}
+					while (next() < target) {
+						// linear im letzten Block
+					}
+					return doc;
+				}
+
+				@Override
+				public int next() {
+					if (read == size) {
+						return doc = NO_MORE_DOCS;
+					}
+					int gap = 0;
+					int shift = 0;
+					byte b;
+					do {
+						b = bytes[pos++];
+						gap |= (b & 0x7F) << shift;
+						shift += 7;
+					} while ((b & 0x80) != 0);
+					read++;
+					return doc = (read == 1 ? 0 : doc) + gap;
+				}
+			};
+		}
+	}
+
+	static final class BitsetPostings extends PostingsList {
+
+		private final long[] words;
+		private final int size;
+
+		BitsetPostings(int[] ids, int size, int numDocs) {
+			this.size = size;
+			words = new long[(Math.max(numDocs, ids[size - 1] + 1) + 63) >>> 6];
+			for (int i = 0; i < size; i++) {
+				words[ids[i] >>> 6] |= 1L << ids[i];
+			}
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public long sizeInBytes() {
+			return 8L * words.length;
+		}
+
+		@Override
+		public Cursor cursor() {
+			return new Cursor() {
+				@Override
+				public int next() {
+					return doc == NO_MORE_DOCS ? doc : advance(doc + 1);
+				}
+
+				@Override
+				public int advance(int target) {
+					if (target <= doc) {
+						return doc;
+					}
+					int w = target >>> 6;
+					if (w >= words.length) {
+						return doc = NO_MORE_DOCS;
+					}
+					long word = words[w] & (-1L << target);
+					while (word == 0) {
+						if (++w == words.length) {
+							return doc = NO_MORE_DOCS;
+						}
+						word = words[w];
+					}
+					return doc = (w << 6) + Long.numberOfTrailingZeros(word);
+				}
+			};
+		}
+	}
+
+}
@@ -2,60 +2,191 @@ package de.uni_koeln.spinfo.textengineering.ir.boole;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.Set;
 
 /*
- * Einfacher Preprocessor: splittet und gibt sortierte Types zurück.
+ * Einfacher Preprocessor: splittet und gibt sortierte Types zurück. Zerlegt
+ * wird mit dem Tokenizer (Tokens = Folgen von Buchstaben, wie beim früheren
+ * split mit dem Unicode-wirksamen Ausdruck "[^\\p{L}]"); die Methoden hier
+ * sammeln nur dessen Ergebnisse in Listen.
+ *
+ * Die Verarbeitung ist eine Kette: Tokenizer -> Kleinschreibung ->
+ * Stoppwortfilter -> Stemmer -> Termverzeichnis. Ohne weitere Angaben bleibt es
+ * wie bisher bei den kleingeschriebenen Tokens; Stoppwörter, Stemmer und
+ * Termverzeichnis sind optional (null = Schritt entfällt), z.B.:
+ *
+ * new Preprocessor(new TermDictionary(), StopWords.ENGLISH, new EnglishStemmer())
+ *
+ * bzw. kürzer Preprocessor.english(dictionary). Mit Termverzeichnis sind alle
+ * gelieferten Terme die gemeinsamen Instanzen des Verzeichnisses.
+ *
+ * Für Anfragen gibt es forQueries(): derselbe Ablauf, aber das Verzeichnis
+ * wird nur gelesen - unbekannte Terme (Tippfehler, Wörter, die in keinem
+ * Dokument vorkommen) werden nicht aufgenommen, sondern unverändert
+ * durchgereicht.
  */
 
 public final class Preprocessor {
 
-	/*
-	 * Ein Unicode-wirksamer Ausdruck für "Nicht-Buchstabe", der auch Umlaute
-	 * berücksichtigt; die einfache (ASCII) Version ist: "\\W"
-	 */
-	private static final String UNICODE_AWARE_DELIMITER = "[^\\p{L}]";
-//	private static final String ASCII_DELIMITER = "\\W";
-	private String delimiter;
+	private final TermDictionary dictionary;
+	private final Set<String> stopWords;
+	private final Stemmer stemmer;
+	// nur nachschlagen, nichts ins Termverzeichnis aufnehmen (Anfragen):
+	private final boolean lookupOnly;
 
 	public Preprocessor() {
-		delimiter = UNICODE_AWARE_DELIMITER;
+		this(null, null, null);
+	}
+
+	public Preprocessor(TermDictionary dictionary) {
+		this(dictionary, null, null);
+	}
+
+	public Preprocessor(TermDictionary dictionary, Set<String> stopWords, Stemmer stemmer) {
+		this(dictionary, stopWords, stemmer, false);
+	}
+
+	private Preprocessor(TermDictionary dictionary, Set<String> stopWords, Stemmer stemmer, boolean lookupOnly) {
+		this.dictionary = dictionary;
+		this.stopWords = stopWords;
+		this.stemmer = stemmer;
+		this.lookupOnly = lookupOnly;
+	}
+
+	public static Preprocessor english(TermDictionary dictionary) {
+		return new Preprocessor(dictionary, StopWords.ENGLISH, new EnglishStemmer());
+	}
+
+	public static Preprocessor german(TermDictionary dictionary) {
+		return new Preprocessor(dictionary, StopWords.GERMAN, new GermanStemmer());
+	}
+
+	/*
+	 * Derselbe Preprocessor für Anfragen: Terme werden im Termverzeichnis nur
+	 * nachgeschlagen; bekannte Terme sind die gemeinsamen Instanzen, unbekannte
+	 * bleiben eigene Strings (und ids() liefert für sie -1).
+	 */
+	public Preprocessor forQueries() {
+		return dictionary == null || lookupOnly ? this : new Preprocessor(dictionary, stopWords, stemmer, true);
 	}
 
 	/*
 	 * Gibt eine Liste der Terme zurück
 	 */
 	public List<String> process(String text) {
-		/* Einheitliches lower-casing */
-		text = text.toLowerCase();
-		SortedSet<String> result = new TreeSet<String>();
-		/* splitten, leere Strings filtern: */
-		List<String> list = Arrays.asList(text.split(delimiter));
-		for (String s : list) {
-			if (s.trim().length() > 0) {
-				result.add(s.trim());
+		/* Tokens kleingeschrieben sammeln, dann sortieren und Duplikate entfernen: */
+		List<String> tokens = tokenize(text);
+		Collections.sort(tokens);
+		int n = 0;
+		for (int i = 0; i < tokens.size(); i++) {
+			if (n == 0 || !tokens.get(i).equals(tokens.get(n - 1))) {
+				tokens.set(n++, tokens.get(i));
+			}
+		}
+		return new ArrayList<String>(tokens.subList(0, n));
+	}
+
+	/*
+	 * Die Zeichenpositionen der Tokens im (unveränderten) Text, als Paare
+	 * [Anfang, Ende) hintereinander: Token i reicht von result[2*i] bis
+	 * result[2*i+1].
+	 */
+	public int[] offsets(String text) {
+		int[] result = new int[16];
+		int n = 0;
+		Tokenizer tokenizer = new Tokenizer(text);
+		while (tokenizer.next()) {
+			if (n + 2 > result.length) {
+				result = Arrays.copyOf(result, result.length * 2);
 			}
+			result[n++] = tokenizer.start();
+			result[n++] = tokenizer.end();
 		}
-		return new ArrayList<String>(result);
+		return Arrays.copyOf(result, n);
 	}
 
 	/*
-	 * Gibt eine Liste der Tokens zurück
+	 * Gibt eine Liste der Tokens zurück (nach Stoppwortfilter und Stemmer)
 	 */
 	public List<String> tokenize(String text) {
-		/* Einheitliches lower-casing */
-		text = text.toLowerCase();
+		/* Einheitliches lower-casing übernimmt der Tokenizer: */
 		List<String> result = new ArrayList<String>();
-		/* splitten, leere Strings filtern: */
-		List<String> list = Arrays.asList(text.split(delimiter));
-		for (String s : list) {
-			if (s.trim().length() > 0) {
-				result.add(s.trim());
+		Tokenizer tokenizer = new Tokenizer(text);
+		while (tokenizer.next()) {
+			String term = term(tokenizer);
+			if (term != null) {
+				result.add(term);
 			}
 		}
 		return result;
 	}
 
+	/*
+	 * Die Ids der Terme im Termverzeichnis, in Textreihenfolge (für Anfragen -1
+	 * bei unbekannten Termen).
+	 */
+	public int[] ids(String text) {
+		if (dictionary == null) {
+			throw new IllegalStateException("Preprocessor ohne Termverzeichnis");
+		}
+		int[] result = new int[16];
+		int n = 0;
+		Tokenizer tokenizer = new Tokenizer(text);
+		while (tokenizer.next()) {
+			int id;
+			if (stopWords == null && stemmer == null && !lookupOnly) {
+				id = dictionary.add(tokenizer.termBuffer(), 0, tokenizer.termLength());
+			} else {
+				String term = term(tokenizer);
+				if (term == null) {
+					continue;
+				}
+				id = lookupOnly ? dictionary.id(term) : dictionary.add(term);
+			}
+			if (n == result.length) {
+				result = Arrays.copyOf(result, n * 2);
+			}
+			result[n++] = id;
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	public TermDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/*
+	 * Der Term zum aktuellen Token, oder null, wenn es ein Stoppwort ist.
+	 */
+	String term(Tokenizer tokenizer) {
+		if (stopWords == null && stemmer == null) {
+			// ohne weitere Schritte: direkt aus dem Puffer des Tokenizers nachschlagen
+			if (dictionary == null) {
+				return tokenizer.term();
+			}
+			if (!lookupOnly) {
+				return dictionary.intern(tokenizer.termBuffer(), 0, tokenizer.termLength());
+			}
+			String known = dictionary.lookup(tokenizer.termBuffer(), 0, tokenizer.termLength());
+			return known != null ? known : tokenizer.term();
+		}
+		String term = tokenizer.term();
+		if (stopWords != null && stopWords.contains(term)) {
+			return null;
+		}
+		if (stemmer != null) {
+			term = stemmer.stem(term);
+		}
+		if (dictionary == null) {
+			return term;
+		}
+		if (!lookupOnly) {
+			return dictionary.intern(term);
+		}
+		String known = dictionary.lookup(term);
+		return known != null ? known : term;
+	}
+
 }
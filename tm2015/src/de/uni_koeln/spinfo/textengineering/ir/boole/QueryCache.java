@@ -0,0 +1,184 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Zwischenspeicher für Suchergebnisse: Wenige Anfragen machen den Großteil aller Anfragen aus, deren Ergebnisse
+ * (und häufige Teilergebnisse wie die Schnittmenge zweier Terme, siehe QueryPlanner) halten wir als int[] vor.
+ *
+ * - Schlüssel ist die normalisierte Anfrage (nach dem Preprocessor, z.B. "(brutus AND caesar)").
+ *
+ * - Begrenzt ist der Speicher in Bytes, nicht die Anzahl der Einträge; verdrängt werden die am längsten nicht
+ * benutzten Einträge (LRU: jeder Treffer merkt sich den Zeitpunkt, ist das Budget überschritten, werden die ältesten
+ * Einträge auf einmal entfernt, bis wieder ein Zehntel frei ist).
+ *
+ * - Teilergebnisse werden erst aufgenommen, wenn sie wiederholt angefragt wurden (frequent()), damit seltene Paare
+ * die häufigen Einträge nicht verdrängen.
+ *
+ * - Einträge gehören immer zu einem Stand ('generation', aufsteigend) des Index; ändert sich der Index, beginnt mit
+ * invalidate() ein neuer Stand. Ergebnisse für einen veralteten Stand werden weder geliefert noch aufgenommen.
+ *
+ * Lesen (get) geht ohne Sperren: Die Einträge eines Stands liegen in einer ConcurrentHashMap, der Stand selbst wird
+ * als Ganzes ausgetauscht. Nur Aufnehmen mit Verdrängen ist synchronisiert.
+ */
+public final class QueryCache {
+
+	// Verwaltungsaufwand pro Eintrag (Map-Eintrag, Array- und String-Kopf), geschätzt:
+	private static final int ENTRY_OVERHEAD = 96;
+	// so oft muss ein Teilergebnis angefragt werden, bevor es aufgenommen wird:
+	private static final int MIN_COUNT = 2;
+	// höchstens so viele Zähler, danach fangen wir neu an zu zählen:
+	private static final int MAX_COUNTERS = 10000;
+
+	private final long maxBytes;
+	private final AtomicReference<Generation> current = new AtomicReference<Generation>(new Generation(0));
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger misses = new AtomicInteger();
+
+	public QueryCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/*
+	 * Das gespeicherte Ergebnis, oder null (auch wenn 'generation' nicht der aktuelle Stand ist). Das Array darf nicht
+	 * verändert werden.
+	 */
+	public int[] get(long generation, String key) {
+		Generation g = current.get();
+		Entry entry = g.number == generation ? g.entries.get(key) : null;
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		entry.used = System.nanoTime();
+		hits.incrementAndGet();
+		return entry.docs;
+	}
+
+	public int[] get(String key) {
+		return get(0, key);
+	}
+
+	public void put(long generation, String key, int[] docs) {
+		long size = size(key, docs);
+		Generation g = current.get();
+		if (g.number != generation || size > maxBytes) {
+			return;
+		}
+		Entry old = g.entries.put(key, new Entry(docs, System.nanoTime()));
+		synchronized (g) {
+			g.bytes += size - (old == null ? 0 : size(key, old.docs));
+			if (g.bytes > maxBytes) {
+				evict(g);
+			}
+		}
+	}
+
+	public void put(String key, int[] docs) {
+		put(0, key, docs);
+	}
+
+	/*
+	 * Zählt eine Anfrage nach dem Schlüssel; true, sobald sie häufig genug war, um aufgenommen zu werden.
+	 */
+	public boolean frequent(String key) {
+		ConcurrentMap<String, AtomicInteger> counts = current.get().counts;
+		if (counts.size() >= MAX_COUNTERS) {
+			counts.clear();
+		}
+		AtomicInteger count = counts.get(key);
+		if (count == null) {
+			AtomicInteger first = new AtomicInteger();
+			count = counts.putIfAbsent(key, first);
+			count = count == null ? first : count;
+		}
+		return count.incrementAndGet() >= MIN_COUNT;
+	}
+
+	/*
+	 * Beginnt einen neuen Stand (ältere Stände werden ignoriert, falls Änderungen sich überholen).
+	 */
+	public void invalidate(long generation) {
+		while (true) {
+			Generation g = current.get();
+			if (g.number >= generation || current.compareAndSet(g, new Generation(generation))) {
+				return;
+			}
+		}
+	}
+
+	public int size() {
+		return current.get().entries.size();
+	}
+
+	public long sizeInBytes() {
+		Generation g = current.get();
+		synchronized (g) {
+			return g.bytes;
+		}
+	}
+
+	public int getHits() {
+		return hits.get();
+	}
+
+	public int getMisses() {
+		return misses.get();
+	}
+
+	/*
+	 * Entfernt die am längsten nicht benutzten Einträge (aufgerufen mit Sperre auf g).
+	 */
+	private void evict(Generation g) {
+		List<Map.Entry<String, Entry>> entries = new ArrayList<Map.Entry<String, Entry>>(g.entries.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, Entry>>() {
+			@Override
+			public int compare(Map.Entry<String, Entry> o1, Map.Entry<String, Entry> o2) {
+				return Long.valueOf(o1.getValue().used).compareTo(o2.getValue().used);
+			}
+		});
+		for (int i = 0; i < entries.size() && g.bytes > maxBytes - maxBytes / 10; i++) {
+			Map.Entry<String, Entry> e = entries.get(i);
+			if (g.entries.remove(e.getKey(), e.getValue())) {
+				g.bytes -= size(e.getKey(), e.getValue().docs);
+			}
+		}
+	}
+
+	private static long size(String key, int[] docs) {
+		return ENTRY_OVERHEAD + 2L * key.length() + 4L * docs.length;
+	}
+
+	private static final class Entry {
+		final int[] docs;
+		volatile long used;
+
+		Entry(int[] docs, long used) {
+			this.docs = docs;
+			this.used = used;
+		}
+	}
+
+	/*
+	 * Die Einträge eines Stands des Index.
+	 */
+	private static final class Generation {
+		final long number;
+		final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+		final ConcurrentMap<String, AtomicInteger> counts = new ConcurrentHashMap<String, AtomicInteger>();
+		long bytes;// mit Sperre auf diesem Objekt
+
+		Generation(long number) {
+			this.number = number;
+		}
+	}
+
+}
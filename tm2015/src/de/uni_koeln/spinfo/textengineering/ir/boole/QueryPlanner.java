@@ -0,0 +1,304 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * Übersetzt eine BooleanQuery in einen Ausführungsplan. Grundlage ist die Heuristik aus Manning et al. 2008, S. 11f.:
+ * die Terme einer Konjunktion in der Reihenfolge steigender Dokumentfrequenz abarbeiten, sodass die Zwischenergebnisse
+ * nie größer als die kürzeste Liste werden. Für zusammengesetzte Teilausdrücke schätzen wir die Größe des Ergebnisses:
+ *
+ * - Term: seine Dokumentfrequenz (df),
+ *
+ * - Phrase: die kleinste df ihrer Terme,
+ *
+ * - Wildcard: wird zur ODER-Verknüpfung der passenden Terme expandiert und dann wie diese geschätzt,
+ *
+ * - OR: die Summe der Teile (obere Schranke für die Vereinigung, höchstens alle Dokumente),
+ *
+ * - AND: das Minimum der nicht verneinten Teile,
+ *
+ * - NOT: alle Dokumente minus die Schätzung für den verneinten Teil.
+ *
+ * Eine Vereinigung, deren Schätzung größer ist als das bisherige Zwischenergebnis einer Konjunktion, wird nicht
+ * berechnet, sondern ausmultipliziert: Das Zwischenergebnis wird mit jeder Alternative einzeln geschnitten.
+ * Verneinte Teile einer Konjunktion werden nicht als (riesiges) Komplement berechnet, sondern am Ende vom
+ * Zwischenergebnis abgezogen. Sobald ein Zwischenergebnis leer ist, hören wir auf - Postings-Listen, die dafür nicht
+ * mehr gebraucht werden, werden gar nicht erst geholt.
+ */
+public final class QueryPlanner {
+
+	/*
+	 * Woher der Planer Dokumentfrequenzen und Postings bekommt (InvertedIndex, PositionalIndex, ...).
+	 */
+	public interface PostingsSource {
+
+		int numDocs();
+
+		int df(String term);
+
+		PostingsList postings(String term);
+
+		/*
+		 * Die Werke, die die Terme als Phrase enthalten.
+		 */
+		PostingsList phrase(List<String> terms);
+
+		/*
+		 * Die Terme des Vokabulars, auf die das Wildcard-Muster passt (begrenzte Anzahl, siehe WildcardIndex).
+		 */
+		List<String> expand(String pattern);
+	}
+
+	private final PostingsSource source;
+	// optional: Zwischenspeicher für die Schnittmengen häufiger Termpaare
+	private final QueryCache cache;
+	private final long generation;
+
+	public QueryPlanner(PostingsSource source) {
+		this(source, null, 0);
+	}
+
+	/*
+	 * @param generation Der Stand der Postings (siehe QueryCache), 0 bei unveränderlichen Indexen
+	 */
+	public QueryPlanner(PostingsSource source, QueryCache cache, long generation) {
+		this.source = source;
+		this.cache = cache;
+		this.generation = generation;
+	}
+
+	public Plan plan(BooleanQuery query) {
+		switch (query.getOp()) {
+		case TERM:
+			return new Plan(query, source.df(query.getTerm()), Collections.<Plan> emptyList());
+		case PHRASE:
+			int df = source.numDocs();
+			for (String term : query.getPhrase()) {
+				df = Math.min(df, source.df(term));
+			}
+			return new Plan(query, df, Collections.<Plan> emptyList());
+		case WILDCARD:
+			List<BooleanQuery> expansion = new ArrayList<BooleanQuery>();
+			for (String term : source.expand(query.getTerm())) {
+				expansion.add(BooleanQuery.term(term));
+			}
+			return expansion.isEmpty() ? new Plan(query, 0, Collections.<Plan> emptyList()) : plan(BooleanQuery
+					.or(expansion));
+		case NOT:
+			Plan negated = plan(query.getSubs().get(0));
+			return new Plan(query, source.numDocs() - negated.estimate, Collections.singletonList(negated));
+		case OR:
+			List<Plan> alternatives = subPlans(query);
+			long sum = 0;
+			for (Plan p : alternatives) {
+				sum += p.estimate;
+			}
+			return new Plan(query, (int) Math.min(sum, source.numDocs()), alternatives);
+		default:// AND
+			List<Plan> parts = subPlans(query);
+			int min = source.numDocs();
+			for (Plan p : parts) {
+				if (p.query.getOp() != BooleanQuery.Op.NOT) {
+					min = Math.min(min, p.estimate);
+				}
+			}
+			return new Plan(query, min, parts);
+		}
+	}
+
+	/*
+	 * Die Teilpläne, aufsteigend nach geschätzter Größe: kleinste Konjunktionsglieder zuerst, und bei OR werden die
+	 * kleinen Listen zuerst vereinigt.
+	 */
+	private List<Plan> subPlans(BooleanQuery query) {
+		List<Plan> result = new ArrayList<Plan>();
+		for (BooleanQuery sub : query.getSubs()) {
+			result.add(plan(sub));
+		}
+		Collections.sort(result, new Comparator<Plan>() {
+			@Override
+			public int compare(Plan o1, Plan o2) {
+				return Integer.valueOf(o1.estimate).compareTo(o2.estimate);
+			}
+		});
+		return result;
+	}
+
+	/*
+	 * Ein Knoten des Ausführungsplans mit der geschätzten Anzahl Treffer.
+	 */
+	public final class Plan {
+
+		private final BooleanQuery query;
+		private final int estimate;
+		private final List<Plan> subs;
+
+		private Plan(BooleanQuery query, int estimate, List<Plan> subs) {
+			this.query = query;
+			this.estimate = estimate;
+			this.subs = subs;
+		}
+
+		public int getEstimate() {
+			return estimate;
+		}
+
+		public List<Plan> getSubs() {
+			return subs;
+		}
+
+		public PostingsList execute() {
+			switch (query.getOp()) {
+			case TERM:
+				return estimate == 0 ? PostingsList.of() : source.postings(query.getTerm());
+			case PHRASE:
+				return estimate == 0 ? PostingsList.of() : source.phrase(query.getPhrase());
+			case WILDCARD:
+				return PostingsList.of();// nur ohne passende Terme, sonst ist der Plan die Expansion
+			case NOT:
+				return andNot(all(), subs.get(0).execute());
+			case OR:
+				PostingsList union = PostingsList.of();
+				for (Plan p : subs) {
+					union = or(union, p.execute());
+				}
+				return union;
+			default:// AND
+				PostingsList result = null;
+				List<Plan> rest = subs;
+				List<Plan> first = new ArrayList<Plan>();
+				for (Plan p : subs) {
+					if (p.query.getOp() != BooleanQuery.Op.NOT && first.size() < 2) {
+						first.add(p);
+					}
+				}
+				if (cache != null && first.size() == 2 && first.get(0).query.getOp() == BooleanQuery.Op.TERM
+						&& first.get(1).query.getOp() == BooleanQuery.Op.TERM) {
+					// die beiden kürzesten Listen: Schnittmenge evtl. schon im Cache
+					result = pair(first.get(0), first.get(1));
+					rest = new ArrayList<Plan>(subs);
+					rest.removeAll(first);
+					if (result.size() == 0) {
+						return result;
+					}
+				}
+				for (Plan p : rest) {
+					if (p.query.getOp() == BooleanQuery.Op.OR && result != null && result.size() < p.estimate) {
+						/*
+						 * Statt erst die (große) Vereinigung zu bilden, schneiden wir das bisherige Ergebnis
+						 * mit jeder Alternative einzeln: r AND (a OR b) = (r AND a) OR (r AND b).
+						 */
+						PostingsList matches = PostingsList.of();
+						for (Plan alternative : p.subs) {
+							matches = or(matches, Intersection.of(result, alternative.execute()));
+						}
+						result = matches;
+					} else if (p.query.getOp() != BooleanQuery.Op.NOT) {
+						result = result == null ? p.execute() : Intersection.of(result, p.execute());
+					}
+					if (result != null && result.size() == 0) {
+						return result;
+					}
+				}
+				// nur verneinte Teile: ausgehend von allen Dokumenten
+				if (result == null) {
+					result = all();
+				}
+				for (Plan p : subs) {
+					if (p.query.getOp() == BooleanQuery.Op.NOT) {
+						result = andNot(result, p.subs.get(0).execute());
+						if (result.size() == 0) {
+							return result;
+						}
+					}
+				}
+				return result;
+			}
+		}
+
+		/*
+		 * Der Plan als Text, mit Schätzungen in eckigen Klammern, z.B. "AND[3](brutus[3], OR[40](...))".
+		 */
+		@Override
+		public String toString() {
+			if (query.getSubs().isEmpty() || query.getOp() == BooleanQuery.Op.PHRASE) {
+				return query + "[" + estimate + "]";
+			}
+			StringBuilder builder = new StringBuilder(query.getOp() + "[" + estimate + "](");
+			for (int i = 0; i < subs.size(); i++) {
+				builder.append(i > 0 ? ", " : "").append(subs.get(i));
+			}
+			return builder.append(")").toString();
+		}
+	}
+
+	/*
+	 * Schnittmenge zweier Terme über den Cache (Schlüssel unabhängig von der Reihenfolge).
+	 */
+	private PostingsList pair(Plan a, Plan b) {
+		String t1 = a.query.getTerm();
+		String t2 = b.query.getTerm();
+		String key = t1.compareTo(t2) < 0 ? t1 + " AND " + t2 : t2 + " AND " + t1;
+		int[] cached = cache.get(generation, key);
+		if (cached != null) {
+			return PostingsList.of(cached);
+		}
+		PostingsList result = Intersection.of(a.execute(), b.execute());
+		if (cache.frequent(key)) {
+			cache.put(generation, key, result.toArray());
+		}
+		return result;
+	}
+
+	private PostingsList all() {
+		PostingsList.Builder builder = new PostingsList.Builder();
+		for (int i = 0; i < source.numDocs(); i++) {
+			builder.add(i);
+		}
+		return builder.build();
+	}
+
+	/*
+	 * Vereinigung zweier Postings-Listen, wie die Intersection als Merge über beide Cursor.
+	 */
+	static PostingsList or(PostingsList pl1, PostingsList pl2) {
+		if (pl1.size() == 0) {
+			return pl2;
+		}
+		PostingsList.Builder answer = new PostingsList.Builder();
+		PostingsList.Cursor c1 = pl1.cursor();
+		PostingsList.Cursor c2 = pl2.cursor();
+		int p1 = c1.next();
+		int p2 = c2.next();
+		while (p1 != PostingsList.Cursor.NO_MORE_DOCS || p2 != PostingsList.Cursor.NO_MORE_DOCS) {
+			if (p1 <= p2) {
+				answer.add(p1);// bei p1 == p2 wird das zweite add ignoriert
+				p1 = c1.next();
+			} else {
+				answer.add(p2);
+				p2 = c2.next();
+			}
+		}
+		return answer.build();
+	}
+
+	/*
+	 * Alle Ids aus pl1, die nicht in pl2 sind. In pl2 wird nur gesprungen (advance), sie wird also nicht komplett
+	 * gelesen, wenn pl1 kurz ist.
+	 */
+	static PostingsList andNot(PostingsList pl1, PostingsList pl2) {
+		PostingsList.Builder answer = new PostingsList.Builder();
+		PostingsList.Cursor c1 = pl1.cursor();
+		PostingsList.Cursor c2 = pl2.cursor();
+		for (int p1 = c1.next(); p1 != PostingsList.Cursor.NO_MORE_DOCS; p1 = c1.next()) {
+			if (c2.advance(p1) != p1) {
+				answer.add(p1);
+			}
+		}
+		return answer.build();
+	}
+
+}
@@ -0,0 +1,491 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/*
+ * Ein Index auf der Festplatte: einmal geschrieben (write), beliebig oft geöffnet (open). Ein Segment 'name' besteht
+ * aus drei Dateien, die beim Öffnen nur in den Adressraum gemappt werden (FileChannel.map) - es wird nichts
+ * eingelesen, die Daten liegen im Page Cache des Betriebssystems statt auf dem Java-Heap:
+ *
+ * - name.terms: Kopf (Kennung, Version, Anzahl Werke, Anzahl Terme), dann pro Term ein Eintrag fester Länge (Beginn
+ * des Terms, Dokumentfrequenz, Beginn der Postings und der Positionen) und die Terme selbst als UTF-8, alphabetisch
+ * sortiert; gesucht wird binär.
+ *
+ * - name.postings: pro Term die Werk-Ids (Abstände) und die Termfrequenzen, variable-byte-kodiert.
+ *
+ * - name.positions: pro Term die Positionen wie in PositionalPostings (delta- und variable-byte-kodiert).
+ *
+ * Die Postings eines Terms werden erst bei Zugriff dekodiert. Eine Datei darf höchstens 2 GB groß sein (ein
+ * MappedByteBuffer).
+ */
+public final class Segment {
+
+	public static final int VERSION = 1;
+	private static final int MAGIC = 0x544d3135;// "TM15"
+	private static final int HEADER = 20;
+	private static final int ENTRY = 24;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ByteBuffer terms;
+	private final ByteBuffer postings;
+	private final ByteBuffer positions;
+	private final int numDocs;
+	private final int size;
+	private final int blob;
+
+	private Segment(ByteBuffer terms, ByteBuffer postings, ByteBuffer positions) throws IOException {
+		if (terms.capacity() < HEADER || terms.getInt(0) != MAGIC) {
+			throw new IOException("Kein Index-Segment");
+		}
+		if (terms.getInt(4) != VERSION) {
+			throw new IOException("Nicht unterstützte Version des Index-Formats: " + terms.getInt(4));
+		}
+		this.terms = terms;
+		this.postings = postings;
+		this.positions = positions;
+		numDocs = terms.getInt(8);
+		size = terms.getInt(12);
+		blob = HEADER + ENTRY * (size + 1);
+	}
+
+	/*
+	 * Schreibt den Index als Segment 'name' in das Verzeichnis (das bei Bedarf angelegt wird).
+	 */
+	public static void write(Path dir, String name, int numDocs, Map<String, PositionalPostings> index)
+			throws IOException {
+		String[] sorted = index.keySet().toArray(new String[index.size()]);
+		Arrays.sort(sorted);
+		Writer writer = new Writer(dir, name, numDocs);
+		try {
+			for (String term : sorted) {
+				writer.add(term, index.get(term));
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/*
+	 * Schreibt ein Segment Term für Term, in alphabetischer Reihenfolge (z.B. direkt aus dem Merge des
+	 * SpimiIndexers): Postings und Positionen gehen sofort in ihre Dateien, im Speicher bleibt nur das
+	 * Termverzeichnis, das close() zuletzt schreibt - ohne es ist ein halb geschriebenes Segment nicht zu öffnen.
+	 *
+	 * Geschrieben wird in temporäre Dateien (name.*.tmp); erst close() benennt sie um, das Termverzeichnis zuletzt
+	 * und nachdem das alte gelöscht ist. Ein bestehendes Segment bleibt so bei einem Fehler unverändert, und wer es
+	 * gerade gemappt hat, liest weiter die alten Dateien (sie werden nicht überschrieben, nur ersetzt).
+	 */
+	public static final class Writer implements Closeable {
+
+		private final Path dir;
+		private final String name;
+		private final int numDocs;
+		private final long start = System.currentTimeMillis();
+		private final DataOutputStream postingsOut;
+		private final DataOutputStream positionsOut;
+		private final ByteArrayOutputStream blob = new ByteArrayOutputStream();
+		private final byte[] buffer = new byte[5];
+		// pro Term: Beginn im Blob, df, Beginn der Postings und der Positionen
+		private int[] termOffsets = new int[64];
+		private int[] dfs = new int[64];
+		private long[] postingsOffsets = new long[64];
+		private long[] positionsOffsets = new long[64];
+		private int size;
+		private long p;
+		private long q;
+		private String last;
+		private boolean closed;
+		// nach einem Fehler schreibt close() kein Termverzeichnis:
+		private boolean failed;
+
+		public Writer(Path dir, String name, int numDocs) throws IOException {
+			Files.createDirectories(dir);
+			this.dir = dir;
+			this.name = name;
+			this.numDocs = numDocs;
+			postingsOut = open(temp(".postings"));
+			try {
+				positionsOut = open(temp(".positions"));
+			} catch (IOException e) {
+				postingsOut.close();
+				throw e;
+			}
+		}
+
+		private Path temp(String suffix) {
+			return dir.resolve(name + suffix + ".tmp");
+		}
+
+		/*
+		 * Der nächste Term, alphabetisch nach dem vorigen.
+		 */
+		public void add(String term, PositionalPostings postings) throws IOException {
+			if (last != null && last.compareTo(term) >= 0) {
+				failed = true;
+				throw new IllegalArgumentException("Terme nicht sortiert: " + term + " nach " + last);
+			}
+			last = term;
+			try {
+				write(term, postings);
+			} catch (IOException e) {
+				failed = true;
+				throw e;
+			}
+		}
+
+		private void write(String term, PositionalPostings postings) throws IOException {
+			if (size == dfs.length) {
+				termOffsets = Arrays.copyOf(termOffsets, size * 2);
+				dfs = Arrays.copyOf(dfs, size * 2);
+				postingsOffsets = Arrays.copyOf(postingsOffsets, size * 2);
+				positionsOffsets = Arrays.copyOf(positionsOffsets, size * 2);
+			}
+			termOffsets[size] = blob.size();
+			dfs[size] = postings.size();
+			postingsOffsets[size] = p;
+			positionsOffsets[size] = q;
+			size++;
+			blob.write(term.getBytes(UTF8));
+			int previous = 0;
+			for (int j = 0; j < postings.size(); j++) {
+				int n = vByte(postings.docId(j) - previous, buffer);
+				postingsOut.write(buffer, 0, n);
+				p += n;
+				previous = postings.docId(j);
+			}
+			for (int j = 0; j < postings.size(); j++) {
+				int n = vByte(postings.freq(j), buffer);
+				postingsOut.write(buffer, 0, n);
+				p += n;
+			}
+			byte[] bytes = postings.positionBytes();
+			positionsOut.write(bytes);
+			q += bytes.length;
+			if (p > Integer.MAX_VALUE || q > Integer.MAX_VALUE) {
+				throw new IOException("Segment zu groß (höchstens 2 GB pro Datei)");
+			}
+		}
+
+		/*
+		 * Schließt Postings und Positionen und schreibt das Termverzeichnis (nicht nach einem Fehler in add()).
+		 */
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				postingsOut.close();
+			} finally {
+				positionsOut.close();
+			}
+			if (failed) {
+				delete();
+				return;
+			}
+			DataOutputStream out = open(temp(".terms"));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(numDocs);
+				out.writeInt(size);
+				out.writeInt(blob.size());
+				for (int i = 0; i < size; i++) {
+					out.writeInt(termOffsets[i]);
+					out.writeInt(dfs[i]);
+					out.writeLong(postingsOffsets[i]);
+					out.writeLong(positionsOffsets[i]);
+				}
+				out.writeInt(blob.size());
+				out.writeInt(0);
+				out.writeLong(p);
+				out.writeLong(q);
+				blob.writeTo(out);
+			} catch (IOException e) {
+				out.close();
+				delete();
+				throw e;
+			}
+			out.close();
+			// ohne Termverzeichnis ist das Segment nicht zu öffnen, solange die übrigen Dateien ersetzt werden:
+			Files.deleteIfExists(dir.resolve(name + ".terms"));
+			for (String suffix : new String[] { ".postings", ".positions", ".terms" }) {
+				Files.move(temp(suffix), dir.resolve(name + suffix), StandardCopyOption.ATOMIC_MOVE);
+			}
+			System.out.println("Segment " + dir.resolve(name) + " geschrieben (" + size + " Terme), Dauer: "
+					+ (System.currentTimeMillis() - start) + " ms.");
+		}
+
+		private void delete() throws IOException {
+			for (String suffix : new String[] { ".postings", ".positions", ".terms" }) {
+				Files.deleteIfExists(temp(suffix));
+			}
+		}
+	}
+
+	/*
+	 * Öffnet das Segment 'name' im Verzeichnis (nur lesend).
+	 */
+	public static Segment open(Path dir, String name) throws IOException {
+		return new Segment(map(dir.resolve(name + ".terms")), map(dir.resolve(name + ".postings")),
+				map(dir.resolve(name + ".positions")));
+	}
+
+	public int numDocs() {
+		return numDocs;
+	}
+
+	/*
+	 * Anzahl der Terme.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * Der i-te Term in alphabetischer Reihenfolge.
+	 */
+	public String term(int i) {
+		int from = terms.getInt(HEADER + ENTRY * i);
+		int to = terms.getInt(HEADER + ENTRY * (i + 1));
+		byte[] bytes = new byte[to - from];
+		for (int j = 0; j < bytes.length; j++) {
+			bytes[j] = terms.get(blob + from + j);
+		}
+		return new String(bytes, UTF8);
+	}
+
+	/*
+	 * Der Index des Terms (binäre Suche), negativ, wenn er nicht enthalten ist.
+	 */
+	public int indexOf(String term) {
+		int lo = 0;
+		int hi = size - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int c = term(mid).compareTo(term);
+			if (c < 0) {
+				lo = mid + 1;
+			} else if (c > 0) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(lo + 1);
+	}
+
+	public int df(int i) {
+		return terms.getInt(HEADER + ENTRY * i + 4);
+	}
+
+	/*
+	 * Die Postings des i-ten Terms, aus den gemappten Dateien dekodiert.
+	 */
+	public PositionalPostings postings(int i) {
+		int n = df(i);
+		int[] docs = new int[n];
+		int[] freqs = new int[n];
+		int pos = (int) terms.getLong(HEADER + ENTRY * i + 8);
+		int previous = 0;
+		int[] value = new int[1];
+		for (int j = 0; j < n; j++) {
+			pos = readVByte(postings, pos, value);
+			previous += value[0];
+			docs[j] = previous;
+		}
+		for (int j = 0; j < n; j++) {
+			pos = readVByte(postings, pos, value);
+			freqs[j] = value[0];
+		}
+		int from = (int) terms.getLong(HEADER + ENTRY * i + 16);
+		int to = (int) terms.getLong(HEADER + ENTRY * (i + 1) + 16);
+		byte[] bytes = new byte[to - from];
+		// absolut lesen: die Puffer werden von mehreren Threads geteilt
+		ByteBuffer view = positions.duplicate();
+		view.position(from);
+		view.get(bytes);
+		return PositionalPostings.of(docs, freqs, bytes);
+	}
+
+	/*
+	 * Die Dokumentfrequenzen aller Terme (z.B. für SpellingCorrector); liest nur das Termverzeichnis.
+	 */
+	public Map<String, Integer> dfs() {
+		Map<String, Integer> result = new HashMap<String, Integer>(size * 2);
+		for (int i = 0; i < size; i++) {
+			result.put(term(i), df(i));
+		}
+		return result;
+	}
+
+	/*
+	 * Das Segment als (unveränderliche) Map, so dass es die Map eines Index im Speicher ersetzen kann. Die Werte
+	 * werden bei jedem Zugriff neu dekodiert und umgewandelt.
+	 */
+	public <V> Map<String, V> asMap(final Values<V> values) {
+		return new AbstractMap<String, V>() {
+			@Override
+			public V get(Object key) {
+				int i = key instanceof String ? indexOf((String) key) : -1;
+				return i < 0 ? null : values.of(postings(i));
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				return key instanceof String && indexOf((String) key) >= 0;
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public Set<String> keySet() {
+				return new AbstractSet<String>() {
+					@Override
+					public boolean contains(Object o) {
+						return containsKey(o);
+					}
+
+					@Override
+					public Iterator<String> iterator() {
+						return new TermIterator<String>() {
+							@Override
+							String next(int i) {
+								return term(i);
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return size;
+					}
+				};
+			}
+
+			@Override
+			public Set<Map.Entry<String, V>> entrySet() {
+				return new AbstractSet<Map.Entry<String, V>>() {
+					@Override
+					public Iterator<Map.Entry<String, V>> iterator() {
+						return new TermIterator<Map.Entry<String, V>>() {
+							@Override
+							Map.Entry<String, V> next(int i) {
+								return new AbstractMap.SimpleImmutableEntry<String, V>(term(i), values.of(postings(i)));
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return size;
+					}
+				};
+			}
+		};
+	}
+
+	public Map<String, PositionalPostings> asMap() {
+		return asMap(new Values<PositionalPostings>() {
+			@Override
+			public PositionalPostings of(PositionalPostings postings) {
+				return postings;
+			}
+		});
+	}
+
+	/*
+	 * Umwandlung der Postings in die Darstellung des jeweiligen Index (siehe asMap()).
+	 */
+	public interface Values<V> {
+		V of(PositionalPostings postings);
+	}
+
+	private abstract class TermIterator<T> implements Iterator<T> {
+		private int i;
+
+		abstract T next(int i);
+
+		@Override
+		public boolean hasNext() {
+			return i < size;
+		}
+
+		@Override
+		public T next() {
+			if (i == size) {
+				throw new NoSuchElementException();
+			}
+			return next(i++);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static DataOutputStream open(Path file) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+	}
+
+	private static MappedByteBuffer map(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Datei zu groß für ein Mapping: " + file);
+			}
+			// das Mapping bleibt nach dem Schließen des Kanals gültig
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static int vByte(int value, byte[] buffer) {
+		int n = 0;
+		while ((value & ~0x7F) != 0) {
+			buffer[n++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[n++] = (byte) value;
+		return n;
+	}
+
+	private static int readVByte(ByteBuffer buffer, int pos, int[] value) {
+		int result = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get(pos++);
+			result |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		value[0] = result;
+		return pos;
+	}
+
+}
@@ -0,0 +1,56 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+/*
+ * Ein Textausschnitt zu einer Fundstelle ('keyword in context'): der Originaltext um die Fundstelle herum, mit der
+ * Lage der Fundstelle im Ausschnitt (hitStart bis hitEnd, als Zeichenpositionen) zum Hervorheben.
+ * toString() erzeugt eine Ausgabe der Form: "Id 3 (Titel): ' ... davor [Fundstelle] danach ... '".
+ */
+public final class Snippet {
+
+	private final Span span;
+	private final String title;
+	private final String text;
+	private final int hitStart;
+	private final int hitEnd;
+
+	public Snippet(Span span, String title, String text, int hitStart, int hitEnd) {
+		this.span = span;
+		this.title = title;
+		this.text = text;
+		this.hitStart = hitStart;
+		this.hitEnd = hitEnd;
+	}
+
+	public Span getSpan() {
+		return span;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public int getHitStart() {
+		return hitStart;
+	}
+
+	public int getHitEnd() {
+		return hitEnd;
+	}
+
+	/*
+	 * Der Text der Fundstelle selbst.
+	 */
+	public String getHit() {
+		return text.substring(hitStart, hitEnd);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Id %s (%s): ' ... %s[%s]%s ... '", span.getDoc(), title, text.substring(0, hitStart),
+				getHit(), text.substring(hitEnd));
+	}
+}
@@ -0,0 +1,143 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Erzeugt Textausschnitte (KWIC, 'keyword in context') zu Fundstellen. Statt das Werk für jedes Ergebnis neu zu
+ * tokenisieren, nutzen wir die beim Indexieren gespeicherten Zeichenpositionen der Tokens (siehe
+ * Preprocessor.offsets()) und schneiden den Ausschnitt direkt aus dem Originaltext. Zuletzt erzeugte Ausschnitte
+ * liegen in einem LRU-Cache, sodass wiederholte Anzeigen (z.B. beim Blättern in den Ergebnissen) nichts kosten.
+ */
+public final class SnippetService {
+
+	private final List<String> works;
+	private final int[][] offsets;// offsets[doc] = Anfang und Ende jedes Tokens (siehe Preprocessor.offsets())
+	private final String[] titles;
+	private final Map<Key, Snippet> cache;
+	private int hits;
+	private int misses;
+
+	public SnippetService(List<String> works, int[][] offsets, String[] titles, final int cacheSize) {
+		this.works = works;
+		this.offsets = offsets;
+		this.titles = titles;
+		// LinkedHashMap in Zugriffsreihenfolge: der älteste Eintrag ist der am längsten nicht benutzte
+		this.cache = new LinkedHashMap<Key, Snippet>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Snippet> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	/*
+	 * Der Ausschnitt zu einer Fundstelle, mit 'context' Tokens davor und danach.
+	 */
+	public synchronized Snippet snippet(Span span, int context) {
+		Key key = new Key(span, context);
+		Snippet snippet = cache.get(key);
+		if (snippet != null) {
+			hits++;
+			return snippet;
+		}
+		misses++;
+		snippet = cut(span, context);
+		cache.put(key, snippet);
+		return snippet;
+	}
+
+	public List<Snippet> snippets(List<Span> spans, int context) {
+		List<Snippet> result = new ArrayList<Snippet>(spans.size());
+		for (Span span : spans) {
+			result.add(snippet(span, context));
+		}
+		return result;
+	}
+
+	public String getTitle(int doc) {
+		return titles[doc];
+	}
+
+	public synchronized int getCacheHits() {
+		return hits;
+	}
+
+	public synchronized int getCacheMisses() {
+		return misses;
+	}
+
+	private Snippet cut(Span span, int context) {
+		int[] o = offsets[span.getDoc()];
+		int tokens = o.length / 2;
+		String work = works.get(span.getDoc());
+		if (tokens == 0) {
+			return new Snippet(span, titles[span.getDoc()], "", 0, 0);
+		}
+		int start = Math.min(span.getStart(), tokens - 1);
+		int end = Math.min(span.getEnd(), tokens - 1);
+		int from = o[2 * Math.max(0, start - context)];
+		int hitFrom = o[2 * start];
+		int hitTo = o[2 * end + 1];
+		int to = o[2 * Math.min(tokens - 1, end + context) + 1];
+		// Zeilenumbrüche usw. werden für die Anzeige zu einfachen Leerzeichen:
+		String before = normalize(work.substring(from, hitFrom));
+		String hit = normalize(work.substring(hitFrom, hitTo));
+		String after = normalize(work.substring(hitTo, to));
+		return new Snippet(span, titles[span.getDoc()], before + hit + after, before.length(), before.length()
+				+ hit.length());
+	}
+
+	private static String normalize(String text) {
+		return text.replaceAll("\\s+", " ");
+	}
+
+	/*
+	 * Die erste nicht-leere Zeile eines Werks.
+	 */
+	static String title(String work) {
+		int from = 0;
+		while (from < work.length()) {
+			int newline = work.indexOf('\n', from);
+			if (newline < 0) {
+				newline = work.length();
+			}
+			String line = work.substring(from, newline).trim();
+			if (line.length() > 0) {
+				return line;
+			}
+			from = newline + 1;
+		}
+		return "";
+	}
+
+	private static final class Key {
+
+		private final Span span;
+		private final int context;
+
+		Key(Span span, int context) {
+			this.span = span;
+			this.context = context;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key that = (Key) obj;
+			return context == that.context && span.equals(that.span);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * span.hashCode() + context;
+		}
+	}
+
+}
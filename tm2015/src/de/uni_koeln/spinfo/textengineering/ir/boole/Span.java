@@ -0,0 +1,67 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+/*
+ * Eine Fundstelle: Werk und die Positionen des ersten und letzten Tokens (inklusive).
+ * toString() erzeugt eine Ausgabe der Form: "17:[120, 125]".
+ */
+public final class Span implements Comparable<Span> {
+
+	private final int doc;
+	private final int start;
+	private final int end;
+
+	public Span(int doc, int start, int end) {
+		this.doc = doc;
+		this.start = start;
+		this.end = end;
+	}
+
+	public int getDoc() {
+		return doc;
+	}
+
+	public int getStart() {
+		return start;
+	}
+
+	public int getEnd() {
+		return end;
+	}
+
+	/*
+	 * Anzahl der Tokens der Fundstelle.
+	 */
+	public int length() {
+		return end - start + 1;
+	}
+
+	@Override
+	public int compareTo(Span o) {
+		if (doc != o.doc) {
+			return doc < o.doc ? -1 : 1;
+		}
+		if (start != o.start) {
+			return start < o.start ? -1 : 1;
+		}
+		return end < o.end ? -1 : (end == o.end ? 0 : 1);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Span)) {
+			return false;
+		}
+		Span that = (Span) obj;
+		return doc == that.doc && start == that.start && end == that.end;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * doc + start) + end;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s:[%s, %s]", doc, start, end);
+	}
+}
@@ -0,0 +1,199 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * "Meinten Sie ...?": Korrekturvorschläge für Suchwörter, die nicht im Vokabular stehen (Manning et al. 2008, Kap.
+ * 3.3). Statt jeden Term des Vokabulars mit dem Suchwort zu vergleichen, holen wir Kandidaten über einen
+ * Bigramm-Index ($c, ca, ae, ..., r$):
+ *
+ * - Ein Term mit Editierdistanz d zum Suchwort hat höchstens d Zeichen Längenunterschied und teilt mindestens
+ * (Bigramme des Suchworts - 2d) Bigramme mit ihm (jede Änderung zerstört höchstens zwei Bigramme). Nur Terme, die
+ * beide Filter bestehen, werden überhaupt verglichen.
+ *
+ * - Der Vergleich ist eine Levenshtein-Berechnung, die abbricht, sobald die Distanz die Schranke übersteigt.
+ *
+ * - Sortiert wird nach Distanz, dann nach Dokumentfrequenz (häufige Terme sind wahrscheinlicher gemeint).
+ *
+ * Die Suche hat ein festes Zeitbudget: Ist es aufgebraucht, gibt es die bis dahin besten Vorschläge.
+ */
+public final class SpellingCorrector {
+
+	public static final int MAX_EDITS = 2;
+	// höchstens so viel Zeit pro Suchwort (in Nanosekunden):
+	public static final long TIME_BUDGET = 2 * 1000 * 1000;
+
+	private final Map<String, Integer> documentFrequencies;
+	private final String[] terms;
+	private final int[] dfs;
+	private final Map<String, PostingsList> bigrams;
+
+	/*
+	 * @param documentFrequencies Das Vokabular mit den Dokumentfrequenzen der Terme
+	 */
+	public SpellingCorrector(Map<String, Integer> documentFrequencies) {
+		long start = System.currentTimeMillis();
+		this.documentFrequencies = documentFrequencies;
+		terms = new String[documentFrequencies.size()];
+		dfs = new int[terms.length];
+		Map<String, PostingsList.Builder> index = new HashMap<String, PostingsList.Builder>();
+		int id = 0;
+		for (Map.Entry<String, Integer> e : documentFrequencies.entrySet()) {
+			terms[id] = e.getKey();
+			dfs[id] = e.getValue();
+			for (String gram : bigrams(e.getKey())) {
+				PostingsList.Builder postings = index.get(gram);
+				if (postings == null) {
+					postings = new PostingsList.Builder();
+					index.put(gram, postings);
+				}
+				postings.add(id);
+			}
+			id++;
+		}
+		bigrams = new HashMap<String, PostingsList>();
+		for (Map.Entry<String, PostingsList.Builder> e : index.entrySet()) {
+			bigrams.put(e.getKey(), e.getValue().build());
+		}
+		System.out.println("Korrektur-Index erstellt (" + terms.length + " Terme, " + bigrams.size()
+				+ " Bigramme), Dauer: " + (System.currentTimeMillis() - start) + " ms.");
+	}
+
+	/*
+	 * Die Anfrage mit dem jeweils besten Vorschlag für jeden unbekannten Term, oder null, wenn es nichts zu
+	 * korrigieren gibt (alle Terme bekannt oder keine Vorschläge).
+	 */
+	public BooleanQuery correct(BooleanQuery query) {
+		Map<String, String> corrections = new HashMap<String, String>();
+		for (String term : query.terms()) {
+			if (!documentFrequencies.containsKey(term) && !corrections.containsKey(term)) {
+				List<String> suggestions = suggest(term, 1);
+				if (!suggestions.isEmpty()) {
+					corrections.put(term, suggestions.get(0));
+				}
+			}
+		}
+		return corrections.isEmpty() ? null : query.replace(corrections);
+	}
+
+	/*
+	 * Die Meldung für einen unbekannten Term, mit bis zu drei Vorschlägen aus dem Vokabular.
+	 */
+	public String notFound(String term) {
+		List<String> suggestions = suggest(term, 3);
+		return "Term " + term + " nicht gefunden"
+				+ (suggestions.isEmpty() ? "" : " - Meinten Sie: " + suggestions + "?");
+	}
+
+	/*
+	 * Bis zu n Vorschläge für das (kleingeschriebene) Suchwort, der beste zuerst.
+	 */
+	public List<String> suggest(String word, int n) {
+		return suggest(word, n, TIME_BUDGET);
+	}
+
+	public List<String> suggest(String word, int n, long budget) {
+		long deadline = System.nanoTime() + budget;
+		int maxEdits = word.length() <= 4 ? 1 : MAX_EDITS;
+		List<String> grams = bigrams(word);
+		// gemeinsame Bigramme zählen, nur für Terme, die überhaupt eines teilen:
+		int[] shared = new int[terms.length];
+		List<Integer> touched = new ArrayList<Integer>();
+		for (String gram : grams) {
+			PostingsList postings = bigrams.get(gram);
+			if (postings == null) {
+				continue;
+			}
+			PostingsList.Cursor cursor = postings.cursor();
+			for (int id = cursor.next(); id != PostingsList.Cursor.NO_MORE_DOCS; id = cursor.next()) {
+				if (shared[id]++ == 0) {
+					touched.add(id);
+				}
+			}
+		}
+		int minShared = grams.size() - 2 * maxEdits;
+		final List<Integer> candidates = new ArrayList<Integer>();
+		final Map<Integer, Integer> distances = new HashMap<Integer, Integer>();
+		for (int i = 0; i < touched.size(); i++) {
+			// Zeitbudget: alle 64 Kandidaten prüfen
+			if ((i & 63) == 0 && System.nanoTime() > deadline) {
+				break;
+			}
+			int id = touched.get(i);
+			String term = terms[id];
+			if (shared[id] < minShared || Math.abs(term.length() - word.length()) > maxEdits || term.equals(word)) {
+				continue;
+			}
+			int d = distance(word, term, maxEdits);
+			if (d <= maxEdits) {
+				candidates.add(id);
+				distances.put(id, d);
+			}
+		}
+		Collections.sort(candidates, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				int d = distances.get(o1).compareTo(distances.get(o2));
+				if (d != 0) {
+					return d;
+				}
+				d = Integer.valueOf(dfs[o2]).compareTo(dfs[o1]);
+				return d != 0 ? d : terms[o1].compareTo(terms[o2]);
+			}
+		});
+		List<String> result = new ArrayList<String>();
+		for (int i = 0; i < candidates.size() && i < n; i++) {
+			result.add(terms[candidates.get(i)]);
+		}
+		return result;
+	}
+
+	/*
+	 * Levenshtein-Distanz von a und b, oder max + 1, sobald sie größer als max sein muss (kleinster Wert einer Zeile
+	 * der Matrix > max).
+	 */
+	static int distance(String a, String b, int max) {
+		int[] previous = new int[b.length() + 1];
+		int[] current = new int[b.length() + 1];
+		for (int j = 0; j <= b.length(); j++) {
+			previous[j] = j;
+		}
+		for (int i = 1; i <= a.length(); i++) {
+			current[0] = i;
+			int rowMin = current[0];
+			for (int j = 1; j <= b.length(); j++) {
+				int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+				current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+				rowMin = Math.min(rowMin, current[j]);
+			}
+			if (rowMin > max) {
+				return max + 1;
+			}
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return Math.min(previous[b.length()], max + 1);
+	}
+
+	/*
+	 * Die verschiedenen Bigramme des Worts mit Randmarkierung: "caesar" -> $c, ca, ae, es, sa, ar, r$
+	 */
+	private static List<String> bigrams(String word) {
+		String bounded = "$" + word + "$";
+		List<String> result = new ArrayList<String>();
+		for (int i = 0; i + 2 <= bounded.length(); i++) {
+			String gram = bounded.substring(i, i + 2);
+			if (!result.contains(gram)) {
+				result.add(gram);
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,443 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Indexaufbau nach SPIMI (single-pass in-memory indexing, Manning et al. 2008, Kap. 4.3) - parallel und mit
+ * begrenztem Speicher:
+ *
+ * - Die Werke werden in zusammenhängende Bereiche geteilt und in einem ForkJoinPool indexiert; jeder Bereich baut
+ * seinen eigenen Teil-Index (keine Sperren, gemeinsam ist nur ein Zähler für den Speicher).
+ *
+ * - Der Zähler summiert den geschätzten Speicher aller Teil-Indexe, die gerade im Speicher sind - der noch im Aufbau
+ * und der schon fertigen. Würde er nach einem Werk das Speicherbudget überschreiten, wird der Teil-Index dieses
+ * Bereichs nach Termen sortiert als 'Lauf' in eine temporäre Datei geschrieben und ein neuer begonnen (auch nach dem
+ * letzten Werk eines Bereichs und auch, wenn schon ein einzelnes Werk das Budget überschreitet). Was im Speicher
+ * bleibt, passt so zusammen ins Budget, egal in wie viele Bereiche die Werke geteilt werden.
+ *
+ * - Am Ende werden alle Läufe in einem Durchgang zusammengeführt (k-Wege-Merge über einen Heap). Da jeder Lauf einen
+ * zusammenhängenden Bereich von Werk-Ids abdeckt, werden die Postings eines Terms einfach in der Reihenfolge der Läufe
+ * aneinandergehängt. Der Merge liefert die Terme alphabetisch: index() sammelt sie in einer Map, write() schreibt sie
+ * direkt in ein Segment (siehe Segment.Writer), ohne den ganzen Index im Speicher zu halten.
+ *
+ * Was indexiert wird, bestimmt eine Source: Sie liefert für ein Werk die Terme mit ihren Positionen (siehe
+ * tokens()/terms() für Texte).
+ */
+public final class SpimiIndexer {
+
+	/*
+	 * Die Terme eines Werks: terms() wird parallel für verschiedene Werke aufgerufen und muss die Terme mit
+	 * aufsteigenden Positionen an den Sink geben.
+	 */
+	public interface Source {
+		int size();
+
+		void terms(int doc, Sink sink);
+	}
+
+	public interface Sink {
+		void add(String term, int position);
+	}
+
+	// grobe Schätzung des Speicherbedarfs (HashMap-Eintrag, Builder, Arrays) pro Term bzw. Werk in einer Liste:
+	private static final int BYTES_PER_TERM = 160;
+	private static final int BYTES_PER_DOC = 16;
+	private static final int BYTES_PER_POSITION = 2;
+
+	private final int parallelism;
+	private final long memoryBudget;
+	private final List<Run> runs = Collections.synchronizedList(new ArrayList<Run>());
+	private int spills;
+	// geschätzter Speicher aller Teil-Indexe im Speicher, und der größte Wert beim letzten Aufbau:
+	private final AtomicLong inMemory = new AtomicLong();
+	private long peakMemory;
+
+	/*
+	 * So viele Threads wie Prozessoren, ein Viertel des Heaps für die Teil-Indexe.
+	 */
+	public SpimiIndexer() {
+		this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory() / 4);
+	}
+
+	/*
+	 * @param memoryBudget Speicher für alle gleichzeitig aufgebauten Teil-Indexe zusammen (in Bytes)
+	 */
+	public SpimiIndexer(int parallelism, long memoryBudget) {
+		this.parallelism = Math.max(1, parallelism);
+		this.memoryBudget = memoryBudget;
+	}
+
+	/*
+	 * Die Tokens der Texte mit ihren Positionen (nach der Verarbeitungskette des Preprocessors).
+	 */
+	public static Source tokens(final List<String> works, final Preprocessor preprocessor) {
+		return new Source() {
+			@Override
+			public int size() {
+				return works.size();
+			}
+
+			@Override
+			public void terms(int doc, Sink sink) {
+				Tokenizer tokenizer = new Tokenizer(works.get(doc));
+				int position = 0;
+				while (tokenizer.next()) {
+					String term = preprocessor.term(tokenizer);
+					if (term != null) {
+						sink.add(term, position++);
+					}
+				}
+			}
+		};
+	}
+
+	/*
+	 * Nur die Terme der Texte, ohne Positionen (für einen Index, der nur die Werke braucht).
+	 */
+	public static Source terms(final List<String> works, final Preprocessor preprocessor) {
+		return new Source() {
+			@Override
+			public int size() {
+				return works.size();
+			}
+
+			@Override
+			public void terms(int doc, Sink sink) {
+				for (String term : preprocessor.process(works.get(doc))) {
+					sink.add(term, 0);
+				}
+			}
+		};
+	}
+
+	public Map<String, PositionalPostings> index(Source source) {
+		long start = System.currentTimeMillis();
+		final Map<String, PositionalPostings> result = new HashMap<String, PositionalPostings>();
+		try {
+			merge(source, new Output() {
+				@Override
+				public void add(String term, PositionalPostings postings) {
+					result.put(term, postings);
+				}
+			});
+		} catch (IOException e) {
+			throw new IllegalStateException(e);// nicht bei einer Map
+		}
+		System.out.println("SPIMI: " + source.size() + " Werke, " + parallelism + " Threads, " + runs.size()
+				+ " Läufe (" + spills + " ausgelagert), Dauer: " + (System.currentTimeMillis() - start) + " ms.");
+		return result;
+	}
+
+	/*
+	 * Indexiert direkt in das Segment 'name' im Verzeichnis (siehe Segment.open()): die Postings jedes Terms werden
+	 * geschrieben, sobald der Merge sie zusammengeführt hat.
+	 */
+	public void write(Source source, Path dir, String name) throws IOException {
+		long start = System.currentTimeMillis();
+		final Segment.Writer writer = new Segment.Writer(dir, name, source.size());
+		try {
+			merge(source, new Output() {
+				@Override
+				public void add(String term, PositionalPostings postings) throws IOException {
+					writer.add(term, postings);
+				}
+			});
+		} finally {
+			writer.close();
+		}
+		System.out.println("SPIMI: " + source.size() + " Werke, " + parallelism + " Threads, " + runs.size()
+				+ " Läufe (" + spills + " ausgelagert) -> Segment " + dir.resolve(name) + ", Dauer: "
+				+ (System.currentTimeMillis() - start) + " ms.");
+	}
+
+	/*
+	 * Ziel des Merges: bekommt die Terme in alphabetischer Reihenfolge.
+	 */
+	private interface Output {
+		void add(String term, PositionalPostings postings) throws IOException;
+	}
+
+	/*
+	 * Anzahl der beim letzten index() ausgelagerten Läufe.
+	 */
+	public int getSpills() {
+		return spills;
+	}
+
+	/*
+	 * Der größte geschätzte Speicher aller Teil-Indexe, die beim letzten index() gleichzeitig im Speicher gehalten
+	 * wurden (höchstens das Budget; dazu kommt nur das Werk, das jeder Thread gerade aufnimmt).
+	 */
+	public synchronized long getPeakMemory() {
+		return peakMemory;
+	}
+
+	private synchronized void peak(long bytes) {
+		peakMemory = Math.max(peakMemory, bytes);
+	}
+
+	private class IndexTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final Source source;
+		private final int from;
+		private final int to;
+		private final int grain;
+
+		IndexTask(Source source, int from, int to, int grain) {
+			this.source = source;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > grain) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new IndexTask(source, from, mid, grain), new IndexTask(source, mid, to, grain));
+				return;
+			}
+			Partial partial = new Partial(from);
+			long counted = 0;// davon schon im gemeinsamen Zähler
+			for (int doc = from; doc < to; doc++) {
+				partial.doc = doc;
+				source.terms(doc, partial);
+				long total = inMemory.addAndGet(partial.bytes - counted);
+				counted = partial.bytes;
+				if (total > memoryBudget) {
+					inMemory.addAndGet(-counted);
+					counted = 0;
+					runs.add(spill(partial));
+					partial = new Partial(doc + 1);
+				} else {
+					peak(total);
+				}
+			}
+			// bleibt bis zum Merge im Speicher und im Zähler:
+			if (!partial.index.isEmpty()) {
+				runs.add(new MemoryRun(partial));
+			}
+		}
+	}
+
+	/*
+	 * Ein Teil-Index im Aufbau (für einen Thread).
+	 */
+	private static final class Partial implements Sink {
+
+		private final Map<String, PositionalPostings.Builder> index = new HashMap<String, PositionalPostings.Builder>();
+		private final int firstDoc;
+		private int doc;
+		private long bytes;
+
+		Partial(int firstDoc) {
+			this.firstDoc = firstDoc;
+		}
+
+		@Override
+		public void add(String term, int position) {
+			PositionalPostings.Builder postings = index.get(term);
+			if (postings == null) {
+				postings = new PositionalPostings.Builder();
+				index.put(term, postings);
+				bytes += BYTES_PER_TERM + 2 * term.length();
+			}
+			int size = postings.size();
+			postings.add(doc, position);
+			bytes += (postings.size() > size ? BYTES_PER_DOC : 0) + BYTES_PER_POSITION;
+		}
+
+		String[] sortedTerms() {
+			String[] terms = index.keySet().toArray(new String[index.size()]);
+			Arrays.sort(terms);
+			return terms;
+		}
+	}
+
+	/*
+	 * Ein sortierter Lauf, termweise gelesen: term und postings sind der aktuelle Eintrag.
+	 */
+	private abstract static class Run {
+		final int firstDoc;
+		String term;
+		PositionalPostings postings;
+
+		Run(int firstDoc) {
+			this.firstDoc = firstDoc;
+		}
+
+		/*
+		 * Zum nächsten Eintrag; false am Ende.
+		 */
+		abstract boolean next();
+	}
+
+	private static final class MemoryRun extends Run {
+		private final String[] terms;
+		private final Map<String, PositionalPostings.Builder> index;
+		private int i;
+
+		MemoryRun(Partial partial) {
+			super(partial.firstDoc);
+			terms = partial.sortedTerms();
+			index = partial.index;
+		}
+
+		@Override
+		boolean next() {
+			if (i == terms.length) {
+				return false;
+			}
+			term = terms[i++];
+			postings = index.remove(term).build();
+			return true;
+		}
+	}
+
+	private static final class FileRun extends Run {
+		private final File file;
+		private DataInputStream in;
+
+		FileRun(int firstDoc, File file) {
+			super(firstDoc);
+			this.file = file;
+		}
+
+		@Override
+		boolean next() {
+			try {
+				if (in == null) {
+					in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+				}
+				try {
+					term = in.readUTF();
+				} catch (EOFException e) {
+					close();
+					return false;
+				}
+				postings = PositionalPostings.read(in);
+				return true;
+			} catch (IOException e) {
+				close();
+				throw new IllegalStateException("Lauf kann nicht gelesen werden: " + file, e);
+			}
+		}
+
+		private void close() {
+			try {
+				if (in != null) {
+					in.close();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			file.delete();
+		}
+	}
+
+	/*
+	 * Schreibt den Teil-Index nach Termen sortiert in eine temporäre Datei.
+	 */
+	private Run spill(Partial partial) {
+		try {
+			File file = File.createTempFile("spimi", ".run");
+			file.deleteOnExit();
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			try {
+				for (String term : partial.sortedTerms()) {
+					out.writeUTF(term);
+					partial.index.get(term).build().write(out);
+				}
+			} finally {
+				out.close();
+			}
+			synchronized (this) {
+				spills++;
+			}
+			return new FileRun(partial.firstDoc, file);
+		} catch (IOException e) {
+			throw new IllegalStateException("Lauf kann nicht geschrieben werden", e);
+		}
+	}
+
+	/*
+	 * Baut die Läufe auf (parallel) und führt sie im k-Wege-Merge zusammen: immer der kleinste aktuelle Term aller
+	 * Läufe; bei gleichen Termen der Lauf mit den kleineren Werk-Ids zuerst.
+	 */
+	private void merge(Source source, Output output) throws IOException {
+		runs.clear();
+		spills = 0;
+		inMemory.set(0);
+		synchronized (this) {
+			peakMemory = 0;
+		}
+		int n = source.size();
+		// mehr Bereiche als Threads, damit ungleich lange Werke sich ausgleichen:
+		int grain = Math.max(1, n / (parallelism * 4));
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new IndexTask(source, 0, n, grain));
+		} finally {
+			pool.shutdown();
+		}
+		PriorityQueue<Run> heap = new PriorityQueue<Run>(Math.max(1, runs.size()), new Comparator<Run>() {
+			@Override
+			public int compare(Run o1, Run o2) {
+				int c = o1.term.compareTo(o2.term);
+				return c != 0 ? c : Integer.valueOf(o1.firstDoc).compareTo(o2.firstDoc);
+			}
+		});
+		for (Run run : runs) {
+			if (run.next()) {
+				heap.add(run);
+			}
+		}
+		while (!heap.isEmpty()) {
+			Run run = heap.poll();
+			String term = run.term;
+			PositionalPostings postings = run.postings;
+			if (!heap.isEmpty() && heap.peek().term.equals(term)) {
+				// der Term kommt in mehreren Läufen vor:
+				PositionalPostings.Builder merged = new PositionalPostings.Builder().add(postings);
+				advance(run, heap);
+				while (!heap.isEmpty() && heap.peek().term.equals(term)) {
+					run = heap.poll();
+					merged.add(run.postings);
+					advance(run, heap);
+				}
+				postings = merged.build();
+			} else {
+				advance(run, heap);
+			}
+			output.add(term, postings);
+		}
+	}
+
+	private static void advance(Run run, PriorityQueue<Run> heap) {
+		if (run.next()) {
+			heap.add(run);
+		}
+	}
+
+}
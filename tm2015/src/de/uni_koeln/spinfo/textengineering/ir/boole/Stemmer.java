@@ -0,0 +1,12 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+/*
+ * Reduziert einen (kleingeschriebenen) Term auf seinen Stamm, z.B. "kings" -> "king". Verschiedene Formen eines Worts
+ * werden so zu einem Indexterm: weniger Terme, kürzere Listen, und die Suche nach einer Form findet auch die anderen.
+ * Implementierungen: EnglishStemmer, GermanStemmer (nach den Snowball-Algorithmen, http://snowballstem.org).
+ */
+public interface Stemmer {
+
+	public String stem(String term);
+
+}
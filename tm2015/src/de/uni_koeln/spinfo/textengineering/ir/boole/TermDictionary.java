@@ -0,0 +1,222 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Ein gemeinsames Termverzeichnis: jeder Term wird genau einmal als String abgelegt und bekommt eine feste int-Id
+ * (0, 1, 2, ... in der Reihenfolge des ersten Auftretens). Wer Terme über das Verzeichnis bezieht (intern()), teilt
+ * sich diese eine Instanz, statt für jedes Dokument eigene Strings für dieselben Terme anzulegen.
+ *
+ * Intern eine Hashtabelle mit offener Adressierung über die Ids: so kann ein Term auch direkt aus dem Puffer des
+ * Tokenizers nachgeschlagen werden, ohne dafür erst einen String zu erzeugen.
+ */
+public final class TermDictionary {
+
+	private String[] terms = new String[64];
+	private int[] hashes = new int[64];
+	private int size;
+	private int[] table = new int[128];// Id + 1, 0 = frei
+	/*
+	 * Aufnehmen sperrt exklusiv, Nachschlagen (lookup(), id(), term()) nur gemeinsam: Anfragen, die das Verzeichnis
+	 * nur lesen, kommen sich so nicht gegenseitig in die Quere.
+	 */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/*
+	 * Die Id des Terms; unbekannte Terme werden aufgenommen.
+	 */
+	public int add(String term) {
+		int h = hash(term);
+		lock.writeLock().lock();
+		try {
+			int slot = find(term, h);
+			return table[slot] != 0 ? table[slot] - 1 : insert(slot, term, h);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int add(char[] buffer, int offset, int length) {
+		int h = hash(buffer, offset, length);
+		lock.writeLock().lock();
+		try {
+			int slot = find(buffer, offset, length, h);
+			return table[slot] != 0 ? table[slot] - 1 : insert(slot, new String(buffer, offset, length), h);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Die gemeinsame Instanz des Terms (unbekannte Terme werden aufgenommen).
+	 */
+	public String intern(String term) {
+		lock.writeLock().lock();
+		try {
+			int id = add(term);// erst aufnehmen, das Array kann dabei wachsen
+			return terms[id];
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public String intern(char[] buffer, int offset, int length) {
+		lock.writeLock().lock();
+		try {
+			int id = add(buffer, offset, length);
+			return terms[id];
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Die gemeinsame Instanz des Terms, oder null, wenn er nicht im Verzeichnis steht. Nimmt nichts auf (für
+	 * Anfragen: Tippfehler und einmalige Wörter sollen das Verzeichnis nicht wachsen lassen).
+	 */
+	public String lookup(String term) {
+		int h = hash(term);
+		lock.readLock().lock();
+		try {
+			int id = table[find(term, h)] - 1;
+			return id < 0 ? null : terms[id];
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public String lookup(char[] buffer, int offset, int length) {
+		int h = hash(buffer, offset, length);
+		lock.readLock().lock();
+		try {
+			int id = table[find(buffer, offset, length, h)] - 1;
+			return id < 0 ? null : terms[id];
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Die Id des Terms, oder -1, wenn er nicht im Verzeichnis steht.
+	 */
+	public int id(String term) {
+		int h = hash(term);
+		lock.readLock().lock();
+		try {
+			return table[find(term, h)] - 1;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Der Term zu einer Id.
+	 */
+	public String term(int id) {
+		lock.readLock().lock();
+		try {
+			if (id < 0 || id >= size) {
+				throw new IndexOutOfBoundsException("Keine Term-Id: " + id);
+			}
+			return terms[id];
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private int insert(int slot, String term, int h) {
+		if (size == terms.length) {
+			terms = Arrays.copyOf(terms, size * 2);
+			hashes = Arrays.copyOf(hashes, size * 2);
+		}
+		terms[size] = term;
+		hashes[size] = h;
+		table[slot] = ++size;
+		// Tabelle höchstens halb voll halten, sonst werden die Suchketten lang:
+		if (2 * size > table.length) {
+			rehash(table.length * 2);
+		}
+		return size - 1;
+	}
+
+	private void rehash(int capacity) {
+		table = new int[capacity];
+		for (int id = 0; id < size; id++) {
+			int slot = hashes[id] & (table.length - 1);
+			while (table[slot] != 0) {
+				slot = (slot + 1) & (table.length - 1);
+			}
+			table[slot] = id + 1;
+		}
+	}
+
+	/*
+	 * Der Platz des Terms in der Tabelle, oder der freie Platz, an den er gehört.
+	 */
+	private int find(String term, int h) {
+		int slot = h & (table.length - 1);
+		while (table[slot] != 0) {
+			int id = table[slot] - 1;
+			if (hashes[id] == h && terms[id].equals(term)) {
+				return slot;
+			}
+			slot = (slot + 1) & (table.length - 1);
+		}
+		return slot;
+	}
+
+	private int find(char[] buffer, int offset, int length, int h) {
+		int slot = h & (table.length - 1);
+		while (table[slot] != 0) {
+			int id = table[slot] - 1;
+			if (hashes[id] == h && equals(terms[id], buffer, offset, length)) {
+				return slot;
+			}
+			slot = (slot + 1) & (table.length - 1);
+		}
+		return slot;
+	}
+
+	private static boolean equals(String term, char[] buffer, int offset, int length) {
+		if (term.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (term.charAt(i) != buffer[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Gleicher Hashwert wie String.hashCode(), zusätzlich gestreut (die Tabelle nutzt nur die unteren Bits):
+	 */
+	private static int hash(String term) {
+		return spread(term.hashCode());
+	}
+
+	private static int hash(char[] buffer, int offset, int length) {
+		int h = 0;
+		for (int i = 0; i < length; i++) {
+			h = 31 * h + buffer[offset + i];
+		}
+		return spread(h);
+	}
+
+	private static int spread(int h) {
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
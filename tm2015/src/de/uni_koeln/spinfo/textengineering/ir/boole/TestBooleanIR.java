@@ -4,10 +4,16 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.regex.Pattern;
 
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -94,6 +100,176 @@ public class TestBooleanIR {
 		posIndex.printSnippets(query, posResult, 1);
 	}
 
+	@Test
+	public void testTrigramIndex() {
+		// Testen, ob die Trigramm-Kandidaten alle Regex-Treffer enthalten:
+
+		System.out.println();
+		System.out.println("Trigramm-Index:");
+		System.out.println("-------------------");
+		TrigramIndex index = new TrigramIndex(corpus);
+		List<String> works = corpus.getWorks();
+
+		for (String regex : Arrays.asList("Brutus", "Brut(us|e)", "[Kk]ing",
+				"Caesar.*Brutus", "To be,? or not", "\\bsaid\\s+nothing",
+				"(?i)brutus", "x*", "q[^u]")) {
+			// zum Vergleich: der Matcher auf allen Werken
+			Set<Integer> expected = new TreeSet<Integer>();
+			Pattern pattern = Pattern.compile(regex);
+			for (int i = 0; i < works.size(); i++) {
+				if (pattern.matcher(works.get(i)).find()) {
+					expected.add(i);
+				}
+			}
+			System.out.println(regex + " -> " + TrigramQuery.fromRegex(regex));
+			Assert.assertEquals(expected, index.search(regex));
+		}
+		assertTrue("Selektive Ausdrücke sollten wenige Kandidaten liefern",
+				index.candidates("said nothing").cardinality() < works.size() / 2);
+	}
+
+	@Test
+	public void testTrigramEscapes() {
+		// Escapes für einzelne Zeichen: die Trigramme müssen im passenden Text vorkommen
+		String[][] cases = { { "\\cAbcd", "\u0001bcd" }, { "\\0101bc", "Abc" }, { "\\x{41}bc", "Abc" },
+				{ "\\x41bc", "Abc" }, { "\\u0041bc", "Abc" }, { "a\\x{1F600}bc", "a\uD83D\uDE00bc" },
+				{ "\\x{zz}bc", "" }, { "\\x4", "" }, { "\\0", "" } };
+		for (String[] c : cases) {
+			TrigramQuery query = TrigramQuery.fromRegex(c[0]);
+			System.out.println(c[0] + " -> " + query);
+			assertTrue(c[0] + " -> " + query, satisfies(query, c[1]));
+		}
+		Assert.assertEquals(TrigramQuery.and(TrigramQuery.trigram("Abc"), TrigramQuery.trigram("bcd")),
+				TrigramQuery.fromRegex("\\x{41}bcd"));
+		Assert.assertEquals(TrigramQuery.trigram("\u0001bc"), TrigramQuery.fromRegex("\\cAbc"));
+	}
+
+	private static boolean satisfies(TrigramQuery query, String text) {
+		switch (query.getOp()) {
+		case ALL:
+			return true;
+		case NONE:
+			return false;
+		case TRIGRAM:
+			return text.contains(query.getTrigram());
+		case AND:
+			for (TrigramQuery sub : query.getSubs()) {
+				if (!satisfies(sub, text)) {
+					return false;
+				}
+			}
+			return true;
+		default:
+			for (TrigramQuery sub : query.getSubs()) {
+				if (satisfies(sub, text)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	@Test
+	public void testBooleanQueries() {
+		System.out.println();
+		System.out.println("Boolesche Anfragen:");
+		System.out.println("-------------------");
+		Preprocessor preprocessor = new Preprocessor();
+		Assert.assertEquals("(brutus AND (caesar OR calpurnia) AND NOT cleopatra)", BooleanQuery.parse(
+				"Brutus AND (Caesar OR Calpurnia) NOT Cleopatra", preprocessor).toString());
+		Assert.assertEquals("(to AND be AND or AND not)", BooleanQuery.parse("to be or not to be", preprocessor)
+				.toString());
+		Assert.assertEquals("brutus", BooleanQuery.parse("NOT NOT (Brutus", preprocessor).toString());
+		Assert.assertNull(BooleanQuery.parse("AND ( ) OR", preprocessor));
+
+		InvertedIndex index = new InvertedIndex(corpus);
+		PositionalIndex posIndex = new PositionalIndex(corpus);
+		// erwartete Ergebnisse durch Auswertung der Anfrage auf den Termen jedes Werks:
+		List<Set<String>> workTerms = new ArrayList<Set<String>>();
+		for (String work : corpus.getWorks()) {
+			workTerms.add(new TreeSet<String>(preprocessor.process(work)));
+		}
+		for (String q : new String[] { "Brutus AND (Caesar OR Calpurnia)", "king NOT Brutus", "NOT king",
+				"Brutus Xyzzy", "(Brutus OR Xyzzy) AND Caesar", "Xyzzy OR king", "Caesar AND NOT (king OR Brutus)",
+				"(Brutus king) OR (Xyzzy NOT Caesar)" }) {
+			BooleanQuery query = BooleanQuery.parse(q, preprocessor);
+			Set<Integer> expected = new TreeSet<Integer>();
+			for (int i = 0; i < workTerms.size(); i++) {
+				if (matches(query, workTerms.get(i))) {
+					expected.add(i);
+				}
+			}
+			System.out.println(q + ": " + index.plan(q));
+			Assert.assertEquals(q, expected, index.search(q));
+			Assert.assertEquals(q, expected, posIndex.search(q));
+		}
+		// unbekannte Terme führen nicht mehr zu einer NullPointerException:
+		Assert.assertTrue(posIndex.proximitySearch("Brutus Xyzzy", 2).isEmpty());
+	}
+
+	@Test
+	public void testPhraseSearch() {
+		System.out.println();
+		System.out.println("Phrasensuche:");
+		System.out.println("-------------------");
+		Preprocessor preprocessor = new Preprocessor();
+		Assert.assertEquals("(\"to be or not to be\" AND brutus)",
+				BooleanQuery.parse("\"To be, or not to be\" Brutus", preprocessor).toString());
+		PositionalIndex posIndex = new PositionalIndex(corpus);
+		for (String phrase : new String[] { "to be or not to be", "that is the question", "Brutus Caesar",
+				"the king", "be to", "king Xyzzy", "question" }) {
+			List<String> tokens = preprocessor.tokenize(phrase);
+			// erwartet: alle Startpositionen, an denen die Tokens direkt aufeinander folgen
+			SortedMap<Integer, List<Integer>> expected = new TreeMap<Integer, List<Integer>>();
+			Set<Integer> expectedDocs = new TreeSet<Integer>();
+			for (int i = 0; i < corpus.getWorks().size(); i++) {
+				List<String> workTokens = preprocessor.tokenize(corpus.getWorks().get(i));
+				List<Integer> starts = new ArrayList<Integer>();
+				for (int j = 0; j + tokens.size() <= workTokens.size(); j++) {
+					if (workTokens.subList(j, j + tokens.size()).equals(tokens)) {
+						starts.add(j);
+					}
+				}
+				if (!starts.isEmpty()) {
+					expected.put(i, starts);
+					expectedDocs.add(i);
+				}
+			}
+			SortedMap<Integer, List<Integer>> result = posIndex.phraseSearch(phrase);
+			System.out.println("'" + phrase + "' in " + result.size() + " Werken");
+			Assert.assertEquals(phrase, expected, result);
+			Assert.assertEquals(phrase, expectedDocs, posIndex.search("\"" + phrase + "\""));
+		}
+		Assert.assertTrue(posIndex.search("\"to be or not to be\" NOT \"to be or not to be\"").isEmpty());
+		// Phrasen ohne Tokens: keine Treffer (statt einer Exception)
+		for (String phrase : new String[] { "", "...", " - , " }) {
+			Assert.assertTrue(phrase, posIndex.phraseSearch(phrase).isEmpty());
+		}
+	}
+
+	private static boolean matches(BooleanQuery query, Set<String> terms) {
+		switch (query.getOp()) {
+		case TERM:
+			return terms.contains(query.getTerm());
+		case NOT:
+			return !matches(query.getSubs().get(0), terms);
+		case AND:
+			for (BooleanQuery sub : query.getSubs()) {
+				if (!matches(sub, terms)) {
+					return false;
+				}
+			}
+			return true;
+		default:
+			for (BooleanQuery sub : query.getSubs()) {
+				if (matches(sub, terms)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
 	private static final TreeSet<Integer> PL2 = new TreeSet<Integer>(
 			Arrays.asList(2, 4, 6, 8));
 	private static final TreeSet<Integer> PL1 = new TreeSet<Integer>(
@@ -107,4 +283,825 @@ public class TestBooleanIR {
 		Assert.assertEquals(EXPECTED, list);
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void intersectPostings() {
+		System.out.println("Intersection auf primitiven Postings-Listen");
+		PostingsList pl1 = PostingsList.of(1, 2, 3, 4);
+		PostingsList pl2 = PostingsList.of(2, 4, 6, 8);
+		List<Integer> list = new ArrayList<Integer>(Intersection.of(pl1, pl2)
+				.toSet());
+		Assert.assertEquals(EXPECTED, list);
+	}
+
+	@Test
+	public void postingsEncodings() {
+		// dünn (komprimiert), mittel (int[]) und dicht (Bitset):
+		for (int step : new int[] { 997, 50, 2 }) {
+			PostingsList.Builder builder = new PostingsList.Builder();
+			List<Integer> expected = new ArrayList<Integer>();
+			for (int id = 0; id < 100000; id += step) {
+				builder.add(id).add(id);// Duplikate werden ignoriert
+				expected.add(id);
+			}
+			PostingsList postings = builder.seal(100000);
+			System.out.println(postings.getClass().getSimpleName() + ": "
+					+ postings.sizeInBytes() + " Bytes");
+			Assert.assertEquals(expected, new ArrayList<Integer>(postings.toSet()));
+			Assert.assertEquals(expected.size(), postings.size());
+			// Intersection über verschiedene Darstellungen hinweg:
+			PostingsList other = PostingsList.of(0, step, 3 * step + 1);
+			Assert.assertEquals(Arrays.asList(0, step), new ArrayList<Integer>(
+					Intersection.of(postings, other).toSet()));
+		}
+	}
+
+	@Test
+	public void intersectLargeIds() {
+		// Integer-Objekte > 127 sind nicht gecacht, ein Vergleich mit '==' schlägt hier fehl:
+		SortedSet<Integer> pl1 = new TreeSet<Integer>(Arrays.asList(100, 1000, 100000));
+		SortedSet<Integer> pl2 = new TreeSet<Integer>(Arrays.asList(1000, 5000, 100000));
+		Assert.assertEquals(Arrays.asList(1000, 100000), new ArrayList<Integer>(Intersection.of(pl1, pl2)));
+	}
+
+	@Test
+	public void intersectionStrategies() {
+		// alle Verfahren liefern dasselbe (Zeitmessung: IntersectionBenchmark) ...
+		Random random = new Random(42);
+		int n = 20000;
+		PostingsList longList = PostingsList.of(randomIds(random, n, 10 * n));
+		for (int ratio : new int[] { 1, 2, 8, 64, 1024 }) {
+			int[] shorter = randomIds(random, n / ratio, 10 * n);
+			// die kurze Liste einmal unkomprimiert, einmal versiegelt (je nach Dichte komprimiert oder Bitset):
+			PostingsList.Builder builder = new PostingsList.Builder();
+			for (int id : shorter) {
+				builder.add(id);
+			}
+			PostingsList sealed = builder.seal(10 * n);
+			PostingsList shortList = PostingsList.of(shorter);
+			int[] expected = Intersection.of(longList, shortList, Intersection.Strategy.MERGE).toArray();
+			for (Intersection.Strategy strategy : Intersection.Strategy.values()) {
+				Assert.assertArrayEquals(expected, Intersection.of(longList, shortList, strategy).toArray());
+				Assert.assertArrayEquals(expected, Intersection.of(sealed, longList, strategy).toArray());
+			}
+		}
+		// ... und gewählt wird nach dem Längenverhältnis:
+		Assert.assertEquals(Intersection.Strategy.MERGE, choose(1000, 1000));
+		Assert.assertEquals(Intersection.Strategy.MERGE, choose(1000, Intersection.SKIP_RATIO * 1000 - 1));
+		Assert.assertEquals(Intersection.Strategy.SKIP, choose(1000, Intersection.SKIP_RATIO * 1000));
+		Assert.assertEquals(Intersection.Strategy.SKIP, choose(1000, Intersection.GALLOP_RATIO * 1000 - 1));
+		Assert.assertEquals(Intersection.Strategy.GALLOP, choose(1000, Intersection.GALLOP_RATIO * 1000));
+		Assert.assertEquals(Intersection.Strategy.GALLOP, choose(1, 1000));
+	}
+
+	private static Intersection.Strategy choose(int size1, int size2) {
+		int[] ids1 = new int[size1];
+		for (int i = 0; i < size1; i++) {
+			ids1[i] = i;
+		}
+		int[] ids2 = new int[size2];
+		for (int i = 0; i < size2; i++) {
+			ids2[i] = i;
+		}
+		return Intersection.choose(PostingsList.of(ids2), PostingsList.of(ids1));
+	}
+
+	private static int[] randomIds(Random random, int size, int max) {
+		SortedSet<Integer> ids = new TreeSet<Integer>();
+		while (ids.size() < size) {
+			ids.add(random.nextInt(max));
+		}
+		int[] result = new int[size];
+		int i = 0;
+		for (Integer id : ids) {
+			result[i++] = id;
+		}
+		return result;
+	}
+
+	@Test
+	public void positionalIntersect() {
+		System.out.println("PositionalIntersect mit Fenster als Index-Bereich");
+		Random random = new Random(7);
+		for (int k : new int[] { 0, 1, 3, 20 }) {
+			SortedMap<Integer, List<Integer>> map1 = new TreeMap<Integer, List<Integer>>();
+			SortedMap<Integer, List<Integer>> map2 = new TreeMap<Integer, List<Integer>>();
+			PositionalPostings.Builder builder1 = new PositionalPostings.Builder();
+			PositionalPostings.Builder builder2 = new PositionalPostings.Builder();
+			SortedMap<Integer, List<Integer>> expected = new TreeMap<Integer, List<Integer>>();
+			for (int doc = 0; doc < 200; doc += 1 + random.nextInt(3)) {
+				int[] pp1 = randomIds(random, 1 + random.nextInt(30), 500);
+				int[] pp2 = randomIds(random, 1 + random.nextInt(30), 500);
+				map1.put(doc, toList(pp1));
+				map2.put(doc, toList(pp2));
+				builder1.add(doc, pp1, pp1.length);
+				builder2.add(doc, pp2, pp2.length);
+				// naiv: jede Position von Term2, die höchstens k von einer Position von Term1 entfernt ist
+				List<Integer> hits = new ArrayList<Integer>();
+				for (int p2 : pp2) {
+					for (int p1 : pp1) {
+						if (Math.abs(p1 - p2) <= k) {
+							hits.add(p2);
+							break;
+						}
+					}
+				}
+				if (!hits.isEmpty()) {
+					expected.put(doc, hits);
+				}
+			}
+			PositionalPostings postings1 = builder1.build();
+			Assert.assertEquals(map1, postings1.toMap());
+			Assert.assertEquals(expected, Intersection.of(map1, map2, k));
+			Assert.assertEquals(expected, Intersection.of(postings1, builder2.build(), k).toMap());
+		}
+		PositionalIndex posIndex = new PositionalIndex(corpus);
+		System.out.println("Positional Index: " + posIndex.postingsSizeInBytes() / 1024 + " KB");
+	}
+
+	private static List<Integer> toList(int[] ids) {
+		List<Integer> result = new ArrayList<Integer>();
+		for (int id : ids) {
+			result.add(id);
+		}
+		return result;
+	}
+
+	@Test
+	public void proximityWindows() {
+		System.out.println("Minimale Fenster über mehrere Terme");
+		Random random = new Random(11);
+		String[] vocabulary = { "a", "b", "c", "d" };
+		for (int run = 0; run < 300; run++) {
+			List<String> tokens = new ArrayList<String>();
+			for (int i = 0; i < 5 + random.nextInt(40); i++) {
+				tokens.add(vocabulary[random.nextInt(vocabulary.length)]);
+			}
+			List<String> query = new ArrayList<String>();
+			for (int i = 0; i < 1 + random.nextInt(4); i++) {
+				query.add(vocabulary[random.nextInt(3)]);
+			}
+			int k = random.nextInt(12);
+			for (boolean ordered : new boolean[] { false, true }) {
+				// naiv: alle Fenster, die passen, aber keine passende echte Teilmenge enthalten
+				List<Span> expected = new ArrayList<Span>();
+				for (int s = 0; s < tokens.size(); s++) {
+					for (int e = s; e < tokens.size() && e - s <= k; e++) {
+						if (covers(tokens, s, e, query, ordered) && !covers(tokens, s + 1, e, query, ordered)
+								&& !covers(tokens, s, e - 1, query, ordered)) {
+							expected.add(new Span(0, s, e));
+						}
+					}
+				}
+				List<String> terms = new ArrayList<String>();
+				for (String q : query) {
+					if (!terms.contains(q)) {
+						terms.add(q);
+					}
+				}
+				int[] required = new int[terms.size()];
+				for (String q : query) {
+					required[terms.indexOf(q)]++;
+				}
+				int n = ordered ? query.size() : terms.size();
+				int[][] positions = new int[n][];
+				int[] freqs = new int[n];
+				for (int i = 0; i < n; i++) {
+					List<Integer> list = new ArrayList<Integer>();
+					for (int j = 0; j < tokens.size(); j++) {
+						if (tokens.get(j).equals(ordered ? query.get(i) : terms.get(i))) {
+							list.add(j);
+						}
+					}
+					positions[i] = new int[list.size()];
+					for (int j = 0; j < list.size(); j++) {
+						positions[i][j] = list.get(j);
+					}
+					freqs[i] = list.size();
+				}
+				List<Span> result = new ArrayList<Span>();
+				if (ordered) {
+					Intersection.orderedWindows(0, positions, freqs, k, result);
+				} else {
+					Intersection.unorderedWindows(0, positions, freqs, required, k, result);
+				}
+				Assert.assertEquals(tokens + " " + query + " k=" + k + " ordered=" + ordered, expected, result);
+			}
+		}
+		PositionalIndex posIndex = new PositionalIndex(corpus);
+		List<Span> spans = posIndex.windowSearch("Brutus Caesar", 2, false);
+		Assert.assertFalse(spans.isEmpty());
+		posIndex.printSnippets(spans.subList(0, Math.min(5, spans.size())), 2);
+		// geordnet und ohne Lücken entspricht das Fenster genau der Phrase:
+		spans = posIndex.windowSearch("to be or not to be", 5, true);
+		List<Span> phrases = new ArrayList<Span>();
+		for (Map.Entry<Integer, List<Integer>> e : posIndex.phraseSearch("to be or not to be").entrySet()) {
+			for (Integer start : e.getValue()) {
+				phrases.add(new Span(e.getKey(), start, start + 5));
+			}
+		}
+		Assert.assertEquals(phrases, spans);
+		posIndex.printSnippets(spans.subList(0, Math.min(5, spans.size())), 2);
+	}
+
+	private static boolean covers(List<String> tokens, int s, int e, List<String> query, boolean ordered) {
+		if (s > e) {
+			return false;
+		}
+		List<String> window = new ArrayList<String>(tokens.subList(s, e + 1));
+		if (ordered) {
+			int i = 0;
+			for (String t : window) {
+				if (i < query.size() && t.equals(query.get(i))) {
+					i++;
+				}
+			}
+			return i == query.size();
+		}
+		for (String q : query) {
+			if (!window.remove(q)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Test
+	public void testSnippets() {
+		System.out.println();
+		System.out.println("Ausschnitte (KWIC):");
+		System.out.println("-------------------");
+		Preprocessor preprocessor = new Preprocessor();
+		for (String work : corpus.getWorks()) {
+			// die Zeichenpositionen passen zu den Tokens:
+			List<String> tokens = preprocessor.tokenize(work);
+			int[] offsets = preprocessor.offsets(work);
+			Assert.assertEquals(tokens.size(), offsets.length / 2);
+			for (int i = 0; i < tokens.size(); i += 97) {
+				Assert.assertEquals(tokens.get(i), work.substring(offsets[2 * i], offsets[2 * i + 1]).toLowerCase());
+			}
+		}
+		PositionalIndex posIndex = new PositionalIndex(corpus);
+		String query = "to be or not to be";
+		// eine Ergebnisseite (höchstens 20 Treffer):
+		List<Span> all = posIndex.windowSearch(query, 5, true);
+		Assert.assertFalse(all.isEmpty());
+		List<Span> spans = all.subList(0, Math.min(20, all.size()));
+		long start = System.nanoTime();
+		List<Snippet> snippets = posIndex.snippets(spans, 3);
+		long first = System.nanoTime() - start;
+		Assert.assertEquals(spans.size(), snippets.size());
+		for (Snippet snippet : snippets) {
+			Assert.assertEquals(preprocessor.tokenize(query), preprocessor.tokenize(snippet.getHit()));
+			Assert.assertTrue(preprocessor.tokenize(snippet.getText()).size() <= 3 + 6 + 3);
+		}
+		System.out.println(snippets.get(0));
+		// die zweite Anzeige kommt aus dem Cache:
+		int hits = posIndex.getSnippetService().getCacheHits();
+		start = System.nanoTime();
+		List<Snippet> again = posIndex.snippets(spans, 3);
+		long second = System.nanoTime() - start;
+		Assert.assertEquals(hits + spans.size(), posIndex.getSnippetService().getCacheHits());
+		Assert.assertSame(snippets.get(0), again.get(0));
+		System.out.println(spans.size() + " Ausschnitte: " + first / 1000 + " µs, aus dem Cache: " + second / 1000
+				+ " µs");
+	}
+
+	@Test
+	public void testTokenizer() throws Exception {
+		System.out.println("Tokenizer statt split");
+		List<String> texts = new ArrayList<String>(corpus.getWorks().subList(0, 5));
+		texts.add("");
+		texts.add("  ... ");
+		texts.add("Größe, ÄRGER und Ölmühle: O'er the Ἀθῆναι ΣΟΦΟΣ \ud801\udc00bc 1600x\ud800!");
+		for (String text : texts) {
+			// Referenz: die bisherige Zerlegung mit regulärem Ausdruck
+			List<String> expected = new ArrayList<String>();
+			for (String s : text.toLowerCase().split("[^\\p{L}]")) {
+				if (s.trim().length() > 0) {
+					expected.add(s.trim());
+				}
+			}
+			Preprocessor preprocessor = new Preprocessor();
+			Assert.assertEquals(expected, preprocessor.tokenize(text));
+			Assert.assertEquals(new ArrayList<String>(new TreeSet<String>(expected)), preprocessor.process(text));
+			// über einen Reader mit kleinem Puffer (Tokens über Puffergrenzen hinweg):
+			Tokenizer tokenizer = new Tokenizer().reset(new java.io.StringReader(text), 7);
+			Tokenizer reference = new Tokenizer(text);
+			List<String> fromReader = new ArrayList<String>();
+			while (tokenizer.next()) {
+				Assert.assertTrue(reference.next());
+				Assert.assertEquals(reference.start(), tokenizer.start());
+				Assert.assertEquals(reference.end(), tokenizer.end());
+				fromReader.add(new String(tokenizer.termBuffer(), 0, tokenizer.termLength()));
+			}
+			Assert.assertFalse(reference.next());
+			Assert.assertEquals(expected, fromReader);
+		}
+		// bewusste Abweichung: Tokens werden am Originaltext bestimmt (siehe Tokenizer)
+		Assert.assertEquals(Arrays.asList("i\u0307stanbul"), new Preprocessor().tokenize("İstanbul"));
+	}
+
+	@Test
+	public void testAnalysisChain() {
+		System.out.println("Verarbeitungskette mit Stoppwörtern und Stemmer");
+		Stemmer english = new EnglishStemmer();
+		String[] en = { "kings", "king", "caresses", "caress", "ponies", "poni", "ties", "tie", "cats", "cat",
+				"agreed", "agre", "plastered", "plaster", "motoring", "motor", "hopping", "hop", "hoped", "hope",
+				"happy", "happi", "generously", "generous", "consolingly", "consol", "conspiracy", "conspiraci",
+				"knightly", "knight", "skies", "sky", "news", "news", "succeeded", "succeed", "relational", "relat",
+				"communism", "communism", "by", "by" };
+		for (int i = 0; i < en.length; i += 2) {
+			Assert.assertEquals(en[i], en[i + 1], english.stem(en[i]));
+		}
+		Stemmer german = new GermanStemmer();
+		String[] de = { "häuser", "haus", "katzen", "katz", "ergebnisse", "ergebnis", "straße", "strass",
+				"schönheit", "schonheit", "freundlichkeit", "freundlich", "laufend", "laufend", "bedeutung", "bedeut", "bauer", "bau", "ein", "ein" };
+		for (int i = 0; i < de.length; i += 2) {
+			Assert.assertEquals(de[i], de[i + 1], german.stem(de[i]));
+		}
+		// Stoppwörter fallen weg, die übrigen Terme werden gestemmt:
+		TermDictionary dictionary = new TermDictionary();
+		Preprocessor preprocessor = Preprocessor.english(dictionary);
+		Assert.assertEquals(Arrays.asList("king", "roman", "king"),
+				preprocessor.tokenize("The Kings of the Romans, the King"));
+		Assert.assertEquals(Arrays.asList("haus", "katz"),
+				Preprocessor.german(null).process("Die Katzen in den Häusern"));
+		// gemeinsames Termverzeichnis: gleiche Terme sind dieselbe Instanz, mit fester Id
+		List<String> a = new Preprocessor(dictionary).tokenize(new String("king caesar"));
+		List<String> b = new Preprocessor(dictionary).tokenize(new String("caesar king"));
+		Assert.assertSame(a.get(0), b.get(1));
+		Assert.assertSame(a.get(1), b.get(0));
+		int[] ids = preprocessor.ids("kings and king");
+		Assert.assertEquals(2, ids.length);
+		Assert.assertEquals(ids[0], ids[1]);
+		Assert.assertEquals(dictionary.id("king"), ids[0]);
+		Assert.assertEquals("king", dictionary.term(ids[0]));
+		Assert.assertEquals(-1, dictionary.id("brutus"));
+		int size = dictionary.size();
+		Assert.assertEquals(size, dictionary.add("brutus"));
+		Assert.assertEquals(size + 1, dictionary.size());
+		// kleinerer Index, und die Suche findet alle Formen:
+		InvertedIndex plain = new InvertedIndex(corpus);
+		TermDictionary terms = new TermDictionary();
+		InvertedIndex stemmed = new InvertedIndex(corpus, Preprocessor.english(terms));
+		System.out.println(String.format("Terme: %s -> %s, Postings: %s -> %s Bytes", plain.getTerms().size(),
+				stemmed.getTerms().size(), plain.postingsSizeInBytes(), stemmed.postingsSizeInBytes()));
+		assertTrue(stemmed.getTerms().size() < plain.getTerms().size());
+		assertTrue(stemmed.postingsSizeInBytes() < plain.postingsSizeInBytes());
+		Assert.assertFalse(stemmed.getTerms().contains("the"));
+		Assert.assertEquals(stemmed.search("king"), stemmed.search("kings"));
+		assertTrue(stemmed.search("king").containsAll(plain.search("kings")));
+		assertTrue(stemmed.search("king").containsAll(plain.search("king")));
+		// Anfragen nehmen nichts ins Termverzeichnis auf, bekannte Terme sind trotzdem die gemeinsamen Instanzen:
+		int vocabulary = terms.size();
+		assertTrue(stemmed.search("xqzt AND king").isEmpty());
+		Assert.assertEquals(stemmed.search("king"), stemmed.search("xqzt OR kings"));
+		stemmed.didYouMean("kingz");
+		Assert.assertEquals(vocabulary, terms.size());
+		Preprocessor queries = Preprocessor.english(terms).forQueries();
+		Assert.assertSame(terms.lookup("king"), queries.tokenize(new String("kings")).get(0));
+		Assert.assertEquals(Arrays.asList("xqzt"), queries.tokenize("xqzt"));
+		Assert.assertEquals(-1, queries.ids("xqzt king")[0]);
+		Assert.assertEquals(vocabulary, terms.size());
+		Assert.assertNull(terms.lookup("xqzt"));
+	}
+
+	@Test
+	public void testWildcards() {
+		System.out.println("Wildcard-Anfragen");
+		InvertedIndex index = new InvertedIndex(corpus);
+		WildcardIndex wildcards = new WildcardIndex(index.getTerms());
+		List<String> vocabulary = new ArrayList<String>(new TreeSet<String>(index.getTerms()));
+		String[] patterns = { "caes*", "*us", "br*us", "c*s*r", "*a*", "k*g", "b*t*s", "*", "**", "xyz*", "*q",
+				"caesar", "cae*ar*", "*e*e*" };
+		for (String pattern : patterns) {
+			// Referenz: alle Terme mit regulärem Ausdruck prüfen
+			Pattern regex = Pattern.compile(pattern.replace("*", ".*"));
+			List<String> expected = new ArrayList<String>();
+			for (String t : vocabulary) {
+				if (regex.matcher(t).matches()) {
+					expected.add(t);
+				}
+			}
+			Assert.assertEquals(pattern, expected, wildcards.expand(pattern, Integer.MAX_VALUE));
+			Assert.assertEquals(pattern, expected.subList(0, Math.min(2, expected.size())),
+					wildcards.expand(pattern, 2));
+		}
+		assertTrue(wildcards.expand("caes*", 10).contains("caesar"));
+		// Zeit pro Expansion:
+		int runs = 10000;
+		long start = System.nanoTime();
+		for (int i = 0; i < runs; i++) {
+			wildcards.expand(patterns[i % 4], WildcardIndex.MAX_EXPANSIONS);
+		}
+		System.out.println("Expansion: " + (System.nanoTime() - start) / runs / 1000.0 + " µs.");
+		// in Anfragen: ODER über die Expansion
+		Set<Integer> expected = new TreeSet<Integer>();
+		for (String t : wildcards.expand("br*s", WildcardIndex.MAX_EXPANSIONS)) {
+			expected.addAll(index.search(t));
+		}
+		Assert.assertEquals(expected, index.search("Br*s"));
+		assertTrue(index.search("caes*").containsAll(index.search("caesar")));
+		Assert.assertEquals(index.search("caesar brutus"), index.search("caes* AND brutus"));
+		Assert.assertEquals(index.search("caesar brutus"), index.search("caes*r* brutus"));
+		Assert.assertTrue(index.search("xyz* OR caesar").equals(index.search("caesar")));
+		Assert.assertTrue(index.search("xyz*").isEmpty());
+		System.out.println(index.plan("brutus AND caes*"));
+		PositionalIndex positional = new PositionalIndex(corpus);
+		Assert.assertEquals(index.search("caes* NOT br*us"), positional.search("caes* NOT br*us"));
+		Assert.assertEquals(index.search("*"), index.search(""));
+	}
+
+	@Test
+	public void testSpellingCorrection() {
+		System.out.println("Meinten Sie ...?");
+		Assert.assertEquals(3, SpellingCorrector.distance("kitten", "sitting", 3));
+		Assert.assertEquals(2, SpellingCorrector.distance("caesar", "ceasar", 2));
+		Assert.assertEquals(2, SpellingCorrector.distance("kitten", "sitting", 1));// abgebrochen: max + 1
+		InvertedIndex index = new InvertedIndex(corpus);
+		Map<String, Integer> dfs = new TreeMap<String, Integer>();
+		for (String t : index.getTerms()) {
+			dfs.put(t, index.search(t).size());
+		}
+		SpellingCorrector corrector = new SpellingCorrector(dfs);
+		// die Filter über die Bigramme dürfen keinen Kandidaten verlieren (Vergleich mit allen Termen):
+		for (String word : new String[] { "ceasar", "brutos", "calpurnia", "kng", "rommo", "xqzt", "tthe", "oo" }) {
+			int maxEdits = word.length() <= 4 ? 1 : SpellingCorrector.MAX_EDITS;
+			final Map<String, Integer> distances = new TreeMap<String, Integer>();
+			for (String t : dfs.keySet()) {
+				int d = SpellingCorrector.distance(word, t, Integer.MAX_VALUE - 1);
+				if (d <= maxEdits && !t.equals(word)) {
+					distances.put(t, d);
+				}
+			}
+			final Map<String, Integer> df = dfs;
+			List<String> expected = new ArrayList<String>(distances.keySet());
+			java.util.Collections.sort(expected, new java.util.Comparator<String>() {
+				@Override
+				public int compare(String o1, String o2) {
+					int d = distances.get(o1).compareTo(distances.get(o2));
+					if (d != 0) {
+						return d;
+					}
+					d = df.get(o2).compareTo(df.get(o1));
+					return d != 0 ? d : o1.compareTo(o2);
+				}
+			});
+			Assert.assertEquals(word, expected.subList(0, Math.min(5, expected.size())),
+					corrector.suggest(word, 5, Long.MAX_VALUE / 2));
+			// ohne Zeit gibt es höchstens weniger Vorschläge:
+			assertTrue(expected.containsAll(corrector.suggest(word, 5, 0)));
+		}
+		Assert.assertEquals("caesar", corrector.suggest("ceasar", 1).get(0));
+		Assert.assertEquals("Term ceasar nicht gefunden - Meinten Sie: " + corrector.suggest("ceasar", 3) + "?",
+				corrector.notFound("ceasar"));
+		Assert.assertEquals("Term xqzt nicht gefunden", corrector.notFound("xqzt"));
+		// Zeit für ein unbekanntes Wort:
+		long start = System.nanoTime();
+		for (int i = 0; i < 1000; i++) {
+			corrector.suggest("ceasar", 3);
+		}
+		System.out.println("Vorschläge: " + (System.nanoTime() - start) / 1000 / 1000.0 + " ms.");
+		// in der Suche:
+		assertTrue(index.search("Ceasar AND Brutos").isEmpty());
+		String corrected = index.didYouMean("Ceasar AND Brutos");
+		Assert.assertEquals("(caesar AND brutus)", corrected);
+		assertTrue(index.search(corrected).size() > 0);
+		Assert.assertEquals("\"caesar brutus\"", index.didYouMean("\"Ceasar Brutus\""));
+		Assert.assertNull(index.didYouMean("caesar brutus"));
+		Assert.assertNull(index.didYouMean("caes* xqzt"));
+	}
+
+	@Test
+	public void testSpimi() throws Exception {
+		// Paralleler Indexaufbau mit ausgelagerten Läufen liefert denselben Index wie der serielle:
+		List<String> works = corpus.getWorks();
+		Preprocessor preprocessor = new Preprocessor();
+		Map<String, PositionalPostings.Builder> builders = new TreeMap<String, PositionalPostings.Builder>();
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < works.size(); i++) {
+			List<String> tokens = preprocessor.tokenize(works.get(i));
+			for (int j = 0; j < tokens.size(); j++) {
+				PositionalPostings.Builder postings = builders.get(tokens.get(j));
+				if (postings == null) {
+					postings = new PositionalPostings.Builder();
+					builders.put(tokens.get(j), postings);
+				}
+				postings.add(i, j);
+			}
+		}
+		System.out.println("Seriell, Dauer: " + (System.currentTimeMillis() - start) + " ms.");
+		SpimiIndexer.Source source = SpimiIndexer.tokens(works, preprocessor);
+		// kleines Budget: jeder Thread muss mehrfach auslagern
+		SpimiIndexer small = new SpimiIndexer(4, 4 * 1024);
+		Map<String, PositionalPostings> spilled = small.index(source);
+		assertTrue("Läufe sollten ausgelagert werden", small.getSpills() > 0);
+		SpimiIndexer large = new SpimiIndexer();
+		Map<String, PositionalPostings> inMemory = large.index(source);
+		Assert.assertEquals(0, large.getSpills());
+		// das Budget gilt für alle Teil-Indexe zusammen, nicht für jeden Bereich:
+		long total = large.getPeakMemory();
+		SpimiIndexer shared = new SpimiIndexer(4, total / 3);
+		Assert.assertEquals(builders.keySet(), shared.index(source).keySet());
+		assertTrue(shared.getSpills() > 0);
+		assertTrue(shared.getPeakMemory() + " > " + total / 3, shared.getPeakMemory() <= total / 3);
+		Assert.assertEquals(builders.keySet(), spilled.keySet());
+		Assert.assertEquals(builders.keySet(), inMemory.keySet());
+		for (Map.Entry<String, PositionalPostings.Builder> e : builders.entrySet()) {
+			SortedMap<Integer, List<Integer>> expected = e.getValue().build().toMap();
+			Assert.assertEquals(e.getKey(), expected, spilled.get(e.getKey()).toMap());
+			Assert.assertEquals(e.getKey(), expected, inMemory.get(e.getKey()).toMap());
+		}
+		// ein einzelnes Werk über dem Budget wird ebenfalls ausgelagert, auch das letzte eines Bereichs:
+		SpimiIndexer tiny = new SpimiIndexer(2, 2);
+		Assert.assertEquals(builders.keySet(), tiny.index(source).keySet());
+		Assert.assertEquals(works.size(), tiny.getSpills());
+		// direkt in ein Segment, ohne den Index als Map:
+		java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("spimi");
+		tiny.write(source, dir, "spimi");
+		Assert.assertEquals(works.size(), tiny.getSpills());
+		Segment segment = Segment.open(dir, "spimi");
+		Assert.assertEquals(works.size(), segment.numDocs());
+		Assert.assertEquals(builders.size(), segment.size());
+		for (Map.Entry<String, PositionalPostings.Builder> e : builders.entrySet()) {
+			Assert.assertEquals(e.getKey(), e.getValue().build().toMap(), segment.asMap().get(e.getKey()).toMap());
+		}
+		Segment.Writer writer = new Segment.Writer(dir, "unsorted", works.size());
+		writer.add("b", spilled.get("caesar"));
+		try {
+			writer.add("a", spilled.get("caesar"));
+			Assert.fail("Terme müssen sortiert sein");
+		} catch (IllegalArgumentException e) {
+			// erwartet
+		} finally {
+			writer.close();
+		}
+		try {
+			Segment.open(dir, "unsorted");
+			Assert.fail("Nach einem Fehler kein Termverzeichnis");
+		} catch (java.io.IOException e) {
+			// erwartet
+		}
+		// ohne Positionen nur die Werke:
+		Map<String, PositionalPostings> docs = new SpimiIndexer(3, 1024).index(SpimiIndexer.terms(works,
+				preprocessor));
+		for (Map.Entry<String, PositionalPostings.Builder> e : builders.entrySet()) {
+			Assert.assertEquals(e.getKey(), e.getValue().build().toMap().keySet(), docs.get(e.getKey()).toMap()
+					.keySet());
+		}
+	}
+
+	@Test
+	public void testSaveAndOpen() throws Exception {
+		// Gespeicherte und wieder geöffnete Indexe liefern dieselben Ergebnisse:
+		java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("index");
+		InvertedIndex index = new InvertedIndex(corpus);
+		index.save(dir);
+		long start = System.currentTimeMillis();
+		InvertedIndex opened = InvertedIndex.open(dir);
+		System.out.println("Öffnen: " + (System.currentTimeMillis() - start) + " ms.");
+		Assert.assertEquals(index.getTerms(), new TreeSet<String>(opened.getTerms()));
+		for (String q : Arrays.asList("Brutus", "Brutus Caesar", "Caesar OR Calpurnia", "Brutus AND NOT Caesar",
+				"caes* bru*", "xqzt")) {
+			Assert.assertEquals(q, index.search(q), opened.search(q));
+		}
+		Assert.assertEquals(index.didYouMean("Ceasar AND Brutos"), opened.didYouMean("Ceasar AND Brutos"));
+
+		PositionalIndex posIndex = new PositionalIndex(corpus);
+		posIndex.save(dir);
+		PositionalIndex posOpened = PositionalIndex.open(dir, corpus);
+		for (String phrase : Arrays.asList("to be or not to be", "brutus caesar", "the king")) {
+			Assert.assertEquals(phrase, posIndex.phraseSearch(phrase), posOpened.phraseSearch(phrase));
+		}
+		Assert.assertEquals(posIndex.search("king AND queen"), posOpened.search("king AND queen"));
+		List<Span> spans = posIndex.windowSearch("Brutus Caesar", 3, false);
+		Assert.assertEquals(spans.size(), posOpened.windowSearch("Brutus Caesar", 3, false).size());
+		Assert.assertEquals(posIndex.snippets(spans, 3).toString(), posOpened.snippets(spans, 3).toString());
+
+		// Segment direkt: sortierte Terme, Version im Kopf
+		Segment segment = Segment.open(dir, "positional");
+		Assert.assertEquals(corpus.getWorks().size(), segment.numDocs());
+		for (int i = 1; i < segment.size(); i++) {
+			assertTrue(segment.term(i - 1).compareTo(segment.term(i)) < 0);
+		}
+		int i = segment.indexOf("caesar");
+		assertTrue(i >= 0);
+		Assert.assertEquals(segment.postings(i).size(), segment.df(i));
+		assertTrue(segment.indexOf("xqzt") < 0);
+		Assert.assertNull(segment.asMap().get("xqzt"));
+		// Überschreiben, während das Segment gemappt ist: die alten Dateien werden ersetzt, nicht überschrieben
+		PositionalPostings caesar = segment.postings(i);
+		posIndex.save(dir);
+		Assert.assertEquals(caesar.toMap(), segment.postings(i).toMap());
+		// ein fehlgeschlagenes Überschreiben lässt das bestehende Segment unverändert:
+		Segment.Writer writer = new Segment.Writer(dir, "positional", segment.numDocs());
+		writer.add("zzz", caesar);
+		try {
+			writer.add("aaa", caesar);
+			Assert.fail("Terme müssen sortiert sein");
+		} catch (IllegalArgumentException e) {
+			// erwartet
+		} finally {
+			writer.close();
+		}
+		Segment reopened = Segment.open(dir, "positional");
+		Assert.assertEquals(segment.size(), reopened.size());
+		Assert.assertEquals(caesar.toMap(), reopened.postings(reopened.indexOf("caesar")).toMap());
+		for (java.io.File file : dir.toFile().listFiles()) {
+			Assert.assertFalse(file.getName(), file.getName().endsWith(".tmp"));
+		}
+		try {
+			Segment.open(dir, "boole.postings");
+			Assert.fail("Keine Segmentdateien");
+		} catch (java.io.IOException e) {
+			// erwartet
+		}
+	}
+
+	@Test
+	public void testIncrementalIndex() throws Exception {
+		// Werk für Werk aufgebaut (kleiner Hilfsindex, viele Zusammenführungen) wie der InvertedIndex:
+		InvertedIndex index = new InvertedIndex(corpus);
+		final IncrementalIndex incremental = new IncrementalIndex(new Preprocessor(), 4);
+		final List<String> queries = Arrays.asList("Brutus", "Brutus Caesar", "Caesar OR Calpurnia",
+				"Brutus AND NOT Caesar", "caes* bru*", "xqzt");
+		// währenddessen wird gesucht, ohne Sperren:
+		final List<Throwable> errors = java.util.Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < 200; i++) {
+						incremental.search(queries.get(i % queries.size()));
+					}
+				} catch (Throwable t) {
+					errors.add(t);
+				}
+			}
+		};
+		reader.start();
+		long start = System.currentTimeMillis();
+		for (String work : corpus.getWorks()) {
+			incremental.add(work);
+		}
+		System.out.println("Hinzufügen: " + (System.currentTimeMillis() - start) + " ms.");
+		reader.join();
+		Assert.assertEquals(new ArrayList<Throwable>(), errors);
+		incremental.awaitMerges();
+		// logarithmisch: jede Stufe höchstens einmal
+		List<Integer> levels = incremental.getLevels();
+		Assert.assertEquals(new TreeSet<Integer>(levels).size(), levels.size());
+		System.out.println("Stufen: " + levels);
+		for (String q : queries) {
+			Assert.assertEquals(q, index.search(q), incremental.search(q));
+			Assert.assertEquals(q, index.search(q), new IncrementalIndex(corpus).search(q));
+		}
+		// Löschen: sofort aus den Ergebnissen, auch nach weiterem Zusammenführen
+		Set<Integer> brutus = incremental.search("Brutus");
+		int deleted = brutus.iterator().next();
+		assertTrue(incremental.delete(deleted));
+		Assert.assertFalse(incremental.delete(deleted));
+		Assert.assertFalse(incremental.search("Brutus").contains(deleted));
+		Assert.assertEquals(brutus.size() - 1, incremental.search("Brutus").size());
+		int added = incremental.add(corpus.getWorks().get(deleted));
+		Assert.assertEquals(corpus.getWorks().size(), added);
+		for (int i = 0; i < 8; i++) {
+			incremental.add("");
+		}
+		incremental.awaitMerges();
+		Set<Integer> after = incremental.search("Brutus");
+		Assert.assertFalse(after.contains(deleted));
+		assertTrue(after.contains(added));
+		Assert.assertEquals(corpus.getWorks().size() + 8, incremental.size());
+		// nach close() kein Merge-Thread mehr, Suchen gehen weiter:
+		incremental.close();
+		Assert.assertEquals(after, incremental.search("Brutus"));
+		try {
+			incremental.add("");
+			Assert.fail("Index ist geschlossen");
+		} catch (IllegalStateException e) {
+			// erwartet
+		}
+	}
+
+	@Test
+	public void testQueryCache() {
+		// LRU, begrenzt in Bytes:
+		QueryCache cache = new QueryCache(1000);
+		for (int i = 0; i < 20; i++) {
+			cache.put("q" + i, new int[50]);
+			assertTrue(cache.sizeInBytes() <= 1000);
+		}
+		Assert.assertNull(cache.get("q0"));
+		Assert.assertNotNull(cache.get("q19"));
+		cache.put("q17", new int[50]);
+		cache.get("q17");
+		cache.put("q20", new int[50]);
+		Assert.assertNotNull("zuletzt benutzt", cache.get("q17"));
+		Assert.assertNull("am längsten unbenutzt", cache.get("q18"));
+		Assert.assertNull("zu groß", putAndGet(cache, "big", new int[1000]));
+		// veralteter Stand:
+		cache.invalidate(2);
+		Assert.assertEquals(0, cache.size());
+		cache.put("q1", new int[1]);
+		Assert.assertNull(cache.get("q1"));
+		Assert.assertNull(putAndGet(cache, "q1", new int[1]));
+		cache.put(2, "q1", new int[1]);
+		Assert.assertNotNull(cache.get(2, "q1"));
+		// ältere Stände überholen den aktuellen nicht:
+		cache.invalidate(1);
+		Assert.assertNotNull(cache.get(2, "q1"));
+
+		// im Index: gleiche Ergebnisse, die Wiederholung aus dem Cache
+		InvertedIndex index = new InvertedIndex(corpus);
+		Set<Integer> first = index.search("Brutus AND Caesar AND Calpurnia");
+		int hits = index.getCache().getHits();
+		Assert.assertEquals(first, index.search("brutus caesar calpurnia"));
+		Assert.assertEquals(hits + 1, index.getCache().getHits());
+		// Teilergebnis: das Paar part/king (kürzeste Listen) wird beim zweiten Mal aufgenommen ...
+		PositionalIndex uncached = new PositionalIndex(corpus);
+		index.search("Part AND King AND NOT Hamlet");
+		index.search("King AND Part AND NOT Hamlet");
+		// ... und in einer anderen Anfrage wiederverwendet:
+		hits = index.getCache().getHits();
+		String query = "Part AND King AND NOT Lear";
+		Assert.assertEquals(uncached.search(query), index.search(query));
+		Assert.assertEquals(hits + 1, index.getCache().getHits());
+
+		// Änderungen am Index verwerfen den Cache
+		IncrementalIndex incremental = new IncrementalIndex(corpus);
+		Set<Integer> before = incremental.search("Brutus");
+		Assert.assertEquals(before, incremental.search("Brutus"));
+		int added = incremental.add("Brutus is an honourable man");
+		assertTrue(incremental.search("Brutus").contains(added));
+		incremental.delete(added);
+		Assert.assertEquals(before, incremental.search("Brutus"));
+	}
+
+	@Test
+	public void testConcurrentSearch() throws Exception {
+		// Viele Threads durchsuchen denselben Index ohne Sperren, währenddessen wird ein neuer Stand veröffentlicht:
+		final InvertedIndex index = new InvertedIndex(corpus);
+		final PositionalIndex posIndex = new PositionalIndex(corpus);
+		final IncrementalIndex incremental = new IncrementalIndex(corpus);
+		final List<String> queries = Arrays.asList("Brutus", "Brutus Caesar", "Caesar OR Calpurnia",
+				"Brutus AND NOT Caesar", "caes* bru*", "Part AND King AND NOT Hamlet");
+		final Map<String, Set<Integer>> phrases = new HashMap<String, Set<Integer>>();
+		for (String q : Arrays.asList("\"to be or not to be\"", "\"brutus is an honourable man\"")) {
+			phrases.put(q, posIndex.search(q));
+		}
+		final Map<String, Set<Integer>> expected = new HashMap<String, Set<Integer>>();
+		for (String q : queries) {
+			expected.put(q, index.search(q));
+		}
+		final List<Throwable> errors = java.util.Collections.synchronizedList(new ArrayList<Throwable>());
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			final int offset = t;
+			Thread reader = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < 100; i++) {
+							String q = queries.get((i + offset) % queries.size());
+							Assert.assertEquals(q, expected.get(q), index.search(q));
+							Assert.assertEquals(q, expected.get(q), posIndex.search(q));
+							for (Map.Entry<String, Set<Integer>> phrase : phrases.entrySet()) {
+								Assert.assertEquals(phrase.getValue(), posIndex.search(phrase.getKey()));
+							}
+							// neue Dokumente kommen nur hinzu, die alten Treffer bleiben:
+							assertTrue(q, incremental.search(q).containsAll(expected.get(q)));
+						}
+					} catch (Throwable t) {
+						errors.add(t);
+					}
+				}
+			};
+			readers.add(reader);
+			reader.start();
+		}
+		for (int i = 0; i < 20; i++) {
+			incremental.add("Brutus and Caesar");
+		}
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		Assert.assertEquals(new ArrayList<Throwable>(), errors);
+		// Ergebnisse sind Kopien bzw. unveränderlich:
+		Set<Integer> result = index.search("Brutus");
+		result.clear();
+		Assert.assertEquals(expected.get("Brutus"), index.search("Brutus"));
+		try {
+			index.getTerms().clear();
+			Assert.fail("Vokabular unveränderlich");
+		} catch (UnsupportedOperationException e) {
+			// erwartet
+		}
+	}
+
+	private static int[] putAndGet(QueryCache cache, String key, int[] docs) {
+		cache.put(key, docs);
+		return cache.get(key);
+	}
+
+}
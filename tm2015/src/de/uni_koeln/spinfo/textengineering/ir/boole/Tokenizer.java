@@ -0,0 +1,273 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/*
+ * Handgeschriebener Tokenizer: Tokens sind (wie beim bisherigen split mit "[^\\p{L}]") die maximalen Folgen von
+ * Buchstaben. Statt den ganzen Text zu kopieren, kleinzuschreiben und mit einem regulären Ausdruck zu zerlegen, läuft
+ * der Tokenizer einmal über den Text (CharSequence oder Reader) und liefert die Tokens über einen wiederverwendbaren
+ * Cursor:
+ *
+ * Tokenizer tokenizer = new Tokenizer(text);
+ *
+ * while (tokenizer.next()) { ... tokenizer.start(), tokenizer.end(), tokenizer.term() ... }
+ *
+ * Für ASCII-Zeichen entscheidet eine Tabelle, ob es ein Buchstabe bzw. ein Großbuchstabe ist; nur für die übrigen
+ * Zeichen fragen wir Character.isLetter(). Kleingeschrieben wird erst, wenn der Term tatsächlich abgefragt wird, und
+ * für reine ASCII-Tokens ohne eigene String-Operationen. Ein kleingeschriebenes ASCII-Token aus einem String ist
+ * einfach ein substring().
+ *
+ * Einziger Unterschied zum früheren split: Ob ein Zeichen zum Token gehört, entscheidet der Tokenizer am Originaltext,
+ * nicht am kleingeschriebenen. Wörter wie "İstanbul", deren Kleinschreibung ein kombinierendes Zeichen (kein
+ * Buchstabe) einfügt, bleiben so ein Token statt in "i" und "stanbul" zu zerfallen.
+ */
+public final class Tokenizer {
+
+	private static final byte LETTER = 1;
+	private static final byte UPPER = 2;
+	private static final byte[] ASCII = new byte[128];
+	static {
+		for (char c = 'a'; c <= 'z'; c++) {
+			ASCII[c] = LETTER;
+			ASCII[c - 'a' + 'A'] = LETTER | UPPER;
+		}
+	}
+
+	private static final int BUFFER_SIZE = 4096;
+
+	// Eingabe: entweder eine CharSequence ...
+	private CharSequence text;
+	private int pos;
+	// ... oder ein Reader mit Puffer:
+	private Reader reader;
+	private char[] buffer;
+	private int bufferLength;
+	private int bufferPos;
+	private int bufferOffset;// Position von buffer[0] im Text
+	private int pushback = -1;// ein zu viel gelesenes Zeichen (bei ungültigen Surrogat-Paaren)
+
+	// das aktuelle Token:
+	private int start;
+	private int end;
+	private boolean ascii;
+	private boolean lowerCase;
+	private char[] raw = new char[0];// die Zeichen des Tokens (nur beim Reader, dessen Puffer weiterläuft)
+	private char[] term = new char[0];
+	private int termLength = -1;// -1 = noch nicht kleingeschrieben
+
+	public Tokenizer() {
+	}
+
+	public Tokenizer(CharSequence text) {
+		reset(text);
+	}
+
+	public Tokenizer(Reader reader) {
+		reset(reader);
+	}
+
+	public Tokenizer reset(CharSequence text) {
+		this.text = text;
+		this.reader = null;
+		pos = 0;
+		start = end = 0;
+		termLength = -1;
+		return this;
+	}
+
+	public Tokenizer reset(Reader reader) {
+		return reset(reader, BUFFER_SIZE);
+	}
+
+	/* Puffergröße nur für Tests wählbar: */
+	Tokenizer reset(Reader reader, int bufferSize) {
+		this.text = null;
+		this.reader = reader;
+		if (buffer == null || buffer.length != bufferSize) {
+			buffer = new char[bufferSize];
+		}
+		bufferLength = bufferPos = bufferOffset = 0;
+		pushback = -1;
+		start = end = 0;
+		termLength = -1;
+		return this;
+	}
+
+	/*
+	 * Rückt zum nächsten Token vor; false am Ende des Texts.
+	 */
+	public boolean next() {
+		termLength = -1;
+		int c;
+		// Nicht-Buchstaben überspringen:
+		do {
+			start = offset();
+			c = read();
+			if (c < 0) {
+				start = end = offset();
+				return false;
+			}
+		} while (!isLetter(c));
+		ascii = true;
+		lowerCase = true;
+		int rawLength = 0;
+		do {
+			if (c < 128) {
+				lowerCase &= (ASCII[c] & UPPER) == 0;
+			} else {
+				ascii = false;
+			}
+			if (reader != null) {
+				if (rawLength + 2 > raw.length) {
+					raw = Arrays.copyOf(raw, Math.max(16, raw.length * 2));
+				}
+				rawLength += Character.toChars(c, raw, rawLength);
+			}
+			end = offset();
+			c = read();
+			/*
+			 * Das Zeichen nach dem Token ist kein Buchstabe und wird ohnehin
+			 * übersprungen, wir müssen es also nicht zurücklegen.
+			 */
+		} while (c >= 0 && isLetter(c));
+		return true;
+	}
+
+	/*
+	 * Anfang (inklusive) und Ende (exklusive) des Tokens im Text, in Zeichen (chars).
+	 */
+	public int start() {
+		return start;
+	}
+
+	public int end() {
+		return end;
+	}
+
+	public int length() {
+		return end - start;
+	}
+
+	/*
+	 * Der kleingeschriebene Term im wiederverwendeten Puffer: die ersten termLength() Zeichen sind gültig. Der Puffer
+	 * wird beim nächsten Aufruf von next() überschrieben.
+	 */
+	public char[] termBuffer() {
+		lowerCase();
+		return term;
+	}
+
+	public int termLength() {
+		lowerCase();
+		return termLength;
+	}
+
+	/*
+	 * Der kleingeschriebene Term als String.
+	 */
+	public String term() {
+		if (ascii && lowerCase && text instanceof String) {
+			return ((String) text).substring(start, end);
+		}
+		lowerCase();
+		return new String(term, 0, termLength);
+	}
+
+	private void lowerCase() {
+		if (termLength >= 0) {
+			return;
+		}
+		int n = end - start;
+		if (ascii) {
+			// ASCII: Großbuchstaben unterscheiden sich nur in einem Bit
+			if (term.length < n) {
+				term = new char[Math.max(n, 2 * term.length)];
+			}
+			for (int i = 0; i < n; i++) {
+				char c = charAt(i);
+				term[i] = c <= 'Z' && c >= 'A' ? (char) (c | 0x20) : c;
+			}
+			termLength = n;
+		} else {
+			/*
+			 * Sonst wie bisher String.toLowerCase() (das z.B. ein Sigma am
+			 * Wortende anders behandelt), aber nur für dieses Token:
+			 */
+			char[] chars = new char[n];
+			for (int i = 0; i < n; i++) {
+				chars[i] = charAt(i);
+			}
+			String lower = new String(chars).toLowerCase();
+			if (term.length < lower.length()) {
+				term = new char[Math.max(lower.length(), 2 * term.length)];
+			}
+			lower.getChars(0, lower.length(), term, 0);
+			termLength = lower.length();
+		}
+	}
+
+	private char charAt(int i) {
+		return reader != null ? raw[i] : text.charAt(start + i);
+	}
+
+	private static boolean isLetter(int c) {
+		return c < 128 ? (ASCII[c] & LETTER) != 0 : Character.isLetter(c);
+	}
+
+	/*
+	 * Anzahl der bisher gelesenen Zeichen.
+	 */
+	private int offset() {
+		return reader != null ? bufferOffset + bufferPos - (pushback >= 0 ? 1 : 0) : pos;
+	}
+
+	/*
+	 * Das nächste Zeichen (Surrogat-Paare als ein Code Point) oder -1 am Ende.
+	 */
+	private int read() {
+		if (reader == null) {
+			if (pos >= text.length()) {
+				return -1;
+			}
+			char c = text.charAt(pos++);
+			if (Character.isHighSurrogate(c) && pos < text.length() && Character.isLowSurrogate(text.charAt(pos))) {
+				return Character.toCodePoint(c, text.charAt(pos++));
+			}
+			return c;
+		}
+		int c = readChar();
+		if (c >= 0 && Character.isHighSurrogate((char) c)) {
+			int low = readChar();
+			if (low >= 0 && Character.isLowSurrogate((char) low)) {
+				return Character.toCodePoint((char) c, (char) low);
+			}
+			pushback = low;
+		}
+		return c;
+	}
+
+	private int readChar() {
+		if (pushback >= 0) {
+			int c = pushback;
+			pushback = -1;
+			return c;
+		}
+		if (bufferPos == bufferLength) {
+			bufferOffset += bufferLength;
+			bufferPos = 0;
+			try {
+				bufferLength = Math.max(0, reader.read(buffer, 0, buffer.length));
+			} catch (IOException e) {
+				e.printStackTrace();
+				bufferLength = 0;
+			}
+			if (bufferLength == 0) {
+				return -1;
+			}
+		}
+		return buffer[bufferPos++];
+	}
+
+}
@@ -0,0 +1,130 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import de.uni_koeln.spinfo.textengineering.ir.basic.CompressedBitmap;
+import de.uni_koeln.spinfo.textengineering.ir.basic.Corpus;
+import de.uni_koeln.spinfo.textengineering.ir.basic.InformationRetrieval;
+
+/*
+ * Suche mit regulären Ausdrücken über einen Trigramm-Index: Zu jeder Folge von drei Zeichen speichern wir die Werke,
+ * in denen sie vorkommt. Eine Anfrage wird zunächst in eine boolesche Trigramm-Anfrage übersetzt (siehe
+ * TrigramQuery), die die Kandidaten liefert; nur auf diesen läuft dann der eigentliche java.util.regex-Matcher.
+ * Bei selektiven Ausdrücken wird so nur ein kleiner Teil des Korpus überhaupt durchsucht.
+ */
+public class TrigramIndex implements InformationRetrieval {
+
+	// Postings als komprimierte Bitmaps, Schlüssel sind die drei Zeichen als long:
+	private Map<Long, CompressedBitmap> index;
+	private List<String> works;
+
+	public TrigramIndex(Corpus corpus) {
+		long start = System.currentTimeMillis();
+		works = corpus.getWorks();
+		index = index(works);
+		System.out.println("Trigramm-Index erstellt (" + index.size() + " Trigramme), Dauer: "
+				+ (System.currentTimeMillis() - start) + " ms.");
+	}
+
+	private Map<Long, CompressedBitmap> index(List<String> works) {
+		Map<Long, CompressedBitmap> index = new HashMap<Long, CompressedBitmap>();
+		for (int i = 0; i < works.size(); i++) {
+			String work = works.get(i);
+			for (int j = 0; j + 3 <= work.length(); j++) {
+				Long key = key(work.charAt(j), work.charAt(j + 1), work.charAt(j + 2));
+				CompressedBitmap postings = index.get(key);
+				if (postings == null) {
+					postings = new CompressedBitmap();
+					index.put(key, postings);
+				}
+				/*
+				 * Die Werke kommen aufsteigend, mehrfache Vorkommen im selben
+				 * Werk werden von der Bitmap ignoriert:
+				 */
+				postings.add(i);
+			}
+		}
+		for (CompressedBitmap postings : index.values()) {
+			postings.optimize();
+		}
+		return index;
+	}
+
+	private static long key(char c1, char c2, char c3) {
+		return ((long) c1 << 32) | ((long) c2 << 16) | c3;
+	}
+
+	/*
+	 * Die Werke, in denen der reguläre Ausdruck einen Treffer hat (wie Matcher.find()).
+	 */
+	@Override
+	public Set<Integer> search(String regex) {
+		long start = System.currentTimeMillis();
+		Pattern pattern = Pattern.compile(regex);
+		int[] candidates = candidates(regex).toArray();
+		Set<Integer> result = new TreeSet<Integer>();
+		for (int id : candidates) {
+			if (pattern.matcher(works.get(id)).find()) {
+				result.add(id);
+			}
+		}
+		System.out.println("Suchdauer: " + (System.currentTimeMillis() - start) + " ms, " + candidates.length
+				+ " von " + works.size() + " Werken geprüft.");
+		return result;
+	}
+
+	/*
+	 * Die Kandidaten für einen regulären Ausdruck (Obermenge der Treffer).
+	 */
+	public CompressedBitmap candidates(String regex) {
+		return evaluate(TrigramQuery.fromRegex(regex));
+	}
+
+	private CompressedBitmap evaluate(TrigramQuery query) {
+		switch (query.getOp()) {
+		case ALL:
+			return CompressedBitmap.range(0, works.size());
+		case NONE:
+			return new CompressedBitmap();
+		case TRIGRAM:
+			String t = query.getTrigram();
+			CompressedBitmap postings = index.get(key(t.charAt(0), t.charAt(1), t.charAt(2)));
+			return postings == null ? new CompressedBitmap() : postings;
+		case AND:
+			/*
+			 * Wie bei der Intersection von Postings-Listen beginnen wir mit den
+			 * kleinsten Teilergebnissen und hören auf, sobald nichts übrig ist:
+			 */
+			List<CompressedBitmap> parts = new ArrayList<CompressedBitmap>();
+			for (TrigramQuery sub : query.getSubs()) {
+				parts.add(evaluate(sub));
+			}
+			Collections.sort(parts, new Comparator<CompressedBitmap>() {
+				@Override
+				public int compare(CompressedBitmap o1, CompressedBitmap o2) {
+					return Integer.valueOf(o1.cardinality()).compareTo(o2.cardinality());
+				}
+			});
+			CompressedBitmap result = parts.get(0);
+			for (int i = 1; i < parts.size() && !result.isEmpty(); i++) {
+				result = result.and(parts.get(i));
+			}
+			return result;
+		default:// OR
+			CompressedBitmap union = new CompressedBitmap();
+			for (TrigramQuery sub : query.getSubs()) {
+				union = union.or(evaluate(sub));
+			}
+			return union;
+		}
+	}
+
+}
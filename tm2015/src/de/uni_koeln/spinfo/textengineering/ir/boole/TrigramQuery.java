@@ -0,0 +1,594 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+ * Boolesche Anfrage über Trigramme, die aus einem regulären Ausdruck abgeleitet wird (nach Russ Cox, "Regular
+ * Expression Matching with a Trigram Index", 2012). Die Anfrage beschreibt eine notwendige Bedingung: Jeder Text, in
+ * dem der Ausdruck einen Treffer hat, erfüllt auch die Trigramm-Anfrage. Umgekehrt gilt das nicht - die
+ * Kandidaten müssen also noch mit dem eigentlichen Matcher geprüft werden.
+ *
+ * Für jeden Teilausdruck merken wir uns, ob er leer sein kann, ggf. die (kleine) Menge exakter Treffer, Mengen
+ * möglicher Präfixe und Suffixe sowie die bereits gesicherte Trigramm-Anfrage. Wo der Parser einen Ausdruck nicht
+ * versteht, nehmen wir konservativ 'passt auf alles' an.
+ */
+public final class TrigramQuery {
+
+	public enum Op {
+		ALL, NONE, TRIGRAM, AND, OR
+	}
+
+	public static final TrigramQuery ALL = new TrigramQuery(Op.ALL, null, Collections.<TrigramQuery> emptyList());
+	public static final TrigramQuery NONE = new TrigramQuery(Op.NONE, null, Collections.<TrigramQuery> emptyList());
+
+	// obere Schranke für die Größe der Mengen exakter Treffer, Präfixe und Suffixe:
+	private static final int MAX_SET = 16;
+
+	private final Op op;
+	private final String trigram;
+	private final List<TrigramQuery> subs;
+
+	private TrigramQuery(Op op, String trigram, List<TrigramQuery> subs) {
+		this.op = op;
+		this.trigram = trigram;
+		this.subs = subs;
+	}
+
+	public static TrigramQuery trigram(String trigram) {
+		return new TrigramQuery(Op.TRIGRAM, trigram, Collections.<TrigramQuery> emptyList());
+	}
+
+	public static TrigramQuery and(TrigramQuery a, TrigramQuery b) {
+		if (a.op == Op.NONE || b.op == Op.NONE) {
+			return NONE;
+		}
+		if (a.op == Op.ALL) {
+			return b;
+		}
+		if (b.op == Op.ALL) {
+			return a;
+		}
+		return combine(Op.AND, a, b);
+	}
+
+	public static TrigramQuery or(TrigramQuery a, TrigramQuery b) {
+		if (a.op == Op.ALL || b.op == Op.ALL) {
+			return ALL;
+		}
+		if (a.op == Op.NONE) {
+			return b;
+		}
+		if (b.op == Op.NONE) {
+			return a;
+		}
+		return combine(Op.OR, a, b);
+	}
+
+	/* Verschachtelte Verknüpfungen gleicher Art werden flach gehalten, doppelte Teile weggelassen: */
+	private static TrigramQuery combine(Op op, TrigramQuery a, TrigramQuery b) {
+		List<TrigramQuery> subs = new ArrayList<TrigramQuery>();
+		for (TrigramQuery q : new TrigramQuery[] { a, b }) {
+			for (TrigramQuery sub : q.op == op ? q.subs : Collections.singletonList(q)) {
+				if (!subs.contains(sub)) {
+					subs.add(sub);
+				}
+			}
+		}
+		return subs.size() == 1 ? subs.get(0) : new TrigramQuery(op, null, subs);
+	}
+
+	/*
+	 * Alle Trigramme eines Strings müssen vorkommen (Strings kürzer als 3 Zeichen: keine Einschränkung).
+	 */
+	static TrigramQuery allTrigrams(String s) {
+		TrigramQuery q = ALL;
+		for (int i = 0; i + 3 <= s.length(); i++) {
+			q = and(q, trigram(s.substring(i, i + 3)));
+		}
+		return q;
+	}
+
+	/*
+	 * Einer der Strings muss vorkommen.
+	 */
+	static TrigramQuery anyOf(Set<String> strings) {
+		TrigramQuery q = NONE;
+		for (String s : strings) {
+			q = or(q, allTrigrams(s));
+		}
+		return q;
+	}
+
+	public Op getOp() {
+		return op;
+	}
+
+	public String getTrigram() {
+		return trigram;
+	}
+
+	public List<TrigramQuery> getSubs() {
+		return subs;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof TrigramQuery)) {
+			return false;
+		}
+		TrigramQuery that = (TrigramQuery) obj;
+		return op == that.op && (trigram == null ? that.trigram == null : trigram.equals(that.trigram))
+				&& subs.equals(that.subs);
+	}
+
+	@Override
+	public int hashCode() {
+		return op.hashCode() * 31 + (trigram == null ? subs.hashCode() : trigram.hashCode());
+	}
+
+	@Override
+	public String toString() {
+		switch (op) {
+		case TRIGRAM:
+			return "\"" + trigram + "\"";
+		case AND:
+		case OR:
+			StringBuilder sb = new StringBuilder("(");
+			for (int i = 0; i < subs.size(); i++) {
+				sb.append(i > 0 ? " " + op + " " : "").append(subs.get(i));
+			}
+			return sb.append(")").toString();
+		default:
+			return op.toString();
+		}
+	}
+
+	/*
+	 * Ableitung der Trigramm-Anfrage aus einem regulären Ausdruck.
+	 */
+	public static TrigramQuery fromRegex(String regex) {
+		try {
+			return new Parser(regex).parse().knownTrigrams();
+		} catch (UnsupportedOperationException e) {
+			// nicht unterstützte Konstrukte: alle Texte sind Kandidaten
+			return ALL;
+		} catch (RuntimeException e) {
+			// fehlerhafte Ausdrücke ebenso (Pattern.compile() meldet den Fehler dann beim Suchen)
+			return ALL;
+		}
+	}
+
+	/*
+	 * Was wir über die Treffer eines Teilausdrucks wissen.
+	 */
+	private static final class Info {
+		boolean emptyable;// kann der leere String passen?
+		Set<String> exact;// alle möglichen Treffer, oder null (unbekannt/zu viele)
+		Set<String> prefix;// jeder Treffer beginnt mit einem dieser Strings
+		Set<String> suffix;// jeder Treffer endet mit einem dieser Strings
+		TrigramQuery match = ALL;// notwendige Bedingung für jeden Treffer
+
+		static Info emptyString() {
+			return exactly(Collections.singleton(""), true);
+		}
+
+		static Info exactly(Set<String> strings, boolean emptyable) {
+			Info info = new Info();
+			info.emptyable = emptyable;
+			info.exact = new TreeSet<String>(strings);
+			info.prefix = info.exact;
+			info.suffix = info.exact;
+			return info.simplify();
+		}
+
+		/* ein beliebiges Zeichen (bzw. bei 'anyString' beliebig viele) */
+		static Info any(boolean anyString) {
+			Info info = new Info();
+			info.emptyable = anyString;
+			info.prefix = Collections.singleton("");
+			info.suffix = Collections.singleton("");
+			return info;
+		}
+
+		static Info concat(Info x, Info y) {
+			Info info = new Info();
+			info.emptyable = x.emptyable && y.emptyable;
+			info.match = and(x.match, y.match);
+			if (x.exact != null && y.exact != null) {
+				info.exact = cross(x.exact, y.exact);
+				info.prefix = info.exact;
+				info.suffix = info.exact;
+			} else {
+				info.prefix = x.exact != null ? cross(x.exact, y.prefix) : x.emptyable ? union(x.prefix, y.prefix)
+						: x.prefix;
+				info.suffix = y.exact != null ? cross(x.suffix, y.exact) : y.emptyable ? union(x.suffix, y.suffix)
+						: y.suffix;
+				/*
+				 * Präfixe und Suffixe von x und y fallen dabei ggf. heraus (z.B. bei ".*abc.*"), ihre Trigramme
+				 * bleiben aber eine notwendige Bedingung:
+				 */
+				info.match = and(info.match, and(x.knownTrigrams(), y.knownTrigrams()));
+				// Trigramme über die Grenze zwischen x und y hinweg:
+				if (x.suffix.size() * y.prefix.size() <= MAX_SET * MAX_SET) {
+					info.match = and(info.match, anyOf(cross(x.suffix, y.prefix)));
+				}
+			}
+			return info.simplify();
+		}
+
+		static Info alternate(Info x, Info y) {
+			if (x.exact != null && y.exact != null) {
+				Info info = exactly(union(x.exact, y.exact), x.emptyable || y.emptyable);
+				info.match = and(info.match, or(x.match, y.match));
+				return info;
+			}
+			x.exactToMatch();
+			y.exactToMatch();
+			Info info = new Info();
+			info.emptyable = x.emptyable || y.emptyable;
+			info.prefix = union(x.prefix, y.prefix);
+			info.suffix = union(x.suffix, y.suffix);
+			info.match = or(x.knownTrigrams(), y.knownTrigrams());
+			return info.simplify();
+		}
+
+		/* Alles, was wir über die Treffer wissen, als Trigramm-Anfrage: */
+		TrigramQuery knownTrigrams() {
+			TrigramQuery q = exact != null ? anyOf(exact) : and(anyOf(prefix), anyOf(suffix));
+			return and(match, q);
+		}
+
+		/* Die exakten Treffer werden zur Anfrage, Präfixe und Suffixe bleiben erhalten. */
+		void exactToMatch() {
+			if (exact != null) {
+				match = and(match, anyOf(exact));
+				prefix = exact;
+				suffix = exact;
+				exact = null;
+			}
+		}
+
+		/*
+		 * Zu große Mengen werden in die Anfrage übernommen und dann gekürzt: Präfixe auf ihre ersten, Suffixe auf
+		 * ihre letzten zwei Zeichen (mehr braucht es nicht für Trigramme über die nächste Grenze hinweg).
+		 */
+		Info simplify() {
+			if (exact != null && exact.size() > MAX_SET) {
+				exactToMatch();
+			}
+			if (exact == null) {
+				if (prefix.size() > MAX_SET) {
+					match = and(match, anyOf(prefix));
+					prefix = trim(prefix, true);
+				}
+				if (suffix.size() > MAX_SET) {
+					match = and(match, anyOf(suffix));
+					suffix = trim(suffix, false);
+				}
+			}
+			return this;
+		}
+
+		private static Set<String> trim(Set<String> strings, boolean keepStart) {
+			Set<String> result = new TreeSet<String>();
+			for (String s : strings) {
+				result.add(s.length() <= 2 ? s : keepStart ? s.substring(0, 2) : s.substring(s.length() - 2));
+			}
+			return result.size() > MAX_SET ? Collections.singleton("") : result;
+		}
+
+		private static Set<String> cross(Set<String> a, Set<String> b) {
+			Set<String> result = new TreeSet<String>();
+			for (String s : a) {
+				for (String t : b) {
+					result.add(s + t);
+				}
+			}
+			return result;
+		}
+
+		private static Set<String> union(Set<String> a, Set<String> b) {
+			Set<String> result = new TreeSet<String>(a);
+			result.addAll(b);
+			return result;
+		}
+	}
+
+	/*
+	 * Rekursiver Abstieg über die Syntax von java.util.regex (soweit für die Trigramme relevant):
+	 *
+	 * alternation := concat ('|' concat)*; concat := repeat*; repeat := atom quantifier*
+	 */
+	private static final class Parser {
+
+		private static final int MAX_CLASS = 8;// größere Zeichenklassen gelten als 'beliebiges Zeichen'
+		private final String regex;
+		private int pos;
+
+		Parser(String regex) {
+			this.regex = regex;
+		}
+
+		Info parse() {
+			Info info = alternation();
+			if (pos < regex.length()) {
+				throw new UnsupportedOperationException("Unerwartetes Zeichen: " + regex.charAt(pos));
+			}
+			return info;
+		}
+
+		private Info alternation() {
+			Info info = concat();
+			while (peek('|')) {
+				pos++;
+				info = Info.alternate(info, concat());
+			}
+			return info;
+		}
+
+		private Info concat() {
+			Info info = Info.emptyString();
+			while (pos < regex.length() && !peek('|') && !peek(')')) {
+				info = Info.concat(info, repeat());
+			}
+			return info;
+		}
+
+		private Info repeat() {
+			Info info = atom();
+			while (pos < regex.length()) {
+				char c = regex.charAt(pos);
+				if (c == '*') {
+					pos++;
+					info = Info.any(true);
+				} else if (c == '+') {
+					pos++;
+					info = Info.concat(info, Info.any(true));
+				} else if (c == '?') {
+					pos++;
+					info = Info.alternate(info, Info.emptyString());
+				} else if (c == '{') {
+					int end = regex.indexOf('}', pos);
+					if (end < 0) {
+						throw new UnsupportedOperationException(regex);
+					}
+					String min = regex.substring(pos + 1, end).split(",", -1)[0].trim();
+					pos = end + 1;
+					// {0,...} wie '*', sonst mindestens ein Vorkommen (wie '+'):
+					info = min.equals("0") ? Info.any(true) : Info.concat(info, Info.any(true));
+				} else {
+					break;
+				}
+				// 'lazy' und 'possessive' Varianten ändern nichts an der Trefferbarkeit:
+				if (peek('?') || peek('+')) {
+					pos++;
+				}
+			}
+			return info;
+		}
+
+		private Info atom() {
+			char c = regex.charAt(pos++);
+			switch (c) {
+			case '(':
+				return group();
+			case '[':
+				return charClass();
+			case '.':
+				return Info.any(false);
+			case '^':
+			case '$':
+				return Info.emptyString();// Anker verbrauchen keine Zeichen
+			case '\\':
+				return escape();
+			case '*':
+			case '+':
+			case '?':
+			case '{':
+				throw new UnsupportedOperationException("Quantor ohne Ausdruck");
+			default:
+				return Info.exactly(Collections.singleton(String.valueOf(c)), false);
+			}
+		}
+
+		private Info group() {
+			boolean lookaround = false;
+			if (peek('?')) {
+				pos++;
+				if (peek(':')) {
+					pos++;
+				} else if (peek('=') || peek('!')) {
+					pos++;
+					lookaround = true;
+				} else if (regex.startsWith("<=", pos) || regex.startsWith("<!", pos)) {
+					pos += 2;
+					lookaround = true;
+				} else if (peek('<')) {// benannte Gruppe
+					pos = regex.indexOf('>', pos) + 1;
+					if (pos == 0) {
+						throw new UnsupportedOperationException(regex);
+					}
+				} else {
+					// Flags wie (?i) ändern die Semantik - nicht unterstützt:
+					throw new UnsupportedOperationException("Flags in " + regex);
+				}
+			}
+			Info info = alternation();
+			if (!peek(')')) {
+				throw new UnsupportedOperationException("Fehlende Klammer in " + regex);
+			}
+			pos++;
+			// Lookarounds verbrauchen keine Zeichen:
+			return lookaround ? Info.emptyString() : info;
+		}
+
+		private Info charClass() {
+			boolean negated = peek('^');
+			if (negated) {
+				pos++;
+			}
+			Set<String> chars = new TreeSet<String>();
+			boolean any = negated;
+			boolean first = true;
+			while (pos < regex.length() && (first || !peek(']'))) {
+				first = false;
+				char c = regex.charAt(pos++);
+				if (c == '[' || c == '&') {
+					throw new UnsupportedOperationException("Verschachtelte Klasse in " + regex);
+				}
+				if (c == '\\') {
+					Info escaped = escape();
+					if (escaped.exact == null) {
+						any = true;
+					} else {
+						chars.addAll(escaped.exact);
+					}
+					continue;
+				}
+				if (peek('-') && pos + 1 < regex.length() && regex.charAt(pos + 1) != ']') {
+					char to = regex.charAt(pos + 1);
+					pos += 2;
+					if (to == '\\' || to - c >= MAX_CLASS) {
+						any = true;
+						if (to == '\\') {
+							escape();
+						}
+						continue;
+					}
+					for (char r = c; r <= to; r++) {
+						chars.add(String.valueOf(r));
+					}
+					continue;
+				}
+				chars.add(String.valueOf(c));
+			}
+			if (!peek(']')) {
+				throw new UnsupportedOperationException("Fehlende Klammer in " + regex);
+			}
+			pos++;
+			if (any || chars.size() > MAX_CLASS || chars.isEmpty()) {
+				return Info.any(false);
+			}
+			return Info.exactly(chars, false);
+		}
+
+		private Info escape() {
+			if (pos >= regex.length()) {
+				throw new UnsupportedOperationException("Escape am Ende");
+			}
+			char c = regex.charAt(pos++);
+			switch (c) {
+			case 'n':
+				return literal('\n');
+			case 't':
+				return literal('\t');
+			case 'r':
+				return literal('\r');
+			case 'f':
+				return literal('\f');
+			case 'b':
+			case 'B':
+			case 'A':
+			case 'z':
+			case 'Z':
+			case 'G':
+				return Info.emptyString();
+			case 'p':
+			case 'P':
+				if (peek('{')) {
+					pos = regex.indexOf('}', pos) + 1;
+				} else {
+					pos++;
+				}
+				return Info.any(false);
+			case 'x':
+				if (peek('{')) {
+					// \x{h...h}: beliebiger Code Point
+					int end = regex.indexOf('}', pos);
+					if (end < 0) {
+						throw new UnsupportedOperationException("\\x{ ohne } in " + regex);
+					}
+					int codePoint = number(regex.substring(pos + 1, end), 16);
+					pos = end + 1;
+					if (!Character.isValidCodePoint(codePoint)) {
+						throw new UnsupportedOperationException("Code Point " + codePoint + " in " + regex);
+					}
+					return Info.exactly(Collections.singleton(new String(Character.toChars(codePoint))), false);
+				}
+				return literal((char) number(digits(2), 16));
+			case 'u':
+				return literal((char) number(digits(4), 16));
+			case '0':
+				// \0n, \0nn oder \0mnn (m <= 3): oktal, kein Rückverweis
+				int length = pos + 2 < regex.length() && regex.charAt(pos) <= '3' ? 3 : 2;
+				int octal = 0;
+				int read = 0;
+				while (read < length && pos < regex.length() && regex.charAt(pos) >= '0' && regex.charAt(pos) <= '7') {
+					octal = octal * 8 + regex.charAt(pos++) - '0';
+					read++;
+				}
+				if (read == 0) {
+					throw new UnsupportedOperationException("\\0 ohne Ziffern in " + regex);
+				}
+				return literal((char) octal);
+			case 'c':
+				// \cX: Steuerzeichen
+				if (pos >= regex.length()) {
+					throw new UnsupportedOperationException("\\c am Ende");
+				}
+				return literal((char) (regex.charAt(pos++) ^ 64));
+			case 'a':
+				return literal((char) 7);
+			case 'e':
+				return literal((char) 27);
+			case 'R':
+			case 'X':
+				return Info.any(true);// Zeilenumbruch bzw. Graphem: ein oder mehrere Zeichen
+			case 'N':
+			case 'Q':
+			case 'k':
+				throw new UnsupportedOperationException("\\" + c + " in " + regex);
+			default:
+				if (Character.isDigit(c)) {
+					return Info.any(true);// Rückverweis: beliebiger Text
+				}
+				if (Character.isLetter(c)) {
+					return Info.any(false);// \d, \w, \s, ...
+				}
+				return literal(c);// maskiertes Sonderzeichen wie \. oder \(
+			}
+		}
+
+		/*
+		 * Die nächsten n Zeichen (Hex-Ziffern nach x bzw. u).
+		 */
+		private String digits(int n) {
+			if (pos + n > regex.length()) {
+				throw new UnsupportedOperationException("Escape am Ende");
+			}
+			pos += n;
+			return regex.substring(pos - n, pos);
+		}
+
+		private static int number(String digits, int radix) {
+			try {
+				return Integer.parseInt(digits, radix);
+			} catch (NumberFormatException e) {
+				throw new UnsupportedOperationException("Keine Zahl: " + digits);
+			}
+		}
+
+		private static Info literal(char c) {
+			return Info.exactly(Collections.singleton(String.valueOf(c)), false);
+		}
+
+		private boolean peek(char c) {
+			return pos < regex.length() && regex.charAt(pos) == c;
+		}
+	}
+
+}
@@ -0,0 +1,284 @@
+package de.uni_koeln.spinfo.textengineering.ir.boole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Tolerantes Retrieval (Manning et al. 2008, Kap. 3.2): Wildcard-Anfragen wie "caes*", "*ius" oder "br*us" werden
+ * über das Vokabular eines Index zu einer (begrenzten) Menge von Termen expandiert, ohne alle Terme durchzugehen:
+ *
+ * - "caes*": Präfix-Bereich im sortierten Vokabular (binäre Suche),
+ *
+ * - ein '*' an beliebiger Stelle: Permuterm-Index - alle Rotationen von term$, sortiert; "br*us" wird zu "us$br" rotiert
+ * und als Präfix gesucht,
+ *
+ * - mehrere '*': k-Gramm-Index ($ca, cae, aes, ...) - wir schneiden die Termlisten der k-Gramme der Anfrage und
+ * filtern die Kandidaten anschließend mit dem Muster (die k-Gramme allein garantieren die Reihenfolge nicht).
+ *
+ * Die Rotationen werden nicht als Strings abgelegt, sondern als (Term-Id, Verschiebung): verglichen wird direkt auf
+ * den Zeichen des Terms. Term-Ids sind die Positionen im sortierten Vokabular, die Ergebnisse sind also sortiert.
+ */
+public final class WildcardIndex {
+
+	/*
+	 * Obergrenze für die Expansion eines Musters in Anfragen: "*e*" soll nicht das halbe Vokabular in eine
+	 * ODER-Verknüpfung schreiben.
+	 */
+	public static final int MAX_EXPANSIONS = 256;
+
+	private static final int K = 3;
+	private static final char BOUNDARY = '$';
+
+	private final String[] terms;// sortiert
+	// Permuterm: Rotation i ist term[rotationTerms[i]]$ ab Zeichen rotationShifts[i]
+	private final int[] rotationTerms;
+	private final int[] rotationShifts;
+	private final Map<String, PostingsList> kGrams;
+
+	public WildcardIndex(Collection<String> vocabulary) {
+		long start = System.currentTimeMillis();
+		terms = vocabulary.toArray(new String[vocabulary.size()]);
+		Arrays.sort(terms);
+		int count = 0;
+		for (String t : terms) {
+			count += t.length() + 1;
+		}
+		Integer[] order = new Integer[count];
+		final int[] termOf = new int[count];
+		final int[] shiftOf = new int[count];
+		Map<String, PostingsList.Builder> grams = new HashMap<String, PostingsList.Builder>();
+		int r = 0;
+		for (int id = 0; id < terms.length; id++) {
+			String t = terms[id];
+			for (int shift = 0; shift <= t.length(); shift++) {
+				order[r] = r;
+				termOf[r] = id;
+				shiftOf[r++] = shift;
+			}
+			// k-Gramme mit Randmarkierung, die Ids kommen aufsteigend:
+			String bounded = BOUNDARY + t + BOUNDARY;
+			for (int i = 0; i + K <= bounded.length(); i++) {
+				String gram = bounded.substring(i, i + K);
+				PostingsList.Builder postings = grams.get(gram);
+				if (postings == null) {
+					postings = new PostingsList.Builder();
+					grams.put(gram, postings);
+				}
+				postings.add(id);
+			}
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return compareRotations(termOf[o1], shiftOf[o1], termOf[o2], shiftOf[o2]);
+			}
+		});
+		rotationTerms = new int[count];
+		rotationShifts = new int[count];
+		for (int i = 0; i < count; i++) {
+			rotationTerms[i] = termOf[order[i]];
+			rotationShifts[i] = shiftOf[order[i]];
+		}
+		kGrams = new HashMap<String, PostingsList>();
+		for (Map.Entry<String, PostingsList.Builder> e : grams.entrySet()) {
+			kGrams.put(e.getKey(), e.getValue().build());
+		}
+		System.out.println("Wildcard-Index erstellt (" + terms.length + " Terme, " + count + " Rotationen, "
+				+ kGrams.size() + " " + K + "-Gramme), Dauer: " + (System.currentTimeMillis() - start) + " ms.");
+	}
+
+	/*
+	 * Die Terme des Vokabulars, auf die das Muster passt ('*' = beliebig viele Zeichen), höchstens 'limit' viele, in
+	 * alphabetischer Reihenfolge.
+	 */
+	public List<String> expand(String pattern, int limit) {
+		int first = pattern.indexOf('*');
+		if (first < 0) {
+			// kein Wildcard: der Term selbst, falls vorhanden
+			return Arrays.binarySearch(terms, pattern) >= 0 ? Collections.singletonList(pattern) : Collections
+					.<String> emptyList();
+		}
+		if (first != pattern.lastIndexOf('*')) {
+			return kGramSearch(pattern, limit);
+		}
+		if (first == pattern.length() - 1) {
+			return prefixSearch(pattern.substring(0, first), limit);
+		}
+		// X*Y -> Y$X als Präfix der Rotationen
+		return permutermSearch(pattern.substring(first + 1) + BOUNDARY + pattern.substring(0, first), limit);
+	}
+
+	/*
+	 * Ein Suchwort als Muster: kleingeschrieben, nur Buchstaben und '*'; null, wenn kein Buchstabe bleibt (wir
+	 * expandieren nicht das ganze Vokabular).
+	 */
+	public static String normalize(String token) {
+		StringBuilder pattern = new StringBuilder();
+		boolean letters = false;
+		for (char c : token.toLowerCase().toCharArray()) {
+			if (Character.isLetter(c)) {
+				letters = true;
+				pattern.append(c);
+			} else if (c == '*') {
+				pattern.append(c);
+			}
+		}
+		return letters ? pattern.toString() : null;
+	}
+
+	public int size() {
+		return terms.length;
+	}
+
+	private List<String> prefixSearch(String prefix, int limit) {
+		List<String> result = new ArrayList<String>();
+		int from = Arrays.binarySearch(terms, prefix);
+		for (int i = from < 0 ? -from - 1 : from; i < terms.length && result.size() < limit
+				&& terms[i].startsWith(prefix); i++) {
+			result.add(terms[i]);
+		}
+		return result;
+	}
+
+	private List<String> permutermSearch(String prefix, int limit) {
+		// erste Rotation >= prefix:
+		int lo = 0;
+		int hi = rotationTerms.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compareToPrefix(mid, prefix) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		// Jeder Term hat genau ein $, passt also mit höchstens einer Rotation:
+		List<Integer> ids = new ArrayList<Integer>();
+		for (int i = lo; i < rotationTerms.length && compareToPrefix(i, prefix) == 0; i++) {
+			ids.add(rotationTerms[i]);
+		}
+		Collections.sort(ids);
+		List<String> result = new ArrayList<String>();
+		for (int i = 0; i < ids.size() && i < limit; i++) {
+			result.add(terms[ids.get(i)]);
+		}
+		return result;
+	}
+
+	private List<String> kGramSearch(String pattern, int limit) {
+		// die Listen aller k-Gramme der Teilstücke zwischen den '*', kürzeste zuerst:
+		List<PostingsList> lists = new ArrayList<PostingsList>();
+		for (String piece : (BOUNDARY + pattern + BOUNDARY).split("\\*")) {
+			for (int i = 0; i + K <= piece.length(); i++) {
+				PostingsList postings = kGrams.get(piece.substring(i, i + K));
+				if (postings == null) {
+					return Collections.emptyList();
+				}
+				lists.add(postings);
+			}
+		}
+		Collections.sort(lists, new Comparator<PostingsList>() {
+			@Override
+			public int compare(PostingsList o1, PostingsList o2) {
+				return Integer.valueOf(o1.size()).compareTo(o2.size());
+			}
+		});
+		List<String> result = new ArrayList<String>();
+		if (lists.isEmpty()) {
+			// zu kurze Teilstücke (z.B. "*a*"): bleibt nur, das Vokabular mit dem Muster zu filtern
+			for (int i = 0; i < terms.length && result.size() < limit; i++) {
+				if (matches(pattern, terms[i])) {
+					result.add(terms[i]);
+				}
+			}
+			return result;
+		}
+		PostingsList candidates = lists.get(0);
+		for (int i = 1; i < lists.size() && candidates.size() > 0; i++) {
+			candidates = Intersection.of(candidates, lists.get(i));
+		}
+		// Nachfilter: "retired" enthält z.B. die 3-Gramme $re und red, passt aber nicht auf "red*"
+		PostingsList.Cursor cursor = candidates.cursor();
+		for (int id = cursor.next(); id != PostingsList.Cursor.NO_MORE_DOCS && result.size() < limit; id = cursor
+				.next()) {
+			if (matches(pattern, terms[id])) {
+				result.add(terms[id]);
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Passt der Term auf das Muster? '*' steht für beliebig viele Zeichen; die Teile dazwischen werden von links nach
+	 * rechts gesucht, das erste und das letzte Teil sind am Anfang bzw. Ende verankert.
+	 */
+	static boolean matches(String pattern, String term) {
+		String[] pieces = pattern.split("\\*", -1);
+		if (pieces.length == 1) {
+			return pattern.equals(term);
+		}
+		String first = pieces[0];
+		String last = pieces[pieces.length - 1];
+		if (term.length() < first.length() + last.length() || !term.startsWith(first) || !term.endsWith(last)) {
+			return false;
+		}
+		int pos = first.length();
+		int end = term.length() - last.length();
+		for (int i = 1; i < pieces.length - 1; i++) {
+			int found = term.indexOf(pieces[i], pos);
+			if (found < 0 || found + pieces[i].length() > end) {
+				return false;
+			}
+			pos = found + pieces[i].length();
+		}
+		return true;
+	}
+
+	/*
+	 * Zeichen i der Rotation von term$ ab 'shift'.
+	 */
+	private char charAt(int term, int shift, int i) {
+		String t = terms[term];
+		int pos = (shift + i) % (t.length() + 1);
+		return pos == t.length() ? BOUNDARY : t.charAt(pos);
+	}
+
+	private int compareRotations(int term1, int shift1, int term2, int shift2) {
+		int n1 = terms[term1].length() + 1;
+		int n2 = terms[term2].length() + 1;
+		for (int i = 0; i < Math.min(n1, n2); i++) {
+			char c1 = charAt(term1, shift1, i);
+			char c2 = charAt(term2, shift2, i);
+			if (c1 != c2) {
+				return c1 < c2 ? -1 : 1;
+			}
+		}
+		return n1 < n2 ? -1 : (n1 == n2 ? 0 : 1);
+	}
+
+	/*
+	 * Vergleicht die Rotation mit dem Präfix; 0, wenn sie mit dem Präfix beginnt.
+	 */
+	private int compareToPrefix(int rotation, String prefix) {
+		int term = rotationTerms[rotation];
+		int shift = rotationShifts[rotation];
+		int n = terms[term].length() + 1;
+		for (int i = 0; i < prefix.length(); i++) {
+			if (i == n) {
+				return -1;// Rotation ist kürzer als das Präfix
+			}
+			char c = charAt(term, shift, i);
+			if (c != prefix.charAt(i)) {
+				return c < prefix.charAt(i) ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
+}
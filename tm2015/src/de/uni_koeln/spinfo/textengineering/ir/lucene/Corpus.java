@@ -1,11 +1,8 @@
 package de.uni_koeln.spinfo.textengineering.ir.lucene;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Scanner;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field.Store;
@@ -13,35 +10,32 @@ import org.apache.lucene.document.IntField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 
+import de.uni_koeln.spinfo.textengineering.ir.basic.MappedCorpus;
+
 
 public class Corpus {
 
-	private String text;
+	private MappedCorpus file;
 	// NEU: Verwendung von Lucene-Documents anstelle der eigenen Document-Klasse
 	private List<Document> works;
 
 	public Corpus(String location, String worksDelimiter, String titleDelimiter) {
-		StringBuilder sb = new StringBuilder();
+		works = new ArrayList<Document>();
+		List<String> worksAsList;
 		try {
-			@SuppressWarnings("resource")
-			Scanner scanner = new Scanner(new File(location));
-			while (scanner.hasNextLine()) {
-				String line = scanner.nextLine();
-				sb.append(line);
-				sb.append("\n");
-			}
-		} catch (FileNotFoundException e) {
+			file = new MappedCorpus(location, worksDelimiter);
+			worksAsList = file.getWorks();
+		} catch (IOException e) {
 			e.printStackTrace();
+			return;
 		}
-		text = sb.toString();
-		works = new ArrayList<Document>();
-		List<String> worksAsList = Arrays.asList(text.split(worksDelimiter));
-		for (String work : worksAsList.subList(1, worksAsList.size())) {
+		// docId = Position in der Werkliste (ohne indexOf über alle Werke):
+		for (int docId = 1; docId < worksAsList.size(); docId++) {
+			String work = worksAsList.get(docId);
 			String title = (work.trim().substring(0,
 					work.trim().indexOf(titleDelimiter))).trim();
 			// NEU: Wir kapseln die Werke direkt als Lucene-Doc:
-			Document doc = buildLuceneDocument(work, title,
-					worksAsList.indexOf(work));
+			Document doc = buildLuceneDocument(work, title, docId);
 			works.add(doc);
 		}
 	}
@@ -69,7 +63,7 @@ public class Corpus {
 	}
 
 	public String getText() {
-		return text;
+		return file == null ? "" : file.getText();
 	}
 
 }
@@ -1,61 +1,99 @@
 package de.uni_koeln.spinfo.textengineering.ir.ranked;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import de.uni_koeln.spinfo.textengineering.ir.basic.MappedCorpus;
 
 public class Corpus {
 
-	private String text;
+	// der gemappte Text (statt eines Strings, vgl. ir.basic.Corpus)
+	private MappedCorpus file;
 	// NEU: Korpus als Sammlung von Document-Objekten
 	private List<Document> works;
 
 	// NEU: delimiter für Trennung von Titel und Text (vgl. PositionalIndex)
 	public Corpus(String location, String worksDelimiter, String titleDelimiter) {
-		StringBuilder sb = new StringBuilder();
+		works = new ArrayList<Document>();
+		List<String> worksAsList;
 		try {
-			@SuppressWarnings("resource")
-			Scanner scanner = new Scanner(new File(location));
-			while (scanner.hasNextLine()) {
-				String line = scanner.nextLine();
-				sb.append(line);
-				sb.append("\n"); // Newline für Werkeinteilung (s. delimiter)
-			}
-		} catch (FileNotFoundException e) {
+			file = new MappedCorpus(location, worksDelimiter);
+			worksAsList = file.getWorks();
+		} catch (IOException e) {
 			e.printStackTrace();
+			return;
 		}
-		text = sb.toString();
 		/*
 		 * NEU: Anstatt wie bisher den gesamten Text in Teilstrings zu splitten,
 		 * werden diese jetzt selbst nochmals mithilfe des titleDelimiter in
 		 * Titel und Text gesplittet und in einem Document-Objekt gekapselt.
-		 * Dabei lassen wir das erste "Werk" weg (Lizenzvereinbarung etc.):
+		 * Dabei lassen wir das erste "Werk" weg (Lizenzvereinbarung etc.).
+		 * Die Documents (und damit das Tokenisieren) entstehen parallel, jedes
+		 * an seiner Stelle im Array:
 		 */
-		works = new ArrayList<Document>();
-		List<String> worksAsList = Arrays.asList(text.split(worksDelimiter));
-		for (String work : worksAsList.subList(1, worksAsList.size())) {
-			/*
-			 * trim() schneidet überschüssige Leerzeichen ab, indexOf() gibt die
-			 * erste Position des delimiters im Text zurück - damit erhalten wir
-			 * einen bereinigten Teilstring, der vom Beginn des Dokuments bis
-			 * zum ersten Vorkommen des delimiters reicht (= der Titel)
-			 */
-			String title = (work.trim().substring(0,
-					work.trim().indexOf(titleDelimiter))).trim();
-			works.add(new Document(work, title));
+		final List<String> texts = worksAsList.subList(1, worksAsList.size());
+		final Document[] documents = new Document[texts.size()];
+		ForkJoinPool pool = new ForkJoinPool();
+		try {
+			pool.invoke(new DocumentTask(texts, documents, titleDelimiter, 0, texts.size()));
+		} finally {
+			pool.shutdown();
+		}
+		works = new ArrayList<Document>(Arrays.asList(documents));
+	}
+
+	private static class DocumentTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final List<String> texts;
+		private final Document[] documents;
+		private final String titleDelimiter;
+		private final int from;
+		private final int to;
+
+		DocumentTask(List<String> texts, Document[] documents, String titleDelimiter, int from, int to) {
+			this.texts = texts;
+			this.documents = documents;
+			this.titleDelimiter = titleDelimiter;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new DocumentTask(texts, documents, titleDelimiter, from, mid), new DocumentTask(texts,
+						documents, titleDelimiter, mid, to));
+				return;
+			}
+			for (int i = from; i < to; i++) {
+				String work = texts.get(i);
+				/*
+				 * trim() schneidet überschüssige Leerzeichen ab, indexOf() gibt
+				 * die erste Position des delimiters im Text zurück - damit
+				 * erhalten wir einen bereinigten Teilstring, der vom Beginn des
+				 * Dokuments bis zum ersten Vorkommen des delimiters reicht (=
+				 * der Titel)
+				 */
+				String title = (work.trim().substring(0, work.trim().indexOf(titleDelimiter))).trim();
+				documents[i] = new Document(work, title);
+			}
 		}
 	}
 
 	// NEU: Korpus als Sammlung von Document-Objekten
 	public List<Document> getWorks() {
-		return works;
+		return Collections.unmodifiableList(works);
 	}
 
 	public String getText() {
-		return text;
+		return file == null ? "" : file.getText();
 	}
 
 }
@@ -1,29 +1,51 @@
 package de.uni_koeln.spinfo.textengineering.ir.ranked;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import de.uni_koeln.spinfo.textengineering.ir.boole.Preprocessor;
+import de.uni_koeln.spinfo.textengineering.ir.boole.TermDictionary;
 
 public class Document {
 	@SuppressWarnings("unused")
 	private String text;
 	private String title;
 	private Map<String, Integer> tf;
-	private List<String> tokens;
-	private static Preprocessor PREPROCESSOR = new Preprocessor();
+	private static final Preprocessor PREPROCESSOR = new Preprocessor();
+	/*
+	 * Alle Dokumente teilen sich ein Termverzeichnis: die Schlüssel der tf-Maps
+	 * sind so für jeden Term dieselbe String-Instanz. Nachgeschlagen wird erst
+	 * nach dem Zählen, einmal pro Term statt pro Token (Documents werden
+	 * parallel erzeugt, siehe Corpus, und das Verzeichnis ist threadsicher).
+	 * Anfragen (query()) schlagen nur nach und nehmen nichts auf.
+	 */
+	private static final TermDictionary TERMS = new TermDictionary();
 
 	public Document(String text, String title) {
+		this(text, title, false);
+	}
+
+	private Document(String text, String title, boolean query) {
 		this.text = text;
 		this.title = title;
-		this.tokens = PREPROCESSOR.tokenize(text);
-		this.tf = computeTf();
+		this.tf = computeTf(PREPROCESSOR.tokenize(text), query);
 	}
 
-	private Map<String, Integer> computeTf() {
+	/*
+	 * Ein Document für eine Anfrage: die Terme werden im gemeinsamen
+	 * Termverzeichnis nur nachgeschlagen, unbekannte Terme (z.B. Tippfehler)
+	 * bleiben eigene Strings, statt das Verzeichnis mit jeder Anfrage wachsen zu
+	 * lassen.
+	 */
+	public static Document query(String text) {
+		return new Document(text, "Query", true);
+	}
+
+	private Map<String, Integer> computeTf(List<String> tokens, boolean query) {
 		Map<String, Integer> termMap = new HashMap<String, Integer>();
 		/* Wir zählen die Häufigkeiten der Tokens: */
 		for (String token : tokens) {
@@ -38,11 +60,16 @@ public class Document {
 			}
 			termMap.put(token, tf);
 		}
-		return termMap;
+		Map<String, Integer> interned = new HashMap<String, Integer>(termMap.size() * 2);
+		for (Map.Entry<String, Integer> e : termMap.entrySet()) {
+			String term = query ? TERMS.lookup(e.getKey()) : TERMS.intern(e.getKey());
+			interned.put(term != null ? term : e.getKey(), e.getValue());
+		}
+		return interned;
 	}
 
 	public Set<String> getTerms() {
-		return tf.keySet();
+		return Collections.unmodifiableSet(tf.keySet());
 	}
 
 	/*
@@ -76,15 +103,16 @@ public class Document {
 	}
 
 	/*
-	 * Die Cosinus-Ähnlichkeit dieses Documents zu einer query. Die eigentliche Ähnlichkeitsberechnung delegieren wir an
-	 * eine Vergleichstrategie, implementiert in der Klasse VectorComparison.
+	 * Die Cosinus-Ähnlichkeit dieses Documents zu einer query. Statt der vollen Vektoren über das Vokabular (siehe
+	 * computeVector() und VectorComparison) nehmen wir die dünn besetzten, für Werke des Index vorab berechneten
+	 * Vektoren (gleiches Ergebnis, siehe TfIdfVector).
 	 */
 	public Double similarity(Document query, InformationRetrieval index) {
 
-		List<Double> queryVec = query.computeVector(index);
-		List<Double> docVector = this.computeVector(index);
+		TfIdfVector queryVec = index.getVector(query);
+		TfIdfVector docVector = index.getVector(this);
 
-		return VectorComparison.compare(queryVec, docVector);
+		return queryVec.cosine(docVector);
 	}
 
 	/*
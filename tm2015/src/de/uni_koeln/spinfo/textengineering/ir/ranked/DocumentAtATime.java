@@ -0,0 +1,324 @@
+package de.uni_koeln.spinfo.textengineering.ir.ranked;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Document-at-a-time-Auswertung mit dynamischem Pruning: Die Postings aller Anfrageterme werden gleichzeitig in
+ * aufsteigender docId-Reihenfolge gelesen (ein Cursor pro Term), jedes Werk wird vollständig bewertet und in einen
+ * Heap der besten k aufgenommen (siehe TopK). Sobald der Heap voll ist, gibt sein schlechtester Score eine Schwelle
+ * vor. Für jeden Term kennen wir eine obere Schranke seines Beitrags zum Score (der größte Wert tf * idf / Länge
+ * in seiner Postings-Liste, beim Indexieren berechnet, siehe InvertedIndex.getMaxScore()); Werke, die die Schwelle
+ * selbst mit den Schranken nicht erreichen können, werden übersprungen, ohne sie zu bewerten:
+ *
+ * - WAND (Broder et al. 2003): Die Cursor werden nach ihrer aktuellen docId sortiert, die Schranken aufsummiert, bis
+ * die Summe die Schwelle übersteigt (Pivot). Werke vor der docId des Pivots können nicht in die besten k kommen, die
+ * Cursor davor springen direkt dorthin.
+ *
+ * - MaxScore (Turtle & Flood 1995): Die Terme werden nach ihren Schranken sortiert; die mit den kleinsten Schranken,
+ * deren Summe unter der Schwelle bleibt, sind 'nicht wesentlich' - Kandidaten kommen nur aus den übrigen Listen,
+ * in den nicht wesentlichen wird nur noch nachgeschlagen, solange das Werk die Schwelle noch erreichen kann.
+ *
+ * Der Score jedes bewerteten Werks wird in allen Varianten gleich berechnet (Cosinus wie beim Ranker, Summe über die
+ * Terme in Anfragereihenfolge), übersprungen wird nur, was sicher nicht in die besten k gehört: Das Ergebnis ist
+ * dasselbe wie beim vollständigen Bewerten (EXHAUSTIVE).
+ */
+public class DocumentAtATime {
+
+	public enum Strategy {
+		EXHAUSTIVE, WAND, MAX_SCORE
+	}
+
+	// Spielraum für Rundungsfehler (Schranken in double, Scores als float):
+	private static final double SLACK = 1E-6;
+
+	private final InvertedIndex index;
+	// Anzahl der vollständig bewerteten Werke bei der letzten Anfrage:
+	private int scored;
+
+	public DocumentAtATime(InvertedIndex index) {
+		this.index = index;
+	}
+
+	/*
+	 * Die k Werke mit den höchsten Scores (als OR über alle Terme).
+	 */
+	public List<Document> rank(List<String> terms, int k, Strategy strategy) {
+		int[] docIds = top(terms, k, strategy);
+		List<Document> ranked = new ArrayList<Document>(docIds.length);
+		for (int docId : docIds) {
+			ranked.add(index.getWorks().get(docId));
+		}
+		return ranked;
+	}
+
+	/*
+	 * Die docIds der k besten Werke, bester Treffer zuerst.
+	 */
+	public int[] top(List<String> terms, int k, Strategy strategy) {
+		scored = 0;
+		Cursor[] cursors = cursors(terms);
+		TopK top = new TopK(Math.min(k, index.getWorks().size()));
+		if (cursors.length > 0 && k > 0) {
+			switch (strategy) {
+			case WAND:
+				wand(cursors, top);
+				break;
+			case MAX_SCORE:
+				maxScore(cursors, top);
+				break;
+			default:
+				exhaustive(cursors, top);
+			}
+		}
+		return top.toArray();
+	}
+
+	public int getScored() {
+		return scored;
+	}
+
+	/*
+	 * Ein Cursor pro bekanntem Term (mit idf > 0), in Anfragereihenfolge. Gewichte der Anfrage wie beim Ranker: tf in
+	 * der Anfrage * idf.
+	 */
+	private Cursor[] cursors(List<String> terms) {
+		int n = index.getWorks().size();
+		Map<String, Integer> queryTf = new LinkedHashMap<String, Integer>();
+		for (String t : terms) {
+			Integer df = index.getDocFreq(t);
+			if (df != null && df < n) {
+				Integer tf = queryTf.get(t);
+				queryTf.put(t, tf == null ? 1 : tf + 1);
+			}
+		}
+		double queryNorm = 0;
+		List<Cursor> cursors = new ArrayList<Cursor>();
+		for (Map.Entry<String, Integer> e : queryTf.entrySet()) {
+			double idf = Math.log(n / (double) index.getDocFreq(e.getKey()));
+			double queryWeight = e.getValue() * idf;
+			queryNorm += queryWeight * queryWeight;
+			cursors.add(new Cursor(index.getPostings(e.getKey()), queryWeight * idf, index.getMaxScore(e.getKey())
+					* queryWeight));
+		}
+		queryNorm = Math.sqrt(queryNorm);
+		for (Cursor c : cursors) {
+			c.weight /= queryNorm;
+			c.upper /= queryNorm;
+		}
+		return cursors.toArray(new Cursor[cursors.size()]);
+	}
+
+	/*
+	 * Alle Werke, die mindestens einen Term enthalten.
+	 */
+	private void exhaustive(Cursor[] cursors, TopK top) {
+		while (true) {
+			int doc = Cursor.END;
+			for (Cursor c : cursors) {
+				doc = Math.min(doc, c.doc);
+			}
+			if (doc == Cursor.END) {
+				return;
+			}
+			top.offer(doc, score(cursors, doc));
+			for (Cursor c : cursors) {
+				if (c.doc == doc) {
+					c.next();
+				}
+			}
+		}
+	}
+
+	private void wand(Cursor[] terms, TopK top) {
+		Cursor[] cursors = terms.clone();
+		while (true) {
+			Arrays.sort(cursors, BY_DOC);
+			float threshold = top.threshold();
+			double bound = 0;
+			int pivot = -1;
+			for (int i = 0; i < cursors.length && cursors[i].doc != Cursor.END; i++) {
+				bound += cursors[i].upper;
+				if (!prunable(bound, threshold)) {
+					pivot = i;
+					break;
+				}
+			}
+			if (pivot < 0) {
+				return;
+			}
+			int doc = cursors[pivot].doc;
+			if (cursors[0].doc == doc) {
+				// alle Cursor bis zum Pivot stehen auf dem Werk: bewerten
+				top.offer(doc, score(terms, doc));
+				for (Cursor c : cursors) {
+					if (c.doc == doc) {
+						c.next();
+					}
+				}
+			} else {
+				// die Werke davor erreichen die Schwelle nicht: überspringen
+				for (int i = 0; i < pivot; i++) {
+					cursors[i].advance(doc);
+				}
+			}
+		}
+	}
+
+	private void maxScore(Cursor[] terms, TopK top) {
+		Cursor[] cursors = terms.clone();
+		Arrays.sort(cursors, BY_UPPER);
+		// bounds[i]: Summe der Schranken der Cursor 0 bis i
+		double[] bounds = new double[cursors.length];
+		double sum = 0;
+		for (int i = 0; i < cursors.length; i++) {
+			sum += cursors[i].upper;
+			bounds[i] = sum;
+		}
+		while (true) {
+			float threshold = top.threshold();
+			// die Cursor vor 'essential' können allein die Schwelle nicht erreichen
+			int essential = 0;
+			while (essential < cursors.length && prunable(bounds[essential], threshold)) {
+				essential++;
+			}
+			if (essential == cursors.length) {
+				return;
+			}
+			int doc = Cursor.END;
+			for (int i = essential; i < cursors.length; i++) {
+				doc = Math.min(doc, cursors[i].doc);
+			}
+			if (doc == Cursor.END) {
+				return;
+			}
+			double norm = index.getNorm(doc);
+			double partial = 0;
+			for (int i = essential; i < cursors.length; i++) {
+				if (cursors[i].doc == doc) {
+					partial += cursors[i].contribution(norm);
+				}
+			}
+			// nicht wesentliche Listen, größte Schranke zuerst, solange das Werk noch mitkommen kann
+			boolean candidate = true;
+			for (int i = essential - 1; i >= 0 && candidate; i--) {
+				if (prunable(partial + bounds[i], threshold)) {
+					candidate = false;
+				} else {
+					cursors[i].advance(doc);
+					if (cursors[i].doc == doc) {
+						partial += cursors[i].contribution(norm);
+					}
+				}
+			}
+			if (candidate) {
+				top.offer(doc, score(terms, doc));
+			}
+			for (int i = essential; i < cursors.length; i++) {
+				if (cursors[i].doc == doc) {
+					cursors[i].next();
+				}
+			}
+		}
+	}
+
+	private static boolean prunable(double bound, float threshold) {
+		return bound * (1 + SLACK) < threshold;
+	}
+
+	/*
+	 * Der Score eines Werks, auf dem alle Cursor mit diesem Werk stehen (die übrigen stehen dahinter). Immer in
+	 * Anfragereihenfolge summiert, damit alle Varianten dieselben Werte liefern.
+	 */
+	private float score(Cursor[] terms, int doc) {
+		scored++;
+		double sum = 0;
+		for (Cursor c : terms) {
+			if (c.doc == doc) {
+				sum += c.weight * c.postings.tf(c.i);
+			}
+		}
+		return (float) (sum / index.getNorm(doc));
+	}
+
+	private static final Comparator<Cursor> BY_DOC = new Comparator<Cursor>() {
+		@Override
+		public int compare(Cursor c1, Cursor c2) {
+			return Integer.compare(c1.doc, c2.doc);
+		}
+	};
+
+	private static final Comparator<Cursor> BY_UPPER = new Comparator<Cursor>() {
+		@Override
+		public int compare(Cursor c1, Cursor c2) {
+			return Double.compare(c1.upper, c2.upper);
+		}
+	};
+
+	/*
+	 * Position in der Postings-Liste eines Terms.
+	 */
+	private static final class Cursor {
+
+		static final int END = Integer.MAX_VALUE;
+
+		final TfPostings postings;
+		// Gewicht der Anfrage * idf / Länge der Anfrage, Score-Beitrag ist weight * tf / Länge des Werks
+		double weight;
+		// obere Schranke des Beitrags
+		double upper;
+		int i;
+		int doc;
+
+		Cursor(TfPostings postings, double weight, double upper) {
+			this.postings = postings;
+			this.weight = weight;
+			this.upper = upper;
+			this.doc = postings.size() == 0 ? END : postings.docId(0);
+		}
+
+		double contribution(double norm) {
+			return weight * postings.tf(i) / norm;
+		}
+
+		void next() {
+			i++;
+			doc = i < postings.size() ? postings.docId(i) : END;
+		}
+
+		/*
+		 * Zum ersten Werk >= target, galoppierend (vgl. boole.Intersection).
+		 */
+		void advance(int target) {
+			if (doc >= target) {
+				return;
+			}
+			int n = postings.size();
+			int step = 1;
+			int lo = i;
+			int hi = i + 1;
+			while (hi < n && postings.docId(hi) < target) {
+				lo = hi;
+				step *= 2;
+				hi = i + step;
+			}
+			hi = Math.min(hi, n);
+			// binäre Suche in (lo, hi]: erstes Werk >= target
+			while (lo + 1 < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (postings.docId(mid) < target) {
+					lo = mid;
+				} else {
+					hi = mid;
+				}
+			}
+			i = hi;
+			doc = i < n ? postings.docId(i) : END;
+		}
+	}
+
+}
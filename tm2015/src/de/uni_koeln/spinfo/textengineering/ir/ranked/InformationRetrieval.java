@@ -24,4 +24,11 @@ public interface InformationRetrieval {
 
 	Integer getDocFreq(String t);
 
+	/*
+	 * Der beim Indexieren vorab berechnete tf-idf-Vektor eines Documents
+	 * (samt Länge), damit beim Ranking nicht für jeden Vergleich neu
+	 * gerechnet werden muss:
+	 */
+	TfIdfVector getVector(Document document);
+
 }
@@ -1,102 +1,393 @@
 package de.uni_koeln.spinfo.textengineering.ir.ranked;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import de.uni_koeln.spinfo.textengineering.ir.boole.Intersection;
+import de.uni_koeln.spinfo.textengineering.ir.boole.PositionalPostings;
+import de.uni_koeln.spinfo.textengineering.ir.boole.PostingsList;
 import de.uni_koeln.spinfo.textengineering.ir.boole.Preprocessor;
+import de.uni_koeln.spinfo.textengineering.ir.boole.QueryCache;
+import de.uni_koeln.spinfo.textengineering.ir.boole.Segment;
+import de.uni_koeln.spinfo.textengineering.ir.boole.SpellingCorrector;
+import de.uni_koeln.spinfo.textengineering.ir.boole.SpimiIndexer;
+import de.uni_koeln.spinfo.textengineering.ir.boole.WildcardIndex;
 
 public class InvertedIndex implements InformationRetrieval {
 
-	private Map<String, SortedSet<Integer>> index;
+	// nach dem Konstruktor unveränderlich, Suchen brauchen keine Sperren:
+	// NEU: Postings mit tf (siehe TfPostings), statt nur der docIds
+	private final Map<String, TfPostings> index;
 	private static final Preprocessor PREPROCESSOR = new Preprocessor();
-	// NEU: Korpus für Zugriff auf Werke (vgl. PositionalIndex)
-	private Corpus corpus;
+	// NEU: die Werke des Korpus (bei einem geöffneten Index erst bei Bedarf erzeugt, siehe open())
+	private final List<Document> works;
+	// Vokabular für Wildcard-Anfragen (siehe boole.WildcardIndex)
+	private final WildcardIndex wildcards;
+	// Korrekturvorschläge für unbekannte Suchwörter:
+	private final SpellingCorrector corrector;
+	// Dokumentfrequenzen (ohne die Postings zu lesen, siehe getDocFreq()):
+	private final Map<String, Integer> docFreqs;
+	// tf-idf-Vektoren der Werke (Index = docId), aus den Postings berechnet:
+	private final TfIdfVector[] vectors;
+	private final Map<Document, Integer> docIds;
+	// pro Term der größte Wert tf * idf / Länge eines Werks (Schranke für das Pruning, siehe DocumentAtATime):
+	private final Map<String, Double> maxScores;
+	// Name des Segments beim Speichern (siehe save() und open()):
+	private static final String SEGMENT = "ranked";
+	private static final String TITLES = "ranked.titles";
+	// Ergebnisse häufiger Anfragen als docIds (siehe boole.QueryCache):
+	private final QueryCache cache = new QueryCache(4 << 20);
 
 	public InvertedIndex(Corpus corpus) {
 		long start = System.currentTimeMillis();
-		this.corpus = corpus;// NEU: Korpus mit ablegen
+		works = corpus.getWorks();// NEU: Werke mit ablegen
 		index = index(corpus);
+		docFreqs = new HashMap<String, Integer>();
+		for (Map.Entry<String, TfPostings> e : index.entrySet()) {
+			docFreqs.put(e.getKey(), e.getValue().size());
+		}
+		wildcards = new WildcardIndex(index.keySet());
+		corrector = new SpellingCorrector(docFreqs);
+		docIds = docIds(works);
+		vectors = vectors(index, works.size());
+		maxScores = maxScores(vectors);
 		System.out.println("Index erstellt, Dauer: "
 				+ (System.currentTimeMillis() - start) + " ms.");
 	}
 
-	private Map<String, SortedSet<Integer>> index(Corpus corpus) {
-		HashMap<String, SortedSet<Integer>> index = new HashMap<String, SortedSet<Integer>>();
+	private InvertedIndex(Segment segment, String[] titles) {
+		// die Postings bleiben in den gemappten Dateien (siehe boole.Segment):
+		index = segment.asMap(new Segment.Values<TfPostings>() {
+			@Override
+			public TfPostings of(PositionalPostings postings) {
+				return TfPostings.of(postings);
+			}
+		});
+		docFreqs = segment.dfs();
+		wildcards = new WildcardIndex(index.keySet());
+		corrector = new SpellingCorrector(docFreqs);
+		// die Vektoren hängen nur von tf und df ab, beides steht im Segment:
+		vectors = vectors(index, titles.length);
+		maxScores = maxScores(vectors);
+		docIds = new ConcurrentHashMap<Document, Integer>();
+		works = new Works(titles, docIds);
+	}
+
+	/*
+	 * Öffnet einen mit save() geschriebenen Index, ohne Korpus: Vektoren und
+	 * Schranken kommen aus den tf-Werten im Segment, von den Werken brauchen
+	 * wir nur noch die Titel (für die Ergebnisse, siehe Works).
+	 */
+	public static InvertedIndex open(Path dir) throws IOException {
+		long start = System.currentTimeMillis();
+		Segment segment = Segment.open(dir, SEGMENT);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(dir
+				.resolve(TITLES))));
+		String[] titles;
+		try {
+			titles = new String[in.readInt()];
+			for (int i = 0; i < titles.length; i++) {
+				titles[i] = in.readUTF();
+			}
+		} finally {
+			in.close();
+		}
+		if (segment.numDocs() != titles.length) {
+			throw new IOException("Titel passen nicht zum Index: " + titles.length + " statt "
+					+ segment.numDocs() + " Werke");
+		}
+		InvertedIndex index = new InvertedIndex(segment, titles);
+		System.out.println("Index geöffnet, Dauer: "
+				+ (System.currentTimeMillis() - start) + " ms.");
+		return index;
+	}
+
+	/*
+	 * Schreibt den Index als Segment in das Verzeichnis, die Titel der Werke
+	 * in eine weitere Datei.
+	 */
+	public void save(Path dir) throws IOException {
+		Map<String, PositionalPostings> postings = new HashMap<String, PositionalPostings>();
+		for (Map.Entry<String, TfPostings> e : index.entrySet()) {
+			postings.put(e.getKey(), e.getValue().toPositional());
+		}
+		Segment.write(dir, SEGMENT, works.size(), postings);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dir
+				.resolve(TITLES))));
+		try {
+			out.writeInt(works.size());
+			for (Document work : works) {
+				out.writeUTF(work.getTitle());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private Map<String, TfPostings> index(Corpus corpus) {
 		// NEU: 'Documents' statt Strings
-		List<Document> works = corpus.getWorks();
-		for (int i = 0; i < works.size(); i++) {
-			// NEU: Preprocessor muss schon im Document eingesetzt werden
-			Set<String> terms = works.get(i).getTerms();
-			// der Rest bleibt wie bisher ...
-			for (String t : terms) {
-				SortedSet<Integer> postings = index.get(t);
-				if (postings == null) {
-					postings = new TreeSet<Integer>();
-					index.put(t, postings);
+		final List<Document> works = corpus.getWorks();
+		// parallel indexiert wie in boole (siehe SpimiIndexer), nur ohne Positionen:
+		Map<String, PositionalPostings> spimi = new SpimiIndexer().index(new SpimiIndexer.Source() {
+			@Override
+			public int size() {
+				return works.size();
+			}
+
+			@Override
+			public void terms(int doc, SpimiIndexer.Sink sink) {
+				// NEU: Preprocessor muss schon im Document eingesetzt werden
+				for (String t : works.get(doc).getTerms()) {
+					sink.add(t, 0);
 				}
-				postings.add(i);
 			}
-			// printSortedIndexTerms(index);//optionale Ausgabe der Indexterme
+		});
+		HashMap<String, TfPostings> index = new HashMap<String, TfPostings>();
+		for (Map.Entry<String, PositionalPostings> e : spimi.entrySet()) {
+			// NEU: zu jeder docId die tf aus dem Document
+			int[] docs = new int[e.getValue().size()];
+			int[] tfs = new int[docs.length];
+			for (int i = 0; i < docs.length; i++) {
+				docs[i] = e.getValue().docId(i);
+				tfs[i] = (int) works.get(docs[i]).getTf(e.getKey());
+			}
+			index.put(e.getKey(), new TfPostings(docs, tfs));
 		}
 		return index;
 	}
 
+	private static Map<Document, Integer> docIds(List<Document> works) {
+		// Documents vergleichen sich über ihre Identität (kein equals()):
+		Map<Document, Integer> docIds = new HashMap<Document, Integer>(works.size() * 2);
+		for (int i = 0; i < works.size(); i++) {
+			docIds.put(works.get(i), i);
+		}
+		return docIds;
+	}
+
+	/*
+	 * Die tf-idf-Gewichte jedes Werks als dünn besetzter Vektor mit seiner
+	 * Länge (siehe TfIdfVector), einmal für alle Anfragen. Berechnet aus den
+	 * Postings (tf pro Werk, df = Länge der Liste) statt aus den Documents:
+	 * die Terme in alphabetischer Reihenfolge, jedes Posting hängt sein Gewicht
+	 * an den Vektor seines Werks an.
+	 */
+	private static TfIdfVector[] vectors(Map<String, TfPostings> index, int n) {
+		String[][] terms = new String[n][16];
+		double[][] weights = new double[n][16];
+		int[] sizes = new int[n];
+		for (String t : new TreeSet<String>(index.keySet())) {
+			TfPostings postings = index.get(t);
+			double idf = Math.log(n / (double) postings.size());
+			if (idf == 0) {
+				continue;// Terme, die in allen Werken vorkommen
+			}
+			for (int i = 0; i < postings.size(); i++) {
+				int docId = postings.docId(i);
+				if (sizes[docId] == terms[docId].length) {
+					terms[docId] = Arrays.copyOf(terms[docId], sizes[docId] * 2);
+					weights[docId] = Arrays.copyOf(weights[docId], sizes[docId] * 2);
+				}
+				terms[docId][sizes[docId]] = t;
+				weights[docId][sizes[docId]++] = postings.tf(i) * idf;
+			}
+		}
+		TfIdfVector[] vectors = new TfIdfVector[n];
+		for (int docId = 0; docId < n; docId++) {
+			vectors[docId] = TfIdfVector.of(Arrays.copyOf(terms[docId], sizes[docId]),
+					Arrays.copyOf(weights[docId], sizes[docId]));
+		}
+		return vectors;
+	}
+
+	/*
+	 * Die Schranken ergeben sich aus den Vektoren der Werke, ohne die
+	 * Postings zu lesen.
+	 */
+	private static Map<String, Double> maxScores(TfIdfVector[] vectors) {
+		Map<String, Double> maxScores = new HashMap<String, Double>();
+		for (TfIdfVector vector : vectors) {
+			for (int i = 0; i < vector.size(); i++) {
+				double score = vector.weight(i) / vector.norm();
+				Double max = maxScores.get(vector.term(i));
+				if (max == null || score > max) {
+					maxScores.put(vector.term(i), score);
+				}
+			}
+		}
+		return maxScores;
+	}
+
 	/*
 	 *  NEU: Rückgabe von Documents anstelle von docIds.
 	 */
 	@Override
 	public Set<Document> search(String query) {
 		long start = System.currentTimeMillis();
-		List<String> queries = PREPROCESSOR.process(query);
-		List<SortedSet<Integer>> allPostings = new ArrayList<SortedSet<Integer>>();
-		for (String q : queries) {
-			SortedSet<Integer> postings = index.get(q);
-			allPostings.add(postings);
-		}
-		Collections.sort(allPostings, new Comparator<SortedSet<Integer>>() {
-			public int compare(SortedSet<Integer> o1, SortedSet<Integer> o2) {
+		// normalisierte Anfrage (Muster bzw. Terme nach dem Preprocessor), zugleich Schlüssel für den Cache:
+		List<String> patterns = new ArrayList<String>();
+		List<String> terms = new ArrayList<String>();
+		for (String token : query.trim().split("\\s+")) {
+			String pattern = token.indexOf('*') >= 0 ? WildcardIndex.normalize(token) : null;
+			if (pattern != null) {
+				patterns.add(pattern);
+			} else {
+				terms.addAll(PREPROCESSOR.process(token));
+			}
+		}
+		for (String q : terms) {
+			if (index.get(q) == null) {
+				// unbekannter Term, auch bei Antwort aus dem Cache melden:
+				System.out.println(corrector.notFound(q));
+			}
+		}
+		String key = patterns + " " + terms;
+		int[] cached = cache.get(key);
+		if (cached != null) {
+			System.out.println("Suchdauer (Cache): " + (System.currentTimeMillis() - start) + " ms.");
+			return documents(cached);
+		}
+		List<PostingsList> allPostings = new ArrayList<PostingsList>();
+		for (String pattern : patterns) {
+			// NEU: Wildcards - Vereinigung der Postings aller passenden Terme
+			SortedSet<Integer> union = new TreeSet<Integer>();
+			for (String t : wildcards.expand(pattern, WildcardIndex.MAX_EXPANSIONS)) {
+				TfPostings postings = index.get(t);
+				for (int i = 0; i < postings.size(); i++) {
+					union.add(postings.docId(i));
+				}
+			}
+			PostingsList.Builder builder = new PostingsList.Builder();
+			for (Integer docId : union) {
+				builder.add(docId);
+			}
+			allPostings.add(builder.build());
+		}
+		for (String q : terms) {
+			TfPostings postings = index.get(q);
+			if (postings == null) {
+				// unbekannter Term: leeres Ergebnis (statt NullPointerException)
+				allPostings.add(PostingsList.of());
+			} else {
+				allPostings.add(postings.docs());
+			}
+		}
+		if (allPostings.isEmpty()) {
+			return new LinkedHashSet<Document>();
+		}
+		Collections.sort(allPostings, new Comparator<PostingsList>() {
+			public int compare(PostingsList o1, PostingsList o2) {
 				return Integer.valueOf(o1.size()).compareTo(o2.size());
 			}
 		});
-		SortedSet<Integer> result = allPostings.get(0);
-		for (SortedSet<Integer> set : allPostings) {
-			result = Intersection.of(result, set);
+		PostingsList result = allPostings.get(0);
+		for (PostingsList pl : allPostings.subList(1, allPostings.size())) {
+			result = Intersection.of(result, pl);
 		}
 		System.out.println("Suchdauer: " + (System.currentTimeMillis() - start)
 				+ " ms.");
-		/*
-		 * NEU: Abschließend holen wir zu jeder docId das passende Document,
-		 * indem wir sie uns direkt vom Korpus geben lassen ...
-		 */
-		Set<Document> resultAsDocSet = new HashSet<Document>();
-		for (Integer docId : result) {
-			Document doc = getWorks().get(docId);
-			resultAsDocSet.add(doc);
+		int[] docIds = result.toArray();
+		cache.put(key, docIds);
+		return documents(docIds);
+	}
+
+	/*
+	 * Gerankte OR-Suche über alle Werke (siehe TermAtATime), statt nur die
+	 * Schnittmenge aus search() zu sortieren. Wildcards zählen mit allen
+	 * passenden Termen.
+	 */
+	public List<Document> rank(String query) {
+		return rank(query, getWorks().size());
+	}
+
+	/*
+	 * Nur die k besten Treffer (z.B. für die erste Seite der Ergebnisse).
+	 */
+	public List<Document> rank(String query, int k) {
+		long start = System.currentTimeMillis();
+		List<Document> ranked = new TermAtATime(this).rank(rankingTerms(query), k);
+		System.out.println("Rankingdauer: " + (System.currentTimeMillis() - start) + " ms.");
+		return ranked;
+	}
+
+	/*
+	 * Die k besten Treffer Werk für Werk ausgewertet (siehe
+	 * DocumentAtATime): ohne Akkumulator-Begrenzung, mit WAND oder MaxScore
+	 * dasselbe Ergebnis wie beim vollständigen Bewerten, nur schneller.
+	 */
+	public List<Document> rank(String query, int k, DocumentAtATime.Strategy strategy) {
+		long start = System.currentTimeMillis();
+		DocumentAtATime daat = new DocumentAtATime(this);
+		List<Document> ranked = daat.rank(rankingTerms(query), k, strategy);
+		System.out.println("Rankingdauer (" + strategy + ", " + daat.getScored() + " Werke bewertet): "
+				+ (System.currentTimeMillis() - start) + " ms.");
+		return ranked;
+	}
+
+	/*
+	 * Die Anfrageterme fürs Ranking, Wildcards mit allen passenden Termen.
+	 */
+	private List<String> rankingTerms(String query) {
+		List<String> terms = new ArrayList<String>();
+		for (String token : query.trim().split("\\s+")) {
+			String pattern = token.indexOf('*') >= 0 ? WildcardIndex.normalize(token) : null;
+			if (pattern != null) {
+				terms.addAll(wildcards.expand(pattern, WildcardIndex.MAX_EXPANSIONS));
+			} else {
+				terms.addAll(PREPROCESSOR.process(token));
+			}
+		}
+		return terms;
+	}
+
+	/*
+	 * NEU: Abschließend holen wir zu jeder docId das passende Document, indem
+	 * wir es uns direkt vom Korpus geben lassen ...
+	 */
+	private Set<Document> documents(int[] docIds) {
+		// in der Reihenfolge der docIds (ein HashSet hinge vom Identitäts-Hash der Documents ab):
+		Set<Document> resultAsDocSet = new LinkedHashSet<Document>();
+		for (int docId : docIds) {
+			resultAsDocSet.add(getWorks().get(docId));
 		}
 		return resultAsDocSet;
 	}
 
+	public QueryCache getCache() {
+		return cache;
+	}
+
 	/*
 	 *  Alle Dokumente.
 	 */
 	public List<Document> getWorks() {
-		return corpus.getWorks();
+		return works;
 	}
 
 	/*
 	 * Ausgabe der Indexterme.
 	 */
 	@SuppressWarnings("unused")
-	private void printSortedIndexTerms(Map<String, SortedSet<Integer>> index) {
+	private void printSortedIndexTerms(Map<String, TfPostings> index) {
 		TreeSet<String> terms = new TreeSet<String>(index.keySet());
 		for (String string : terms) {
 			System.out.println(string);
@@ -105,14 +396,86 @@ public class InvertedIndex implements InformationRetrieval {
 	}
 
 	public Set<String> getTerms() {
-		return index.keySet();
+		return Collections.unmodifiableSet(index.keySet());
+	}
+
+	/*
+	 * Der vorab berechnete Vektor eines Werks; für andere Documents (z.B. die
+	 * Anfrage) wird er neu berechnet.
+	 */
+	@Override
+	public TfIdfVector getVector(Document document) {
+		Integer docId = docIds.get(document);
+		return docId == null ? TfIdfVector.of(document, this) : vectors[docId];
+	}
+
+	/*
+	 * Die Werke eines geöffneten Index: erst beim ersten Zugriff als Document
+	 * nur mit Titel erzeugt (ohne Text und tf-Werte - Vektoren und Postings
+	 * liefert der Index), jedes genau einmal, damit Documents sich weiter über
+	 * ihre Identität vergleichen.
+	 */
+	private static final class Works extends AbstractList<Document> {
+
+		private final String[] titles;
+		private final AtomicReferenceArray<Document> documents;
+		private final Map<Document, Integer> docIds;
+
+		Works(String[] titles, Map<Document, Integer> docIds) {
+			this.titles = titles;
+			this.documents = new AtomicReferenceArray<Document>(titles.length);
+			this.docIds = docIds;
+		}
+
+		@Override
+		public Document get(int docId) {
+			Document document = documents.get(docId);
+			if (document == null) {
+				Document created = new Document("", titles[docId]);
+				// erst eintragen, dann veröffentlichen: wer das Document sieht, findet auch seine docId
+				docIds.put(created, docId);
+				if (!documents.compareAndSet(docId, null, created)) {
+					docIds.remove(created);
+				}
+				document = documents.get(docId);
+			}
+			return document;
+		}
+
+		@Override
+		public int size() {
+			return titles.length;
+		}
+	}
+
+	/*
+	 * Die Postings (docId, tf) eines Terms, null für unbekannte Terme.
+	 */
+	public TfPostings getPostings(String t) {
+		return index.get(t);
+	}
+
+	/*
+	 * Die Länge des tf-idf-Vektors eines Werks.
+	 */
+	double getNorm(int docId) {
+		return vectors[docId].norm();
+	}
+
+	/*
+	 * Der größte Score-Beitrag tf * idf / Länge eines Terms in einem Werk (0
+	 * für unbekannte Terme).
+	 */
+	public double getMaxScore(String t) {
+		Double max = maxScores.get(t);
+		return max == null ? 0 : max;
 	}
 
 	/*
 	 *  Die Dokumentenfrequenz zu einem Term:
 	 */
 	public Integer getDocFreq(String t) {
-		return index.get(t).size();
+		return docFreqs.get(t);
 	}
 
 }
@@ -3,56 +3,62 @@ package de.uni_koeln.spinfo.textengineering.ir.ranked;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class Ranker {
 
 	/*
 	 * Query und Index werden als Klassenvariablen direkt bei der Instantiierung
-	 * gesetzt (siehe Konstruktor), da sie bei Aufruf der Methode rank() für
-	 * jede Vergleichsoperation in sort benötigt werden, um die
-	 * Cosinus-Ähnlichkeit jedes Documents des result-Sets zu ermitteln.
+	 * gesetzt (siehe Konstruktor). Den tf-idf-Vektor der Anfrage berechnen
+	 * wir dabei gleich mit, er ist für alle Documents derselbe.
 	 */
 	private Document query;
 	private InformationRetrieval index;
+	private TfIdfVector queryVector;
 
 	public Ranker(String query, InformationRetrieval index) {
 		// hier wird aus der query ein kleines Document erzeugt (text = query,
 		// title = "Query")
-		this.query = new Document(query, "Query");
+		this.query = Document.query(query);
 		this.index = index;
+		this.queryVector = TfIdfVector.of(this.query, index);
 	}
 
 	public List<Document> rank(Set<Document> result) {
 
 		// result wird zunächst in eine Liste umgewandelt:
 		List<Document> ranked = new ArrayList<Document>(result);
+		/*
+		 * Die (Cosinus-) Ähnlichkeit jedes Documents zur Anfrage berechnen wir
+		 * genau einmal, vor dem Sortieren: Die Vektoren der Documents liegen
+		 * fertig im Index (mit ihrer Länge), das Skalarprodukt läuft nur über
+		 * die Anfrageterme (siehe TfIdfVector). Früher geschah das im
+		 * Comparator, also für jeden Vergleich zweimal und jedes Mal über das
+		 * gesamte Vokabular.
+		 */
+		final Map<Document, Double> scores = new HashMap<Document, Double>(ranked.size() * 2);
+		for (Document d : ranked) {
+			scores.put(d, queryVector.cosine(index.getVector(d)));
+		}
 		/*
 		 * Wir setzen das Ranking des Ergebnis-Sets als einfache Sortierung um;
 		 * Java stellt für Collections (Listen, Maps, etc) die Methode sort()
 		 * bereit, der man einen Sortierschlüssel (einen Comparator) übergeben
 		 * kann. Wir wollen Dokumente anhand ihrer Ähnlichkeit zur query
-		 * sortieren, deshalb müssen wir uns zunächst einen geeigneten
-		 * Comparator schreiben:
+		 * sortieren:
 		 */
 		Collections.sort(ranked, new Comparator<Document>() {
 			@Override
 			public int compare(Document d1, Document d2) {
 				/*
-				 * Wir sortieren alle Vektoren nach ihrer (Cosinus-) Ähnlichkeit
-				 * zur Anfrage (query), dazu benötigen wir zunächst die
-				 * Ähnlichkeiten von d1 zum Query und d2 zum Query:
-				 */
-				Double s1 = d1.similarity(query, index);
-				Double s2 = d2.similarity(query, index);
-				/*
-				 * Anschließend sortieren wir nach diesen beiden Ähnlichkeiten.
 				 * Wir wollen absteigende Ähnlichkeit, d.h. s2.compareTo(s1)
 				 * statt s1.compareTo(s2) d.h. die höchsten Werte und damit
 				 * besten Treffer zuerst:
 				 */
-				return s2.compareTo(s1);
+				return scores.get(d2).compareTo(scores.get(d1));
 			}
 		});
 		return ranked;// Rückgabe = sortierte Liste (nach Ähnlichkeit zur query)
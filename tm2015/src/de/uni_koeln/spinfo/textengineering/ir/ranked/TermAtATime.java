@@ -0,0 +1,112 @@
+package de.uni_koeln.spinfo.textengineering.ir.ranked;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Term-at-a-time-Auswertung (Manning et al. 2008, Kap. 6.3.3 und 7.1): Statt jedes Document einzeln mit der Anfrage zu
+ * vergleichen (siehe Ranker), gehen wir die Postings der Anfrageterme nacheinander durch und addieren die Gewichte
+ * tf * idf in einen Akkumulator pro Werk (ein float[] über alle docIds). Am Ende teilen wir durch die Längen der
+ * Vektoren und haben die Cosinus-Ähnlichkeit jedes Werks, das mindestens einen der Terme enthält - die Anfrage wird
+ * also als OR ausgewertet, nicht nur auf der Schnittmenge wie bei search().
+ *
+ * Begrenzung der Akkumulatoren: Die Terme werden nach absteigendem idf abgearbeitet. Terme mit niedrigem idf (in mehr
+ * als der Hälfte der Werke) legen keine neuen Akkumulatoren mehr an, sondern erhöhen nur noch die Werte der Werke, die
+ * schon einen seltenen Term enthalten ('continue'-Strategie, Moffat & Zobel 1996). Nur wenn die Anfrage ausschließlich
+ * aus häufigen Termen besteht, zählen die Postings aller dieser Terme vollständig.
+ */
+public class TermAtATime {
+
+	// Terme mit kleinerem idf (df > n/2) legen keine Akkumulatoren an:
+	static final double LOW_IDF = Math.log(2);
+
+	private final InvertedIndex index;
+
+	public TermAtATime(InvertedIndex index) {
+		this.index = index;
+	}
+
+	/*
+	 * Die Scores aller Werke (Index = docId), 0 für Werke ohne Akkumulator.
+	 */
+	public float[] scores(List<String> terms) {
+		int n = index.getWorks().size();
+		float[] accumulators = new float[n];
+		// Gewichte der Anfrage: tf in der Anfrage * idf, nur bekannte Terme
+		final Map<String, Double> idfs = new HashMap<String, Double>();
+		Map<String, Integer> queryTf = new HashMap<String, Integer>();
+		for (String t : terms) {
+			Integer df = index.getDocFreq(t);
+			if (df == null || df == n) {
+				continue;// unbekannt oder idf = 0
+			}
+			idfs.put(t, Math.log(n / (double) df));
+			Integer tf = queryTf.get(t);
+			queryTf.put(t, tf == null ? 1 : tf + 1);
+		}
+		List<String> byIdf = new ArrayList<String>(idfs.keySet());
+		Collections.sort(byIdf, new Comparator<String>() {
+			@Override
+			public int compare(String t1, String t2) {
+				return idfs.get(t2).compareTo(idfs.get(t1));
+			}
+		});
+		// nur häufige Terme: dann legen alle Akkumulatoren an
+		boolean onlyFrequent = byIdf.isEmpty() || idfs.get(byIdf.get(0)) < LOW_IDF;
+		double queryNorm = 0;
+		for (String t : byIdf) {
+			double idf = idfs.get(t);
+			double queryWeight = queryTf.get(t) * idf;
+			queryNorm += queryWeight * queryWeight;
+			boolean create = idf >= LOW_IDF || onlyFrequent;
+			TfPostings postings = index.getPostings(t);
+			for (int i = 0; i < postings.size(); i++) {
+				int docId = postings.docId(i);
+				if (accumulators[docId] == 0 && !create) {
+					continue;
+				}
+				accumulators[docId] += queryWeight * postings.tf(i) * idf;
+			}
+		}
+		// Normalisierung mit den (vorab berechneten) Längen:
+		queryNorm = Math.sqrt(queryNorm);
+		for (int docId = 0; docId < n; docId++) {
+			if (accumulators[docId] != 0) {
+				accumulators[docId] /= queryNorm * index.getNorm(docId);
+			}
+		}
+		return accumulators;
+	}
+
+	/*
+	 * Alle Werke mit einem Score, absteigend sortiert (bei Gleichstand nach docId).
+	 */
+	public List<Document> rank(List<String> terms) {
+		return rank(terms, index.getWorks().size());
+	}
+
+	/*
+	 * Die k Werke mit den höchsten Scores, ausgewählt über einen Heap (siehe TopK) statt alle zu sortieren.
+	 */
+	public List<Document> rank(List<String> terms, int k) {
+		float[] scores = scores(terms);
+		TopK top = new TopK(Math.min(k, scores.length));
+		for (int docId = 0; docId < scores.length; docId++) {
+			if (scores[docId] != 0) {
+				top.offer(docId, scores[docId]);
+			}
+		}
+		// erst jetzt die Documents, nur für die Überlebenden:
+		int[] docIds = top.toArray();
+		List<Document> ranked = new ArrayList<Document>(docIds.length);
+		for (int docId : docIds) {
+			ranked.add(index.getWorks().get(docId));
+		}
+		return ranked;
+	}
+
+}
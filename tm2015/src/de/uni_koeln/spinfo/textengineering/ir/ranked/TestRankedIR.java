@@ -3,6 +3,8 @@ package de.uni_koeln.spinfo.textengineering.ir.ranked;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -50,6 +52,184 @@ public class TestRankedIR {
 		print(rankedResult);
 	}
 
+	@Test
+	public void wildcardResults() {
+		Set<Document> wildcard = index.search("caes* bru*");
+		System.out.println(wildcard.size() + " Treffer für caes* bru*");
+		assertTrue("Ergebnis sollte nicht leer sein!", wildcard.size() > 0);
+		assertTrue(wildcard.containsAll(index.search(query)));
+	}
+
+	@Test
+	public void unknownTerm() {
+		// unbekannte Terme: leeres Ergebnis (mit Vorschlag), keine NullPointerException
+		assertTrue(index.search("brutus ceasar").isEmpty());
+	}
+
+	@Test
+	public void cachedResults() {
+		result = index.search(query);
+		int hits = index.getCache().getHits();
+		// gleiche normalisierte Anfrage:
+		assertTrue(result.equals(index.search("Brutus  CAESAR")));
+		assertTrue(index.getCache().getHits() == hits + 1);
+		assertTrue(new ArrayList<Document>(result).equals(new ArrayList<Document>(index.search(query))));
+	}
+
+	@Test
+	public void savedIndex() throws Exception {
+		java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("ranked");
+		index.save(dir);
+		// ohne Korpus: die Werke des geöffneten Index sind eigene Documents (nur mit Titel), verglichen wird über die Titel
+		InvertedIndex opened = InvertedIndex.open(dir);
+		assertTrue(opened.getTerms().containsAll(index.getTerms()));
+		for (String q : new String[] { query, "caes* bru*", "brutus ceasar" }) {
+			assertTrue(q, titles(index.search(q)).equals(titles(opened.search(q))));
+		}
+		assertTrue(index.getDocFreq("brutus").equals(opened.getDocFreq("brutus")));
+		assertTrue(titles(ranker.rank(index.search(query))).equals(
+				titles(new Ranker(query, opened).rank(opened.search(query)))));
+		// gleiche Vektoren und Schranken wie aus den Documents berechnet:
+		for (int docId = 0; docId < index.getWorks().size(); docId++) {
+			TfIdfVector expected = TfIdfVector.of(index.getWorks().get(docId), index);
+			TfIdfVector vector = opened.getVector(opened.getWorks().get(docId));
+			assertTrue(vector == opened.getVector(opened.getWorks().get(docId)));
+			assertTrue(expected.size() == vector.size());
+			assertTrue(Math.abs(expected.norm() - vector.norm()) < 1E-9);
+		}
+		assertTrue(index.getMaxScore("hamlet") == opened.getMaxScore("hamlet"));
+		for (DocumentAtATime.Strategy strategy : DocumentAtATime.Strategy.values()) {
+			assertTrue(titles(index.rank("king hamlet", 5, strategy)).equals(
+					titles(opened.rank("king hamlet", 5, strategy))));
+		}
+	}
+
+	private static List<String> titles(Iterable<Document> documents) {
+		List<String> titles = new ArrayList<String>();
+		for (Document d : documents) {
+			titles.add(d.getTitle());
+		}
+		return titles;
+	}
+
+	@Test
+	public void sparseVectors() {
+		// gleiche Ähnlichkeiten wie mit den vollen Vektoren über das ganze Vokabular:
+		String hamlet = "king hamlet";
+		Document q = Document.query(hamlet);
+		List<Double> queryVector = q.computeVector(index);
+		List<Document> ranked = new Ranker(hamlet, index).rank(index.search("king"));
+		double previous = Double.MAX_VALUE;
+		for (Document d : ranked) {
+			double dense = VectorComparison.compare(queryVector, d.computeVector(index));
+			assertTrue(d.toString(), Math.abs(dense - d.similarity(q, index)) < 1E-9);
+			assertTrue("absteigend sortiert", dense <= previous + 1E-9);
+			previous = dense;
+		}
+		assertTrue(index.getVector(ranked.get(0)) == index.getVector(ranked.get(0)));
+		assertTrue(index.getVector(q).size() <= 2);
+	}
+
+	@Test
+	public void termAtATime() {
+		// tf in den Postings wie im Document:
+		TfPostings king = index.getPostings("king");
+		assertTrue(king.size() == index.getDocFreq("king"));
+		for (int i = 0; i < king.size(); i++) {
+			assertTrue(king.tf(i) == index.getWorks().get(king.docId(i)).getTf("king"));
+		}
+		// OR über alle Werke, gleiche Scores wie beim Ranker:
+		String or = "hamlet lear";
+		List<Document> ranked = index.rank(or);
+		Set<Document> union = new HashSet<Document>(index.search("hamlet"));
+		union.addAll(index.search("lear"));
+		assertTrue(new HashSet<Document>(ranked).equals(union));
+		assertSameScores(or, ranked);
+		float[] scores = new TermAtATime(index).scores(Arrays.asList("hamlet", "lear"));
+		Document query = Document.query(or);
+		for (Document d : ranked) {
+			double expected = d.similarity(query, index);
+			assertTrue(d.toString(), Math.abs(scores[index.getWorks().indexOf(d)] - expected) < 1E-5);
+		}
+		// häufige Terme legen keine neuen Akkumulatoren an ...
+		ranked = index.rank("hamlet king");
+		assertTrue(new HashSet<Document>(ranked).equals(index.search("hamlet")));
+		assertSameScores("hamlet king", ranked);
+		// ... außer sie sind allein, auch mehrere:
+		assertTrue(index.rank("king").size() == index.search("king").size());
+		Set<Document> frequent = new HashSet<Document>(index.search("king"));
+		frequent.addAll(index.search("ii"));
+		assertTrue(index.search("ii").size() * 2 > index.getWorks().size());
+		assertTrue(frequent.size() > index.search("king").size() && frequent.size() > index.search("ii").size());
+		assertTrue(new HashSet<Document>(index.rank("king ii")).equals(frequent));
+		assertSameScores("king ii", index.rank("king ii"));
+		assertTrue(index.rank("xqzt").isEmpty());
+	}
+
+	@Test
+	public void topK() {
+		// die ersten k des vollständigen Rankings:
+		for (String q : new String[] { "king", "hamlet lear king", "caes* bru* part" }) {
+			List<Document> all = index.rank(q);
+			for (int k = 0; k <= all.size() + 1; k++) {
+				assertTrue(q + " " + k, index.rank(q, k).equals(all.subList(0, Math.min(k, all.size()))));
+			}
+		}
+		// der Heap selbst, mit Gleichständen (kleinere docId zuerst):
+		TopK top = new TopK(3);
+		float[] scores = { 0.5f, 0.9f, 0.1f, 0.9f, 0.7f, 0.5f };
+		for (int docId = 0; docId < scores.length; docId++) {
+			top.offer(docId, scores[docId]);
+		}
+		assertTrue(top.threshold() == 0.7f);
+		assertTrue(Arrays.equals(new int[] { 1, 3, 4 }, top.toArray()));
+	}
+
+	@Test
+	public void dynamicPruning() {
+		// WAND und MaxScore liefern dieselben k besten wie das vollständige Bewerten, auch für zufällige Anfragen:
+		List<String> vocabulary = new ArrayList<String>(new java.util.TreeSet<String>(index.getTerms()));
+		java.util.Random random = new java.util.Random(7);
+		DocumentAtATime daat = new DocumentAtATime(index);
+		int exhaustive = 0;
+		int pruned = 0;
+		for (int run = 0; run < 200; run++) {
+			List<String> terms = new ArrayList<String>();
+			for (int i = 0; i <= random.nextInt(5); i++) {
+				terms.add(vocabulary.get(random.nextInt(vocabulary.size())));
+			}
+			terms.add(run % 2 == 0 ? "king" : "part");// ein häufiger Term
+			int k = 1 + random.nextInt(10);
+			int[] expected = daat.top(terms, k, DocumentAtATime.Strategy.EXHAUSTIVE);
+			int all = daat.getScored();
+			exhaustive += all;
+			for (DocumentAtATime.Strategy strategy : new DocumentAtATime.Strategy[] { DocumentAtATime.Strategy.WAND,
+					DocumentAtATime.Strategy.MAX_SCORE }) {
+				assertTrue(terms + " " + k + " " + strategy,
+						Arrays.equals(expected, daat.top(terms, k, strategy)));
+				pruned += daat.getScored();
+				assertTrue(daat.getScored() <= all);
+			}
+		}
+		System.out.println("Bewertet: " + exhaustive + " vollständig, " + pruned / 2 + " mit Pruning");
+		assertTrue(pruned / 2 < exhaustive);
+		// gleiche Reihenfolge wie beim Ranker:
+		List<Document> ranked = index.rank("hamlet king lear", 5, DocumentAtATime.Strategy.MAX_SCORE);
+		assertTrue(ranked.size() == 5);
+		assertSameScores("hamlet king lear", ranked);
+		assertTrue(index.rank("xqzt", 5, DocumentAtATime.Strategy.WAND).isEmpty());
+	}
+
+	private void assertSameScores(String q, List<Document> ranked) {
+		Document query = Document.query(q);
+		double previous = Double.MAX_VALUE;
+		for (Document d : ranked) {
+			double score = d.similarity(query, index);
+			assertTrue(d.toString(), score <= previous + 1E-6);
+			previous = score;
+		}
+	}
+
 	/*
 	 * Hilfsmethode, um Ergebnisse übersichtlicher darzustellen.
 	 */
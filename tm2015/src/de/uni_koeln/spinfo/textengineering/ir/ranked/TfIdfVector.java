@@ -0,0 +1,108 @@
+package de.uni_koeln.spinfo.textengineering.ir.ranked;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Dünn besetzter tf-idf-Vektor eines Documents: Statt einer Liste über das gesamte Vokabular (siehe
+ * Document.computeVector(), dort fast nur Nullen) speichern wir nur die Terme des Documents mit einem Gewicht
+ * ungleich 0, sortiert, dazu die Gewichte und die euklidische Länge. Die Länge wird einmal beim Erstellen berechnet,
+ * ein Vergleich braucht dann nur noch das Skalarprodukt über die Terme des kürzeren Vektors (bei einer Anfrage also
+ * nur über die Anfrageterme), mit binärer Suche im längeren.
+ */
+public final class TfIdfVector {
+
+	private final String[] terms;
+	private final double[] weights;
+	private final double norm;
+
+	private TfIdfVector(String[] terms, double[] weights) {
+		this.terms = terms;
+		this.weights = weights;
+		double sum = 0;
+		for (double w : weights) {
+			sum += w * w;
+		}
+		this.norm = Math.sqrt(sum);
+	}
+
+	/*
+	 * Die Gewichte wie in TermWeighting.tfIdf(), nur für Terme des Vokabulars (unbekannte Terme haben keine
+	 * Dimension, vgl. computeVector()).
+	 */
+	public static TfIdfVector of(Document document, InformationRetrieval index) {
+		List<String> known = new ArrayList<String>();
+		for (String t : document.getTerms()) {
+			if (index.getDocFreq(t) != null) {
+				known.add(t);
+			}
+		}
+		Collections.sort(known);
+		String[] terms = new String[known.size()];
+		double[] weights = new double[known.size()];
+		int n = 0;
+		for (String t : known) {
+			double w = TermWeighting.tfIdf(t, document, index);
+			if (w != 0) {// z.B. Terme, die in allen Werken vorkommen (idf = 0)
+				terms[n] = t;
+				weights[n++] = w;
+			}
+		}
+		return new TfIdfVector(Arrays.copyOf(terms, n), Arrays.copyOf(weights, n));
+	}
+
+	/*
+	 * Aus schon berechneten Gewichten (Terme alphabetisch sortiert, siehe InvertedIndex.vectors()).
+	 */
+	static TfIdfVector of(String[] terms, double[] weights) {
+		return new TfIdfVector(terms, weights);
+	}
+
+	/*
+	 * Das Gewicht eines Terms (0, wenn er nicht vorkommt).
+	 */
+	public double weight(String t) {
+		int i = Arrays.binarySearch(terms, t);
+		return i < 0 ? 0 : weights[i];
+	}
+
+	/*
+	 * Der i-te Term (alphabetisch) und sein Gewicht.
+	 */
+	public String term(int i) {
+		return terms[i];
+	}
+
+	public double weight(int i) {
+		return weights[i];
+	}
+
+	public double norm() {
+		return norm;
+	}
+
+	public int size() {
+		return terms.length;
+	}
+
+	public double dot(TfIdfVector other) {
+		if (other.size() < size()) {
+			return other.dot(this);
+		}
+		double sum = 0;
+		for (int i = 0; i < terms.length; i++) {
+			sum += weights[i] * other.weight(terms[i]);
+		}
+		return sum;
+	}
+
+	/*
+	 * Cosinus-Ähnlichkeit wie in VectorComparison.compare(), ohne die Nullen.
+	 */
+	public double cosine(TfIdfVector other) {
+		return dot(other) / (norm * other.norm);
+	}
+
+}
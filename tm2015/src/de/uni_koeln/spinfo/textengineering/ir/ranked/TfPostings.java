@@ -0,0 +1,69 @@
+package de.uni_koeln.spinfo.textengineering.ir.ranked;
+
+import de.uni_koeln.spinfo.textengineering.ir.boole.PositionalPostings;
+import de.uni_koeln.spinfo.textengineering.ir.boole.PostingsList;
+
+/*
+ * Postings für das Ranking: zu jeder docId (aufsteigend) die Termfrequenz des Terms in diesem Werk, beides primitiv
+ * in zwei parallelen int[]. Vorher waren die Postings nur ein SortedSet<Integer>, für die tf-Werte mussten wir
+ * jedes Mal zurück in die Documents (siehe TermAtATime).
+ */
+public final class TfPostings {
+
+	private final int[] docs;
+	private final int[] tfs;
+
+	TfPostings(int[] docs, int[] tfs) {
+		this.docs = docs;
+		this.tfs = tfs;
+	}
+
+	/*
+	 * Aus einem Segment bzw. dem SpimiIndexer: die Anzahl der Positionen ist die tf.
+	 */
+	static TfPostings of(PositionalPostings postings) {
+		int[] docs = new int[postings.size()];
+		int[] tfs = new int[docs.length];
+		for (int i = 0; i < docs.length; i++) {
+			docs[i] = postings.docId(i);
+			tfs[i] = postings.freq(i);
+		}
+		return new TfPostings(docs, tfs);
+	}
+
+	/*
+	 * Anzahl der Werke (Dokumentfrequenz).
+	 */
+	public int size() {
+		return docs.length;
+	}
+
+	public int docId(int i) {
+		return docs[i];
+	}
+
+	public int tf(int i) {
+		return tfs[i];
+	}
+
+	/*
+	 * Nur die docIds, für die boolesche Suche (siehe boole.Intersection).
+	 */
+	public PostingsList docs() {
+		return PostingsList.of(docs);
+	}
+
+	/*
+	 * Zum Speichern als Segment: Positionen 0 bis tf-1 als Platzhalter, damit die tf erhalten bleibt.
+	 */
+	PositionalPostings toPositional() {
+		PositionalPostings.Builder builder = new PositionalPostings.Builder();
+		for (int i = 0; i < docs.length; i++) {
+			for (int p = 0; p < tfs[i]; p++) {
+				builder.add(docs[i], p);
+			}
+		}
+		return builder.build();
+	}
+
+}
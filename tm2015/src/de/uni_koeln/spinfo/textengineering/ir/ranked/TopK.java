@@ -0,0 +1,113 @@
+package de.uni_koeln.spinfo.textengineering.ir.ranked;
+
+/*
+ * Die k besten (docId, score)-Paare, gesammelt in einem Min-Heap der Größe k (Manning et al. 2008, Kap. 7.1): Die
+ * Wurzel ist der schlechteste der bisher besten k Treffer, ein neuer Treffer muss nur mit ihr verglichen werden und
+ * ersetzt sie ggf. Das kostet O(n log k) statt O(n log n) für das Sortieren aller Treffer, und alles bleibt
+ * primitiv in zwei Arrays - Documents werden erst für die k Überlebenden geholt (siehe TermAtATime).
+ *
+ * Reihenfolge wie beim vollständigen Sortieren: absteigender Score, bei Gleichstand die kleinere docId zuerst.
+ */
+public final class TopK {
+
+	private final int[] docs;
+	private final float[] scores;
+	private int size;
+
+	public TopK(int k) {
+		docs = new int[Math.max(k, 0)];
+		scores = new float[docs.length];
+	}
+
+	/*
+	 * Nimmt den Treffer auf, wenn er zu den besten k gehört; true, wenn er aufgenommen wurde.
+	 */
+	public boolean offer(int docId, float score) {
+		if (size < docs.length) {
+			docs[size] = docId;
+			scores[size] = score;
+			up(size++);
+			return true;
+		}
+		if (size == 0 || !better(docId, score, docs[0], scores[0])) {
+			return false;
+		}
+		docs[0] = docId;
+		scores[0] = score;
+		down(0);
+		return true;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isFull() {
+		return size == docs.length;
+	}
+
+	/*
+	 * Der schlechteste Score unter den besten k (Schwelle für neue Treffer), solange der Heap nicht voll ist
+	 * Float.NEGATIVE_INFINITY.
+	 */
+	public float threshold() {
+		return isFull() && size > 0 ? scores[0] : Float.NEGATIVE_INFINITY;
+	}
+
+	/*
+	 * Die docIds, bester Treffer zuerst. Leert den Heap.
+	 */
+	public int[] toArray() {
+		int[] result = new int[size];
+		while (size > 0) {
+			result[size - 1] = docs[0];
+			size--;
+			docs[0] = docs[size];
+			scores[0] = scores[size];
+			down(0);
+		}
+		return result;
+	}
+
+	private static boolean better(int d1, float s1, int d2, float s2) {
+		int c = Float.compare(s1, s2);
+		return c > 0 || (c == 0 && d1 < d2);
+	}
+
+	private void up(int i) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (!better(docs[parent], scores[parent], docs[i], scores[i])) {
+				return;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void down(int i) {
+		while (true) {
+			int worst = i;
+			for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+				if (better(docs[worst], scores[worst], docs[child], scores[child])) {
+					worst = child;
+				}
+			}
+			if (worst == i) {
+				return;
+			}
+			swap(i, worst);
+			i = worst;
+		}
+	}
+
+	private void swap(int i, int j) {
+		int d = docs[i];
+		docs[i] = docs[j];
+		docs[j] = d;
+		float s = scores[i];
+		scores[i] = scores[j];
+		scores[j] = s;
+	}
+
+}
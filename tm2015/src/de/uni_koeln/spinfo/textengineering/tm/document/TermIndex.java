@@ -29,6 +29,7 @@ import java.util.Map;
 import java.util.Set;
 
 import de.uni_koeln.spinfo.textengineering.ir.boole.Preprocessor;
+import de.uni_koeln.spinfo.textengineering.ir.boole.TermDictionary;
 import de.uni_koeln.spinfo.textengineering.tm.corpus.Corpus;
 
 /*
@@ -48,6 +49,11 @@ public final class TermIndex implements Document {
 	 */
 	private Map<String, Integer> termsAndFrequencies;
 	private FeatureVector vector;
+	/*
+	 * Ein Preprocessor mit gemeinsamem Termverzeichnis für alle Dokumente, damit gleiche Terme nicht für jedes Dokument
+	 * neu als String angelegt werden.
+	 */
+	private static final Preprocessor PREPROCESSOR = new Preprocessor(new TermDictionary());
 
 	/**
 	 * @param content
@@ -56,8 +62,7 @@ public final class TermIndex implements Document {
 	public TermIndex(final String content) {
 		this.content = content;
 		this.termsAndFrequencies = new HashMap<String, Integer>();
-		Preprocessor preprocessor = new Preprocessor();
-		List<String> tokens = preprocessor.process(content);
+		List<String> tokens = PREPROCESSOR.process(content);
 		for (String token : tokens) {
 			add(token);
 		}